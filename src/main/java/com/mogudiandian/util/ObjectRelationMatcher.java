@@ -1,17 +1,17 @@
 package com.mogudiandian.util;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
-import com.google.common.util.concurrent.*;
+import com.mogudiandian.util.map.LongObjectHashMap;
+import com.mogudiandian.util.orm.*;
+import com.mogudiandian.util.stream.StreamUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
@@ -57,6 +57,8 @@ import java.util.stream.Stream;
  *            comment.setArticleTitle("未知标题"); <br/>
  *            comment.setArticleContent("未知内容"); <br/>
  *        }); <br/>
+ * 如果不希望阻塞调用线程 可以使用matchAsync()并配合setAsyncBatchQueryMethod/setAsyncSingleQueryMethod传入返回CompletionStage的异步查询方法 <br/>
+ * 如果查询结果很多 可以使用setStreamingMatch(true)开启流式匹配 每一批查询结果返回后立即建立索引 也可以通过setStreamingProcessOneToOne/setStreamingProcessOneToMany在匹配到后立即处理 <br/>
  *
  * @param <E> 源集合的元素类型
  * @param <I> 源集合元素生成标识的类型
@@ -69,42 +71,32 @@ import java.util.stream.Stream;
 @NotThreadSafe
 public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
 
-    /**
-     * 默认缓存的集合数量为16
-     */
-    private static final int DEFAULT_CACHE_COLLECTION_COUNT = 16;
-
-    /**
-     * 默认每个集合缓存的元素数量为128
-     */
-    private static final int DEFAULT_CACHE_IDENTIFIER_COUNT_PER_COLLECTION = 128;
+    private static final BinaryOperator<?> DEFAULT_MAP_MERGE_FUNCTION = (x, y) -> y;
 
     /**
-     * 线程池产生的现成命名规则为orm-parallel-query-pool-现成的tid
+     * 按照延迟分位对冲时 至少需要20个历史样本
      */
-    private static final String EXECUTOR_THREAD_NAME_FORMAT = "orm-parallel-query-pool-%d";
+    private static final int MIN_HEDGE_LATENCY_SAMPLES = 20;
 
     /**
-     * 线程池并发的数量默认为CPU逻辑处理器数量（同FJP） 这样不太适合Intel-HT的CPU
+     * 跨匹配器实例的查询合并器 按照缓存名称+标识合并进行中的查询
      */
-    private static final int EXECUTOR_PARALLEL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final QueryCoalescer QUERY_COALESCER = new QueryCoalescer();
 
     /**
-     * 线程池队列长度默认为1024
+     * 默认的通用缓存(name, identifier) -> data 没有单独设置缓存的匹配器都使用这个缓存
      */
-    private static final int EXECUTOR_QUEUE_SIZE = 1024;
-
-    private static final BinaryOperator<?> DEFAULT_MAP_MERGE_FUNCTION = (x, y) -> y;
+    private static volatile MatcherCache defaultCache;
 
     /**
-     * 通用缓存(name, identifier) -> data
+     * 默认的指标采集 没有单独设置指标采集的匹配器都使用这个 默认不采集
      */
-    private static Table<String, Object, Object> cache;
+    private static volatile MatcherMetrics defaultMetrics = MatcherMetrics.NOOP;
 
     /**
-     * 并发查询的线程池
+     * 延迟任务的调度器 只负责计时 到期后的任务会交给线程池执行
      */
-    private static ListeningExecutorService parallelQueryPool;
+    private static ScheduledExecutorService scheduler;
 
     /**
      * 源集合
@@ -121,6 +113,11 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
      */
     private Function<E, I> elementIdentifierExtractor;
 
+    /**
+     * 提取long类型元素标识符的方法 标识和唯一键都是long时不装箱匹配
+     */
+    private ToLongFunction<E> longIdentifierExtractor;
+
     /**
      * 提取元素标识符的方法，用于多对多
      */
@@ -132,31 +129,75 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
     private Collector<I, ?, C> identifierCollector;
 
     /**
-     * 批量查询新集合所有元素的方法 通常用于字典类数据的查询 一次性查出所有的数据
+     * 批量查询新集合所有元素的方法 通常用于字典类数据的查询 一次性查出所有的数据 <br/>
+     * 每次匹配都会调用 如果字典数据不经常变化 可以使用dictionary
      */
     private Supplier<? extends Collection<D>> batchQueryAllMethod;
 
+    /**
+     * 托管的字典数据 全量数据只加载一次并建立索引 之后直接从索引中查找 过期后在后台刷新 不阻塞匹配
+     */
+    private ManagedDictionary<D, K> dictionary;
+
     /**
      * 批量查询新集合的方法 如果有批量的查询方法 优先使用批量查询
      */
     private Function<C, ? extends Collection<D>> batchQueryMethod;
 
+    /**
+     * 共享的微批量加载器 设置后不再直接调用批量查询方法 而是把标识提交给加载器 由加载器合并多个匹配器的标识后批量查询 <br/>
+     * 适用于大量小请求各自只查询少量标识的场景
+     */
+    private BatchLoader<I, ?, D, K> batchLoader;
+
     /**
      * 批量查询最多可查的数据条数 某些接口会对数量做限制 可以使用这个参数实现分批查询
      */
     private int maxBatchQuerySize;
 
+    /**
+     * 自适应的批量大小 设置后按照观察到的每批耗时和失败情况调整每批的标识数量 不再使用固定的maxBatchQuerySize
+     */
+    private AdaptiveBatchSizer adaptiveBatchSizer;
+
     /**
      * 单个查询的方法 如果没有批量查询方法（对方没有这种接口）可以使用这个参数
      * 如果和batchQueryMethod同时存在 如果查询标识的数量为1会优先使用这个方法
      */
     private Function<I, D> singleQueryMethod;
 
+    /**
+     * 异步批量查询新集合的方法 用于matchAsync时不占用线程等待远程调用 和batchQueryMethod二选一
+     */
+    private Function<C, ? extends CompletionStage<? extends Collection<D>>> asyncBatchQueryMethod;
+
+    /**
+     * 异步单个查询的方法 用于matchAsync时不占用线程等待远程调用 和singleQueryMethod二选一
+     */
+    private Function<I, ? extends CompletionStage<D>> asyncSingleQueryMethod;
+
     /**
      * 是否需要并发调用查询方法 默认为true 如果某些接口有QPS的限流可以将这个值设置为false进行串行查询
      */
     private boolean parallelExecuteQuery = true;
 
+    /**
+     * 当前匹配器单独使用的查询线程池 优先级最高 <br/>
+     * 没有设置时依次使用 按缓存名称注册的线程池 -> 虚拟线程（需开启useVirtualThreads并运行在JDK21及以上） -> 默认的并发查询线程池
+     */
+    private Executor queryExecutor;
+
+    /**
+     * 是否使用虚拟线程执行查询 默认为false 运行时不支持虚拟线程时会退回默认的并发查询线程池
+     */
+    private boolean useVirtualThreads;
+
+    /**
+     * 当前匹配器单独使用的限流器 为null时使用按照缓存名称注册的限流器 都没有则不限流 <br/>
+     * 下游有QPS或并发限制时 使用限流器可以在限制范围内尽可能并发查询 而不需要设置parallelExecuteQuery=false串行查询
+     */
+    private QueryLimiter queryLimiter;
+
     /**
      * 如果查询异常 需要重试的次数 默认为0（不重试）
      */
@@ -167,6 +208,33 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
      */
     private long queryExceptionRetryInterval;
 
+    /**
+     * 重试等待间隔的增长倍数 默认为1（固定间隔） 大于1时为指数退避 第n次重试的间隔为 interval * multiplier^(n-1)
+     */
+    private double queryExceptionRetryBackoffMultiplier = 1;
+
+    /**
+     * 重试等待间隔的上限 默认为0（不限制）
+     */
+    private long queryExceptionRetryMaxInterval;
+
+    /**
+     * 重试等待间隔的随机抖动比例 取值[0, 1] 默认为0（不抖动） 例如0.2表示在间隔的±20%内随机 避免大量请求同时重试
+     */
+    private double queryExceptionRetryJitter;
+
+    /**
+     * 对冲请求的固定等待时间（毫秒） 默认为0（不对冲） <br/>
+     * 一批查询超过这个时间还没有返回时 会再发起一次相同的查询 取先返回的结果
+     */
+    private long hedgeDelay;
+
+    /**
+     * 对冲请求的延迟分位 取值(0, 1] 默认为0（不使用） 例如0.95表示一批查询超过了同缓存名称下历史查询耗时的p95时发起对冲 <br/>
+     * 需要设置缓存名称 历史样本不足时不对冲 同时设置了hedgeDelay时优先使用hedgeDelay
+     */
+    private double hedgeLatencyPercentile;
+
     /**
      * 查询出来的新集合需要过滤元素的方法 某些场景下 查询接口无法做到最细粒度的查询（比如无法排除"已失效"的） 则用这个参数自己进行过滤
      */
@@ -177,6 +245,11 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
      */
     private Function<D, K> dataKeyGenerator;
 
+    /**
+     * 新集合的元素生成long类型唯一键的方法
+     */
+    private ToLongFunction<D> longDataKeyGenerator;
+
     /**
      * 源集合的元素映射到新集合唯一键的方法
      */
@@ -187,6 +260,11 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
      */
     private Function<E, Collection<K>> elementToKeysMapping;
 
+    /**
+     * 标识映射到新集合唯一键的方法 多对多使用缓存时用于按照标识缓存数据 使用字典时用于按照标识查找数据 默认标识就是唯一键
+     */
+    private Function<I, K> identifierToKeyMapping;
+
     /**
      * 源集合的元素映射到新集合所有键 只能用于笛卡尔积场景或配合扁平处理
      */
@@ -217,6 +295,53 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
      */
     private String cacheKeyName;
 
+    /**
+     * 当前匹配器使用的缓存 为null时使用默认的通用缓存
+     */
+    private MatcherCache cache;
+
+    /**
+     * 查询的超时时间（毫秒） 从匹配开始计算 默认为0（不超时） <br/>
+     * 超时后会取消未完成的查询 同步的查询方法只能取消尚未开始执行的
+     */
+    private long queryTimeout;
+
+    /**
+     * 查询超时后是否使用已完成的部分结果进行匹配 默认为false（匹配以超时异常结束） <br/>
+     * 为true时未查询到的元素视为未匹配 会交给unmatchedProcessor处理
+     */
+    private boolean partialResultOnTimeout;
+
+    /**
+     * 是否合并并发的相同查询 默认为false（不合并） <br/>
+     * 开启后按照 缓存名称+标识 合并所有匹配器实例中正在查询的标识 已在查询中的标识不会重复查询 而是等待进行中的查询结果
+     */
+    private boolean coalesceQuery;
+
+    /**
+     * 是否流式匹配 默认为false（所有查询结果合并成一个集合后再匹配） <br/>
+     * 开启后每一批查询结果返回时立即按照key建立索引 不再合并成一个大集合 每一批的结果建立索引后即可被回收 <br/>
+     * 建立索引可以和等待其他批次的查询同时进行 适用于查询结果很多的场景
+     */
+    private boolean streamingMatch;
+
+    /**
+     * 流式匹配时 一对一关系匹配到后立即调用的处理器 <br/>
+     * 命中缓存的元素在查询之前调用 其他元素在对应的批次返回后调用 同一次匹配中不会并发调用
+     */
+    private BiConsumer<E, D> streamingOneToOneProcessor;
+
+    /**
+     * 流式匹配时 一对多关系匹配到后立即调用的处理器 <br/>
+     * 要求同一个key的数据只会出现在一批查询结果中（key和标识一一对应时总是满足） 同一次匹配中不会并发调用
+     */
+    private BiConsumer<E, List<D>> streamingOneToManyProcessor;
+
+    /**
+     * 流式匹配时 未匹配到关系的元素的处理器 所有查询结束后调用
+     */
+    private Consumer<E> streamingUnmatchedProcessor;
+
     /**
      * 匹配后是否需要立即清理缓存 默认为false（不清理 需要自己手动清）
      */
@@ -227,6 +352,11 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
      */
     private ObjectRelationMatcherEvent<E, I, C, D, K> eventListener;
 
+    /**
+     * 当前匹配器的指标采集 为null时使用默认的指标采集 指标按照缓存名称区分
+     */
+    private MatcherMetrics metrics;
+
     /**
      * 是否已完成匹配
      */
@@ -247,20 +377,16 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
      */
     private Map<E, List<D>> manyToManyMap;
 
+    /**
+     * 最近一次匹配各阶段的耗时
+     */
+    private MatchProfile matchProfile;
+
     // 初始化缓存和线程池
     static {
-        cache = HashBasedTable.create(DEFAULT_CACHE_COLLECTION_COUNT, DEFAULT_CACHE_IDENTIFIER_COUNT_PER_COLLECTION);
+        defaultCache = new LocalMatcherCache();
 
-        ExecutorService originalPool = new ThreadPoolExecutor(
-                EXECUTOR_PARALLEL_SIZE,
-                EXECUTOR_PARALLEL_SIZE,
-                0L,
-                TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(EXECUTOR_QUEUE_SIZE),
-                new ThreadFactoryBuilder().setNameFormat(EXECUTOR_THREAD_NAME_FORMAT).build(),
-                new ThreadPoolExecutor.CallerRunsPolicy());
-
-        parallelQueryPool = MoreExecutors.listeningDecorator(originalPool);
+        scheduler = QueryExecutors.scheduler();
     }
 
     public ObjectRelationMatcher() {
@@ -270,8 +396,28 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
     /**
      * 校验参数设置是否有问题
      */
+    @SuppressWarnings("unchecked")
     private void validate() {
         Objects.requireNonNull(elements, "源集合不能为空");
+
+        // long类型的标识和唯一键 装箱后作为通用的提取器 不能和用户设置的通用提取器同时存在
+        if (longIdentifierExtractor != null) {
+            if (elementIdentifierExtractor != null && !(elementIdentifierExtractor instanceof BoxedLongFunction)) {
+                throw new RuntimeException("标识符提取器和long类型的标识符提取器只能指定一个");
+            }
+            if (elementToKeyMapping != null && !(elementToKeyMapping instanceof BoxedLongFunction)) {
+                throw new RuntimeException("指定了long类型的标识符提取器时标识就是唯一键 不能再指定源集合到唯一键的映射关系");
+            }
+            BoxedLongFunction<E, ?> boxed = new BoxedLongFunction<>(longIdentifierExtractor);
+            elementIdentifierExtractor = (Function<E, I>) boxed;
+            elementToKeyMapping = (Function<E, K>) boxed;
+        }
+        if (longDataKeyGenerator != null) {
+            if (dataKeyGenerator != null && !(dataKeyGenerator instanceof BoxedLongFunction)) {
+                throw new RuntimeException("新集合唯一键生成器和long类型的新集合唯一键生成器只能指定一个");
+            }
+            dataKeyGenerator = (Function<D, K>) new BoxedLongFunction<>(longDataKeyGenerator);
+        }
         if (manyToMany) {
             Objects.requireNonNull(elementIdentifiersExtractor, "标识符集合提取器不能为空");
         } else {
@@ -279,13 +425,27 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         }
 
         // 只有设置了批量查询方法时才需要指定collector（要保持和批量查询方法的参数一致）
-        if (batchQueryMethod != null || batchQueryAllMethod != null) {
+        if (batchQueryMethod != null || asyncBatchQueryMethod != null || batchQueryAllMethod != null) {
             Objects.requireNonNull(identifierCollector, "批量查询模式下标识聚合器不能为空");
+        } else if (batchLoader != null || dictionary != null) {
+            // 加载器和字典不需要聚合器 这里只用于收集待查询的标识
+            if (identifierCollector == null) {
+                setIdentifierCollectorType(List.class);
+            }
         } else {
             // 没有批量查询的方法按照单个查询方法来
             setIdentifierCollectorType(List.class);
 
-            Objects.requireNonNull(singleQueryMethod, "批量查询方法和单个查询方法至少要指定一个");
+            if (singleQueryMethod == null && asyncSingleQueryMethod == null) {
+                throw new NullPointerException("批量查询方法和单个查询方法至少要指定一个");
+            }
+        }
+
+        if (batchQueryMethod != null && asyncBatchQueryMethod != null) {
+            throw new RuntimeException("批量查询方法和异步批量查询方法只能指定一个");
+        }
+        if (singleQueryMethod != null && asyncSingleQueryMethod != null) {
+            throw new RuntimeException("单个查询方法和异步单个查询方法只能指定一个");
         }
 
         // 重试配置修正
@@ -295,7 +455,26 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         if (queryExceptionRetryInterval < 0) {
             queryExceptionRetryInterval = 0;
         }
+        if (queryExceptionRetryBackoffMultiplier < 1) {
+            queryExceptionRetryBackoffMultiplier = 1;
+        }
+        if (queryExceptionRetryJitter < 0) {
+            queryExceptionRetryJitter = 0;
+        } else if (queryExceptionRetryJitter > 1) {
+            queryExceptionRetryJitter = 1;
+        }
+
+        if (hedgeLatencyPercentile < 0 || hedgeLatencyPercentile > 1) {
+            throw new RuntimeException("对冲请求的延迟分位只能在(0, 1]之间");
+        }
+        if (hedgeLatencyPercentile > 0 && hedgeDelay <= 0) {
+            Objects.requireNonNull(cacheKeyName, "按照延迟分位对冲的情况下缓存名称不能为空");
+        }
 
+        // 使用字典时默认和字典的key一致
+        if (dataKeyGenerator == null && dictionary != null) {
+            dataKeyGenerator = dictionary.getKeyGenerator();
+        }
         Objects.requireNonNull(dataKeyGenerator, "新集合唯一键生成器不能为空");
 
         if (manyToMany) {
@@ -305,13 +484,39 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         } else {
             Objects.requireNonNull(elementToKeyMapping, "源集合到唯一键的映射关系不能为空");
         }
+        // 没有设置时标识就是唯一键
+        if (identifierToKeyMapping == null) {
+            identifierToKeyMapping = identifier -> (K) identifier;
+        }
 
         if (useCache) {
-            if (manyToMany) {
-                throw new RuntimeException("多对多的情况下不能使用缓存");
+            if (manyToMany && elementToAllKeys) {
+                throw new RuntimeException("多对多全量笛卡尔积的情况下不能使用缓存");
             }
             Objects.requireNonNull(cacheKeyName, "使用缓存的情况下缓存名称不能为空");
         }
+
+        if (coalesceQuery) {
+            Objects.requireNonNull(cacheKeyName, "合并查询的情况下缓存名称不能为空");
+        }
+
+        // 设置了流式处理器时自动开启流式匹配
+        if (streamingOneToOneProcessor != null || streamingOneToManyProcessor != null) {
+            if (streamingOneToOneProcessor != null && (oneToMany || manyToMany)) {
+                throw new RuntimeException("一对多和多对多关系不能使用一对一的流式处理器");
+            }
+            if (streamingOneToManyProcessor != null && (!oneToMany || manyToMany)) {
+                throw new RuntimeException("只有一对多关系可以使用一对多的流式处理器");
+            }
+            if (elementToAllKeys) {
+                throw new RuntimeException("全量笛卡尔积的情况下不能使用流式处理器");
+            }
+            streamingMatch = true;
+        }
+        if (streamingMatch && coalesceQuery) {
+            // 合并查询时其他匹配器需要完整的查询结果
+            throw new RuntimeException("合并查询的情况下不能使用流式匹配");
+        }
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
@@ -327,12 +532,42 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
     }
 
     /**
-     * 关系匹配
+     * 关系匹配 会阻塞当前线程直到查询和匹配完成 <br/>
+     * 查询可能在线程池中执行 但组装匹配结果（数据唯一键的生成、未匹配的处理器、回写缓存等）总是在当前线程中执行
      * @return 当前对象本身
      */
     public ObjectRelationMatcher<E, I, C, D, K> match() {
+        CallerThreadExecutor callerThreadExecutor = new CallerThreadExecutor();
+        try {
+            return callerThreadExecutor.await(doMatch(false, callerThreadExecutor));
+        } catch (CompletionException e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    /**
+     * 异步关系匹配 查询不会阻塞当前线程 <br/>
+     * 同步的查询方法会被提交到线程池中执行 异步的查询方法（asyncBatchQueryMethod/asyncSingleQueryMethod）直接组合其返回的future <br/>
+     * 参数校验不通过时会直接抛出异常 查询失败（超过重试次数）时返回的future会以异常结束
+     * @return 匹配完成后的当前对象本身
+     */
+    public CompletableFuture<ObjectRelationMatcher<E, I, C, D, K>> matchAsync() {
+        return doMatch(true, null);
+    }
+
+    /**
+     * 关系匹配的具体实现
+     * @param async 是否为异步匹配 异步匹配时同步的查询方法总是提交到线程池中执行
+     * @param callerThreadExecutor 同步匹配时等待中的调用方线程 异步匹配时为null
+     * @return 匹配完成后的当前对象本身
+     */
+    private CompletableFuture<ObjectRelationMatcher<E, I, C, D, K>> doMatch(boolean async, Executor callerThreadExecutor) {
+        long startTime = System.nanoTime();
+
         validate();
 
+        MatchContext context = new MatchContext(async, callerThreadExecutor);
+
         // 源集合的元素和新集合的元素对应关系（一对一）
         Map<E, D> elementDataMap;
 
@@ -353,53 +588,103 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
             elementDataListMap = null;
         }
 
+        // 标识和唯一键都是long时 不装箱匹配
+        if (isLongKeyed()) {
+            return recordMatchFailure(doLongKeyedMatch(context, startTime, elementDataMap, elementDataListMap), context, startTime);
+        }
+
+        // 缓存可能有远程的二级缓存 查找缓存是阻塞的远程调用 异步匹配时从查找缓存开始都放到线程池中执行 不阻塞调用方线程
+        if (useCache && async) {
+            return recordMatchFailure(CompletableFuture.supplyAsync(() -> doGeneralMatch(context, startTime, elementDataMap, elementDataListMap), currentExecutor())
+                                                       .thenCompose(Function.identity()), context, startTime);
+        }
+        return recordMatchFailure(doGeneralMatch(context, startTime, elementDataMap, elementDataListMap), context, startTime);
+    }
+
+    /**
+     * 通用的匹配 先查找缓存 再查询未命中的标识 最后组装匹配结果
+     * @param context 本次匹配的上下文
+     * @param startTime 匹配开始的时间
+     * @param elementDataMap 源集合的元素和新集合的元素对应关系（一对一）
+     * @param elementDataListMap 源集合的元素和新集合的元素对应关系（一对多、多对多）
+     * @return 匹配完成后的当前对象本身
+     */
+    private CompletableFuture<ObjectRelationMatcher<E, I, C, D, K>> doGeneralMatch(MatchContext context, long startTime, Map<E, D> elementDataMap, Map<E, List<D>> elementDataListMap) {
         // 过滤后的源集合
         Stream<E> elementStream = filteredElementStream();
 
         // 待查询的标识集合
         Stream<I> identifierStream;
 
+        // 多对多时命中缓存的 标识 -> 数据列表 匹配前和查询出来的数据合并
+        Map<Object, Object> cachedDataListMap;
+
         // 如果使用缓存 先从缓存里找 这个方法体为了填充已命中的关系映射和待查询列表
         if (useCache) {
             // 没命中缓存的标识
             List<I> identifierList = new ArrayList<>(elements.size());
             if (manyToMany) {
-                // 多对多
+                // 多对多 按照每个标识缓存 先批量从缓存中取出所有标识对应的数据
+                Set<I> identifierSet = new LinkedHashSet<>();
                 elementStream.forEach(element -> {
                     Collection<I> identifiers = elementIdentifiersExtractor.apply(element);
                     if (CollectionUtils.isNotEmpty(identifiers)) {
-                        // 多对多没有缓存
-                        identifierList.addAll(identifiers);
+                        identifierSet.addAll(identifiers);
                     }
                 });
-            } else if (oneToMany) {
-                // 一对多
-                elementStream.forEach(element -> {
-                    I identifier = elementIdentifierExtractor.apply(element);
-                    List<D> list = getDataListFormCache(identifier);
-                    // 如果命中缓存了不为null 并且 不是空集合 或空集合算匹配成功
+                Map<Object, Object> cachedMap = currentCache().getAll(cacheKeyName, identifierSet.stream()
+                                                                                                 .filter(Objects::nonNull)
+                                                                                                 .collect(Collectors.toList()));
+                cachedDataListMap = new HashMap<>(cachedMap.size(), 1);
+                for (I identifier : identifierSet) {
+                    List<D> list = getDataListFormCache(cachedMap, identifier);
+                    // 命中缓存了不为null 并且 不是空集合 或空集合算匹配成功
                     if (list != null && (!list.isEmpty() || !emptyAsUnmatched)) {
-                        elementDataListMap.put(element, list);
+                        cachedDataListMap.put(identifier, list);
                     } else {
-                        // 如果没找到 或者是找到了但是配置了emptyAsUnmatched=true 都认为是没找到
                         identifierList.add(identifier);
                     }
-                });
+                }
+                currentMetrics().recordCacheAccess(cacheKeyName, cachedDataListMap.size(), identifierList.size());
             } else {
-                // 一对一
-                elementStream.forEach(element -> {
-                    I identifier = elementIdentifierExtractor.apply(element);
-                    D data = getDataFromCache(identifier);
-                    // 非空表示命中缓存 命中了则加入关系映射中 未命中则加入待查询列表中
-                    if (data != null) {
-                        elementDataMap.put(element, data);
+                cachedDataListMap = null;
+                // 先批量从缓存中取出所有标识对应的数据 避免逐个访问缓存
+                List<E> filteredElements = elementStream.collect(Collectors.toList());
+                List<I> filteredIdentifiers = filteredElements.stream()
+                                                              .map(elementIdentifierExtractor)
+                                                              .collect(Collectors.toList());
+                Map<Object, Object> cachedMap = currentCache().getAll(cacheKeyName, filteredIdentifiers.stream()
+                                                                                                       .filter(Objects::nonNull)
+                                                                                                       .collect(Collectors.toSet()));
+                for (int i = 0; i < filteredElements.size(); i++) {
+                    E element = filteredElements.get(i);
+                    I identifier = filteredIdentifiers.get(i);
+                    if (oneToMany) {
+                        // 一对多
+                        List<D> list = getDataListFormCache(cachedMap, identifier);
+                        // 如果命中缓存了不为null 并且 不是空集合 或空集合算匹配成功
+                        if (list != null && (!list.isEmpty() || !emptyAsUnmatched)) {
+                            elementDataListMap.put(element, list);
+                        } else {
+                            // 如果没找到 或者是找到了但是配置了emptyAsUnmatched=true 都认为是没找到
+                            identifierList.add(identifier);
+                        }
                     } else {
-                        identifierList.add(identifier);
+                        // 一对一
+                        D data = getDataFromCache(cachedMap, identifier);
+                        // 非空表示命中缓存 命中了则加入关系映射中 未命中则加入待查询列表中
+                        if (data != null) {
+                            elementDataMap.put(element, data);
+                        } else {
+                            identifierList.add(identifier);
+                        }
                     }
-                });
+                }
+                currentMetrics().recordCacheAccess(cacheKeyName, filteredElements.size() - identifierList.size(), identifierList.size());
             }
             identifierStream = identifierList.stream();
         } else {
+            cachedDataListMap = null;
             // 不使用缓存的话 直接提取所有标识符
             if (manyToMany) {
                 // 多对多
@@ -410,168 +695,248 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
             }
         }
 
-        // 待查询的标识符集合
-        C identifierCollection = identifierStream.collect(identifierCollector);
+        // 待查询的标识符集合 多个元素可能有相同的标识 去重后不会重复查询
+        C identifierCollection = identifierStream.distinct().collect(identifierCollector);
+
+        // 流式匹配时先建立空的索引 每一批查询结果返回后加入索引
+        if (streamingMatch) {
+            context.dataIndex = new DataIndex(elementDataMap, elementDataListMap, cachedDataListMap);
+        }
+
+        long queryStartTime = System.nanoTime();
+        context.queryStartTime = queryStartTime;
 
         // 如果有待查询的标识符 说明没走缓存或缓存中有未命中的数据
+        CompletableFuture<Collection<D>> queryFuture;
         if (!identifierCollection.isEmpty()) {
-            Collection<D> dataCollection = null;
-
-            int retryCount = 0;
-            Exception lastException = null;
+            // 全量查询和笛卡尔积的结果与标识无关 不能合并 字典不需要合并
+            if (coalesceQuery && batchQueryAllMethod == null && dictionary == null && !elementToAllKeys) {
+                queryFuture = coalescedQuery(identifierCollection, context);
+            } else {
+                queryFuture = query(identifierCollection, context);
+            }
+            queryFuture = withQueryTimeout(queryFuture, context, startTime, queryStartTime);
+        } else {
+            queryFuture = CompletableFuture.completedFuture(null);
+        }
 
-            do {
-                try {
-                    // 如果需要查询的数据只有一个 并且配置了单个查询的方法 优先查单个的方法
-                    if (identifierCollection.size() == 1 && singleQueryMethod != null) {
-                        D data = singleQueryMethod.apply(identifierCollection.iterator().next());
-                        dataCollection = Optional.ofNullable(data)
-                                                 .map(Collections::singletonList)
-                                                 .orElse(Collections.emptyList());
-                    } else {
-                        // 如果需要查询多个 那么看是否配置了批量查询方法 如果配置了则优先使用批量查询方法
-                        if (batchQueryAllMethod != null) {
-                            dataCollection = batchQueryAllMethod.get();
-                        } else if (batchQueryMethod != null) {
-                            // 如果没有配置批量最大可查条数 直接调用批量查询方法
-                            if (maxBatchQuerySize <= 0) {
-                                dataCollection = batchQueryMethod.apply(identifierCollection);
-                            } else {
-                                // 如果接口有限制最大查询数量 则分批查
-                                // 按照分页来分批 之所以不用guava的是因为guava的只能拆为List<List<?>> 但是我们的collector是自定义的
-                                int pages = (identifierCollection.size() + maxBatchQuerySize - 1) / maxBatchQuerySize;
-                                List<C> identifierListBatches = Stream.iterate(0, x -> x + 1)
-                                                                      .limit(pages)
-                                                                      .map(x -> identifierCollection.stream()
-                                                                                                    .skip((long) x * maxBatchQuerySize)
-                                                                                                    .limit(maxBatchQuerySize)
-                                                                                                    .collect(identifierCollector))
-                                                                      .collect(Collectors.toList());
-                                // 如果配置了并发查询 则用线程池来调用 否则使用串行查询
-                                if (parallelExecuteQuery) {
-                                    List<ListenableFuture<? extends Collection<D>>> futures = identifierListBatches.stream()
-                                                                                                                   .map(x -> parallelQueryPool.submit(() -> batchQueryMethod.apply(x)))
-                                                                                                                   .collect(Collectors.toList());
-                                    dataCollection = Futures.allAsList(futures)
-                                                            .get()
-                                                            .stream()
-                                                            .flatMap(Collection::stream)
-                                                            .collect(Collectors.toList());
-                                } else {
-                                    // 只有显式设置了parallelExecuteQuery=false 才会串行查询
-                                    dataCollection = identifierListBatches.stream()
-                                                                          .map(batchQueryMethod)
-                                                                          .flatMap(Collection::stream)
-                                                                          .collect(Collectors.toList());
-                                }
-                            }
-                        } else if (singleQueryMethod != null) {
-                            // 如果配置了并发查询 则用线程池来调用 否则使用串行查询
-                            if (parallelExecuteQuery) {
-                                List<ListenableFuture<D>> futures = identifierCollection.stream()
-                                                                                        .map(x -> parallelQueryPool.submit(() -> singleQueryMethod.apply(x)))
-                                                                                        .collect(Collectors.toList());
-                                dataCollection = Futures.allAsList(futures).get();
-                            } else {
-                                dataCollection = identifierCollection.stream()
-                                                                     .map(singleQueryMethod)
-                                                                     .collect(Collectors.toList());
-                            }
-                        }
-                    }
-                    if (eventListener != null) {
-                        eventListener.onQuerySuccess(identifierCollection, retryCount, dataCollection);
-                    }
-                    // 上面没有异常的话 说明已经成功了 则结束掉循环
-                    break;
-                } catch (Exception e) {
-                    lastException = e;
-                    if (eventListener != null) {
-                        eventListener.onQueryException(identifierCollection, retryCount, e);
-                    }
-                    // 休眠再重试
-                    try {
-                        Thread.sleep(queryExceptionRetryInterval);
-                    } catch (InterruptedException ignored) {
-                    }
+        return thenAssemble(queryFuture, context, dataCollection -> {
+            long assembleStartTime = System.nanoTime();
+            boolean timedOut = dataCollection != null && dataCollection == context.partialResult;
+
+            if (context.dataIndex != null) {
+                // 流式匹配时查询结果已经加入了索引
+                context.dataIndex.finish();
+            } else if (CollectionUtils.isNotEmpty(dataCollection) || MapUtils.isNotEmpty(cachedDataListMap)) {
+                // 返回的数据不是空才处理 因为空的话没有处理的必要 这里认为方法（主要是批量方法）返回的empty是没查到
+                DataIndex dataIndex = new DataIndex(elementDataMap, elementDataListMap, cachedDataListMap);
+                if (dataCollection != null) {
+                    dataIndex.accept(dataCollection);
                 }
-            } while (++retryCount <= queryExceptionRetryTimes);
-
-            // 超过重试次数 说明每次执行都异常没有走到break
-            if (retryCount > queryExceptionRetryTimes) {
-                throw new RuntimeException("query for" + identifierCollection + "failure", lastException);
+                dataIndex.finish();
             }
 
-            // 返回的数据不是空才处理 因为空的话没有处理的必要 这里认为方法（主要是批量方法）返回的empty是没查到
-            if (CollectionUtils.isNotEmpty(dataCollection)) {
-                Stream<D> dataStream = dataCollection.stream();
-                // 过滤新集合
-                if (dataFilter != null) {
-                    dataStream = dataStream.filter(dataFilter);
+            return completeMatch(context, elementDataMap, elementDataListMap, startTime, queryStartTime, assembleStartTime, timedOut);
+        });
+    }
+
+    /**
+     * 查询结束后组装匹配结果 <br/>
+     * 同步匹配时交给等待中的调用方线程执行 和查询在同一个线程中完成时一样 数据唯一键的生成、未匹配的处理器、回写缓存等都在调用方的上下文中执行 <br/>
+     * 异步匹配时在结束查询的线程中执行
+     * @param queryFuture 查询结果
+     * @param context 本次匹配的上下文
+     * @param assembler 组装匹配结果的方法
+     * @return 匹配完成后的当前对象本身
+     */
+    private CompletableFuture<ObjectRelationMatcher<E, I, C, D, K>> thenAssemble(CompletableFuture<Collection<D>> queryFuture, MatchContext context,
+                                                                              Function<Collection<D>, ObjectRelationMatcher<E, I, C, D, K>> assembler) {
+        if (context.callerThreadExecutor != null) {
+            return queryFuture.thenApplyAsync(assembler, context.callerThreadExecutor);
+        }
+        return queryFuture.thenApply(assembler);
+    }
+
+    /**
+     * 标识和唯一键都是long时是否可以不装箱匹配 <br/>
+     * 只支持一对一和一对多的批量查询 缓存、流式匹配、合并查询等需要装箱后的标识 仍然走通用的匹配
+     * @return 是否可以不装箱匹配
+     */
+    private boolean isLongKeyed() {
+        return longIdentifierExtractor != null && longDataKeyGenerator != null
+                && !manyToMany && !useCache && !streamingMatch && !coalesceQuery
+                && dictionary == null && batchLoader == null && batchQueryAllMethod == null
+                && (batchQueryMethod != null || asyncBatchQueryMethod != null);
+    }
+
+    /**
+     * 标识和唯一键都是long时的匹配 <br/>
+     * 标识保存在long数组中排序去重 分批后才装箱为查询方法的参数 查询结果按照long唯一键建立索引
+     * @param context 本次匹配的上下文
+     * @param startTime 匹配开始的时间
+     * @param elementDataMap 源集合的元素和新集合的元素对应关系（一对一）
+     * @param elementDataListMap 源集合的元素和新集合的元素对应关系（一对多）
+     * @return 匹配完成后的当前对象本身
+     */
+    private CompletableFuture<ObjectRelationMatcher<E, I, C, D, K>> doLongKeyedMatch(MatchContext context, long startTime,
+                                                                                  Map<E, D> elementDataMap, Map<E, List<D>> elementDataListMap) {
+        // 过滤后的源集合 和每个元素的标识下标一一对应
+        List<E> filteredElements = filteredElementStream().collect(Collectors.toList());
+        long[] elementIdentifiers = new long[filteredElements.size()];
+        for (int i = 0; i < elementIdentifiers.length; i++) {
+            elementIdentifiers[i] = longIdentifierExtractor.applyAsLong(filteredElements.get(i));
+        }
+
+        // 待查询的标识 排序后去重 所以查询参数是按照标识从小到大的顺序
+        long[] identifiers = sortedDistinct(elementIdentifiers);
+
+        long queryStartTime = System.nanoTime();
+        context.queryStartTime = queryStartTime;
+
+        CompletableFuture<Collection<D>> queryFuture;
+        if (identifiers.length > 0) {
+            int batchSize = adaptiveBatchSizer != null ? adaptiveBatchSizer.current() : maxBatchQuerySize;
+            if (batchSize <= 0 || identifiers.length <= batchSize) {
+                // 不需要分批 和通用的查询一致（包括只有一个标识时优先使用单个查询的方法）
+                queryFuture = query(boxIdentifiers(identifiers, 0, identifiers.length), context);
+            } else {
+                List<C> batches = new ArrayList<>((identifiers.length + batchSize - 1) / batchSize);
+                for (int from = 0; from < identifiers.length; from += batchSize) {
+                    batches.add(boxIdentifiers(identifiers, from, Math.min(from + batchSize, identifiers.length)));
                 }
+                queryFuture = queryBatches(batches, batchSize, context);
+            }
+            queryFuture = withQueryTimeout(queryFuture, context, startTime, queryStartTime);
+        } else {
+            queryFuture = CompletableFuture.completedFuture(null);
+        }
 
-                // 过滤源集合 因为只根据过滤后的内容进行了查询
-                elementStream = filteredElementStream();
+        return thenAssemble(queryFuture, context, dataCollection -> {
+            long assembleStartTime = System.nanoTime();
+            boolean timedOut = dataCollection != null && dataCollection == context.partialResult;
 
-                if (manyToMany) {
-                    // 多对多
-                    if (elementToAllKeys) {
-                        // 全量笛卡尔积
-                        List<D> dataList = dataStream.collect(Collectors.toList());
-                        elementStream.forEach(element -> elementDataListMap.put(element, dataList));
-                    } else {
-                        // 按照key分组
-                        Map<K, List<D>> keyDataListMap = dataStream.filter(Objects::nonNull)
-                                                                   .collect(Collectors.groupingBy(dataKeyGenerator));
-                        elementStream.forEach(element -> {
-                                         // keys 1 2 3
-                                         Collection<K> collection = elementToKeysMapping.apply(element);
-                                         for (K key : collection) {
-                                             List<D> list = keyDataListMap.get(key);
-                                             if (list != null) {
-                                                 elementDataListMap.computeIfAbsent(element, k -> new ArrayList<>()).addAll(list);
-                                             }
-                                         }
-                                     });
-                    }
-                } else if (oneToMany) {
+            if (CollectionUtils.isNotEmpty(dataCollection)) {
+                if (oneToMany) {
                     // 一对多
-                    if (elementToAllKeys) {
-                        // 全量笛卡尔积 不走缓存
-                        List<D> dataList = dataStream.collect(Collectors.toList());
-                        elementStream.forEach(element -> elementDataListMap.put(element, dataList));
-                    } else {
-                        // 过滤缓存中已存在的
-                        // 按照key分组
-                        Map<K, List<D>> keyDataListMap = dataStream.filter(Objects::nonNull)
-                                                                   .collect(Collectors.groupingBy(dataKeyGenerator));
-                        elementStream.filter(element -> !elementDataListMap.containsKey(element))
-                                     .forEach(element -> {
-                                         K key = elementToKeyMapping.apply(element);
-                                         List<D> list = keyDataListMap.get(key);
-                                         elementDataListMap.put(element, list);
-                                         if (useCache && list != null && (!list.isEmpty() || !emptyAsUnmatched)) {
-                                             putListToCache(elementIdentifierExtractor.apply(element), list);
-                                         }
-                                     });
+                    LongObjectHashMap<List<D>> keyDataListMap = new LongObjectHashMap<>(identifiers.length);
+                    for (D data : dataCollection) {
+                        if (data == null || (dataFilter != null && !dataFilter.test(data))) {
+                            continue;
+                        }
+                        keyDataListMap.computeIfAbsent(longDataKeyGenerator.applyAsLong(data), k -> new ArrayList<>()).add(data);
+                    }
+                    for (int i = 0; i < elementIdentifiers.length; i++) {
+                        elementDataListMap.put(filteredElements.get(i), keyDataListMap.get(elementIdentifiers[i]));
                     }
                 } else {
                     // 一对一
-                    Map<K, D> keyDataMap = dataStream.filter(Objects::nonNull)
-                                                     .collect(HashMap::new, (m, e) -> m.put(dataKeyGenerator.apply(e), e), Map::putAll);
-                    elementStream.filter(element -> !elementDataMap.containsKey(element))
-                                 .forEach(element -> {
-                                     K key = elementToKeyMapping.apply(element);
-                                     D data = keyDataMap.get(key);
-                                     elementDataMap.put(element, data);
-                                     if (useCache && data != null) {
-                                         putToCache(elementIdentifierExtractor.apply(element), data);
-                                     }
-                                 });
+                    LongObjectHashMap<D> keyDataMap = new LongObjectHashMap<>(dataCollection.size());
+                    for (D data : dataCollection) {
+                        if (data == null || (dataFilter != null && !dataFilter.test(data))) {
+                            continue;
+                        }
+                        keyDataMap.put(longDataKeyGenerator.applyAsLong(data), data);
+                    }
+                    for (int i = 0; i < elementIdentifiers.length; i++) {
+                        elementDataMap.put(filteredElements.get(i), keyDataMap.get(elementIdentifiers[i]));
+                    }
                 }
             }
+
+            return completeMatch(context, elementDataMap, elementDataListMap, startTime, queryStartTime, assembleStartTime, timedOut);
+        });
+    }
+
+    /**
+     * 排序并去重
+     * @param values 原数组 不会被修改
+     * @return 排序去重后的新数组
+     */
+    private static long[] sortedDistinct(long[] values) {
+        if (values.length == 0) {
+            return values;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[size - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * 将一段long标识装箱为查询方法的参数
+     * @param identifiers 标识
+     * @param from 开始下标（包含）
+     * @param to 结束下标（不包含）
+     * @return 查询方法的参数
+     */
+    @SuppressWarnings("unchecked")
+    private C boxIdentifiers(long[] identifiers, int from, int to) {
+        return collect(identifiers, from, to, (Collector<Long, ?, C>) identifierCollector);
+    }
+
+    private static <A, R> R collect(long[] values, int from, int to, Collector<Long, A, R> collector) {
+        A container = collector.supplier().get();
+        BiConsumer<A, Long> accumulator = collector.accumulator();
+        for (int i = from; i < to; i++) {
+            accumulator.accept(container, values[i]);
+        }
+        return collector.finisher().apply(container);
+    }
+
+    /**
+     * 给查询加上超时时间 超时时间从匹配开始计算 准备阶段用掉的时间也算在内
+     * @param queryFuture 查询结果
+     * @param context 本次匹配的上下文
+     * @param startTime 匹配开始的时间
+     * @param queryStartTime 查询开始的时间
+     * @return 带超时的查询结果 没有设置超时时间时为原查询结果
+     */
+    private CompletableFuture<Collection<D>> withQueryTimeout(CompletableFuture<Collection<D>> queryFuture, MatchContext context, long startTime, long queryStartTime) {
+        if (queryTimeout > 0 && !queryFuture.isDone()) {
+            return withDeadline(queryFuture, context, TimeUnit.MILLISECONDS.toNanos(queryTimeout) - (queryStartTime - startTime));
         }
+        return queryFuture;
+    }
+
+    /**
+     * 匹配失败时记录指标和各阶段的耗时 超时失败时可以查看每个阶段用掉了多少超时时间
+     * @param matchFuture 匹配结果
+     * @param context 本次匹配的上下文
+     * @param startTime 匹配开始的时间
+     * @return 匹配结果
+     */
+    private CompletableFuture<ObjectRelationMatcher<E, I, C, D, K>> recordMatchFailure(CompletableFuture<ObjectRelationMatcher<E, I, C, D, K>> matchFuture,
+                                                                                       MatchContext context, long startTime) {
+        return matchFuture.whenComplete((matcher, e) -> {
+            if (e != null) {
+                long endTime = System.nanoTime();
+                // 准备阶段失败时还没有开始查询
+                long queryStartTime = context.queryStartTime != 0 ? context.queryStartTime : endTime;
+                this.matchProfile = new MatchProfile(queryStartTime - startTime, endTime - queryStartTime, 0,
+                                                     context.cancelled, context.tasks.size(), context.completedTasks.get());
+                currentMetrics().recordMatchFailure(cacheKeyName, endTime - startTime, unwrap(e));
+            }
+        });
+    }
 
+    /**
+     * 查询结果匹配完成后 补充未匹配的元素 保存匹配结果并记录耗时
+     * @param context 本次匹配的上下文
+     * @param elementDataMap 源集合的元素和新集合的元素对应关系（一对一）
+     * @param elementDataListMap 源集合的元素和新集合的元素对应关系（一对多、多对多）
+     * @param startTime 匹配开始的时间
+     * @param queryStartTime 查询开始的时间
+     * @param assembleStartTime 组装开始的时间
+     * @param timedOut 是否超时后用部分结果匹配
+     * @return 当前对象本身
+     */
+    private ObjectRelationMatcher<E, I, C, D, K> completeMatch(MatchContext context, Map<E, D> elementDataMap, Map<E, List<D>> elementDataListMap,
+                                                               long startTime, long queryStartTime, long assembleStartTime, boolean timedOut) {
         // 补充未匹配的
         if (manyToMany) {
             // 多对多
@@ -594,6 +959,33 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         this.oneToManyMap = elementDataListMap;
         this.manyToManyMap = elementDataListMap;
 
+        // 流式匹配时 已匹配的元素已经处理过了 只需要处理未匹配的元素
+        if (streamingUnmatchedProcessor != null) {
+            if (oneToMany) {
+                elementDataListMap.forEach((element, list) -> {
+                    if (list == null || (list.isEmpty() && emptyAsUnmatched)) {
+                        streamingUnmatchedProcessor.accept(element);
+                    }
+                });
+            } else {
+                elementDataMap.forEach((element, data) -> {
+                    if (data == null) {
+                        streamingUnmatchedProcessor.accept(element);
+                    }
+                });
+            }
+        }
+
+        long endTime = System.nanoTime();
+        this.matchProfile = new MatchProfile(queryStartTime - startTime, assembleStartTime - queryStartTime, endTime - assembleStartTime,
+                                             timedOut, context.tasks.size(), context.completedTasks.get());
+
+        MatcherMetrics matcherMetrics = currentMetrics();
+        if (matcherMetrics != MatcherMetrics.NOOP) {
+            int size = oneToMany || manyToMany ? elementDataListMap.size() : elementDataMap.size();
+            matcherMetrics.recordMatch(cacheKeyName, endTime - startTime, size, countUnmatched(elementDataMap, elementDataListMap), timedOut);
+        }
+
         // 如果需要match后清理缓存 则立即清理
         if (useCache && clearCacheAfterMatch) {
             clearCache();
@@ -604,6 +996,581 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return this;
     }
 
+    /**
+     * 统计未匹配到关系的元素数量
+     * @param elementDataMap 源集合的元素和新集合的元素对应关系（一对一）
+     * @param elementDataListMap 源集合的元素和新集合的元素对应关系（一对多、多对多）
+     * @return 未匹配的数量
+     */
+    private int countUnmatched(Map<E, D> elementDataMap, Map<E, List<D>> elementDataListMap) {
+        int unmatched = 0;
+        if (manyToMany) {
+            for (List<D> list : elementDataListMap.values()) {
+                if (list == null) {
+                    unmatched++;
+                }
+            }
+        } else if (oneToMany) {
+            for (List<D> list : elementDataListMap.values()) {
+                if (list == null || (list.isEmpty() && emptyAsUnmatched)) {
+                    unmatched++;
+                }
+            }
+        } else {
+            for (D data : elementDataMap.values()) {
+                if (data == null) {
+                    unmatched++;
+                }
+            }
+        }
+        return unmatched;
+    }
+
+    /**
+     * 给查询加上超时时间 超时后取消未完成的查询 <br/>
+     * 如果配置了partialResultOnTimeout 则用已完成的批次的结果继续匹配 否则以超时异常结束
+     * @param queryFuture 查询结果
+     * @param context 本次匹配的上下文
+     * @param remainingNanos 剩余的时间（纳秒）
+     * @return 带超时的查询结果
+     */
+    private CompletableFuture<Collection<D>> withDeadline(CompletableFuture<Collection<D>> queryFuture, MatchContext context, long remainingNanos) {
+        CompletableFuture<Collection<D>> result = new CompletableFuture<>();
+        // 超时和查询结束只有先发生的一方生效
+        AtomicBoolean settled = new AtomicBoolean();
+        // 同步匹配时交给等待中的调用方线程 异步匹配时交给线程池
+        Executor executor = context.callerThreadExecutor != null ? context.callerThreadExecutor : currentExecutor();
+        // 调度器的线程中只标记超时和取消未完成的查询 同步的查询方法占满线程池时 取消不能排在这些查询后面
+        // 结束结果会执行后续的组装、回写缓存等 所以交给线程池 调度器的线程不能执行这些任务
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            context.cancelled = true;
+            // 先取消未完成的查询再结束 合并查询时进行中的查询可能还有其他匹配器在等待 所以不取消
+            if (!coalesceQuery) {
+                context.tasks.forEach(task -> task.cancel(false));
+            }
+            QueryExecutors.handoffOrRequeue(executor, () -> {
+                if (partialResultOnTimeout) {
+                    Collection<D> partialResult = context.completedResults.stream()
+                                                                          .flatMap(Collection::stream)
+                                                                          .collect(Collectors.toList());
+                    context.partialResult = partialResult;
+                    result.complete(partialResult);
+                } else {
+                    result.completeExceptionally(new RuntimeException("query timeout after " + queryTimeout + "ms", new TimeoutException()));
+                }
+            });
+        }, Math.max(remainingNanos, 0), TimeUnit.NANOSECONDS);
+        queryFuture.whenComplete((dataCollection, e) -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            timer.cancel(false);
+            if (e == null) {
+                result.complete(dataCollection);
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 合并查询新集合 已经在其他匹配器中查询的标识等待其查询结果 只查询剩余的标识 <br/>
+     * 挂载的查询结果中可能包含其他标识的数据 但匹配时是按照key查找的 所以不影响结果
+     * @param identifierCollection 待查询的标识集合
+     * @param context 本次匹配的上下文
+     * @return 合并后的查询结果
+     */
+    private CompletableFuture<Collection<D>> coalescedQuery(C identifierCollection, MatchContext context) {
+        CompletableFuture<Collection<D>> promise = new CompletableFuture<>();
+        QueryCoalescer.Claim<I, Collection<D>> claim = QUERY_COALESCER.claim(cacheKeyName, identifierCollection, promise);
+
+        List<CompletableFuture<Collection<D>>> futures = new ArrayList<>(claim.getAttached());
+        if (!claim.getClaimed().isEmpty()) {
+            C claimedCollection = claim.getClaimed().stream().collect(identifierCollector);
+            query(claimedCollection, context).whenComplete((dataCollection, e) -> {
+                if (e == null) {
+                    promise.complete(dataCollection);
+                } else {
+                    promise.completeExceptionally(e);
+                }
+            });
+            futures.add(promise);
+        }
+
+        if (futures.size() == 1) {
+            return futures.get(0);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                                .thenApply(v -> futures.stream()
+                                                       .map(CompletableFuture::join)
+                                                       .filter(Objects::nonNull)
+                                                       .flatMap(Collection::stream)
+                                                       .collect(Collectors.toList()));
+    }
+
+    /**
+     * 查询新集合 <br/>
+     * 分批或多次单个查询时 每一批（每一次）单独重试 已经成功的批次不会因为其他批次失败而重新查询
+     * @param identifierCollection 待查询的标识集合
+     * @param context 本次匹配的上下文
+     * @return 查询结果 任意一批超过重试次数后以异常结束
+     */
+    private CompletableFuture<Collection<D>> query(C identifierCollection, MatchContext context) {
+        boolean dispatch = shouldDispatch(context);
+
+        // 如果需要查询的数据只有一个 并且配置了单个查询的方法 优先查单个的方法
+        if (identifierCollection.size() == 1 && (singleQueryMethod != null || asyncSingleQueryMethod != null)) {
+            I identifier = identifierCollection.iterator().next();
+            return queryTask(identifierCollection, context, () -> querySingle(identifier, dispatch).thenApply(data -> Optional.ofNullable(data)
+                                                                                                            .map(Collections::singletonList)
+                                                                                                            .orElse(Collections.emptyList())));
+        }
+
+        // 如果配置了字典 直接从字典的索引中查找 字典过期时在后台刷新 只有首次加载时需要等待
+        if (dictionary != null) {
+            if (elementToAllKeys) {
+                return queryTask(identifierCollection, context, dictionary::getAllAsync);
+            }
+            List<K> keys = identifierCollection.stream()
+                                               .map(identifierToKeyMapping)
+                                               .collect(Collectors.toList());
+            return queryTask(identifierCollection, context, () -> dictionary.getAsync(keys));
+        }
+
+        // 如果配置了加载器 交给加载器合并后批量查询
+        if (batchLoader != null) {
+            return queryTask(identifierCollection, context, () -> batchLoader.loadAll(identifierCollection));
+        }
+
+        // 如果需要查询多个 那么看是否配置了批量查询方法 如果配置了则优先使用批量查询方法
+        if (batchQueryAllMethod != null) {
+            return queryTask(identifierCollection, context, () -> execute(batchQueryAllMethod::get, dispatch));
+        }
+
+        if (batchQueryMethod != null || asyncBatchQueryMethod != null) {
+            // 自适应时按照当前调整后的批量大小分批
+            int batchSize = adaptiveBatchSizer != null ? adaptiveBatchSizer.current() : maxBatchQuerySize;
+            // 如果没有配置批量最大可查条数 直接调用批量查询方法
+            if (batchSize <= 0) {
+                return queryTask(identifierCollection, context, () -> queryBatch(identifierCollection, dispatch));
+            }
+            // 如果接口有限制最大查询数量 则分批查
+            // 一次遍历完成分批 之所以不用guava的是因为guava的只能拆为List<List<?>> 但是我们的collector是自定义的
+            return queryBatches(StreamUtils.partition(identifierCollection, batchSize, identifierCollector), batchSize, context);
+        }
+
+        // 没有批量查询方法 则多次调用单个查询的方法
+        return queryAll(identifierCollection, identifier -> queryTask(Stream.of(identifier).collect(identifierCollector), context,
+                                                                      () -> querySingle(identifier, dispatch || parallelExecuteQuery).thenApply(Collections::singletonList)));
+    }
+
+    /**
+     * 分批调用批量查询方法 每一批单独重试
+     * @param batches 分批后的标识集合
+     * @param batchSize 分批的大小
+     * @param context 本次匹配的上下文
+     * @return 所有批次的查询结果
+     */
+    private CompletableFuture<Collection<D>> queryBatches(List<C> batches, int batchSize, MatchContext context) {
+        boolean dispatch = shouldDispatch(context);
+        if (eventListener != null) {
+            eventListener.onBatchPartitioned(batchSize, batches.size());
+        }
+        return queryAll(batches, batch -> queryTask(batch, context, () -> observeBatch(batch, () -> queryBatch(batch, dispatch || parallelExecuteQuery))));
+    }
+
+    /**
+     * 同步的查询方法是否需要提交到线程池执行 <br/>
+     * 对冲请求和超时需要在查询未返回时计时 限流时需要在有许可后再执行 所以同步的查询方法也要提交到线程池执行
+     * @param context 本次匹配的上下文
+     * @return 是否需要提交到线程池执行
+     */
+    private boolean shouldDispatch(MatchContext context) {
+        return context.async || hedgeDelay > 0 || hedgeLatencyPercentile > 0 || queryTimeout > 0 || currentLimiter() != null;
+    }
+
+    /**
+     * 执行一个查询任务（一批或一次） 失败时按照配置退避重试 每次尝试都可以发起对冲请求
+     * @param identifierCollection 这个任务查询的标识
+     * @param context 本次匹配的上下文
+     * @param attempt 发起一次查询
+     * @return 查询结果 超过重试次数后以异常结束
+     */
+    private CompletableFuture<Collection<D>> queryTask(C identifierCollection, MatchContext context, Supplier<CompletableFuture<? extends Collection<D>>> attempt) {
+        // 已经超时的匹配不再发起新的查询（串行查询时后面的批次） 合并查询时其他匹配器可能还在等待后面的批次 所以继续查询
+        if (context.cancelled && !coalesceQuery) {
+            return failedFuture(new CancellationException());
+        }
+        CompletableFuture<Collection<D>> result = new CompletableFuture<>();
+        context.tasks.add(result);
+        // 每次尝试（包括重试和对冲）都需要获取限流器的许可
+        QueryLimiter limiter = currentLimiter();
+        Supplier<CompletableFuture<? extends Collection<D>>> limitedAttempt = limiter == null ? attempt : () -> limiter.submit(attempt);
+        queryWithRetry(identifierCollection, context, () -> hedge(limitedAttempt), 0, result);
+        return result;
+    }
+
+    /**
+     * 查询新集合 失败时按照配置进行重试 超过重试次数后result以异常结束
+     * @param identifierCollection 待查询的标识集合
+     * @param context 本次匹配的上下文
+     * @param attempt 发起一次查询
+     * @param retryCount 当前的重试次数 0表示首次查询
+     * @param result 查询结果
+     */
+    private void queryWithRetry(C identifierCollection, MatchContext context, Supplier<CompletableFuture<? extends Collection<D>>> attempt,
+                                int retryCount, CompletableFuture<Collection<D>> result) {
+        // 已经被取消（超时）的不再查询
+        if (result.isDone()) {
+            return;
+        }
+        MatcherMetrics matcherMetrics = currentMetrics();
+        long attemptStartTime = System.nanoTime();
+        CompletableFuture<? extends Collection<D>> future;
+        try {
+            future = attempt.get();
+        } catch (Exception e) {
+            future = failedFuture(e);
+        }
+        // 结果被取消时 同时取消进行中的查询
+        CompletableFuture<? extends Collection<D>> attemptFuture = future;
+        result.whenComplete((dataCollection, e) -> attemptFuture.cancel(false));
+        future.whenComplete((dataCollection, throwable) -> {
+            if (result.isDone()) {
+                return;
+            }
+            matcherMetrics.recordBatch(cacheKeyName, identifierCollection.size(), System.nanoTime() - attemptStartTime, throwable == null);
+            if (throwable == null) {
+                if (eventListener != null) {
+                    eventListener.onQuerySuccess(identifierCollection, retryCount, dataCollection);
+                }
+                Collection<D> data = dataCollection != null ? dataCollection : Collections.emptyList();
+                if (context.dataIndex != null) {
+                    // 流式匹配时立即加入索引 不再保留这一批的结果
+                    try {
+                        context.dataIndex.accept(data);
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    data = Collections.emptyList();
+                } else {
+                    context.completedResults.add(data);
+                }
+                context.completedTasks.incrementAndGet();
+                result.complete(data);
+                return;
+            }
+            Exception e = unwrap(throwable);
+            if (eventListener != null) {
+                eventListener.onQueryException(identifierCollection, retryCount, e);
+            }
+            // 超过重试次数
+            if (retryCount >= queryExceptionRetryTimes) {
+                result.completeExceptionally(new RuntimeException("query for" + identifierCollection + "failure", e));
+                return;
+            }
+            matcherMetrics.recordRetry(cacheKeyName, retryCount + 1);
+            // 等待间隔后在线程池中重试 不阻塞调用方和回调所在的线程 线程池饱和时不能在调度器的线程中重试 稍后再交给线程池
+            long interval = retryInterval(retryCount + 1);
+            if (interval > 0) {
+                Executor executor = currentExecutor();
+                scheduler.schedule(() -> QueryExecutors.handoffOrRequeue(executor, () -> queryWithRetry(identifierCollection, context, attempt, retryCount + 1, result)),
+                                   interval, TimeUnit.MILLISECONDS);
+            } else {
+                queryWithRetry(identifierCollection, context, attempt, retryCount + 1, result);
+            }
+        });
+    }
+
+    /**
+     * 计算重试的等待间隔
+     * @param retryCount 第几次重试 从1开始
+     * @return 等待间隔（毫秒）
+     */
+    private long retryInterval(int retryCount) {
+        if (queryExceptionRetryInterval <= 0) {
+            return 0;
+        }
+        double interval = queryExceptionRetryInterval * Math.pow(queryExceptionRetryBackoffMultiplier, retryCount - 1);
+        if (queryExceptionRetryMaxInterval > 0) {
+            interval = Math.min(interval, queryExceptionRetryMaxInterval);
+        }
+        if (queryExceptionRetryJitter > 0) {
+            interval *= 1 + queryExceptionRetryJitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        }
+        return (long) Math.min(interval, Long.MAX_VALUE);
+    }
+
+    /**
+     * 发起一次查询 如果开启了对冲请求 查询超过对冲等待时间还没有返回时再发起一次 取先成功的结果 <br/>
+     * 有结果后会取消另一个查询（尚未开始执行的同步查询不会再执行）
+     * @param attempt 发起一次查询
+     * @return 查询结果
+     */
+    private CompletableFuture<? extends Collection<D>> hedge(Supplier<CompletableFuture<? extends Collection<D>>> attempt) {
+        long delay = hedgeDelayNanos();
+        long startTime = System.nanoTime();
+        CompletableFuture<? extends Collection<D>> primary = attempt.get();
+        if (delay <= 0 && !recordLatency()) {
+            return primary;
+        }
+
+        CompletableFuture<Collection<D>> result = new CompletableFuture<>();
+        List<CompletableFuture<? extends Collection<D>>> attempts = new CopyOnWriteArrayList<>(Collections.singletonList(primary));
+        // 还没有结束的查询数量 全部失败时才算失败
+        AtomicInteger outstanding = new AtomicInteger(1);
+        BiConsumer<Collection<D>, Throwable> handler = (dataCollection, e) -> {
+            if (e == null) {
+                if (result.complete(dataCollection) && recordLatency()) {
+                    LatencyTracker.of(cacheKeyName).record(System.nanoTime() - startTime);
+                }
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        };
+        primary.whenComplete(handler);
+
+        if (delay > 0 && !primary.isDone()) {
+            Executor executor = currentExecutor();
+            // 线程池饱和时放弃对冲 对冲请求只是额外的负载 也不能在调度器的线程中查询
+            ScheduledFuture<?> timer = scheduler.schedule(() -> QueryExecutors.handoff(executor, () -> {
+                if (result.isDone()) {
+                    return;
+                }
+                outstanding.incrementAndGet();
+                CompletableFuture<? extends Collection<D>> hedged;
+                try {
+                    hedged = attempt.get();
+                } catch (Exception e) {
+                    hedged = failedFuture(e);
+                }
+                attempts.add(hedged);
+                hedged.whenComplete(handler);
+            }), delay, TimeUnit.NANOSECONDS);
+            result.whenComplete((dataCollection, e) -> {
+                timer.cancel(false);
+                attempts.forEach(x -> x.cancel(false));
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 获取对冲请求的等待时间
+     * @return 等待时间（纳秒） 小于等于0表示不对冲
+     */
+    private long hedgeDelayNanos() {
+        if (hedgeDelay > 0) {
+            return TimeUnit.MILLISECONDS.toNanos(hedgeDelay);
+        }
+        if (recordLatency()) {
+            LatencyTracker tracker = LatencyTracker.of(cacheKeyName);
+            // 样本太少时分位数没有意义
+            if (tracker.size() >= MIN_HEDGE_LATENCY_SAMPLES) {
+                return tracker.percentile(hedgeLatencyPercentile);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 是否需要记录查询耗时 按照延迟分位对冲时才需要
+     * @return 是否需要记录
+     */
+    private boolean recordLatency() {
+        return hedgeLatencyPercentile > 0 && cacheKeyName != null;
+    }
+
+    /**
+     * 执行多个查询任务并合并结果 如果配置了并发查询 则同时发起 否则上一个完成后再发起下一个
+     * @param parameters 每个查询任务的参数
+     * @param queryFunction 查询任务
+     * @param <T> 参数类型
+     * @return 合并后的查询结果
+     */
+    private <T> CompletableFuture<Collection<D>> queryAll(Collection<T> parameters, Function<T, CompletableFuture<? extends Collection<D>>> queryFunction) {
+        if (parallelExecuteQuery) {
+            List<CompletableFuture<? extends Collection<D>>> futures = parameters.stream()
+                                                                                 .map(queryFunction)
+                                                                                 .collect(Collectors.toList());
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                                    .thenApply(v -> futures.stream()
+                                                           .map(CompletableFuture::join)
+                                                           .<D>flatMap(Collection::stream)
+                                                           .collect(Collectors.toList()));
+        }
+        // 只有显式设置了parallelExecuteQuery=false 才会串行查询
+        CompletableFuture<List<D>> future = CompletableFuture.completedFuture(new ArrayList<>());
+        for (T parameter : parameters) {
+            future = future.thenCompose(list -> queryFunction.apply(parameter).thenApply(data -> {
+                list.addAll(data);
+                return list;
+            }));
+        }
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * 将一批查询的耗时和结果反馈给自适应的批量大小 被取消的查询不反馈
+     * @param identifierCollection 一批标识
+     * @param attempt 发起查询
+     * @return 查询结果
+     */
+    private CompletableFuture<Collection<D>> observeBatch(C identifierCollection, Supplier<CompletableFuture<Collection<D>>> attempt) {
+        AdaptiveBatchSizer sizer = adaptiveBatchSizer;
+        long startTime = System.nanoTime();
+        CompletableFuture<Collection<D>> future = attempt.get();
+        if (sizer != null) {
+            future.whenComplete((dataCollection, e) -> {
+                if (e == null) {
+                    sizer.onSuccess(identifierCollection.size(), System.nanoTime() - startTime);
+                } else if (!future.isCancelled()) {
+                    sizer.onFailure(identifierCollection.size());
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * 调用批量查询方法查询一批标识
+     * @param identifierCollection 一批标识
+     * @param dispatch 同步的查询方法是否需要提交到线程池执行
+     * @return 查询结果
+     */
+    private CompletableFuture<Collection<D>> queryBatch(C identifierCollection, boolean dispatch) {
+        if (asyncBatchQueryMethod != null) {
+            return invokeAsync(() -> asyncBatchQueryMethod.apply(identifierCollection));
+        }
+        return execute(() -> batchQueryMethod.apply(identifierCollection), dispatch);
+    }
+
+    /**
+     * 调用单个查询方法查询一个标识
+     * @param identifier 标识
+     * @param dispatch 同步的查询方法是否需要提交到线程池执行
+     * @return 查询结果
+     */
+    private CompletableFuture<D> querySingle(I identifier, boolean dispatch) {
+        if (asyncSingleQueryMethod != null) {
+            return invokeAsync(() -> asyncSingleQueryMethod.apply(identifier));
+        }
+        return execute(() -> singleQueryMethod.apply(identifier), dispatch);
+    }
+
+    /**
+     * 获取查询使用的限流器
+     * @return 单独设置的限流器 -> 按缓存名称注册的限流器 都没有时为null
+     */
+    private QueryLimiter currentLimiter() {
+        return queryLimiter != null ? queryLimiter : QueryLimiter.registered(cacheKeyName);
+    }
+
+    /**
+     * 获取执行查询的线程池
+     * @return 单独设置的线程池 -> 按缓存名称注册的线程池 -> 虚拟线程的线程池 -> 默认的并发查询线程池
+     */
+    private Executor currentExecutor() {
+        if (queryExecutor != null) {
+            return queryExecutor;
+        }
+        Executor executor = QueryExecutors.registered(cacheKeyName);
+        if (executor != null) {
+            return executor;
+        }
+        if (useVirtualThreads) {
+            executor = QueryExecutors.virtualThreadExecutor();
+            if (executor != null) {
+                return executor;
+            }
+        }
+        return QueryExecutors.defaultQueryPool();
+    }
+
+    /**
+     * 执行同步的查询方法 已经开始执行的同步查询方法无法被取消
+     * @param supplier 查询方法
+     * @param dispatch 是否提交到线程池执行 false表示在当前线程直接执行
+     * @param <T> 结果类型
+     * @return 查询结果
+     */
+    private <T> CompletableFuture<T> execute(Supplier<? extends T> supplier, boolean dispatch) {
+        if (dispatch) {
+            MatcherMetrics matcherMetrics = currentMetrics();
+            long submitTime = System.nanoTime();
+            return CompletableFuture.supplyAsync(() -> {
+                matcherMetrics.recordQueueWait(cacheKeyName, System.nanoTime() - submitTime);
+                return supplier.get();
+            }, currentExecutor());
+        }
+        try {
+            return CompletableFuture.completedFuture(supplier.get());
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * 执行异步的查询方法 查询方法本身同步抛出的异常也会转换为异常结束的future
+     * @param supplier 异步查询方法
+     * @param <T> 结果类型
+     * @return 查询结果
+     */
+    private static <T> CompletableFuture<T> invokeAsync(Supplier<? extends CompletionStage<? extends T>> supplier) {
+        try {
+            CompletionStage<? extends T> stage = Objects.requireNonNull(supplier.get(), "异步查询方法不能返回null");
+            CompletableFuture<T> future = stage.<T>thenApply(x -> x).toCompletableFuture();
+            // 取消时将取消传递给查询方法返回的future
+            future.whenComplete((data, e) -> {
+                if (future.isCancelled()) {
+                    stage.toCompletableFuture().cancel(true);
+                }
+            });
+            return future;
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * 创建以异常结束的future JDK8中没有CompletableFuture.failedFuture
+     * @param e 异常
+     * @param <T> 结果类型
+     * @return 以异常结束的future
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * 解开CompletableFuture包装的异常
+     * @param throwable future中的异常
+     * @return 原始异常
+     */
+    private static Exception unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable instanceof Exception ? (Exception) throwable : new RuntimeException(throwable);
+    }
+
+    /**
+     * 将异步匹配中的异常转换为同步匹配抛出的异常
+     * @param throwable future中的异常
+     * @return 需要抛出的运行时异常
+     */
+    private static RuntimeException propagate(Throwable throwable) {
+        Exception e = unwrap(throwable);
+        return e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+    }
+
     /**
      * 根据配置过滤源集合并返回源集合流
      * @return 源集合流
@@ -614,66 +1581,107 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
     }
 
     /**
-     * 根据标识从缓存获取数据
-     * @param identifier 标识
-     * @return 缓存中的数据
+     * 获取当前匹配器使用的缓存
+     * @return 单独设置的缓存 没有则返回默认的通用缓存
      */
-    @SuppressWarnings("unchecked")
-    private D getDataFromCache(I identifier) {
-        return (D) cache.get(cacheKeyName, identifier);
+    private MatcherCache currentCache() {
+        return cache != null ? cache : defaultCache;
     }
 
     /**
-     * 根据标识从缓存获取集合
-     * @param identifier 标识
-     * @return 缓存中的集合
+     * 获取当前匹配器使用的指标采集
+     * @return 单独设置的指标采集 没有则返回默认的指标采集
      */
-    @SuppressWarnings("unchecked")
-    private List<D> getDataListFormCache(I identifier) {
-        return (List<D>) cache.get(cacheKeyName, identifier);
+    private MatcherMetrics currentMetrics() {
+        return metrics != null ? metrics : defaultMetrics;
     }
 
     /**
-     * 将数据添加到缓存
+     * 从批量获取的缓存结果中获取数据
+     * @param cachedMap 批量获取的缓存结果
      * @param identifier 标识
-     * @param data 数据
+     * @return 缓存中的数据
      */
-    private void putToCache(I identifier, D data) {
-        cache.put(cacheKeyName, identifier, data);
+    @SuppressWarnings("unchecked")
+    private D getDataFromCache(Map<Object, Object> cachedMap, I identifier) {
+        return identifier == null ? null : (D) cachedMap.get(identifier);
     }
 
     /**
-     * 将集合添加到缓存
+     * 从批量获取的缓存结果中获取集合
+     * @param cachedMap 批量获取的缓存结果
      * @param identifier 标识
-     * @param list 集合
+     * @return 缓存中的集合
      */
-    private void putListToCache(I identifier, List<D> list) {
-        cache.put(cacheKeyName, identifier, list);
+    @SuppressWarnings("unchecked")
+    private List<D> getDataListFormCache(Map<Object, Object> cachedMap, I identifier) {
+        return identifier == null ? null : (List<D>) cachedMap.get(identifier);
     }
 
     /**
      * 清除当前缓存
      */
     private void clearCache() {
-        clearCache(cacheKeyName);
+        currentCache().clear(cacheKeyName);
     }
 
     /**
-     * 清除某个缓存
+     * 清除默认通用缓存中的某个缓存
      * @param cacheKeyName 缓存名称
      */
     public static void clearCache(String cacheKeyName) {
-        Map<String, Object> map = cache.columnMap().get(cacheKeyName);
-        synchronized (map) {
-            map.clear();
-        }
+        defaultCache.clear(cacheKeyName);
+    }
+
+    /**
+     * 清除默认通用缓存中的全部缓存
+     */
+    public static void clearAllCaches() {
+        defaultCache.clearAll();
+    }
+
+    /**
+     * 替换默认的通用缓存 例如需要单独配置每个缓存的最大数量和过期时间 或者接入其他的缓存实现
+     * @param cache 新的默认缓存
+     */
+    public static void setDefaultCache(MatcherCache cache) {
+        defaultCache = Objects.requireNonNull(cache, "默认缓存不能设置为null");
+    }
+
+    /**
+     * 获取默认的通用缓存 可用于查看缓存的统计信息
+     * @return 默认的通用缓存
+     */
+    public static MatcherCache getDefaultCache() {
+        return defaultCache;
+    }
+
+    /**
+     * 替换默认的指标采集 例如接入Micrometer：setDefaultMetrics(new MicrometerMatcherMetrics(meterRegistry))
+     * @param metrics 新的默认指标采集
+     */
+    public static void setDefaultMetrics(MatcherMetrics metrics) {
+        defaultMetrics = Objects.requireNonNull(metrics, "默认指标采集不能设置为null");
+    }
+
+    /**
+     * 获取默认的指标采集
+     * @return 默认的指标采集
+     */
+    public static MatcherMetrics getDefaultMetrics() {
+        return defaultMetrics;
     }
 
     /**
-     * 清除全部缓存
+     * 获取最近一次匹配各阶段的耗时 可用于查看每个阶段用掉了多少超时时间 <br/>
+     * 匹配失败（例如超时后没有使用部分结果）时也可以获取 失败时匹配阶段的耗时为0
+     * @return 各阶段的耗时
      */
-    public static void clearAllCaches() {
-        cache.clear();
+    public MatchProfile getMatchProfile() {
+        if (matchProfile == null) {
+            throw new RuntimeException("需要先调用match方法");
+        }
+        return matchProfile;
     }
 
     /**
@@ -891,6 +1899,7 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
 
     private ObjectRelationMatcher<E, I, C, D, K> markUnmatched() {
         matched = false;
+        matchProfile = null;
         return this;
     }
 
@@ -909,6 +1918,19 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return markUnmatched();
     }
 
+    /**
+     * 设置long类型的元素标识 标识同时作为源集合到唯一键的映射 <br/>
+     * 同时设置了{@link #setLongDataKeyGenerator(ToLongFunction)}时 一对一和一对多的批量查询不装箱 只在调用批量查询方法时装箱 <br/>
+     * 标识的类型I和唯一键的类型K都需要是Long 其他功能（缓存、流式匹配、合并查询等）按照装箱后的标识处理 <br/>
+     * 不能再设置elementIdentifierExtractor和elementToKeyMapping 否则匹配时校验不通过
+     * @param longIdentifierExtractor 提取long类型元素标识符的方法
+     * @return 当前对象本身
+     */
+    public ObjectRelationMatcher<E, I, C, D, K> setLongIdentifierExtractor(ToLongFunction<E> longIdentifierExtractor) {
+        this.longIdentifierExtractor = Objects.requireNonNull(longIdentifierExtractor, "元素标识提取器不能为空");
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setIdentifierCollector(Collector<I, ?, C> identifierCollector) {
         this.identifierCollector = identifierCollector;
         return markUnmatched();
@@ -924,21 +1946,61 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return markUnmatched();
     }
 
+    public ObjectRelationMatcher<E, I, C, D, K> setAsyncBatchQueryMethod(Function<C, ? extends CompletionStage<? extends Collection<D>>> asyncBatchQueryMethod) {
+        this.asyncBatchQueryMethod = asyncBatchQueryMethod;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setDictionary(ManagedDictionary<D, K> dictionary) {
+        this.dictionary = dictionary;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setBatchLoader(BatchLoader<I, ?, D, K> batchLoader) {
+        this.batchLoader = batchLoader;
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setMaxBatchQuerySize(int maxBatchQuerySize) {
         this.maxBatchQuerySize = maxBatchQuerySize;
         return markUnmatched();
     }
 
+    public ObjectRelationMatcher<E, I, C, D, K> setAdaptiveBatchSizer(AdaptiveBatchSizer adaptiveBatchSizer) {
+        this.adaptiveBatchSizer = adaptiveBatchSizer;
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setSingleQueryMethod(Function<I, D> singleQueryMethod) {
         this.singleQueryMethod = singleQueryMethod;
         return markUnmatched();
     }
 
+    public ObjectRelationMatcher<E, I, C, D, K> setAsyncSingleQueryMethod(Function<I, ? extends CompletionStage<D>> asyncSingleQueryMethod) {
+        this.asyncSingleQueryMethod = asyncSingleQueryMethod;
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setParallelExecuteQuery(boolean parallelExecuteQuery) {
         this.parallelExecuteQuery = parallelExecuteQuery;
         return markUnmatched();
     }
 
+    public ObjectRelationMatcher<E, I, C, D, K> setQueryExecutor(Executor queryExecutor) {
+        this.queryExecutor = queryExecutor;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setQueryLimiter(QueryLimiter queryLimiter) {
+        this.queryLimiter = queryLimiter;
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setQueryExceptionRetryTimes(int queryExceptionRetryTimes) {
         this.queryExceptionRetryTimes = queryExceptionRetryTimes;
         return markUnmatched();
@@ -949,6 +2011,31 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return markUnmatched();
     }
 
+    public ObjectRelationMatcher<E, I, C, D, K> setQueryExceptionRetryBackoffMultiplier(double queryExceptionRetryBackoffMultiplier) {
+        this.queryExceptionRetryBackoffMultiplier = queryExceptionRetryBackoffMultiplier;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setQueryExceptionRetryMaxInterval(long queryExceptionRetryMaxInterval) {
+        this.queryExceptionRetryMaxInterval = queryExceptionRetryMaxInterval;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setQueryExceptionRetryJitter(double queryExceptionRetryJitter) {
+        this.queryExceptionRetryJitter = queryExceptionRetryJitter;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setHedgeLatencyPercentile(double hedgeLatencyPercentile) {
+        this.hedgeLatencyPercentile = hedgeLatencyPercentile;
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setDataFilter(Predicate<D> dataFilter) {
         this.dataFilter = dataFilter;
         return markUnmatched();
@@ -959,6 +2046,17 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return markUnmatched();
     }
 
+    /**
+     * 设置新集合的元素生成long类型唯一键的方法 配合{@link #setLongIdentifierExtractor(ToLongFunction)}使用 <br/>
+     * 不能再设置dataKeyGenerator 否则匹配时校验不通过
+     * @param longDataKeyGenerator 新集合的元素生成long类型唯一键的方法
+     * @return 当前对象本身
+     */
+    public ObjectRelationMatcher<E, I, C, D, K> setLongDataKeyGenerator(ToLongFunction<D> longDataKeyGenerator) {
+        this.longDataKeyGenerator = Objects.requireNonNull(longDataKeyGenerator, "新集合唯一键生成器不能为空");
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setElementToKeyMapping(Function<E, K> elementToKeyMapping) {
         this.elementToKeyMapping = elementToKeyMapping;
         return markUnmatched();
@@ -990,6 +2088,68 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return markUnmatched();
     }
 
+    public ObjectRelationMatcher<E, I, C, D, K> setCache(MatcherCache cache) {
+        this.cache = cache;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setMetrics(MatcherMetrics metrics) {
+        this.metrics = metrics;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setQueryTimeout(long queryTimeout) {
+        this.queryTimeout = queryTimeout;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setPartialResultOnTimeout(boolean partialResultOnTimeout) {
+        this.partialResultOnTimeout = partialResultOnTimeout;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setCoalesceQuery(boolean coalesceQuery) {
+        this.coalesceQuery = coalesceQuery;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setStreamingMatch(boolean streamingMatch) {
+        this.streamingMatch = streamingMatch;
+        return markUnmatched();
+    }
+
+    /**
+     * 流式匹配时 一对一关系匹配到后立即处理 未匹配的在所有查询结束后处理
+     * @param matchedProcessor 已匹配到关系的处理器
+     * @param unmatchedProcessor 未匹配到关系的处理器
+     * @return 当前对象本身
+     */
+    public ObjectRelationMatcher<E, I, C, D, K> setStreamingProcessOneToOne(BiConsumer<E, D> matchedProcessor, Consumer<E> unmatchedProcessor) {
+        this.streamingOneToOneProcessor = matchedProcessor;
+        this.streamingUnmatchedProcessor = unmatchedProcessor;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setStreamingProcessOneToOne(BiConsumer<E, D> matchedProcessor) {
+        return setStreamingProcessOneToOne(matchedProcessor, null);
+    }
+
+    /**
+     * 流式匹配时 一对多关系匹配到后立即处理 未匹配的在所有查询结束后处理
+     * @param matchedProcessor 已匹配到关系的处理器
+     * @param unmatchedProcessor 未匹配到关系的处理器
+     * @return 当前对象本身
+     */
+    public ObjectRelationMatcher<E, I, C, D, K> setStreamingProcessOneToMany(BiConsumer<E, List<D>> matchedProcessor, Consumer<E> unmatchedProcessor) {
+        this.streamingOneToManyProcessor = matchedProcessor;
+        this.streamingUnmatchedProcessor = unmatchedProcessor;
+        return markUnmatched();
+    }
+
+    public ObjectRelationMatcher<E, I, C, D, K> setStreamingProcessOneToMany(BiConsumer<E, List<D>> matchedProcessor) {
+        return setStreamingProcessOneToMany(matchedProcessor, null);
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setClearCacheAfterMatch(boolean clearCacheAfterMatch) {
         this.clearCacheAfterMatch = clearCacheAfterMatch;
         return markUnmatched();
@@ -1015,6 +2175,11 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return markUnmatched();
     }
 
+    public ObjectRelationMatcher<E, I, C, D, K> setIdentifierToKeyMapping(Function<I, K> identifierToKeyMapping) {
+        this.identifierToKeyMapping = identifierToKeyMapping;
+        return markUnmatched();
+    }
+
     public ObjectRelationMatcher<E, I, C, D, K> setManyToMany(boolean manyToMany) {
         this.manyToMany = manyToMany;
         return markUnmatched();
@@ -1030,8 +2195,8 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         } catch (Exception ignored) {
         }
         try {
-            // 关闭线程池
-            parallelQueryPool.shutdown();
+            // 关闭线程池和调度器
+            QueryExecutors.shutdown();
         } catch (Exception ignored) {
         }
     }
@@ -1041,12 +2206,382 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
         return (BinaryOperator) DEFAULT_MAP_MERGE_FUNCTION;
     }
 
+    /**
+     * 一次匹配的上下文 记录这次匹配发起的查询任务和已完成的结果
+     */
+    private final class MatchContext {
+
+        /**
+         * 是否为异步匹配
+         */
+        private final boolean async;
+
+        /**
+         * 发起的所有查询任务（批次） 超时后用于取消
+         */
+        private final Queue<CompletableFuture<Collection<D>>> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 已完成的查询任务的结果 超时后用于返回部分结果 流式匹配时不保留
+         */
+        private final Queue<Collection<D>> completedResults = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 已完成的查询任务数量
+         */
+        private final AtomicInteger completedTasks = new AtomicInteger();
+
+        /**
+         * 流式匹配时的数据索引 非流式匹配时为null
+         */
+        private DataIndex dataIndex;
+
+        /**
+         * 是否已经超时取消
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * 超时后返回的部分结果
+         */
+        private volatile Collection<D> partialResult;
+
+        /**
+         * 查询开始的时间 还没有开始查询时为0
+         */
+        private volatile long queryStartTime;
+
+        /**
+         * 同步匹配时等待中的调用方线程 异步匹配时为null
+         */
+        private final Executor callerThreadExecutor;
+
+        private MatchContext(boolean async, Executor callerThreadExecutor) {
+            this.async = async;
+            this.callerThreadExecutor = callerThreadExecutor;
+        }
+    }
+
+    /**
+     * long类型的提取器装箱后的通用提取器 用于区分用户设置的通用提取器
+     * @param <T> 参数的类型
+     * @param <R> 结果的类型（Long）
+     */
+    private static final class BoxedLongFunction<T, R> implements Function<T, R> {
+
+        private final ToLongFunction<T> function;
+
+        private BoxedLongFunction(ToLongFunction<T> function) {
+            this.function = function;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public R apply(T t) {
+            return (R) Long.valueOf(function.applyAsLong(t));
+        }
+    }
+
+    /**
+     * 在等待匹配结果的调用方线程中执行任务的执行器 <br/>
+     * 同步匹配时调用方线程本来就阻塞着 组装匹配结果和超时后结束结果的任务都交给它执行 既保留调用方的上下文（如ThreadLocal） 也不占用调度器的线程和排在占满线程池的查询后面
+     */
+    private static final class CallerThreadExecutor implements Executor {
+
+        /**
+         * 等待执行的任务
+         */
+        private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        /**
+         * 阻塞等待结果 等待期间执行提交的任务
+         * @param future 结果
+         * @param <T> 结果的类型
+         * @return 结果
+         */
+        private <T> T await(CompletableFuture<T> future) {
+            // 结束时唤醒等待的线程
+            future.whenComplete((result, e) -> tasks.add(() -> {}));
+            boolean interrupted = false;
+            while (!future.isDone()) {
+                try {
+                    tasks.take().run();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return future.join();
+        }
+    }
+
+    /**
+     * 新集合按照key建立的索引 用于将新集合与源集合进行匹配 <br/>
+     * 查询结果可以分多次加入索引（流式匹配时每一批加入一次） 所有查询结束后再将剩余的源集合元素与索引匹配 <br/>
+     * 设置了流式处理器时 每一批加入索引后立即匹配这一批数据对应的元素并调用处理器
+     */
+    private final class DataIndex {
+
+        /**
+         * 源集合的元素和新集合的元素对应关系（一对一）
+         */
+        private final Map<E, D> elementDataMap;
+
+        /**
+         * 源集合的元素和新集合的元素对应关系（一对多、多对多）
+         */
+        private final Map<E, List<D>> elementDataListMap;
+
+        /**
+         * key -> 数据（一对一）
+         */
+        private Map<K, D> keyDataMap;
+
+        /**
+         * key -> 数据列表（一对多、多对多）
+         */
+        private Map<K, List<D>> keyDataListMap;
+
+        /**
+         * 全量笛卡尔积时的所有数据
+         */
+        private List<D> dataList;
+
+        /**
+         * 设置了流式处理器时 等待匹配的元素 key -> 元素列表
+         */
+        private Map<K, List<E>> pendingElements;
+
+        /**
+         * 等待放入缓存的 标识 -> 数据 每次加入索引或结束时批量放入缓存 避免逐个访问缓存（远程缓存时尤其重要）
+         */
+        private Map<Object, Object> cacheValues;
+
+        /**
+         * 多对多时命中缓存的 标识 -> 数据列表
+         */
+        private final Map<Object, Object> cachedDataListMap;
+
+        /**
+         * 是否已经结束 结束后（例如超时）返回的批次不再加入索引
+         */
+        private boolean finished;
+
+        @SuppressWarnings("unchecked")
+        private DataIndex(Map<E, D> elementDataMap, Map<E, List<D>> elementDataListMap, Map<Object, Object> cachedDataListMap) {
+            this.elementDataMap = elementDataMap;
+            this.elementDataListMap = elementDataListMap;
+            this.cachedDataListMap = cachedDataListMap;
+            if (elementToAllKeys) {
+                dataList = new ArrayList<>();
+            } else if (manyToMany || oneToMany) {
+                keyDataListMap = new HashMap<>();
+            } else {
+                keyDataMap = new HashMap<>();
+            }
+            // 多对多时先把命中缓存的数据加入索引 缓存的数据已经过滤过了
+            if (cachedDataListMap != null) {
+                cachedDataListMap.forEach((identifier, list) -> keyDataListMap.computeIfAbsent(identifierToKeyMapping.apply((I) identifier), k -> new ArrayList<>())
+                                                                              .addAll((List<D>) list));
+            }
+            if (streamingOneToOneProcessor != null || streamingOneToManyProcessor != null) {
+                pendingElements = new HashMap<>();
+                // 命中缓存的元素立即处理 其他的等待查询结果
+                filteredElementStream().forEach(element -> {
+                    if (oneToMany) {
+                        List<D> list = elementDataListMap.get(element);
+                        if (list != null) {
+                            streamingOneToManyProcessor.accept(element, list);
+                            return;
+                        }
+                    } else {
+                        D data = elementDataMap.get(element);
+                        if (data != null) {
+                            streamingOneToOneProcessor.accept(element, data);
+                            return;
+                        }
+                    }
+                    pendingElements.computeIfAbsent(elementToKeyMapping.apply(element), k -> new ArrayList<>(1)).add(element);
+                });
+            }
+        }
+
+        /**
+         * 将一批查询结果加入索引
+         * @param dataCollection 一批查询结果
+         */
+        private synchronized void accept(Collection<D> dataCollection) {
+            if (finished) {
+                return;
+            }
+            Set<K> arrivedKeys = pendingElements != null ? new HashSet<>() : null;
+            for (D data : dataCollection) {
+                // 过滤新集合
+                if (dataFilter != null && !dataFilter.test(data)) {
+                    continue;
+                }
+                if (dataList != null) {
+                    dataList.add(data);
+                    continue;
+                }
+                if (data == null) {
+                    continue;
+                }
+                K key = dataKeyGenerator.apply(data);
+                if (keyDataMap != null) {
+                    keyDataMap.put(key, data);
+                } else {
+                    keyDataListMap.computeIfAbsent(key, k -> new ArrayList<>()).add(data);
+                }
+                if (arrivedKeys != null) {
+                    arrivedKeys.add(key);
+                }
+            }
+            if (arrivedKeys != null) {
+                for (K key : arrivedKeys) {
+                    List<E> elementList = pendingElements.remove(key);
+                    if (elementList != null) {
+                        elementList.forEach(element -> matchAndProcess(element, key));
+                    }
+                }
+                flushCache();
+            }
+        }
+
+        /**
+         * 记录需要放入缓存的数据
+         * @param identifier 标识
+         * @param value 数据或数据列表
+         */
+        private void putToCache(I identifier, Object value) {
+            if (identifier != null) {
+                if (cacheValues == null) {
+                    cacheValues = new HashMap<>();
+                }
+                cacheValues.put(identifier, value);
+            }
+        }
+
+        /**
+         * 将记录的数据批量放入缓存
+         */
+        private void flushCache() {
+            if (cacheValues != null && !cacheValues.isEmpty()) {
+                currentCache().putAll(cacheKeyName, cacheValues);
+                cacheValues = null;
+            }
+        }
+
+        /**
+         * 匹配一个等待中的元素并调用流式处理器
+         * @param element 源集合的元素
+         * @param key 元素对应的key
+         */
+        private void matchAndProcess(E element, K key) {
+            if (oneToMany) {
+                // 同一个元素在源集合中出现多次时只处理一次
+                if (elementDataListMap.containsKey(element)) {
+                    return;
+                }
+                List<D> list = keyDataListMap.get(key);
+                elementDataListMap.put(element, list);
+                if (useCache) {
+                    putToCache(elementIdentifierExtractor.apply(element), list);
+                }
+                streamingOneToManyProcessor.accept(element, list);
+            } else {
+                if (elementDataMap.containsKey(element)) {
+                    return;
+                }
+                D data = keyDataMap.get(key);
+                elementDataMap.put(element, data);
+                if (useCache) {
+                    putToCache(elementIdentifierExtractor.apply(element), data);
+                }
+                streamingOneToOneProcessor.accept(element, data);
+            }
+        }
+
+        /**
+         * 所有查询结束 将还没有匹配的源集合元素与索引进行匹配
+         */
+        private synchronized void finish() {
+            finished = true;
+
+            // 过滤源集合 因为只根据过滤后的内容进行了查询
+            Stream<E> elementStream = filteredElementStream();
+
+            if (dataList != null) {
+                // 全量笛卡尔积 不走缓存 没有查到数据时都算未匹配
+                if (!dataList.isEmpty()) {
+                    elementStream.forEach(element -> elementDataListMap.put(element, dataList));
+                }
+            } else if (manyToMany) {
+                // 多对多
+                elementStream.forEach(element -> {
+                    // keys 1 2 3
+                    Collection<K> collection = elementToKeysMapping.apply(element);
+                    for (K key : collection) {
+                        List<D> list = keyDataListMap.get(key);
+                        if (list != null) {
+                            elementDataListMap.computeIfAbsent(element, k -> new ArrayList<>()).addAll(list);
+                        }
+                    }
+                    // 按照每个标识缓存查询出来的数据 命中缓存的不需要再放入
+                    if (useCache) {
+                        Collection<I> identifiers = elementIdentifiersExtractor.apply(element);
+                        if (identifiers != null) {
+                            for (I identifier : identifiers) {
+                                if (identifier != null && !cachedDataListMap.containsKey(identifier)) {
+                                    List<D> list = keyDataListMap.get(identifierToKeyMapping.apply(identifier));
+                                    if (list != null) {
+                                        putToCache(identifier, list);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                });
+            } else if (oneToMany) {
+                // 一对多 过滤缓存中已存在的
+                elementStream.filter(element -> !elementDataListMap.containsKey(element))
+                             .forEach(element -> {
+                                 K key = elementToKeyMapping.apply(element);
+                                 List<D> list = keyDataListMap.get(key);
+                                 elementDataListMap.put(element, list);
+                                 if (useCache && list != null && (!list.isEmpty() || !emptyAsUnmatched)) {
+                                     putToCache(elementIdentifierExtractor.apply(element), list);
+                                 }
+                             });
+            } else {
+                // 一对一
+                elementStream.filter(element -> !elementDataMap.containsKey(element))
+                             .forEach(element -> {
+                                 K key = elementToKeyMapping.apply(element);
+                                 D data = keyDataMap.get(key);
+                                 elementDataMap.put(element, data);
+                                 if (useCache && data != null) {
+                                     putToCache(elementIdentifierExtractor.apply(element), data);
+                                 }
+                             });
+            }
+            flushCache();
+        }
+    }
+
     @Slf4j
     public static class ObjectRelationMatcherEvent<E, I, C extends Collection<I>, D, K> {
 
         /**
          * 查询新集合成功
-         * @param identifierCollection 标识集合
+         * @param identifierCollection 标识集合 分批查询时为这一批的标识 多次单个查询时为这一次的标识
          * @param count 重试次数 0表示首次查询未重试
          * @param dataCollection 查询到的数据
          */
@@ -1058,9 +2593,18 @@ public final class ObjectRelationMatcher<E, I, C extends Collection<I>, D, K> {
             }
         }
 
+        /**
+         * 分批查询时确定了批量大小
+         * @param batchSize 每批的标识数量 使用自适应的批量大小时为当前调整后的批量大小
+         * @param batchCount 批次的数量
+         */
+        public void onBatchPartitioned(int batchSize, int batchCount) {
+            log.debug("orm query partitioned into {} batches, batch size is {}", batchCount, batchSize);
+        }
+
         /**
          * 查询新集合发生异常
-         * @param identifierCollection 标识集合
+         * @param identifierCollection 标识集合 分批查询时为这一批的标识 多次单个查询时为这一次的标识
          * @param count 重试次数 0表示首次查询未重试
          * @param e 异常信息
          */
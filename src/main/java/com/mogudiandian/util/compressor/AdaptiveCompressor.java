@@ -0,0 +1,348 @@
+package com.mogudiandian.util.compressor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应的压缩器 线程安全 <br/>
+ * 按照数据的大小和可压缩性选择压缩算法：
+ * <ul>
+ *     <li>小于最小压缩大小的数据不压缩 压缩小数据浪费CPU 结果还可能比原始数据大</li>
+ *     <li>抽样计算字节的熵 熵接近8（例如JPEG、已经压缩过的数据、加密的数据）的数据不压缩 熵只反映字节的分布 整块重复的随机数据也会被当作不可压缩</li>
+ *     <li>中等大小的数据使用snappy 延迟低</li>
+ *     <li>大数据使用zstd 压缩比高</li>
+ *     <li>压缩后没有变小的数据也不压缩</li>
+ * </ul>
+ * 压缩后的数据的第一个字节是压缩算法的ID（见{@link CompressionType#getId()}） 之后是压缩算法本身的数据 <br/>
+ * 按照数据的类别统计压缩比 用于调整阈值 <br/>
+ * 只支持byte[]和ByteBuffer 不支持流式压缩（不是{@link StreamingCompressor}） 按照数据选择算法需要先看到全部的数据
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class AdaptiveCompressor implements BoundedCompressor {
+
+    /**
+     * 默认的最小压缩大小
+     */
+    public static final int DEFAULT_MIN_COMPRESS_SIZE = 256;
+
+    /**
+     * 默认的大数据的大小
+     */
+    public static final int DEFAULT_LARGE_SIZE = 64 * 1024;
+
+    /**
+     * 标记压缩算法的长度
+     */
+    private static final int MARKER_SIZE = 1;
+
+    /**
+     * 计算熵时抽样的段数 分散在整个数据中 避免只看到数据的头
+     */
+    private static final int SAMPLE_SEGMENTS = 8;
+
+    /**
+     * 计算熵时每段抽样的长度
+     */
+    private static final int SAMPLE_SEGMENT_SIZE = 512;
+
+    /**
+     * 熵（比特/字节）超过这个值时认为数据不可压缩 随机数据抽样4KB计算的熵约为7.95
+     */
+    private static final double MAX_ENTROPY = 7.5;
+
+    /**
+     * 数据的类别
+     */
+    public enum PayloadClass {
+        /**
+         * 小于最小压缩大小 不压缩
+         */
+        TINY,
+
+        /**
+         * 抽样判断为不可压缩 不压缩
+         */
+        INCOMPRESSIBLE,
+
+        /**
+         * 中等大小 使用snappy
+         */
+        MEDIUM,
+
+        /**
+         * 大数据 使用zstd
+         */
+        LARGE;
+    }
+
+    /**
+     * 最小压缩大小
+     */
+    private final int minCompressSize;
+
+    /**
+     * 大数据的大小 不小于这个大小的数据使用zstd
+     */
+    private final int largeSize;
+
+    /**
+     * 中等大小的数据使用的压缩器
+     */
+    private final Compressor snappyCompressor = CompressorFactory.snappy();
+
+    /**
+     * 大数据使用的压缩器
+     */
+    private final Compressor zstdCompressor;
+
+    /**
+     * 每个类别的统计
+     */
+    private final Map<PayloadClass, Statistics> statistics = new EnumMap<>(PayloadClass.class);
+
+    public AdaptiveCompressor() {
+        this(DEFAULT_MIN_COMPRESS_SIZE, DEFAULT_LARGE_SIZE);
+    }
+
+    /**
+     * @param minCompressSize 最小压缩大小 小于这个大小的数据不压缩
+     * @param largeSize 大数据的大小 不小于这个大小的数据使用zstd
+     */
+    public AdaptiveCompressor(int minCompressSize, int largeSize) {
+        this(minCompressSize, largeSize, CompressorFactory.zstd());
+    }
+
+    /**
+     * @param minCompressSize 最小压缩大小 小于这个大小的数据不压缩
+     * @param largeSize 大数据的大小 不小于这个大小的数据使用zstd
+     * @param zstdCompressor 大数据使用的zstd压缩器（{@link ZstdCompressor}或{@link PureJavaZstdCompressor}） 可以指定压缩级别和字典
+     */
+    public AdaptiveCompressor(int minCompressSize, int largeSize, Compressor zstdCompressor) {
+        if (minCompressSize < 0) {
+            throw new IllegalArgumentException("minCompressSize must not be negative");
+        }
+        if (largeSize < minCompressSize) {
+            throw new IllegalArgumentException("largeSize must not be less than minCompressSize");
+        }
+        this.minCompressSize = minCompressSize;
+        this.largeSize = largeSize;
+        this.zstdCompressor = Objects.requireNonNull(zstdCompressor, "zstd压缩器不能为空");
+        for (PayloadClass payloadClass : PayloadClass.values()) {
+            statistics.put(payloadClass, new Statistics());
+        }
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        PayloadClass payloadClass = classify(bytes);
+        byte[] compressed;
+        if (payloadClass == PayloadClass.MEDIUM) {
+            compressed = compress(bytes, CompressionType.SNAPPY, snappyCompressor);
+        } else if (payloadClass == PayloadClass.LARGE) {
+            compressed = compress(bytes, CompressionType.ZSTD, zstdCompressor);
+        } else {
+            compressed = store(bytes);
+        }
+        statistics.get(payloadClass).record(bytes.length, compressed.length);
+        return compressed;
+    }
+
+    /**
+     * 判断数据的类别
+     * @param bytes 数据
+     * @return 类别
+     */
+    private PayloadClass classify(byte[] bytes) {
+        if (bytes.length < minCompressSize) {
+            return PayloadClass.TINY;
+        }
+        if (entropy(bytes) > MAX_ENTROPY) {
+            return PayloadClass.INCOMPRESSIBLE;
+        }
+        return bytes.length < largeSize ? PayloadClass.MEDIUM : PayloadClass.LARGE;
+    }
+
+    /**
+     * 压缩 压缩后没有变小时不压缩
+     * @param bytes 数据
+     * @param type 压缩算法
+     * @param compressor 压缩器
+     * @return 压缩后的数据
+     */
+    private static byte[] compress(byte[] bytes, CompressionType type, Compressor compressor) {
+        if (!(compressor instanceof BoundedCompressor)) {
+            // 不能事先计算最大长度时先压缩 再复制到标记之后
+            byte[] compressed = compressor.compress(bytes);
+            if (compressed.length >= bytes.length) {
+                return store(bytes);
+            }
+            byte[] buffer = new byte[MARKER_SIZE + compressed.length];
+            buffer[0] = (byte) type.getId();
+            System.arraycopy(compressed, 0, buffer, MARKER_SIZE, compressed.length);
+            return buffer;
+        }
+        // 直接压缩到标记之后 不需要再复制一次
+        byte[] buffer = new byte[MARKER_SIZE + ((BoundedCompressor) compressor).maxCompressedLength(bytes.length)];
+        buffer[0] = (byte) type.getId();
+        int size = compressor.compress(ByteBuffer.wrap(bytes), ByteBuffer.wrap(buffer, MARKER_SIZE, buffer.length - MARKER_SIZE));
+        if (size >= bytes.length) {
+            return store(bytes);
+        }
+        return Arrays.copyOf(buffer, MARKER_SIZE + size);
+    }
+
+    /**
+     * 不压缩 只加上标记
+     * @param bytes 数据
+     * @return 加上标记的数据
+     */
+    private static byte[] store(byte[] bytes) {
+        byte[] buffer = new byte[MARKER_SIZE + bytes.length];
+        buffer[0] = (byte) CompressionType.NONE.getId();
+        System.arraycopy(bytes, 0, buffer, MARKER_SIZE, bytes.length);
+        return buffer;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes.length < MARKER_SIZE) {
+            throw new IllegalArgumentException("missing compression type marker");
+        }
+        CompressionType type = CompressionType.of(bytes[0] & 0xff);
+        if (type == CompressionType.NONE) {
+            return Arrays.copyOfRange(bytes, MARKER_SIZE, bytes.length);
+        }
+        byte[] compressed = Arrays.copyOfRange(bytes, MARKER_SIZE, bytes.length);
+        if (type == CompressionType.SNAPPY) {
+            return snappyCompressor.decompress(compressed);
+        }
+        if (type == CompressionType.ZSTD) {
+            return zstdCompressor.decompress(compressed);
+        }
+        throw new IllegalArgumentException("unsupported compression type " + (type != null ? type : (bytes[0] & 0xff)));
+    }
+
+    /**
+     * 压缩后没有变小时不压缩 所以最多比原始数据多一个标记
+     * @param length 压缩前的长度
+     * @return 压缩后的最大长度
+     */
+    @Override
+    public int maxCompressedLength(int length) {
+        return Math.addExact(MARKER_SIZE, length);
+    }
+
+    /**
+     * 抽样计算字节的香农熵
+     * @param bytes 数据
+     * @return 熵 单位为比特/字节 0-8
+     */
+    static double entropy(byte[] bytes) {
+        int[] counts = new int[256];
+        int total;
+        if (bytes.length <= SAMPLE_SEGMENTS * SAMPLE_SEGMENT_SIZE) {
+            for (byte b : bytes) {
+                counts[b & 0xff]++;
+            }
+            total = bytes.length;
+        } else {
+            // 均匀分布的若干段 每段是连续的字节
+            long stride = (bytes.length - SAMPLE_SEGMENT_SIZE) / (SAMPLE_SEGMENTS - 1);
+            for (int i = 0; i < SAMPLE_SEGMENTS; i++) {
+                int offset = (int) (stride * i);
+                for (int j = offset; j < offset + SAMPLE_SEGMENT_SIZE; j++) {
+                    counts[bytes[j] & 0xff]++;
+                }
+            }
+            total = SAMPLE_SEGMENTS * SAMPLE_SEGMENT_SIZE;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * 获取类别的统计
+     * @param payloadClass 类别
+     * @return 统计
+     */
+    public Statistics getStatistics(PayloadClass payloadClass) {
+        return statistics.get(payloadClass);
+    }
+
+    public int getMinCompressSize() {
+        return minCompressSize;
+    }
+
+    public int getLargeSize() {
+        return largeSize;
+    }
+
+    /**
+     * 一个类别的压缩统计 线程安全
+     */
+    public static final class Statistics {
+
+        /**
+         * 压缩的次数
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * 压缩前的字节数
+         */
+        private final LongAdder originalBytes = new LongAdder();
+
+        /**
+         * 压缩后的字节数（包括标记）
+         */
+        private final LongAdder compressedBytes = new LongAdder();
+
+        private void record(int originalLength, int compressedLength) {
+            count.increment();
+            originalBytes.add(originalLength);
+            compressedBytes.add(compressedLength);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getOriginalBytes() {
+            return originalBytes.sum();
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes.sum();
+        }
+
+        /**
+         * 压缩比 压缩后的字节数 / 压缩前的字节数 越小越好
+         * @return 压缩比 没有数据时为1
+         */
+        public double getRatio() {
+            long original = getOriginalBytes();
+            return original == 0 ? 1 : (double) getCompressedBytes() / original;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{count=" + getCount() + ", originalBytes=" + getOriginalBytes() + ", compressedBytes=" + getCompressedBytes() + ", ratio=" + getRatio() + '}';
+        }
+    }
+
+}
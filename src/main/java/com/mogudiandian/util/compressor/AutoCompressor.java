@@ -0,0 +1,280 @@
+package com.mogudiandian.util.compressor;
+
+import com.github.luben.zstd.Zstd;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 自动识别压缩格式的压缩器 线程安全 <br/>
+ * 压缩时写入{@link FramedCompressor}的帧 解压时按照开头的魔数识别格式并选择压缩器：
+ * <ul>
+ *     <li>{@link FramedCompressor}的帧（包括不压缩的帧） 按照帧头中的压缩算法解压 按照原始长度刚好分配结果</li>
+ *     <li>gzip（1f 8b）</li>
+ *     <li>zstd（28 b5 2f fd）</li>
+ *     <li>snappy的framing格式（ff 06 00 00 73 4e 61 50 70 59） 即{@link SnappyCompressor}流式压缩的结果</li>
+ *     <li>lz4的frame格式（04 22 4d 18）</li>
+ *     <li>其他数据交给兜底的压缩器 例如没有魔数的snappy的block格式 没有兜底的压缩器时抛出异常</li>
+ * </ul>
+ * 所以更换压缩算法时 只需要修改压缩使用的算法 之前用其他算法压缩的数据仍然可以解压 <br/>
+ * 流式压缩直接使用压缩算法本身的流（gzip、zstd、snappy、lz4的流都带有魔数） 不写入帧头 <br/>
+ * 注意：流式解压{@link FramedCompressor}的帧（即{@link #compress(byte[])}的结果）时 会把整个帧读到内存中再解压 内存占用不是固定的 <br/>
+ * 帧中的数据是压缩器的byte[]格式 例如snappy、lz4的block格式 不能用压缩算法本身的流解压 所以需要限制内存时 应该用{@link #wrap(OutputStream)}流式压缩 <br/>
+ * 流式压缩和解压需要对应的压缩器是{@link StreamingCompressor} 内置的压缩器都是 自定义的压缩器不是时抛出IllegalStateException <br/>
+ * 压缩算法为{@link CompressionType#NONE}时不支持流式压缩 不压缩的流没有魔数 解压时无法识别 同样抛出IllegalStateException
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class AutoCompressor implements StreamingCompressor {
+
+    /**
+     * gzip的魔数
+     */
+    private static final byte[] GZIP_MAGIC = {0x1f, (byte) 0x8b};
+
+    /**
+     * zstd的魔数
+     */
+    private static final byte[] ZSTD_MAGIC = {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd};
+
+    /**
+     * snappy的framing格式的魔数（stream identifier块）
+     */
+    private static final byte[] SNAPPY_FRAMED_MAGIC = {(byte) 0xff, 0x06, 0x00, 0x00, 0x73, 0x4e, 0x61, 0x50, 0x70, 0x59};
+
+    /**
+     * lz4的frame格式的魔数
+     */
+    private static final byte[] LZ4_FRAME_MAGIC = {0x04, 0x22, 0x4d, 0x18};
+
+    /**
+     * 识别格式需要读取的最大长度
+     */
+    private static final int MAX_MAGIC_SIZE = Math.max(FramedCompressor.HEADER_SIZE, SNAPPY_FRAMED_MAGIC.length);
+
+    /**
+     * 压缩使用的压缩器
+     */
+    private final FramedCompressor framedCompressor;
+
+    /**
+     * 解压使用的压缩器 没有指定的压缩算法使用默认配置的压缩器
+     */
+    private final ConcurrentMap<CompressionType, Compressor> compressors = new ConcurrentHashMap<>();
+
+    /**
+     * 无法识别格式时使用的压缩器 可以为null
+     */
+    private final Compressor fallback;
+
+    /**
+     * 使用默认配置的zstd压缩
+     */
+    public AutoCompressor() {
+        this(new FramedCompressor(CompressionType.ZSTD));
+    }
+
+    /**
+     * @param framedCompressor 压缩使用的压缩器 它的压缩器也用于解压相同算法的数据
+     */
+    public AutoCompressor(FramedCompressor framedCompressor) {
+        this(framedCompressor, null, null);
+    }
+
+    /**
+     * @param framedCompressor 压缩使用的压缩器 它的压缩器也用于解压相同算法的数据
+     * @param compressors 解压各个压缩算法的数据使用的压缩器 例如带有字典的zstd压缩器 可以为null
+     * @param fallback 无法识别格式时使用的压缩器 可以为null
+     * @throws IllegalArgumentException 解压使用的压缩器和压缩算法不一致
+     */
+    public AutoCompressor(FramedCompressor framedCompressor, Map<CompressionType, Compressor> compressors, Compressor fallback) {
+        this.framedCompressor = Objects.requireNonNull(framedCompressor, "压缩器不能为空");
+        this.compressors.put(framedCompressor.getType(), framedCompressor.getCompressor());
+        if (compressors != null) {
+            compressors.forEach((type, compressor) -> {
+                if (!type.supports(compressor)) {
+                    throw new IllegalArgumentException("compressor " + compressor.getClass().getName() + " does not read the " + type + " format");
+                }
+                this.compressors.put(type, compressor);
+            });
+        }
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        return framedCompressor.compress(bytes);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (FramedCompressor.isFrame(bytes, bytes.length)) {
+            FramedCompressor.Frame frame = FramedCompressor.Frame.read(bytes);
+            return frame.decompress(bytes, compressorOf(frame.type));
+        }
+        if (startsWith(bytes, bytes.length, GZIP_MAGIC)) {
+            return compressorOf(CompressionType.GZIP).decompress(bytes);
+        }
+        if (startsWith(bytes, bytes.length, ZSTD_MAGIC)) {
+            return compressorOf(CompressionType.ZSTD).decompress(bytes);
+        }
+        if (startsWith(bytes, bytes.length, SNAPPY_FRAMED_MAGIC)) {
+            return decompressStream(CompressionType.SNAPPY, bytes);
+        }
+        if (startsWith(bytes, bytes.length, LZ4_FRAME_MAGIC)) {
+            return decompressStream(CompressionType.LZ4, bytes);
+        }
+        if (fallback != null) {
+            return fallback.decompress(bytes);
+        }
+        throw new IllegalArgumentException("unknown compression format");
+    }
+
+    /**
+     * 解压后的长度 用于预先分配解压的目标空间
+     * @param bytes 压缩后的数据
+     * @return 帧中记录的原始长度或者zstd数据帧中记录的原始长度 没有记录时为-1
+     */
+    public int decompressedLength(byte[] bytes) {
+        if (FramedCompressor.isFrame(bytes, bytes.length)) {
+            return FramedCompressor.Frame.read(bytes).length;
+        }
+        if (startsWith(bytes, bytes.length, ZSTD_MAGIC)) {
+            // 没有记录时native返回0 纯Java返回-1
+            long size = CompressorFactory.isNativeZstdAvailable() ? Zstd.decompressedSize(bytes) : ZstdDecompressor.getDecompressedSize(bytes, 0, bytes.length);
+            return size > 0 && size <= Integer.MAX_VALUE ? (int) size : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * 使用压缩算法本身的流 不写入帧头
+     * @param out 压缩后的数据写入的流
+     * @return 写入压缩前的数据的流
+     * @throws IOException 写入out失败
+     * @throws IllegalStateException 压缩算法为{@link CompressionType#NONE}或者压缩器不支持流式压缩
+     */
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        if (framedCompressor.getType() == CompressionType.NONE) {
+            // 不压缩的流没有魔数 解压时无法识别
+            throw new IllegalStateException("NONE compression does not support streaming, an uncompressed stream has no magic to detect it");
+        }
+        return streaming(framedCompressor.getType(), framedCompressor.getCompressor()).wrap(out);
+    }
+
+    /**
+     * 按照流开头的魔数识别格式 压缩算法本身的流只缓冲固定大小的数据 <br/>
+     * {@link FramedCompressor}的帧会把in中剩余的数据全部读到内存中 解压后的数据也全部在内存中 内存占用和数据的大小成正比
+     * @param in 压缩后的数据的流
+     * @return 读取解压后的数据的流
+     * @throws IOException 读取in失败
+     */
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(in, MAX_MAGIC_SIZE);
+        byte[] header = new byte[MAX_MAGIC_SIZE];
+        int length = IOUtils.read(pushbackInputStream, header);
+        pushbackInputStream.unread(header, 0, length);
+        if (FramedCompressor.isFrame(header, length)) {
+            byte[] decompressed = decompress(IOUtils.toByteArray(pushbackInputStream));
+            return new ByteArrayInputStream(decompressed) {
+                @Override
+                public void close() throws IOException {
+                    pushbackInputStream.close();
+                }
+            };
+        }
+        if (startsWith(header, length, GZIP_MAGIC)) {
+            return streamingCompressorOf(CompressionType.GZIP).wrap(pushbackInputStream);
+        }
+        if (startsWith(header, length, ZSTD_MAGIC)) {
+            return streamingCompressorOf(CompressionType.ZSTD).wrap(pushbackInputStream);
+        }
+        if (startsWith(header, length, SNAPPY_FRAMED_MAGIC)) {
+            return streamingCompressorOf(CompressionType.SNAPPY).wrap(pushbackInputStream);
+        }
+        if (startsWith(header, length, LZ4_FRAME_MAGIC)) {
+            return streamingCompressorOf(CompressionType.LZ4).wrap(pushbackInputStream);
+        }
+        if (fallback != null) {
+            return streaming(null, fallback).wrap(pushbackInputStream);
+        }
+        throw new IllegalArgumentException("unknown compression format");
+    }
+
+    /**
+     * 按照流的格式解压 用于byte[]和流格式不同的压缩算法
+     * @param type 压缩算法
+     * @param bytes 流式压缩的数据
+     * @return 解压后的数据
+     */
+    private byte[] decompressStream(CompressionType type, byte[] bytes) {
+        try (InputStream in = streamingCompressorOf(type).wrap(new ByteArrayInputStream(bytes))) {
+            return IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 解压指定压缩算法的数据使用的压缩器
+     * @param type 压缩算法
+     * @return 压缩器
+     */
+    private Compressor compressorOf(CompressionType type) {
+        return compressors.computeIfAbsent(type, CompressionType::newCompressor);
+    }
+
+    /**
+     * 流式解压指定压缩算法的数据使用的压缩器
+     * @param type 压缩算法
+     * @return 压缩器
+     */
+    private StreamingCompressor streamingCompressorOf(CompressionType type) {
+        return streaming(type, compressorOf(type));
+    }
+
+    /**
+     * 检查压缩器是否支持流式压缩
+     * @param type 压缩算法 兜底的压缩器为null
+     * @param compressor 压缩器
+     * @return 支持流式压缩的压缩器
+     */
+    private static StreamingCompressor streaming(CompressionType type, Compressor compressor) {
+        if (compressor instanceof StreamingCompressor) {
+            return (StreamingCompressor) compressor;
+        }
+        throw new IllegalStateException((type != null ? type : "fallback") + " compressor " + compressor.getClass().getName() + " does not support streaming");
+    }
+
+    /**
+     * 数据是否以魔数开始
+     * @param bytes 数据
+     * @param length 数据的长度
+     * @param magic 魔数
+     * @return 是否以魔数开始
+     */
+    private static boolean startsWith(byte[] bytes, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (bytes[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public FramedCompressor getFramedCompressor() {
+        return framedCompressor;
+    }
+
+}
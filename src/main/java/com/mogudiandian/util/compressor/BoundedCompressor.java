@@ -0,0 +1,19 @@
+package com.mogudiandian.util.compressor;
+
+/**
+ * 可以事先计算压缩后的最大长度的压缩器 <br/>
+ * 可以按照最大长度预先分配目标空间 直接压缩到目标位置（例如帧头之后、ByteBuffer中） 不需要再复制一次
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public interface BoundedCompressor extends Compressor {
+
+    /**
+     * 压缩后的最大长度 用于预先分配压缩的目标空间
+     * @param length 压缩前的长度
+     * @return 压缩后的最大长度
+     */
+    int maxCompressedLength(int length);
+
+}
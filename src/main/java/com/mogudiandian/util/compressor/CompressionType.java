@@ -0,0 +1,110 @@
+package com.mogudiandian.util.compressor;
+
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 压缩算法 <br/>
+ * ID会写入压缩后的数据中 用于解压时选择压缩器 所以已有的ID不能修改
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public enum CompressionType {
+
+    /**
+     * 不压缩
+     */
+    NONE(0, () -> IdentityCompressor.INSTANCE, IdentityCompressor.class::isInstance, 1),
+
+    /**
+     * gzip
+     */
+    GZIP(1, GzipCompressor::new, GzipCompressor.class::isInstance, 1032),
+
+    /**
+     * snappy（block格式）
+     */
+    SNAPPY(2, CompressorFactory::snappy, compressor -> compressor instanceof SnappyCompressor || compressor instanceof PureJavaSnappyCompressor, 22),
+
+    /**
+     * zstd
+     */
+    ZSTD(3, CompressorFactory::zstd, compressor -> compressor instanceof ZstdCompressor || compressor instanceof PureJavaZstdCompressor, 0),
+
+    /**
+     * lz4（block格式）
+     */
+    LZ4(4, Lz4Compressor::new, compressor -> compressor instanceof Lz4Compressor && ((Lz4Compressor) compressor).getFormat() == Lz4Compressor.Format.BLOCK, 256);
+
+    /**
+     * ID -> 压缩算法
+     */
+    private static final CompressionType[] TYPES = new CompressionType[256];
+
+    static {
+        for (CompressionType type : values()) {
+            TYPES[type.id] = type;
+        }
+    }
+
+    /**
+     * 写入压缩后的数据中的ID 0-255
+     */
+    private final int id;
+
+    /**
+     * 创建默认配置的压缩器
+     */
+    private final Supplier<Compressor> factory;
+
+    /**
+     * 压缩器压缩后的数据是否是这个压缩算法的格式
+     */
+    private final Predicate<Compressor> format;
+
+    /**
+     * 最大压缩比 用于校验帧中记录的原始长度 0表示没有可用的上限 <br/>
+     * deflate约为1032 snappy的3字节的copy最多64字节 lz4约为255 zstd的RLE块可以达到上万 按照它分配没有意义
+     */
+    final long maxRatio;
+
+    CompressionType(int id, Supplier<Compressor> factory, Predicate<Compressor> format, long maxRatio) {
+        this.id = id;
+        this.factory = factory;
+        this.format = format;
+        this.maxRatio = maxRatio;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * 创建默认配置的压缩器 native库不能加载时使用纯Java实现（见{@link CompressorFactory}）
+     * @return 压缩器
+     */
+    public Compressor newCompressor() {
+        return factory.get();
+    }
+
+    /**
+     * 压缩器压缩后的数据是否是这个压缩算法的格式 即默认配置的压缩器是否可以解压 <br/>
+     * 例如lz4的frame格式的压缩器不是{@link #LZ4} 写入帧中的压缩算法和数据的格式不一致时 解压时会选错压缩器
+     * @param compressor 压缩器
+     * @return 是否是这个压缩算法的格式
+     */
+    public boolean supports(Compressor compressor) {
+        return format.test(compressor);
+    }
+
+    /**
+     * 根据ID获取压缩算法
+     * @param id ID
+     * @return 压缩算法 不存在时为null
+     */
+    public static CompressionType of(int id) {
+        return id >= 0 && id < TYPES.length ? TYPES[id] : null;
+    }
+
+}
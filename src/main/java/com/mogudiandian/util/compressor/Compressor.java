@@ -1,5 +1,7 @@
 package com.mogudiandian.util.compressor;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -59,4 +61,46 @@ public interface Compressor {
         return decompressString(bytes);
     }
 
+    /**
+     * 压缩src中position到limit之间的数据 写入dst的position开始的位置 <br/>
+     * 成功后src的position移动到limit dst的position移动到写入的数据之后 两者的limit不变 <br/>
+     * 默认先复制为byte[]再压缩 实现类可以直接在堆外内存之间压缩
+     * @param src 压缩前
+     * @param dst 压缩后 剩余空间不足时抛出BufferOverflowException 两者的position都不变 可以用{@link BoundedCompressor#maxCompressedLength(int)}预先分配
+     * @return 压缩后的字节数
+     * @since 1.0.25
+     */
+    default int compress(ByteBuffer src, ByteBuffer dst) {
+        byte[] bytes = new byte[src.remaining()];
+        src.duplicate().get(bytes);
+        byte[] compressed = compress(bytes);
+        if (compressed.length > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        dst.put(compressed);
+        src.position(src.limit());
+        return compressed.length;
+    }
+
+    /**
+     * 解压src中position到limit之间的数据 写入dst的position开始的位置 <br/>
+     * 成功后src的position移动到limit dst的position移动到写入的数据之后 两者的limit不变 <br/>
+     * 默认先复制为byte[]再解压 实现类可以直接在堆外内存之间解压
+     * @param src 解压前
+     * @param dst 解压后 剩余空间不足时抛出BufferOverflowException 两者的position都不变
+     * @return 解压后的字节数
+     * @since 1.0.25
+     */
+    default int decompress(ByteBuffer src, ByteBuffer dst) {
+        byte[] bytes = new byte[src.remaining()];
+        src.duplicate().get(bytes);
+        byte[] decompressed = decompress(bytes);
+        if (decompressed.length > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        dst.put(decompressed);
+        src.position(src.limit());
+        return decompressed.length;
+    }
+
 }
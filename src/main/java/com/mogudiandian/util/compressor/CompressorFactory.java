@@ -0,0 +1,86 @@
+package com.mogudiandian.util.compressor;
+
+import com.github.luben.zstd.Zstd;
+import lombok.extern.slf4j.Slf4j;
+import org.xerial.snappy.Snappy;
+
+/**
+ * 压缩器的工厂 <br/>
+ * native库可以加载时使用native实现（{@link ZstdCompressor}、{@link SnappyCompressor}） 否则使用纯Java实现（{@link PureJavaZstdCompressor}、{@link PureJavaSnappyCompressor}） <br/>
+ * 两种实现的数据格式相同 可以互相解压 所以不同环境的服务之间可以正常交换数据 <br/>
+ * 是否可以加载只在第一次使用时检查一次
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+@Slf4j
+public final class CompressorFactory {
+
+    private CompressorFactory() {}
+
+    /**
+     * 创建默认配置的zstd压缩器
+     * @return native库可以加载时为{@link ZstdCompressor} 否则为{@link PureJavaZstdCompressor}
+     */
+    public static Compressor zstd() {
+        return NativeZstd.AVAILABLE ? new ZstdCompressor() : new PureJavaZstdCompressor();
+    }
+
+    /**
+     * 创建snappy压缩器
+     * @return native库可以加载时为{@link SnappyCompressor} 否则为{@link PureJavaSnappyCompressor}
+     */
+    public static Compressor snappy() {
+        return NativeSnappy.AVAILABLE ? new SnappyCompressor() : new PureJavaSnappyCompressor();
+    }
+
+    /**
+     * zstd的native库是否可以加载
+     * @return 是否可以加载
+     */
+    public static boolean isNativeZstdAvailable() {
+        return NativeZstd.AVAILABLE;
+    }
+
+    /**
+     * snappy的native库是否可以加载
+     * @return 是否可以加载
+     */
+    public static boolean isNativeSnappyAvailable() {
+        return NativeSnappy.AVAILABLE;
+    }
+
+    /**
+     * 检查native库是否可以加载
+     * @param name 名称
+     * @param check 调用一次native方法 加载失败时抛出异常
+     * @return 是否可以加载
+     */
+    private static boolean check(String name, Runnable check) {
+        try {
+            check.run();
+            return true;
+        } catch (Throwable e) {
+            // 没有依赖时是NoClassDefFoundError 加载失败时是UnsatisfiedLinkError或者SnappyError
+            log.warn("{} native library is not available, fall back to pure java implementation", name, e);
+            return false;
+        }
+    }
+
+    /**
+     * 第一次使用时才检查zstd
+     */
+    private static final class NativeZstd {
+
+        private static final boolean AVAILABLE = check("zstd", () -> Zstd.compressBound(0));
+    }
+
+    /**
+     * 第一次使用时才检查snappy
+     */
+    private static final class NativeSnappy {
+
+        private static final boolean AVAILABLE = check("snappy", () -> Snappy.maxCompressedLength(0));
+    }
+
+}
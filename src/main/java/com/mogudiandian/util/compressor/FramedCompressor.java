@@ -0,0 +1,326 @@
+package com.mogudiandian.util.compressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * 带有帧头的压缩器 线程安全（使用的压缩器线程安全时） <br/>
+ * 压缩后的数据以帧头开始 记录了压缩算法和原始长度 所以不需要事先知道用的是哪个压缩器 解压时也可以刚好分配需要的大小（原始长度先按照最大压缩比校验 zstd除外） <br/>
+ * 帧的格式（多字节的整数都是大端序）：
+ * <pre>
+ *     魔数（4字节 0x89 'M' 'G' 'F'）
+ *     标识（1字节 最低位为1表示带有校验和 其他位保留为0）
+ *     压缩算法的ID（1字节 见{@link CompressionType#getId()}）
+ *     原始长度（4字节）
+ *     原始数据的crc32（4字节 带有校验和时才有）
+ *     压缩后的数据
+ * </pre>
+ * 配合{@link AutoCompressor}可以解压任意压缩算法的帧
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class FramedCompressor implements Compressor {
+
+    /**
+     * 魔数 第一个字节不是ASCII字符 和gzip、zstd、snappy的魔数都不同
+     */
+    private static final byte[] MAGIC = {(byte) 0x89, 'M', 'G', 'F'};
+
+    /**
+     * 帧头的长度 不包括校验和
+     */
+    static final int HEADER_SIZE = 10;
+
+    /**
+     * 原始长度不可信时 按照增长的缓冲区解压 缓冲区的初始大小
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * 校验和的长度
+     */
+    static final int CHECKSUM_SIZE = 4;
+
+    /**
+     * 标识位 带有校验和
+     */
+    static final int FLAG_CHECKSUM = 1;
+
+    /**
+     * 压缩算法
+     */
+    private final CompressionType type;
+
+    /**
+     * 压缩数据使用的压缩器
+     */
+    private final Compressor compressor;
+
+    /**
+     * 是否写入校验和
+     */
+    private final boolean checksum;
+
+    /**
+     * 使用压缩算法默认配置的压缩器 不写入校验和
+     * @param type 压缩算法
+     */
+    public FramedCompressor(CompressionType type) {
+        this(type, type.newCompressor(), false);
+    }
+
+    /**
+     * @param type 压缩算法 必须和compressor一致（见{@link CompressionType#supports}） 否则帧中记录的压缩算法和数据的格式不一致 无法解压
+     * @param compressor 压缩数据使用的压缩器
+     * @param checksum 是否写入原始数据的校验和 解压时校验
+     * @throws IllegalArgumentException 压缩器和压缩算法不一致
+     */
+    public FramedCompressor(CompressionType type, Compressor compressor, boolean checksum) {
+        this.type = Objects.requireNonNull(type, "压缩算法不能为空");
+        this.compressor = Objects.requireNonNull(compressor, "压缩器不能为空");
+        if (!type.supports(compressor)) {
+            throw new IllegalArgumentException("compressor " + compressor.getClass().getName() + " does not write the " + type + " format");
+        }
+        this.checksum = checksum;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        int headerSize = headerSize(checksum);
+        if (!(compressor instanceof BoundedCompressor)) {
+            // 不能事先计算最大长度时先压缩 再复制到帧头之后
+            byte[] compressed = compressor.compress(bytes);
+            byte[] buffer = new byte[headerSize + compressed.length];
+            System.arraycopy(compressed, 0, buffer, headerSize, compressed.length);
+            writeHeader(buffer, bytes);
+            return buffer;
+        }
+        // 直接压缩到帧头之后 不需要再复制一次
+        byte[] buffer = new byte[headerSize + ((BoundedCompressor) compressor).maxCompressedLength(bytes.length)];
+        ByteBuffer dst = ByteBuffer.wrap(buffer, headerSize, buffer.length - headerSize);
+        int size = compressor.compress(ByteBuffer.wrap(bytes), dst);
+        writeHeader(buffer, bytes);
+        return size + headerSize == buffer.length ? buffer : Arrays.copyOf(buffer, size + headerSize);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        Frame frame = Frame.read(bytes);
+        if (frame.type != type) {
+            throw new IllegalArgumentException("compression type mismatch, expected " + type + " but was " + frame.type);
+        }
+        return frame.decompress(bytes, compressor);
+    }
+
+    /**
+     * 写入帧头
+     * @param buffer 帧的缓冲区
+     * @param bytes 原始数据
+     */
+    private void writeHeader(byte[] buffer, byte[] bytes) {
+        System.arraycopy(MAGIC, 0, buffer, 0, MAGIC.length);
+        buffer[4] = (byte) (checksum ? FLAG_CHECKSUM : 0);
+        buffer[5] = (byte) type.getId();
+        writeInt(buffer, 6, bytes.length);
+        if (checksum) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            writeInt(buffer, HEADER_SIZE, (int) crc.getValue());
+        }
+    }
+
+    /**
+     * 是否以帧的魔数开始
+     * @param bytes 数据
+     * @param length 数据的长度
+     * @return 是否是帧
+     */
+    static boolean isFrame(byte[] bytes, int length) {
+        if (length < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int headerSize(boolean checksum) {
+        return checksum ? HEADER_SIZE + CHECKSUM_SIZE : HEADER_SIZE;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >> 24);
+        bytes[offset + 1] = (byte) (value >> 16);
+        bytes[offset + 2] = (byte) (value >> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    public CompressionType getType() {
+        return type;
+    }
+
+    public Compressor getCompressor() {
+        return compressor;
+    }
+
+    public boolean isChecksum() {
+        return checksum;
+    }
+
+    /**
+     * 解析后的帧头
+     */
+    static final class Frame {
+
+        /**
+         * 压缩算法
+         */
+        final CompressionType type;
+
+        /**
+         * 原始长度
+         */
+        final int length;
+
+        /**
+         * 是否带有校验和
+         */
+        private final boolean checksum;
+
+        /**
+         * 原始数据的crc32
+         */
+        private final int crc;
+
+        /**
+         * 压缩后的数据开始的位置
+         */
+        private final int offset;
+
+        private Frame(CompressionType type, int length, boolean checksum, int crc, int offset) {
+            this.type = type;
+            this.length = length;
+            this.checksum = checksum;
+            this.crc = crc;
+            this.offset = offset;
+        }
+
+        /**
+         * 解析帧头
+         * @param bytes 帧
+         * @return 帧头
+         */
+        static Frame read(byte[] bytes) {
+            if (!isFrame(bytes, bytes.length)) {
+                throw new IllegalArgumentException("not a compressed frame");
+            }
+            int flags = bytes[4] & 0xff;
+            if ((flags & ~FLAG_CHECKSUM) != 0) {
+                throw new IllegalArgumentException("unsupported frame flags " + flags);
+            }
+            CompressionType type = CompressionType.of(bytes[5] & 0xff);
+            if (type == null) {
+                throw new IllegalArgumentException("unknown compression type " + (bytes[5] & 0xff));
+            }
+            int length = readInt(bytes, 6);
+            if (length < 0) {
+                throw new IllegalArgumentException("invalid original length " + Integer.toUnsignedString(length));
+            }
+            boolean checksum = (flags & FLAG_CHECKSUM) != 0;
+            int offset = headerSize(checksum);
+            if (bytes.length < offset) {
+                throw new IllegalArgumentException("truncated frame header");
+            }
+            return new Frame(type, length, checksum, checksum ? readInt(bytes, HEADER_SIZE) : 0, offset);
+        }
+
+        /**
+         * 解压帧中的数据 <br/>
+         * 压缩算法有最大压缩比时 先按照它校验原始长度 再按照原始长度分配结果 直接解压到结果中 <br/>
+         * 没有可用的上限时（zstd）原始长度不能用来分配 按照增长的缓冲区解压 最多读取原始长度加1个字节 再和原始长度比较 <br/>
+         * 这样损坏的帧头不会导致分配过大的数组
+         * @param bytes 帧
+         * @param compressor 解压使用的压缩器
+         * @return 原始数据
+         */
+        byte[] decompress(byte[] bytes, Compressor compressor) {
+            int compressedLength = bytes.length - offset;
+            byte[] output;
+            int size;
+            if (type.maxRatio > 0) {
+                if (length > compressedLength * type.maxRatio + 16) {
+                    throw new IllegalArgumentException("original length " + length + " exceeds the maximum " + type + " ratio for " + compressedLength + " compressed bytes");
+                }
+                output = new byte[length];
+                try {
+                    size = compressor.decompress(ByteBuffer.wrap(bytes, offset, compressedLength), ByteBuffer.wrap(output));
+                } catch (BufferOverflowException e) {
+                    throw new IllegalArgumentException("decompressed data is longer than the original length " + length);
+                }
+            } else if (compressor instanceof StreamingCompressor) {
+                output = decompressStream(bytes, (StreamingCompressor) compressor);
+                size = output.length;
+            } else {
+                output = compressor.decompress(Arrays.copyOfRange(bytes, offset, bytes.length));
+                size = output.length;
+            }
+            if (size != length) {
+                throw new IllegalArgumentException("decompressed length " + size + " does not match the original length " + length);
+            }
+            if (checksum) {
+                CRC32 actual = new CRC32();
+                actual.update(output, 0, size);
+                if ((int) actual.getValue() != crc) {
+                    throw new IllegalArgumentException("checksum mismatch");
+                }
+            }
+            return output;
+        }
+
+        /**
+         * 按照增长的缓冲区流式解压 缓冲区的大小不超过原始长度 读满后再多读一个字节判断是否比原始长度长
+         * @param bytes 帧
+         * @param compressor 解压使用的压缩器
+         * @return 原始数据 长度和原始长度不同时由调用方校验
+         */
+        private byte[] decompressStream(byte[] bytes, StreamingCompressor compressor) {
+            byte[] output = new byte[Math.min(length, INITIAL_BUFFER_SIZE)];
+            int size = 0;
+            try (InputStream in = compressor.wrap(new ByteArrayInputStream(bytes, offset, bytes.length - offset))) {
+                while (true) {
+                    if (size == output.length) {
+                        if (size == length) {
+                            if (in.read() != -1) {
+                                throw new IllegalArgumentException("decompressed data is longer than the original length " + length);
+                            }
+                            return output;
+                        }
+                        output = Arrays.copyOf(output, (int) Math.min(length, size * 2L));
+                    }
+                    int n = in.read(output, size, output.length - size);
+                    if (n < 0) {
+                        return Arrays.copyOf(output, size);
+                    }
+                    size += n;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
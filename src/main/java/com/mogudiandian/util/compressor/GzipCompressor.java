@@ -1,41 +1,364 @@
 package com.mogudiandian.util.compressor;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.*;
 
 /**
  * GZIP压缩器
+ * byte[]的压缩和解压复用资源池中的Deflater/Inflater和输出缓冲区 自行写入和解析gzip的头和尾 <br/>
+ * 压缩的结果和当前JDK中相同级别和策略的GZIPOutputStream完全一致（级别0除外 不压缩时存储块的划分不同） <br/>
+ * 头中的操作系统字段取自当前JDK的GZIPOutputStream（JDK 16之前是0 之后是255） 所以不同版本的JDK压缩的结果只有这一个字节不同 <br/>
+ * 解压支持GZIPInputStream支持的所有格式（包括多个gzip成员首尾相连、忽略最后不是gzip成员的数据） <br/>
+ * 可以设置压缩级别（0-9 -1为默认的6）和策略（{@link Deflater#DEFAULT_STRATEGY}、{@link Deflater#FILTERED}、{@link Deflater#HUFFMAN_ONLY}）
  * @author Joshua Sun
  * @since 1.0.0
  */
-public final class GzipCompressor implements Compressor {
+public final class GzipCompressor implements StreamingCompressor, BoundedCompressor {
 
-    public byte[] compress(byte[] bytes) {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
-            gzipOutputStream.write(bytes);
-            gzipOutputStream.finish();
-            return byteArrayOutputStream.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * 流式压缩和解压时的缓冲区大小
+     */
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    /**
+     * gzip的魔数
+     */
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    /**
+     * gzip头的长度 和GZIPOutputStream一致 不包含可选的字段
+     */
+    private static final int HEADER_SIZE = 10;
+
+    /**
+     * gzip头中的操作系统 和当前JDK的GZIPOutputStream一致
+     */
+    private static final byte OS = detectOs();
+
+    /**
+     * gzip尾的长度 crc32和原始长度
+     */
+    private static final int TRAILER_SIZE = 8;
+
+    /**
+     * deflate的最大压缩比
+     */
+    private static final long MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * gzip头中的标识位
+     */
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /**
+     * 压缩上下文 所有实例共享
+     */
+    private static final ResourcePool<DeflateContext> DEFLATE_CONTEXTS = new ResourcePool<>(DeflateContext::new, DeflateContext::close);
+
+    /**
+     * 解压上下文 所有实例共享
+     */
+    private static final ResourcePool<Inflater> INFLATERS = new ResourcePool<>(() -> new Inflater(true), Inflater::end);
+
+    /**
+     * 压缩级别
+     */
+    private final int level;
+
+    /**
+     * 压缩策略
+     */
+    private final int strategy;
+
+    /**
+     * 使用默认的压缩级别和策略
+     */
+    public GzipCompressor() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level 压缩级别 0-9 -1为默认
+     */
+    public GzipCompressor(int level) {
+        this(level, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * @param level 压缩级别 0-9 -1为默认
+     * @param strategy 压缩策略
+     */
+    public GzipCompressor(int level, int strategy) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 0 and 9 or -1");
+        }
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("unknown strategy " + strategy);
         }
+        this.level = level;
+        this.strategy = strategy;
+    }
+
+    public byte[] compress(byte[] bytes) {
+        return DEFLATE_CONTEXTS.apply(context -> {
+            Deflater deflater = context.prepare(level, strategy);
+            byte[] buffer = context.buffer.get(maxCompressedLength(bytes.length));
+            // 头 魔数、压缩方法（deflate）、标识、修改时间、额外标识、操作系统 都和GZIPOutputStream一致
+            buffer[0] = (byte) GZIP_MAGIC;
+            buffer[1] = (byte) (GZIP_MAGIC >> 8);
+            buffer[2] = Deflater.DEFLATED;
+            Arrays.fill(buffer, 3, HEADER_SIZE - 1, (byte) 0);
+            buffer[HEADER_SIZE - 1] = OS;
+            int size = HEADER_SIZE;
+
+            deflater.setInput(bytes);
+            deflater.finish();
+            // 缓冲区的大小是最大长度 正常情况下一次就能压缩完
+            while (!deflater.finished()) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+
+            // 尾 crc32和原始长度 小端序
+            if (buffer.length - size < TRAILER_SIZE) {
+                buffer = Arrays.copyOf(buffer, size + TRAILER_SIZE);
+            }
+            CRC32 crc = context.crc;
+            crc.update(bytes, 0, bytes.length);
+            writeInt(buffer, size, (int) crc.getValue());
+            writeInt(buffer, size + 4, bytes.length);
+            return Arrays.copyOf(buffer, size + TRAILER_SIZE);
+        });
     }
 
     public byte[] decompress(byte[] bytes) {
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-             GZIPInputStream gzipInputStream = new GZIPInputStream(byteArrayInputStream);
-             ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-            byte[] buf = new byte[4096];
-            for (int len; (len = gzipInputStream.read(buf)) >= 0; ) {
-                byteArrayOutputStream.write(buf, 0, len);
-            }
-            return byteArrayOutputStream.toByteArray();
+        return INFLATERS.apply(inflater -> {
+            try {
+                return inflate(inflater, bytes);
+            } catch (ZipException e) {
+                // 和之前通过GZIPInputStream解压时抛出的异常保持一致
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * 解压所有的gzip成员
+     * @param inflater 解压器
+     * @param bytes 压缩后的数据
+     * @return 解压后的数据
+     * @throws ZipException 数据格式错误
+     */
+    private static byte[] inflate(Inflater inflater, byte[] bytes) throws ZipException {
+        // 最后一个成员的尾中记录了原始长度（对2^32取模） 只有一个成员时可以刚好分配需要的大小
+        // deflate的压缩比不会超过1032 超过的说明数据有问题 不能按照它分配
+        int capacity = bytes.length >= HEADER_SIZE + TRAILER_SIZE ? readInt(bytes, bytes.length - 4) : 0;
+        if (capacity <= 0 || capacity > bytes.length * MAX_DEFLATE_RATIO) {
+            capacity = (int) Math.min(Math.max(bytes.length * 4L, 64), Integer.MAX_VALUE - 8);
+        }
+        byte[] output = new byte[capacity];
+        int size = 0;
+        int offset = readHeader(bytes, 0);
+        CRC32 crc = new CRC32();
+        do {
+            inflater.reset();
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            int memberStart = size;
+            try {
+                while (!inflater.finished()) {
+                    if (size == output.length) {
+                        output = Arrays.copyOf(output, Math.max(output.length * 2, 64));
+                    }
+                    int n = inflater.inflate(output, size, output.length - size);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new ZipException("Unexpected end of ZLIB input stream");
+                    }
+                    size += n;
+                }
+            } catch (DataFormatException e) {
+                String message = e.getMessage();
+                throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+            }
+            offset = bytes.length - inflater.getRemaining();
+            if (bytes.length - offset < TRAILER_SIZE) {
+                throw new ZipException("Unexpected end of ZLIB input stream");
+            }
+            crc.reset();
+            crc.update(output, memberStart, size - memberStart);
+            if (readInt(bytes, offset) != (int) crc.getValue() || readInt(bytes, offset + 4) != size - memberStart) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            offset = nextHeader(bytes, offset + TRAILER_SIZE);
+        } while (offset >= 0);
+        return size == output.length ? output : Arrays.copyOf(output, size);
+    }
+
+    /**
+     * 解析下一个gzip成员的头 <br/>
+     * 和GZIPInputStream一致 后面的数据不是合法的gzip头时忽略剩余的数据
+     * @param bytes 压缩后的数据
+     * @param offset 上一个成员结束的位置
+     * @return 下一个成员的压缩数据开始的位置 没有下一个成员时返回-1
+     */
+    private static int nextHeader(byte[] bytes, int offset) {
+        if (offset == bytes.length) {
+            return -1;
+        }
+        try {
+            return readHeader(bytes, offset);
+        } catch (ZipException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析gzip头
+     * @param bytes 压缩后的数据
+     * @param offset gzip头的位置
+     * @return 压缩数据开始的位置
+     * @throws ZipException 格式错误
+     */
+    private static int readHeader(byte[] bytes, int offset) throws ZipException {
+        if (bytes.length - offset < HEADER_SIZE || readShort(bytes, offset) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (bytes[offset + 2] != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = bytes[offset + 3] & 0xff;
+        int position = offset + HEADER_SIZE;
+        try {
+            if ((flags & FEXTRA) != 0) {
+                position += 2 + readShort(bytes, position);
+            }
+            if ((flags & FNAME) != 0) {
+                while (bytes[position++] != 0) {
+                    // 跳过文件名
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (bytes[position++] != 0) {
+                    // 跳过注释
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                CRC32 crc = new CRC32();
+                crc.update(bytes, offset, position - offset);
+                if (readShort(bytes, position) != ((int) crc.getValue() & 0xffff)) {
+                    throw new ZipException("Corrupt GZIP header");
+                }
+                position += 2;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ZipException("Unexpected end of ZLIB input stream");
+        }
+        if (position > bytes.length) {
+            throw new ZipException("Unexpected end of ZLIB input stream");
+        }
+        return position;
+    }
+
+    /**
+     * 取当前JDK的GZIPOutputStream写入的操作系统字段
+     * @return 操作系统
+     */
+    private static byte detectOs() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            // 创建时就写入了头
+            new GZIPOutputStream(out).close();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return out.toByteArray()[HEADER_SIZE - 1];
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return readShort(bytes, offset) | (readShort(bytes, offset + 2) << 16);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, STREAM_BUFFER_SIZE) {
+            {
+                // 还没有写入数据 修改参数不影响已经写入的gzip头
+                def.setLevel(level);
+                def.setStrategy(strategy);
+            }
+        };
+    }
+
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        return new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+    }
+
+    /**
+     * 和zlib的deflateBound一致（不依赖压缩级别的保守估算） 再加上gzip的头和尾
+     * @param length 压缩前的长度
+     * @return 压缩后的最大长度
+     */
+    @Override
+    public int maxCompressedLength(int length) {
+        return Math.toIntExact(length + ((length + 7L) >> 3) + ((length + 63L) >> 6) + 5 + HEADER_SIZE + TRAILER_SIZE);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * 复用的压缩器、crc32和输出缓冲区
+     */
+    private static final class DeflateContext {
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        private final CRC32 crc = new CRC32();
+
+        private final ScratchBuffer buffer = new ScratchBuffer();
+
+        /**
+         * 重置状态并设置本次压缩的参数
+         * @param level 压缩级别
+         * @param strategy 压缩策略
+         * @return 压缩器
+         */
+        private Deflater prepare(int level, int strategy) {
+            deflater.reset();
+            deflater.setLevel(level);
+            deflater.setStrategy(strategy);
+            crc.reset();
+            return deflater;
+        }
+
+        private void close() {
+            deflater.end();
+        }
     }
 
 }
@@ -0,0 +1,65 @@
+package com.mogudiandian.util.compressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 不压缩的压缩器 用于不值得压缩的数据 数据原样写入和读出
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+final class IdentityCompressor implements StreamingCompressor, BoundedCompressor {
+
+    static final IdentityCompressor INSTANCE = new IdentityCompressor();
+
+    private IdentityCompressor() {}
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        return bytes.clone();
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        return bytes.clone();
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return out;
+    }
+
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        return in;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length;
+    }
+
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        return copy(src, dst);
+    }
+
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        return copy(src, dst);
+    }
+
+    private static int copy(ByteBuffer src, ByteBuffer dst) {
+        int length = src.remaining();
+        if (length > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        dst.put(src);
+        return length;
+    }
+
+}
@@ -0,0 +1,324 @@
+package com.mogudiandian.util.compressor;
+
+import net.jpountz.lz4.*;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * LZ4压缩器 解压速度很快 适合延迟敏感的场景（例如RPC）
+ * (C) https://github.com/lz4/lz4
+ * (Java-JNI/Java-Port) https://github.com/lz4/lz4-java
+ * 优先使用JNI实现 不能加载native库时自动使用纯Java实现 两者的数据格式相同 <br/>
+ * 压缩级别为0时使用fast模式 1-17时使用HC（high compression）模式 级别越高压缩比越高 压缩越慢 解压速度都一样 <br/>
+ * byte[]和ByteBuffer可以选择两种格式：
+ * <ul>
+ *     <li>block：4字节的原始长度（小端序）加上LZ4的block 开销最小 和lz4-java的LZ4CompressorWithLength一致</li>
+ *     <li>frame：LZ4的frame格式（https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md） 可以和其他语言的lz4互通</li>
+ * </ul>
+ * 注意：流式压缩总是使用frame格式
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class Lz4Compressor implements StreamingCompressor, BoundedCompressor {
+
+    /**
+     * fast模式的压缩级别
+     */
+    public static final int FAST = 0;
+
+    /**
+     * HC模式的最大压缩级别
+     */
+    private static final int MAX_HC_LEVEL = 17;
+
+    /**
+     * block格式中原始长度的长度
+     */
+    private static final int LENGTH_SIZE = 4;
+
+    /**
+     * LZ4的最大压缩比约为255 超过的说明数据有问题 不能按照它分配
+     */
+    private static final long MAX_LZ4_RATIO = 256;
+
+    /**
+     * frame格式的块大小
+     */
+    private static final LZ4FrameOutputStream.BLOCKSIZE FRAME_BLOCK_SIZE = LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB;
+
+    /**
+     * frame格式的帧头的最大长度 魔数、FLG、BD、原始长度、校验
+     */
+    private static final int FRAME_HEADER_SIZE = 15;
+
+    /**
+     * 优先使用JNI实现
+     */
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+
+    /**
+     * 解压器没有状态 所有实例共享
+     */
+    private static final LZ4SafeDecompressor DECOMPRESSOR = FACTORY.safeDecompressor();
+
+    /**
+     * frame格式的校验
+     */
+    private static final XXHash32 HASH = XXHashFactory.fastestInstance().hash32();
+
+    /**
+     * block、frame格式
+     */
+    public enum Format {
+        /**
+         * 原始长度加上LZ4的block
+         */
+        BLOCK,
+
+        /**
+         * LZ4的frame格式
+         */
+        FRAME;
+    }
+
+    /**
+     * 压缩级别
+     */
+    private final int level;
+
+    /**
+     * 格式
+     */
+    private final Format format;
+
+    /**
+     * 压缩器 没有状态
+     */
+    private final LZ4Compressor compressor;
+
+    /**
+     * fast模式 block格式
+     */
+    public Lz4Compressor() {
+        this(FAST);
+    }
+
+    /**
+     * @param level 压缩级别 0为fast模式 1-17为HC模式
+     */
+    public Lz4Compressor(int level) {
+        this(level, Format.BLOCK);
+    }
+
+    /**
+     * @param level 压缩级别 0为fast模式 1-17为HC模式
+     * @param format byte[]和ByteBuffer的格式
+     */
+    public Lz4Compressor(int level, Format format) {
+        if (level < FAST || level > MAX_HC_LEVEL) {
+            throw new IllegalArgumentException("level must be between 0 and " + MAX_HC_LEVEL);
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("format must not be null");
+        }
+        this.level = level;
+        this.format = format;
+        this.compressor = level == FAST ? FACTORY.fastCompressor() : FACTORY.highCompressor(level);
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (format == Format.FRAME) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(maxCompressedLength(bytes.length));
+            // 记录原始长度 解压时可以刚好分配需要的大小
+            try (OutputStream frame = new LZ4FrameOutputStream(out, FRAME_BLOCK_SIZE, bytes.length, compressor, HASH,
+                    LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE, LZ4FrameOutputStream.FLG.Bits.CONTENT_SIZE)) {
+                frame.write(bytes);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return out.toByteArray();
+        }
+        byte[] buffer = new byte[LENGTH_SIZE + compressor.maxCompressedLength(bytes.length)];
+        writeInt(buffer, bytes.length);
+        int size = compressor.compress(bytes, 0, bytes.length, buffer, LENGTH_SIZE, buffer.length - LENGTH_SIZE);
+        return Arrays.copyOf(buffer, LENGTH_SIZE + size);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (format == Format.FRAME) {
+            try {
+                return decompressFrames(bytes);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (bytes.length < LENGTH_SIZE) {
+            throw new LZ4Exception("Malformed input: missing original length");
+        }
+        byte[] output = new byte[originalLength(Integer.toUnsignedLong(readInt(bytes)), bytes.length - LENGTH_SIZE)];
+        int size = DECOMPRESSOR.decompress(bytes, LENGTH_SIZE, bytes.length - LENGTH_SIZE, output, 0, output.length);
+        if (size != output.length) {
+            throw new LZ4Exception("Malformed input: decompressed length " + size + " does not match the original length " + output.length);
+        }
+        return output;
+    }
+
+    /**
+     * 逐个解压frame格式的帧 <br/>
+     * 多帧的LZ4FrameInputStream不会解析帧中记录的原始长度 所以每个帧单独读取 记录了原始长度时按照它分配 校验方式和block格式相同
+     * @param bytes 一个或多个帧
+     * @return 所有帧的原始数据
+     * @throws IOException 数据有问题
+     */
+    private static byte[] decompressFrames(byte[] bytes) throws IOException {
+        ByteArrayInputStream src = new ByteArrayInputStream(bytes);
+        byte[] result = null;
+        ByteArrayOutputStream out = null;
+        do {
+            int compressedLength = src.available();
+            byte[] output;
+            try (LZ4FrameInputStream in = new LZ4FrameInputStream(src, DECOMPRESSOR, HASH, true)) {
+                if (in.isExpectedContentSizeDefined()) {
+                    output = new byte[originalLength(in.getExpectedContentSize(), compressedLength)];
+                    IOUtils.readFully(in, output);
+                    if (in.read() != -1) {
+                        throw new LZ4Exception("Malformed input: frame is longer than its content size " + output.length);
+                    }
+                } else {
+                    output = IOUtils.toByteArray(in);
+                }
+            }
+            if (result == null) {
+                result = output;
+            } else {
+                // 后面还有其他的帧
+                if (out == null) {
+                    out = new ByteArrayOutputStream(result.length + output.length);
+                    out.write(result);
+                }
+                out.write(output);
+            }
+        } while (src.available() > 0);
+        return out == null ? result : out.toByteArray();
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return new LZ4FrameOutputStream(out, FRAME_BLOCK_SIZE, -1L, compressor, HASH, LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
+    }
+
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        return new LZ4FrameInputStream(in, DECOMPRESSOR, HASH);
+    }
+
+    /**
+     * block格式为原始长度加上LZ4的最大长度 frame格式为帧头、每块的长度、不压缩的数据和结束标识
+     * @param length 压缩前的长度
+     * @return 压缩后的最大长度
+     */
+    @Override
+    public int maxCompressedLength(int length) {
+        if (format == Format.FRAME) {
+            long blockSize = 1 << (8 + 2 * FRAME_BLOCK_SIZE.getIndicator());
+            long blocks = (length + blockSize - 1) / blockSize;
+            return Math.toIntExact(FRAME_HEADER_SIZE + blocks * 4 + length + 4);
+        }
+        return Math.addExact(LENGTH_SIZE, compressor.maxCompressedLength(length));
+    }
+
+    /**
+     * block格式直接在src和dst之间压缩（堆内存和堆外内存都可以） frame格式或者剩余空间小于maxCompressedLength时先复制
+     * @param src 压缩前
+     * @param dst 压缩后
+     * @return 压缩后的字节数
+     */
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        if (format == Format.FRAME || dst.remaining() < maxCompressedLength(src.remaining())) {
+            return StreamingCompressor.super.compress(src, dst);
+        }
+        int length = src.remaining();
+        int offset = dst.position();
+        int size = compressor.compress(src, src.position(), length, dst, offset + LENGTH_SIZE, dst.remaining() - LENGTH_SIZE);
+        for (int i = 0; i < LENGTH_SIZE; i++) {
+            dst.put(offset + i, (byte) (length >> (i * 8)));
+        }
+        src.position(src.limit());
+        dst.position(offset + LENGTH_SIZE + size);
+        return LENGTH_SIZE + size;
+    }
+
+    /**
+     * block格式直接在src和dst之间解压（堆内存和堆外内存都可以） frame格式先复制
+     * @param src 解压前
+     * @param dst 解压后
+     * @return 解压后的字节数
+     */
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        if (format == Format.FRAME) {
+            return StreamingCompressor.super.decompress(src, dst);
+        }
+        if (src.remaining() < LENGTH_SIZE) {
+            throw new LZ4Exception("Malformed input: missing original length");
+        }
+        int offset = src.position();
+        int value = 0;
+        for (int i = 0; i < LENGTH_SIZE; i++) {
+            value |= (src.get(offset + i) & 0xff) << (i * 8);
+        }
+        int length = originalLength(Integer.toUnsignedLong(value), src.remaining() - LENGTH_SIZE);
+        if (length > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        int size = DECOMPRESSOR.decompress(src, offset + LENGTH_SIZE, src.remaining() - LENGTH_SIZE, dst, dst.position(), length);
+        if (size != length) {
+            throw new LZ4Exception("Malformed input: decompressed length " + size + " does not match the original length " + length);
+        }
+        src.position(src.limit());
+        dst.position(dst.position() + size);
+        return size;
+    }
+
+    /**
+     * 校验block格式中记录的原始长度
+     * @param length 记录的原始长度
+     * @param compressedLength 压缩后的长度
+     * @return 原始长度
+     */
+    private static int originalLength(long length, int compressedLength) {
+        if (length < 0 || length > compressedLength * MAX_LZ4_RATIO + 16) {
+            throw new LZ4Exception("Malformed input: invalid original length " + length);
+        }
+        return (int) length;
+    }
+
+    private static int readInt(byte[] bytes) {
+        return (bytes[0] & 0xff) | ((bytes[1] & 0xff) << 8) | ((bytes[2] & 0xff) << 16) | ((bytes[3] & 0xff) << 24);
+    }
+
+    private static void writeInt(byte[] bytes, int value) {
+        bytes[0] = (byte) value;
+        bytes[1] = (byte) (value >> 8);
+        bytes[2] = (byte) (value >> 16);
+        bytes[3] = (byte) (value >> 24);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+}
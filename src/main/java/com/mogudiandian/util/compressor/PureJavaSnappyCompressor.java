@@ -0,0 +1,109 @@
+package com.mogudiandian.util.compressor;
+
+import io.airlift.compress.snappy.SnappyDecompressor;
+import io.airlift.compress.snappy.SnappyFramedInputStream;
+import io.airlift.compress.snappy.SnappyFramedOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 纯Java实现的snappy压缩器 不依赖native库（不能加载native库的环境使用 例如/tmp不可执行的容器） <br/>
+ * 基于aircompressor（https://github.com/airlift/aircompressor） 和{@link SnappyCompressor}一样 byte[]使用block格式 流式压缩使用framing格式 两者可以互相解压 <br/>
+ * 优先使用{@link CompressorFactory#snappy()}创建
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class PureJavaSnappyCompressor implements StreamingCompressor, BoundedCompressor {
+
+    /**
+     * 压缩器带有哈希表 不是线程安全的 所有实例共享
+     */
+    private static final ResourcePool<io.airlift.compress.snappy.SnappyCompressor> COMPRESSORS = new ResourcePool<>(io.airlift.compress.snappy.SnappyCompressor::new, compressor -> {});
+
+    /**
+     * 解压器没有状态 所有实例共享
+     */
+    private static final SnappyDecompressor DECOMPRESSOR = new SnappyDecompressor();
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        return COMPRESSORS.apply(compressor -> {
+            byte[] buffer = new byte[maxCompressedLength(bytes.length)];
+            int size = compressor.compress(bytes, 0, bytes.length, buffer, 0, buffer.length);
+            return Arrays.copyOf(buffer, size);
+        });
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        byte[] output = new byte[SnappyDecompressor.getUncompressedLength(bytes, 0)];
+        int size = DECOMPRESSOR.decompress(bytes, 0, bytes.length, output, 0, output.length);
+        return size == output.length ? output : Arrays.copyOf(output, size);
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return new SnappyFramedOutputStream(out);
+    }
+
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        return new SnappyFramedInputStream(in);
+    }
+
+    /**
+     * 和snappy的MaxCompressedLength一致
+     * @param length 压缩前的长度
+     * @return 压缩后的最大长度
+     */
+    @Override
+    public int maxCompressedLength(int length) {
+        return Math.toIntExact(32L + length + length / 6);
+    }
+
+    /**
+     * 两者都是堆内存并且剩余空间足够时直接在数组之间压缩 其他情况先复制
+     * @param src 压缩前
+     * @param dst 压缩后
+     * @return 压缩后的字节数
+     */
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        if (!src.hasArray() || !dst.hasArray() || dst.remaining() < maxCompressedLength(src.remaining())) {
+            return StreamingCompressor.super.compress(src, dst);
+        }
+        int size = COMPRESSORS.apply(compressor -> compressor.compress(src.array(), src.arrayOffset() + src.position(), src.remaining(), dst.array(), dst.arrayOffset() + dst.position(), dst.remaining()));
+        src.position(src.limit());
+        dst.position(dst.position() + size);
+        return size;
+    }
+
+    /**
+     * 两者都是堆内存时直接在数组之间解压 其他情况先复制
+     * @param src 解压前
+     * @param dst 解压后
+     * @return 解压后的字节数
+     */
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        if (!src.hasArray() || !dst.hasArray()) {
+            return StreamingCompressor.super.decompress(src, dst);
+        }
+        byte[] array = src.array();
+        int offset = src.arrayOffset() + src.position();
+        if (SnappyDecompressor.getUncompressedLength(array, offset) > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        int size = DECOMPRESSOR.decompress(array, offset, src.remaining(), dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+        src.position(src.limit());
+        dst.position(dst.position() + size);
+        return size;
+    }
+
+}
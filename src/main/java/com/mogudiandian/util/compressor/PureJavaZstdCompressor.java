@@ -0,0 +1,133 @@
+package com.mogudiandian.util.compressor;
+
+import io.airlift.compress.zstd.ZstdDecompressor;
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 纯Java实现的zstd压缩器 不依赖native库（不能加载native库的环境使用 例如/tmp不可执行的容器） <br/>
+ * 基于aircompressor（https://github.com/airlift/aircompressor） 压缩的结果是标准的zstd格式 和{@link ZstdCompressor}可以互相解压 <br/>
+ * 只支持默认的压缩级别 不支持字典 优先使用{@link CompressorFactory#zstd()}创建
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class PureJavaZstdCompressor implements StreamingCompressor, BoundedCompressor {
+
+    /**
+     * 压缩器没有状态 所有实例共享
+     */
+    private static final io.airlift.compress.zstd.ZstdCompressor COMPRESSOR = new io.airlift.compress.zstd.ZstdCompressor();
+
+    /**
+     * 解压器带有工作区 不是线程安全的 所有实例共享
+     */
+    private static final ResourcePool<ZstdDecompressor> DECOMPRESSORS = new ResourcePool<>(ZstdDecompressor::new, decompressor -> {});
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        byte[] buffer = new byte[COMPRESSOR.maxCompressedLength(bytes.length)];
+        int size = COMPRESSOR.compress(bytes, 0, bytes.length, buffer, 0, buffer.length);
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes.length == 0) {
+            // 和native一致 空的数据解压为空
+            return bytes.clone();
+        }
+        long size = ZstdDecompressor.getDecompressedSize(bytes, 0, bytes.length);
+        if (size >= 0 && size <= Integer.MAX_VALUE - 8) {
+            // 数据帧中记录了原始长度 直接解压到刚好大小的数组中
+            byte[] output = new byte[(int) size];
+            int length = DECOMPRESSORS.apply(decompressor -> decompressor.decompress(bytes, 0, bytes.length, output, 0, output.length));
+            return length == output.length ? output : Arrays.copyOf(output, length);
+        }
+        // 流式压缩的数据中没有原始长度 按照流解压
+        try (InputStream in = wrap(new ByteArrayInputStream(bytes))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(bytes.length * 4L, Integer.MAX_VALUE - 8));
+            IOUtils.copy(in, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return new ZstdOutputStream(out);
+    }
+
+    /**
+     * native的流没有写入数据时不输出任何内容 所以和native一致 空的流解压为空
+     * @param in 压缩后的数据的流
+     * @return 读取解压后的数据的流
+     * @throws IOException 读取in失败
+     */
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(in, 1);
+        int b = pushbackInputStream.read();
+        if (b == -1) {
+            return pushbackInputStream;
+        }
+        pushbackInputStream.unread(b);
+        return new ZstdInputStream(pushbackInputStream);
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return COMPRESSOR.maxCompressedLength(length);
+    }
+
+    /**
+     * 两者都是堆内存并且剩余空间足够时直接在数组之间压缩 其他情况先复制
+     * @param src 压缩前
+     * @param dst 压缩后
+     * @return 压缩后的字节数
+     */
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        if (!src.hasArray() || !dst.hasArray() || dst.remaining() < COMPRESSOR.maxCompressedLength(src.remaining())) {
+            return StreamingCompressor.super.compress(src, dst);
+        }
+        int size = COMPRESSOR.compress(src.array(), src.arrayOffset() + src.position(), src.remaining(), dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+        src.position(src.limit());
+        dst.position(dst.position() + size);
+        return size;
+    }
+
+    /**
+     * 两者都是堆内存并且数据帧中记录了原始长度时直接在数组之间解压 其他情况先复制
+     * @param src 解压前
+     * @param dst 解压后
+     * @return 解压后的字节数
+     */
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        if (!src.hasArray() || !dst.hasArray() || !src.hasRemaining()) {
+            return StreamingCompressor.super.decompress(src, dst);
+        }
+        byte[] array = src.array();
+        int offset = src.arrayOffset() + src.position();
+        long expected = ZstdDecompressor.getDecompressedSize(array, offset, src.remaining());
+        if (expected < 0) {
+            return StreamingCompressor.super.decompress(src, dst);
+        }
+        if (expected > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        int size = DECOMPRESSORS.apply(decompressor -> decompressor.decompress(array, offset, src.remaining(), dst.array(), dst.arrayOffset() + dst.position(), dst.remaining()));
+        src.position(src.limit());
+        dst.position(dst.position() + size);
+        return size;
+    }
+
+}
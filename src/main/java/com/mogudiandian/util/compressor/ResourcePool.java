@@ -0,0 +1,115 @@
+package com.mogudiandian.util.compressor;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 压缩器内部复用的资源池 线程安全 <br/>
+ * 用于复用创建成本高的压缩上下文（例如zstd的native上下文、Deflater） <br/>
+ * 池中没有空闲的资源时直接创建 归还时空闲数超过上限的直接销毁 所以不会阻塞也不会泄漏native内存 <br/>
+ * 不使用ThreadLocal是因为线程结束时ThreadLocal中的native资源不会被释放
+ *
+ * @param <T> 资源的类型
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+final class ResourcePool<T> {
+
+    /**
+     * 默认的最大空闲数
+     */
+    static final int DEFAULT_MAX_IDLE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * 空闲的资源 后进先出 最近使用的资源更可能还在CPU缓存中
+     */
+    private final Deque<T> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * 空闲的资源数量 ConcurrentLinkedDeque的size需要遍历
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * 创建资源的方法
+     */
+    private final Supplier<T> factory;
+
+    /**
+     * 销毁资源的方法
+     */
+    private final Consumer<T> destroyer;
+
+    /**
+     * 最大空闲数
+     */
+    private final int maxIdle;
+
+    ResourcePool(Supplier<T> factory, Consumer<T> destroyer) {
+        this(factory, destroyer, DEFAULT_MAX_IDLE);
+    }
+
+    ResourcePool(Supplier<T> factory, Consumer<T> destroyer, int maxIdle) {
+        this.factory = factory;
+        this.destroyer = destroyer;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * 借出一个资源执行操作 成功后归还 出现异常时销毁（资源的状态不确定）
+     * @param operation 使用资源的操作
+     * @param <R> 操作结果的类型
+     * @return 操作结果
+     */
+    <R> R apply(Function<T, R> operation) {
+        T resource = borrow();
+        R result;
+        try {
+            result = operation.apply(resource);
+        } catch (RuntimeException | Error e) {
+            destroy(resource);
+            throw e;
+        }
+        release(resource);
+        return result;
+    }
+
+    /**
+     * 借出一个资源 没有空闲的资源时创建
+     * @return 资源
+     */
+    T borrow() {
+        T resource = idle.pollFirst();
+        if (resource != null) {
+            idleCount.decrementAndGet();
+            return resource;
+        }
+        return factory.get();
+    }
+
+    /**
+     * 归还资源 空闲数超过上限时销毁
+     * @param resource 资源
+     */
+    void release(T resource) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offerFirst(resource);
+        } else {
+            idleCount.decrementAndGet();
+            destroyer.accept(resource);
+        }
+    }
+
+    /**
+     * 销毁资源 用于使用过程中出现异常、状态不确定的资源
+     * @param resource 资源
+     */
+    void destroy(T resource) {
+        destroyer.accept(resource);
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.mogudiandian.util.compressor;
+
+/**
+ * 压缩上下文中复用的临时缓冲区 非线程安全 跟随所属的上下文在资源池中复用 <br/>
+ * 只保留不超过上限的缓冲区 偶尔出现的大数据不会让池中的缓冲区一直占用大量内存
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+final class ScratchBuffer {
+
+    /**
+     * 保留的缓冲区的最大大小
+     */
+    static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private byte[] buffer;
+
+    /**
+     * 获取至少为指定大小的缓冲区 返回的缓冲区中的内容不确定
+     * @param minSize 最小的大小
+     * @return 缓冲区
+     */
+    byte[] get(int minSize) {
+        if (buffer != null && buffer.length >= minSize) {
+            return buffer;
+        }
+        byte[] newBuffer = new byte[minSize];
+        if (minSize <= MAX_RETAINED_SIZE) {
+            buffer = newBuffer;
+        }
+        return newBuffer;
+    }
+
+}
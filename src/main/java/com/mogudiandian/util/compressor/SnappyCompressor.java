@@ -2,16 +2,27 @@ package com.mogudiandian.util.compressor;
 
 import lombok.SneakyThrows;
 import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyFramedInputStream;
+import org.xerial.snappy.SnappyFramedOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
  * google snappy压缩器
  * (C++) https://github.com/google/snappy/
  * (Java-JNI) https://github.com/xerial/snappy-java
  * (Java-Port) https://github.com/dain/snappy
+ * 注意：流式压缩使用的是snappy的framing格式（https://github.com/google/snappy/blob/main/framing_format.txt）
+ * 与byte[]压缩的block格式不同 两者不能混用 <br/>
+ * native库不能加载的环境使用{@link PureJavaSnappyCompressor} 可以用{@link CompressorFactory#snappy()}自动选择
  * @author Joshua Sun
  * @since 1.0.0
  */
-public final class SnappyCompressor implements Compressor {
+public final class SnappyCompressor implements StreamingCompressor, BoundedCompressor {
 
     @SneakyThrows
     public byte[] compress(byte[] bytes) {
@@ -23,4 +34,80 @@ public final class SnappyCompressor implements Compressor {
         return Snappy.uncompress(bytes);
     }
 
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return new SnappyFramedOutputStream(out);
+    }
+
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        return new SnappyFramedInputStream(in);
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return Snappy.maxCompressedLength(length);
+    }
+
+    /**
+     * 两者都是堆外内存时直接在堆外内存之间压缩 都是堆内存时直接在数组之间压缩 其他情况先复制 <br/>
+     * snappy不检查目标的剩余空间 所以剩余空间小于maxCompressedLength时先复制
+     * @param src 压缩前
+     * @param dst 压缩后
+     * @return 压缩后的字节数
+     */
+    @Override
+    @SneakyThrows
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() < Snappy.maxCompressedLength(src.remaining())) {
+            return StreamingCompressor.super.compress(src, dst);
+        }
+        int size;
+        if (src.isDirect() && dst.isDirect()) {
+            // snappy会修改dst的limit
+            int limit = dst.limit();
+            size = Snappy.compress(src, dst);
+            dst.limit(limit);
+        } else if (src.hasArray() && dst.hasArray()) {
+            size = Snappy.compress(src.array(), src.arrayOffset() + src.position(), src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+        } else {
+            return StreamingCompressor.super.compress(src, dst);
+        }
+        src.position(src.limit());
+        dst.position(dst.position() + size);
+        return size;
+    }
+
+    /**
+     * 两者都是堆外内存时直接在堆外内存之间解压 都是堆内存时直接在数组之间解压 其他情况先复制
+     * @param src 解压前
+     * @param dst 解压后
+     * @return 解压后的字节数
+     */
+    @Override
+    @SneakyThrows
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        int size;
+        if (src.isDirect() && dst.isDirect()) {
+            if (Snappy.uncompressedLength(src) > dst.remaining()) {
+                throw new BufferOverflowException();
+            }
+            int limit = dst.limit();
+            size = Snappy.uncompress(src, dst);
+            dst.limit(limit);
+        } else if (src.hasArray() && dst.hasArray()) {
+            byte[] array = src.array();
+            int offset = src.arrayOffset() + src.position();
+            if (Snappy.uncompressedLength(array, offset, src.remaining()) > dst.remaining()) {
+                throw new BufferOverflowException();
+            }
+            size = Snappy.uncompress(array, offset, src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+        } else {
+            return StreamingCompressor.super.decompress(src, dst);
+        }
+        src.position(src.limit());
+        dst.position(dst.position() + size);
+        return size;
+    }
+
 }
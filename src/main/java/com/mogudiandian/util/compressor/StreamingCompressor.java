@@ -0,0 +1,68 @@
+package com.mogudiandian.util.compressor;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 支持流式压缩的压缩器 <br/>
+ * 流式压缩只缓冲固定大小的数据 适合压缩大文件、网络传输等不能把全部数据放到内存中的场景
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public interface StreamingCompressor extends Compressor {
+
+    /**
+     * 包装输出流 写入返回的流的数据压缩后写入out <br/>
+     * 只缓冲固定大小的数据 关闭返回的流时写完剩余的数据并关闭out
+     * @param out 压缩后的数据写入的流
+     * @return 写入压缩前的数据的流
+     * @throws IOException 写入out失败
+     */
+    OutputStream wrap(OutputStream out) throws IOException;
+
+    /**
+     * 包装输入流 从返回的流中读取的是in解压后的数据 <br/>
+     * 只缓冲固定大小的数据 关闭返回的流时会关闭in
+     * @param in 压缩后的数据的流
+     * @return 读取解压后的数据的流
+     * @throws IOException 读取in失败
+     */
+    InputStream wrap(InputStream in) throws IOException;
+
+    /**
+     * 流式压缩 读取in直到结束 压缩后写入out <br/>
+     * 不会关闭in和out 但是压缩的数据已经全部写入out
+     * @param in 压缩前的数据的流
+     * @param out 压缩后的数据写入的流
+     * @return 压缩前的字节数
+     * @throws IOException 读取或写入失败
+     */
+    default long compress(InputStream in, OutputStream out) throws IOException {
+        // 关闭压缩流才能写完最后的数据 但是不能关闭调用方的out
+        try (OutputStream compressed = wrap(CloseShieldOutputStream.wrap(out))) {
+            return IOUtils.copyLarge(in, compressed);
+        }
+    }
+
+    /**
+     * 流式解压 读取in直到压缩数据结束 解压后写入out <br/>
+     * 不会关闭in和out
+     * @param in 压缩后的数据的流
+     * @param out 解压后的数据写入的流
+     * @return 解压后的字节数
+     * @throws IOException 读取或写入失败
+     */
+    default long decompress(InputStream in, OutputStream out) throws IOException {
+        // 关闭解压流才能释放解压使用的资源 但是不能关闭调用方的in
+        try (InputStream decompressed = wrap(CloseShieldInputStream.wrap(in))) {
+            return IOUtils.copyLarge(decompressed, out);
+        }
+    }
+
+}
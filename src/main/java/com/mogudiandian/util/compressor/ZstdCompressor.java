@@ -1,23 +1,373 @@
 package com.mogudiandian.util.compressor;
 
-import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.*;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.LongSupplier;
 
 /**
  * facebook z-standard压缩器
  * (C++) https://facebook.github.io/zstd/
  * (Java-JNI) https://github.com/luben/zstd-jni
  * (Java-Port) https://github.com/airlift/aircompressor/tree/master/src/main/java/io/airlift/compress/zstd
+ * 压缩和解压的native上下文在资源池中复用 流式压缩的缓冲区使用zstd-jni的RecyclingBufferPool复用 <br/>
+ * 可以设置压缩级别（负数为更快的fast级别 热点数据建议1或负数 冷数据归档建议19）、多线程压缩和长距离匹配 <br/>
+ * 可以使用字典（见{@link ZstdDictionary}） 解压时按照数据帧中的字典ID选择字典 所以可以同时支持多个版本的字典 <br/>
+ * native库不能加载的环境使用{@link PureJavaZstdCompressor} 可以用{@link CompressorFactory#zstd()}自动选择
  * @author Joshua Sun
  * @since 1.0.0
  */
-public final class ZstdCompressor implements Compressor {
+public final class ZstdCompressor implements StreamingCompressor, BoundedCompressor {
+
+    /**
+     * 压缩上下文 所有实例共享 每次使用前设置参数
+     */
+    private static final ResourcePool<CompressContext> COMPRESS_CONTEXTS = new ResourcePool<>(CompressContext::new, CompressContext::close);
+
+    /**
+     * 解压上下文 所有实例共享
+     */
+    private static final ResourcePool<ZstdDecompressCtx> DECOMPRESS_CONTEXTS = new ResourcePool<>(ZstdDecompressCtx::new, ZstdDecompressCtx::close);
+
+    /**
+     * 长距离匹配的最大窗口（log2） 超过这个窗口的数据解压时需要额外设置 所以不允许超过
+     */
+    private static final int MAX_LONG_WINDOW_LOG = 27;
+
+    /**
+     * 数据帧头的最大长度 用于读取字典ID
+     */
+    private static final int MAX_FRAME_HEADER_SIZE = 18;
+
+    /**
+     * 压缩级别
+     */
+    private final int level;
+
+    /**
+     * 压缩使用的线程数 0表示在调用线程中压缩 大于0时由zstd内部的线程压缩 只对较大的数据有效果
+     */
+    private final int workers;
+
+    /**
+     * 长距离匹配的窗口（log2） 0表示不开启长距离匹配
+     */
+    private final int longWindowLog;
+
+    /**
+     * 压缩使用的字典 为null表示不使用字典
+     */
+    private final ZstdDictionary dictionary;
+
+    /**
+     * 解压可以使用的字典 字典ID -> 字典
+     */
+    private final Map<Integer, ZstdDictionary> dictionaries;
+
+    /**
+     * 使用默认的压缩级别
+     */
+    public ZstdCompressor() {
+        this(Zstd.defaultCompressionLevel());
+    }
+
+    /**
+     * @param level 压缩级别 负数为更快的fast级别
+     */
+    public ZstdCompressor(int level) {
+        this(level, 0);
+    }
+
+    /**
+     * @param level 压缩级别 负数为更快的fast级别
+     * @param workers 压缩使用的线程数 0表示在调用线程中压缩
+     */
+    public ZstdCompressor(int level, int workers) {
+        this(level, workers, 0);
+    }
+
+    /**
+     * @param level 压缩级别 负数为更快的fast级别
+     * @param workers 压缩使用的线程数 0表示在调用线程中压缩
+     * @param longWindowLog 长距离匹配的窗口（log2） 0表示不开启 开启时通常为27（128MB）
+     */
+    public ZstdCompressor(int level, int workers, int longWindowLog) {
+        this(level, workers, longWindowLog, null);
+    }
+
+    /**
+     * 使用字典压缩和解压
+     * @param level 压缩级别 负数为更快的fast级别
+     * @param dictionary 压缩使用的字典 解压时也可以使用
+     * @param previousDictionaries 之前版本的字典 只用于解压之前压缩的数据
+     */
+    public ZstdCompressor(int level, ZstdDictionary dictionary, ZstdDictionary... previousDictionaries) {
+        this(level, 0, 0, Objects.requireNonNull(dictionary, "字典不能为空"), previousDictionaries);
+    }
+
+    private ZstdCompressor(int level, int workers, int longWindowLog, ZstdDictionary dictionary, ZstdDictionary... previousDictionaries) {
+        if (level < Zstd.minCompressionLevel() || level > Zstd.maxCompressionLevel()) {
+            throw new IllegalArgumentException("level must be between " + Zstd.minCompressionLevel() + " and " + Zstd.maxCompressionLevel());
+        }
+        if (workers < 0) {
+            throw new IllegalArgumentException("workers must not be negative");
+        }
+        if (longWindowLog != 0 && (longWindowLog < Zstd.windowLogMin() || longWindowLog > MAX_LONG_WINDOW_LOG)) {
+            throw new IllegalArgumentException("longWindowLog must be 0 or between " + Zstd.windowLogMin() + " and " + MAX_LONG_WINDOW_LOG);
+        }
+        this.level = level;
+        this.workers = workers;
+        this.longWindowLog = longWindowLog;
+        this.dictionary = dictionary;
+        if (dictionary == null) {
+            this.dictionaries = Collections.emptyMap();
+        } else {
+            Map<Integer, ZstdDictionary> map = new HashMap<>();
+            for (ZstdDictionary previousDictionary : previousDictionaries) {
+                map.put(previousDictionary.getId(), previousDictionary);
+            }
+            map.put(dictionary.getId(), dictionary);
+            this.dictionaries = Collections.unmodifiableMap(map);
+        }
+    }
 
     public byte[] compress(byte[] bytes) {
-        return Zstd.compress(bytes);
+        return COMPRESS_CONTEXTS.apply(context -> {
+            ZstdCompressCtx ctx = context.prepare(this);
+            // 先压缩到复用的缓冲区 再复制出刚好大小的结果
+            byte[] buffer = context.buffer.get(maxCompressedLength(bytes.length));
+            int size = ctx.compressByteArray(buffer, 0, buffer.length, bytes, 0, bytes.length);
+            return Arrays.copyOf(buffer, size);
+        });
     }
 
     public byte[] decompress(byte[] bytes) {
-        return Zstd.decompress(bytes, Math.toIntExact(Zstd.decompressedSize(bytes)));
+        if (bytes.length == 0) {
+            // 流式压缩时没有写入数据不会输出任何内容 所以空的数据解压为空
+            return bytes.clone();
+        }
+        long size = Zstd.decompressedSize(bytes);
+        if (size > 0) {
+            int dictionaryId = (int) Zstd.getDictIdFromFrame(bytes);
+            return DECOMPRESS_CONTEXTS.apply(ctx -> prepare(ctx, dictionaryId).decompress(bytes, Math.toIntExact(size)));
+        }
+        // 流式压缩的数据帧中没有记录原始大小 只能流式解压
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(bytes.length * 4L, Integer.MAX_VALUE - 8))) {
+            decompress(new ByteArrayInputStream(bytes), out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+        ZstdOutputStream zstdOutputStream = new ZstdOutputStream(out, RecyclingBufferPool.INSTANCE);
+        try {
+            zstdOutputStream.setLevel(level);
+            if (workers > 0) {
+                zstdOutputStream.setWorkers(workers);
+            }
+            if (longWindowLog > 0) {
+                zstdOutputStream.setLong(longWindowLog);
+            }
+            if (dictionary != null) {
+                zstdOutputStream.setDict(dictionary.compressDictionary(level));
+            }
+        } catch (IOException e) {
+            zstdOutputStream.close();
+            throw e;
+        }
+        return zstdOutputStream;
+    }
+
+    /**
+     * 使用字典时按照第一个数据帧的字典ID选择字典 所以流中所有的数据帧需要使用同一个字典
+     * @param in 压缩后的数据的流
+     * @return 读取解压后的数据的流
+     * @throws IOException 读取in失败
+     */
+    @Override
+    public InputStream wrap(InputStream in) throws IOException {
+        if (dictionaries.isEmpty()) {
+            return new ZstdInputStream(in, RecyclingBufferPool.INSTANCE);
+        }
+        // 先读出数据帧头 取得字典ID后再放回去
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(in, MAX_FRAME_HEADER_SIZE);
+        byte[] header = new byte[MAX_FRAME_HEADER_SIZE];
+        int length = IOUtils.read(pushbackInputStream, header);
+        pushbackInputStream.unread(header, 0, length);
+        ZstdInputStream zstdInputStream = new ZstdInputStream(pushbackInputStream, RecyclingBufferPool.INSTANCE);
+        int dictionaryId = (int) Zstd.getDictIdFromFrame(Arrays.copyOf(header, length));
+        if (dictionaryId != 0) {
+            zstdInputStream.setDict(findDictionary(dictionaryId).decompressDictionary());
+        }
+        return zstdInputStream;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return Math.toIntExact(Zstd.compressBound(length));
+    }
+
+    /**
+     * 两者都是堆外内存时直接在堆外内存之间压缩 都是堆内存时直接在数组之间压缩 其他情况先复制
+     * @param src 压缩前
+     * @param dst 压缩后
+     * @return 压缩后的字节数
+     */
+    @Override
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        if (src.isDirect() && dst.isDirect()) {
+            return COMPRESS_CONTEXTS.apply(context -> advance(src, dst, () -> context.prepare(this).compressDirectByteBuffer(dst, dst.position(), dst.remaining(),
+                                                                                                                         src, src.position(), src.remaining())));
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            return COMPRESS_CONTEXTS.apply(context -> advance(src, dst, () -> context.prepare(this).compressByteArray(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining(),
+                                                                                                                  src.array(), src.arrayOffset() + src.position(), src.remaining())));
+        }
+        return StreamingCompressor.super.compress(src, dst);
+    }
+
+    /**
+     * 两者都是堆外内存时直接在堆外内存之间解压 都是堆内存时直接在数组之间解压 其他情况先复制
+     * @param src 解压前
+     * @param dst 解压后
+     * @return 解压后的字节数
+     */
+    @Override
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        int dictionaryId = dictionaryId(src);
+        if (src.isDirect() && dst.isDirect()) {
+            return DECOMPRESS_CONTEXTS.apply(ctx -> advance(src, dst, () -> prepare(ctx, dictionaryId).decompressDirectByteBuffer(dst, dst.position(), dst.remaining(),
+                                                                                                           src, src.position(), src.remaining())));
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            return DECOMPRESS_CONTEXTS.apply(ctx -> advance(src, dst, () -> prepare(ctx, dictionaryId).decompressByteArray(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining(),
+                                                                                                    src.array(), src.arrayOffset() + src.position(), src.remaining())));
+        }
+        return StreamingCompressor.super.decompress(src, dst);
+    }
+
+    /**
+     * 读取数据帧中的字典ID
+     * @param src 压缩后的数据
+     * @return 字典ID 没有使用字典时为0
+     */
+    private static int dictionaryId(ByteBuffer src) {
+        byte[] header = new byte[Math.min(src.remaining(), MAX_FRAME_HEADER_SIZE)];
+        src.duplicate().get(header);
+        return (int) Zstd.getDictIdFromFrame(header);
+    }
+
+    /**
+     * 按照字典ID查找字典
+     * @param dictionaryId 字典ID
+     * @return 字典
+     */
+    private ZstdDictionary findDictionary(int dictionaryId) {
+        ZstdDictionary found = dictionaries.get(dictionaryId);
+        if (found == null) {
+            throw new RuntimeException("zstd数据使用的字典（ID: " + Integer.toUnsignedString(dictionaryId) + "）不存在");
+        }
+        return found;
+    }
+
+    /**
+     * 重置上次使用时加载的字典 加载本次解压需要的字典
+     * @param ctx 解压上下文
+     * @param dictionaryId 数据帧中的字典ID
+     * @return 解压上下文
+     */
+    private ZstdDecompressCtx prepare(ZstdDecompressCtx ctx, int dictionaryId) {
+        ctx.reset();
+        if (dictionaryId != 0) {
+            ctx.loadDict(findDictionary(dictionaryId).decompressDictionary());
+        }
+        return ctx;
+    }
+
+    /**
+     * 执行zstd的压缩或解压 成功时移动两者的position
+     * @param src 读取的数据
+     * @param dst 写入的数据
+     * @param operation 压缩或解压 返回写入字节数或错误码
+     * @return 写入的字节数
+     */
+    private static int advance(ByteBuffer src, ByteBuffer dst, LongSupplier operation) {
+        long size;
+        try {
+            size = operation.getAsLong();
+        } catch (ZstdException e) {
+            if (e.getErrorCode() == Zstd.errDstSizeTooSmall()) {
+                throw new BufferOverflowException();
+            }
+            throw e;
+        }
+        if (Zstd.isError(size)) {
+            if (Zstd.getErrorCode(size) == Zstd.errDstSizeTooSmall()) {
+                throw new BufferOverflowException();
+            }
+            throw new ZstdException(size);
+        }
+        src.position(src.limit());
+        dst.position(dst.position() + (int) size);
+        return (int) size;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getLongWindowLog() {
+        return longWindowLog;
+    }
+
+    public ZstdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * 复用的压缩上下文和输出缓冲区
+     */
+    private static final class CompressContext {
+
+        private final ZstdCompressCtx ctx = new ZstdCompressCtx();
+
+        private final ScratchBuffer buffer = new ScratchBuffer();
+
+        /**
+         * 重置上次使用时的参数 设置本次压缩的参数
+         * @param compressor 本次压缩的压缩器
+         * @return 压缩上下文
+         */
+        private ZstdCompressCtx prepare(ZstdCompressor compressor) {
+            ctx.reset();
+            ctx.setLevel(compressor.level);
+            if (compressor.workers > 0) {
+                ctx.setWorkers(compressor.workers);
+            }
+            if (compressor.longWindowLog > 0) {
+                ctx.setLong(compressor.longWindowLog);
+            }
+            if (compressor.dictionary != null) {
+                ctx.loadDict(compressor.dictionary.compressDictionary(compressor.level));
+            }
+            return ctx;
+        }
+
+        private void close() {
+            ctx.close();
+        }
     }
 
 }
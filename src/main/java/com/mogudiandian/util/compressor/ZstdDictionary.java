@@ -0,0 +1,128 @@
+package com.mogudiandian.util.compressor;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * zstd的字典 线程安全 <br/>
+ * 大量相似的小数据（例如1-4KB的JSON）单独压缩时压缩比很低 用这些数据的样本训练出字典后 压缩和解压都使用这个字典可以大幅提高压缩比 <br/>
+ * 字典的ID会写入压缩后的数据帧中 解压时按照ID选择字典 所以新旧版本的字典可以同时存在（逐步切换时旧数据仍然可以解压） <br/>
+ * 字典在内部预处理（digest）后复用 压缩用的预处理结果和压缩级别有关 按照级别分别缓存 <br/>
+ * 使用方式：
+ * <pre>
+ *     ZstdDictionary dictionary = ZstdDictionary.train(samples, 16 * 1024);
+ *     // 持久化 dictionary.getBytes() 之后用 new ZstdDictionary(bytes) 加载
+ *     Compressor compressor = new ZstdCompressor(3, dictionary, previousDictionary);
+ * </pre>
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class ZstdDictionary {
+
+    /**
+     * 字典的内容
+     */
+    private final byte[] bytes;
+
+    /**
+     * 字典的ID
+     */
+    private final int id;
+
+    /**
+     * 压缩级别 -> 预处理后的压缩字典
+     */
+    private final ConcurrentMap<Integer, ZstdDictCompress> compressDictionaries = new ConcurrentHashMap<>();
+
+    /**
+     * 预处理后的解压字典
+     */
+    private volatile ZstdDictDecompress decompressDictionary;
+
+    /**
+     * 加载训练好的字典
+     * @param bytes 字典的内容 必须是训练出来的字典（带有字典ID）
+     */
+    public ZstdDictionary(byte[] bytes) {
+        Objects.requireNonNull(bytes, "字典的内容不能为空");
+        this.id = (int) Zstd.getDictIdFromDict(bytes);
+        if (id == 0) {
+            throw new IllegalArgumentException("not a zstd dictionary (dictionary id is missing)");
+        }
+        this.bytes = bytes.clone();
+    }
+
+    /**
+     * 用样本训练字典 <br/>
+     * 样本应该是实际数据中有代表性的一部分 数量通常需要几百个以上 样本总大小建议为字典大小的100倍左右
+     * @param samples 样本
+     * @param maxDictionarySize 字典的最大大小（字节） 通常为16KB-112KB
+     * @return 字典
+     */
+    public static ZstdDictionary train(Collection<byte[]> samples, int maxDictionarySize) {
+        if (samples == null || samples.isEmpty()) {
+            throw new IllegalArgumentException("samples must not be empty");
+        }
+        if (maxDictionarySize <= 0) {
+            throw new IllegalArgumentException("maxDictionarySize must be positive");
+        }
+        byte[] buffer = new byte[maxDictionarySize];
+        long size = Zstd.trainFromBuffer(samples.toArray(new byte[0][]), buffer);
+        if (Zstd.isError(size)) {
+            throw new ZstdException(size);
+        }
+        return new ZstdDictionary(Arrays.copyOf(buffer, (int) size));
+    }
+
+    /**
+     * 预处理后的压缩字典
+     * @param level 压缩级别
+     * @return 压缩字典
+     */
+    ZstdDictCompress compressDictionary(int level) {
+        return compressDictionaries.computeIfAbsent(level, x -> new ZstdDictCompress(bytes, x));
+    }
+
+    /**
+     * 预处理后的解压字典
+     * @return 解压字典
+     */
+    ZstdDictDecompress decompressDictionary() {
+        ZstdDictDecompress dictionary = decompressDictionary;
+        if (dictionary == null) {
+            synchronized (this) {
+                dictionary = decompressDictionary;
+                if (dictionary == null) {
+                    decompressDictionary = dictionary = new ZstdDictDecompress(bytes);
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * 字典的内容 用于持久化
+     * @return 字典的内容
+     */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * 字典的ID 压缩后的数据帧中记录的就是这个ID
+     * @return 字典的ID
+     */
+    public int getId() {
+        return id;
+    }
+
+}
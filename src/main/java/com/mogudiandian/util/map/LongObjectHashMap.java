@@ -0,0 +1,291 @@
+package com.mogudiandian.util.map;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.LongFunction;
+
+/**
+ * key为long的哈希表 非线程安全 <br/>
+ * 开放寻址（线性探测） key直接存放在long数组中 不需要装箱 也没有Entry对象 <br/>
+ * 适用于大量long标识（例如数据库主键）建立索引的场景 值可以为null 不支持删除
+ *
+ * @param <V> 值的类型
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class LongObjectHashMap<V> {
+
+    /**
+     * 最大负载因子 线性探测在负载较高时探测次数急剧增加 所以取0.5
+     */
+    private static final double MAX_LOAD_FACTOR = 0.5;
+
+    /**
+     * 最大容量
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 空槽位的key 实际的0单独存放
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * 所有的key
+     */
+    private long[] keys;
+
+    /**
+     * 所有的值 和keys的下标一一对应
+     */
+    private V[] values;
+
+    /**
+     * 容量 - 1 容量总是2的幂
+     */
+    private int mask;
+
+    /**
+     * 扩容的阈值
+     */
+    private int threshold;
+
+    /**
+     * 不包括key为0的数量
+     */
+    private int size;
+
+    /**
+     * 是否包含key为0
+     */
+    private boolean hasZeroKey;
+
+    /**
+     * key为0的值
+     */
+    private V zeroValue;
+
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize 预计的数量 在这个数量内不会扩容
+     */
+    public LongObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+        allocate(tableSizeFor((int) Math.min(MAXIMUM_CAPACITY, Math.ceil(expectedSize / MAX_LOAD_FACTOR))));
+    }
+
+    /**
+     * 获取key对应的值
+     * @param key key
+     * @return 值 不存在时为null
+     */
+    public V get(long key) {
+        if (key == EMPTY) {
+            return zeroValue;
+        }
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * 是否包含key
+     * @param key key
+     * @return 是否包含
+     */
+    public boolean containsKey(long key) {
+        return key == EMPTY ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * 放入key和值 已存在时替换
+     * @param key key
+     * @param value 值
+     * @return 之前的值 不存在时为null
+     */
+    public V put(long key, V value) {
+        if (key == EMPTY) {
+            V previous = zeroValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        int index = slotOf(key);
+        if (keys[index] == key) {
+            V previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        insert(index, key, value);
+        return null;
+    }
+
+    /**
+     * 获取key对应的值 不存在时（或值为null时）用mappingFunction生成并放入
+     * @param key key
+     * @param mappingFunction 生成值的方法
+     * @return key对应的值
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        if (key == EMPTY) {
+            if (zeroValue == null) {
+                V value = mappingFunction.apply(key);
+                if (value != null) {
+                    hasZeroKey = true;
+                    zeroValue = value;
+                }
+            }
+            return zeroValue;
+        }
+        int index = slotOf(key);
+        if (keys[index] == key && values[index] != null) {
+            return values[index];
+        }
+        V value = mappingFunction.apply(key);
+        if (value != null) {
+            if (keys[index] == key) {
+                values[index] = value;
+            } else {
+                insert(index, key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 遍历所有的key和值 顺序不确定
+     * @param action 处理每个key和值的方法
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        if (hasZeroKey) {
+            action.accept(EMPTY, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+
+    /**
+     * 查找key所在的槽位
+     * @param key 不为0的key
+     * @return 槽位的下标 不存在时为-1
+     */
+    private int indexOf(long key) {
+        int index = slotOf(key);
+        return keys[index] == key ? index : -1;
+    }
+
+    /**
+     * 查找key所在的槽位 或者key应该放入的空槽位
+     * @param key 不为0的key
+     * @return 槽位的下标
+     */
+    private int slotOf(long key) {
+        int index = hash(key) & mask;
+        long current;
+        while ((current = keys[index]) != EMPTY && current != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * 在空槽位放入新的key 超过阈值时扩容
+     * @param index 空槽位的下标
+     * @param key key
+     * @param value 值
+     */
+    private void insert(int index, long key, V value) {
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            rehash();
+        }
+    }
+
+    /**
+     * 容量翻倍 重新放入所有的key
+     */
+    private void rehash() {
+        if (keys.length >= MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("LongObjectHashMap capacity exceeded");
+        }
+        long[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int index = hash(key) & mask;
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = (V[]) new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * 打散key 连续的主键也能均匀分布
+     * @param key key
+     * @return 哈希值
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 不小于cap的2的幂
+     * @param cap 期望的容量
+     * @return 容量
+     */
+    private static int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(cap, 2) - 1);
+        return Math.min(n + 1, MAXIMUM_CAPACITY);
+    }
+
+    /**
+     * 处理key和值的方法
+     * @param <V> 值的类型
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+
+        void accept(long key, V value);
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.mogudiandian.util.orm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应的批量查询大小 线程安全 <br/>
+ * 按照AIMD（加性增 乘性减）在最小值和最大值之间调整每批查询的标识数量 <br/>
+ * 满批的查询成功并且没有超过目标耗时时 批量大小增加一个步长 <br/>
+ * 查询失败或者超过目标耗时时 批量大小乘以衰减系数 <br/>
+ * 调整之前发出的批次的结果不会重复调整（例如减小之后 之前按照更大的批量发出的查询再失败不会继续减小） <br/>
+ * 同一个下游的多个匹配器应该共享同一个实例 使用方式：
+ * <pre>
+ *     AdaptiveBatchSizer articleBatchSizer = new AdaptiveBatchSizer(20, 500)
+ *             .setTargetLatency(200, TimeUnit.MILLISECONDS);
+ *     matcher.setAdaptiveBatchSizer(articleBatchSizer);
+ * </pre>
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class AdaptiveBatchSizer {
+
+    /**
+     * 最小的批量大小
+     */
+    private final int minSize;
+
+    /**
+     * 最大的批量大小
+     */
+    private final int maxSize;
+
+    /**
+     * 当前的批量大小
+     */
+    private int currentSize;
+
+    /**
+     * 每次增加的步长
+     */
+    private int additiveIncrease;
+
+    /**
+     * 每次减小时乘以的系数
+     */
+    private double multiplicativeDecrease = 0.5;
+
+    /**
+     * 目标耗时（纳秒） 超过时减小批量大小 小于等于0表示只根据是否失败调整
+     */
+    private long targetLatencyNanos;
+
+    /**
+     * 从最小值开始逐渐增加
+     * @param minSize 最小的批量大小
+     * @param maxSize 最大的批量大小
+     */
+    public AdaptiveBatchSizer(int minSize, int maxSize) {
+        this(minSize, maxSize, minSize);
+    }
+
+    /**
+     * @param minSize 最小的批量大小
+     * @param maxSize 最大的批量大小
+     * @param initialSize 初始的批量大小
+     */
+    public AdaptiveBatchSizer(int minSize, int maxSize, int initialSize) {
+        if (minSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("require 0 < minSize <= maxSize");
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.currentSize = Math.max(minSize, Math.min(maxSize, initialSize));
+        // 默认大约20次增加从最小值到最大值
+        this.additiveIncrease = Math.max(1, (maxSize - minSize) / 20);
+    }
+
+    /**
+     * 当前的批量大小
+     * @return 批量大小
+     */
+    public synchronized int current() {
+        return currentSize;
+    }
+
+    /**
+     * 一批查询成功
+     * @param batchSize 这一批的标识数量
+     * @param nanos 耗时（纳秒）
+     */
+    public synchronized void onSuccess(int batchSize, long nanos) {
+        if (targetLatencyNanos > 0 && nanos > targetLatencyNanos) {
+            decrease(batchSize);
+        } else if (batchSize >= currentSize) {
+            // 只有满批才能说明当前的批量大小可以承受
+            currentSize = Math.min(maxSize, currentSize + additiveIncrease);
+        }
+    }
+
+    /**
+     * 一批查询失败
+     * @param batchSize 这一批的标识数量
+     */
+    public synchronized void onFailure(int batchSize) {
+        decrease(batchSize);
+    }
+
+    /**
+     * 减小批量大小 之前按照更大的批量发出的查询不再重复减小
+     * @param batchSize 这一批的标识数量
+     */
+    private void decrease(int batchSize) {
+        if (batchSize <= currentSize) {
+            currentSize = Math.max(minSize, (int) (currentSize * multiplicativeDecrease));
+        }
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized AdaptiveBatchSizer setAdditiveIncrease(int additiveIncrease) {
+        if (additiveIncrease <= 0) {
+            throw new IllegalArgumentException("additiveIncrease must be positive");
+        }
+        this.additiveIncrease = additiveIncrease;
+        return this;
+    }
+
+    public synchronized AdaptiveBatchSizer setMultiplicativeDecrease(double multiplicativeDecrease) {
+        if (multiplicativeDecrease <= 0 || multiplicativeDecrease >= 1) {
+            throw new IllegalArgumentException("multiplicativeDecrease must be in (0, 1)");
+        }
+        this.multiplicativeDecrease = multiplicativeDecrease;
+        return this;
+    }
+
+    public synchronized AdaptiveBatchSizer setTargetLatency(long targetLatency, TimeUnit unit) {
+        this.targetLatencyNanos = unit.toNanos(targetLatency);
+        return this;
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.mogudiandian.util.orm;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * 微批量加载器（类似DataLoader） 线程安全 <br/>
+ * 很多小请求各自只查询少量标识时 可以共享一个加载器 由加载器把短时间内提交的标识合并成一次批量查询 <br/>
+ * 等待中的标识达到maxBatchSize 或者 第一个标识提交后经过了batchWindow 就会发起一次批量查询 <br/>
+ * 查询结果按照dataKeyGenerator分组后 再按照标识对应的key分发给每个调用方 <br/>
+ * 使用方式：
+ * <pre>
+ *     BatchLoader&lt;Long, List&lt;Long&gt;, ArticleDTO, Long&gt; articleLoader = new BatchLoader&lt;&gt;(articleService::queryByIds, Collectors.toList(), ArticleDTO::getId)
+ *             .setMaxBatchSize(100)
+ *             .setBatchWindow(2, TimeUnit.MILLISECONDS);
+ *     CompletableFuture&lt;ArticleDTO&gt; article = articleLoader.load(articleId);
+ * </pre>
+ *
+ * @param <I> 标识的类型
+ * @param <C> 标识的集合类型
+ * @param <D> 数据的类型
+ * @param <K> 数据生成key的类型
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class BatchLoader<I, C extends Collection<I>, D, K> {
+
+    /**
+     * 默认每批最多100个标识
+     */
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /**
+     * 默认的时间窗口为2毫秒
+     */
+    private static final long DEFAULT_BATCH_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    /**
+     * 批量查询的方法
+     */
+    private final Function<C, ? extends Collection<D>> batchQueryMethod;
+
+    /**
+     * 将标识聚合成批量查询方法的参数
+     */
+    private final Collector<I, ?, C> identifierCollector;
+
+    /**
+     * 数据生成key的方法
+     */
+    private final Function<D, K> dataKeyGenerator;
+
+    /**
+     * 标识映射到key的方法
+     */
+    private final Function<I, K> identifierToKeyMapping;
+
+    /**
+     * 每批最多的标识数量
+     */
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * 时间窗口（纳秒）
+     */
+    private volatile long batchWindowNanos = DEFAULT_BATCH_WINDOW_NANOS;
+
+    /**
+     * 执行批量查询的线程池
+     */
+    private volatile Executor executor = QueryExecutors.defaultQueryPool();
+
+    /**
+     * 等待中的标识 -> 对应的结果
+     */
+    private Map<I, CompletableFuture<List<D>>> pending = new LinkedHashMap<>();
+
+    /**
+     * 当前批次的代数 用于忽略已经因为数量达到上限而提前发出的批次的定时任务
+     */
+    private long generation;
+
+    /**
+     * 标识和key相同时使用的构造
+     * @param batchQueryMethod 批量查询的方法
+     * @param identifierCollector 将标识聚合成批量查询方法的参数
+     * @param dataKeyGenerator 数据生成key的方法
+     */
+    @SuppressWarnings("unchecked")
+    public BatchLoader(Function<C, ? extends Collection<D>> batchQueryMethod, Collector<I, ?, C> identifierCollector, Function<D, K> dataKeyGenerator) {
+        this(batchQueryMethod, identifierCollector, dataKeyGenerator, identifier -> (K) identifier);
+    }
+
+    /**
+     * @param batchQueryMethod 批量查询的方法
+     * @param identifierCollector 将标识聚合成批量查询方法的参数
+     * @param dataKeyGenerator 数据生成key的方法
+     * @param identifierToKeyMapping 标识映射到key的方法
+     */
+    public BatchLoader(Function<C, ? extends Collection<D>> batchQueryMethod, Collector<I, ?, C> identifierCollector,
+                       Function<D, K> dataKeyGenerator, Function<I, K> identifierToKeyMapping) {
+        this.batchQueryMethod = Objects.requireNonNull(batchQueryMethod, "批量查询方法不能为空");
+        this.identifierCollector = Objects.requireNonNull(identifierCollector, "标识聚合器不能为空");
+        this.dataKeyGenerator = Objects.requireNonNull(dataKeyGenerator, "数据唯一键生成器不能为空");
+        this.identifierToKeyMapping = Objects.requireNonNull(identifierToKeyMapping, "标识到唯一键的映射关系不能为空");
+    }
+
+    /**
+     * 加载一个标识对应的数据
+     * @param identifier 标识
+     * @return 数据 没查到时为null 有多条时取第一条
+     */
+    public CompletableFuture<D> load(I identifier) {
+        return loadMany(identifier).thenApply(list -> list.isEmpty() ? null : list.get(0));
+    }
+
+    /**
+     * 加载一个标识对应的所有数据（一对多）
+     * @param identifier 标识
+     * @return 数据 没查到时为空集合
+     */
+    public CompletableFuture<List<D>> loadMany(I identifier) {
+        Map<I, CompletableFuture<List<D>>> batch = null;
+        CompletableFuture<List<D>> future;
+        synchronized (this) {
+            future = pending.get(identifier);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pending.put(identifier, future);
+                if (pending.size() >= maxBatchSize) {
+                    batch = takePending();
+                } else if (pending.size() == 1) {
+                    // 批次中的第一个标识 开始计时
+                    long currentGeneration = generation;
+                    QueryExecutors.scheduler().schedule(() -> flush(currentGeneration), batchWindowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+        if (batch != null) {
+            dispatch(batch, false);
+        }
+        return future;
+    }
+
+    /**
+     * 加载多个标识对应的所有数据
+     * @param identifiers 标识集合
+     * @return 所有标识对应的数据
+     */
+    public CompletableFuture<List<D>> loadAll(Collection<I> identifiers) {
+        List<CompletableFuture<List<D>>> futures = identifiers.stream()
+                                                              .distinct()
+                                                              .map(this::loadMany)
+                                                              .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                                .thenApply(v -> futures.stream()
+                                                       .map(CompletableFuture::join)
+                                                       .flatMap(Collection::stream)
+                                                       .collect(Collectors.toList()));
+    }
+
+    /**
+     * 立即发出等待中的标识 不等待时间窗口结束
+     */
+    public void flush() {
+        Map<I, CompletableFuture<List<D>>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        dispatch(batch, false);
+    }
+
+    /**
+     * 时间窗口结束时发出等待中的标识 如果这个批次已经提前发出了则忽略
+     * @param expectedGeneration 计时开始时的批次代数
+     */
+    private void flush(long expectedGeneration) {
+        Map<I, CompletableFuture<List<D>>> batch;
+        synchronized (this) {
+            if (generation != expectedGeneration) {
+                return;
+            }
+            batch = takePending();
+        }
+        dispatch(batch, true);
+    }
+
+    /**
+     * 取出等待中的标识 开始新的批次 需要在锁内调用
+     * @return 等待中的标识
+     */
+    private Map<I, CompletableFuture<List<D>>> takePending() {
+        Map<I, CompletableFuture<List<D>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        generation++;
+        return batch;
+    }
+
+    /**
+     * 在线程池中执行一批查询并分发结果
+     * @param batch 标识 -> 对应的结果
+     * @param scheduled 是否在调度器的线程中（时间窗口结束时）
+     */
+    private void dispatch(Map<I, CompletableFuture<List<D>>> batch, boolean scheduled) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Runnable task = () -> execute(batch);
+        try {
+            if (scheduled) {
+                // 调度器的线程中不能执行查询 线程池饱和时稍后再交给线程池
+                QueryExecutors.handoffOrRequeue(executor, task);
+            } else {
+                executor.execute(task);
+            }
+        } catch (Exception e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 执行一批查询 按照key分组后分发给每个标识
+     * @param batch 标识 -> 对应的结果
+     */
+    private void execute(Map<I, CompletableFuture<List<D>>> batch) {
+        try {
+            C identifierCollection = batch.keySet().stream().collect(identifierCollector);
+            Collection<D> dataCollection = batchQueryMethod.apply(identifierCollection);
+            Map<K, List<D>> keyDataListMap = dataCollection == null ? Collections.emptyMap() : dataCollection.stream()
+                                                                                                             .filter(Objects::nonNull)
+                                                                                                             .collect(Collectors.groupingBy(dataKeyGenerator));
+            batch.forEach((identifier, future) -> future.complete(keyDataListMap.getOrDefault(identifierToKeyMapping.apply(identifier), Collections.emptyList())));
+        } catch (Throwable e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    public BatchLoader<I, C, D, K> setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public BatchLoader<I, C, D, K> setBatchWindow(long batchWindow, TimeUnit unit) {
+        if (batchWindow < 0) {
+            throw new IllegalArgumentException("batchWindow must not be negative");
+        }
+        this.batchWindowNanos = unit.toNanos(batchWindow);
+        return this;
+    }
+
+    public BatchLoader<I, C, D, K> setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "线程池不能为空");
+        return this;
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.mogudiandian.util.orm;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于内存的远程缓存客户端 线程安全 <br/>
+ * 用于测试或本地开发时代替真正的远程缓存 多个{@link TieredMatcherCache}共享同一个实例即可模拟多个节点共享远程缓存 <br/>
+ * 过期的key在访问时才删除
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class InMemoryRemoteCacheClient implements RemoteCacheClient {
+
+    /**
+     * key -> 值和过期时间
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 调用次数 用于验证是否批量访问
+     */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    @Override
+    public Object get(String key) {
+        requestCount.incrementAndGet();
+        return getValue(key);
+    }
+
+    @Override
+    public Map<String, Object> multiGet(Collection<String> keys) {
+        requestCount.incrementAndGet();
+        Map<String, Object> map = new HashMap<>(keys.size(), 1);
+        for (String key : keys) {
+            Object value = getValue(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public void multiSet(Map<String, Object> values, long ttlMillis) {
+        requestCount.incrementAndGet();
+        long expireTime = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+        values.forEach((key, value) -> entries.put(key, new Entry(value, expireTime)));
+    }
+
+    @Override
+    public void deleteByPrefix(String prefix) {
+        requestCount.incrementAndGet();
+        entries.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * 获取未过期的值 过期的顺便删除
+     * @param key 缓存key
+     * @return 值 不存在或已过期时返回null
+     */
+    private Object getValue(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireTime < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 当前的key数量（包含已过期但还没有删除的）
+     * @return key数量
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 累计的调用次数 批量操作算一次
+     * @return 调用次数
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+
+        private final long expireTime;
+
+        private Entry(Object value, long expireTime) {
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.mogudiandian.util.orm;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 查询耗时的滑动窗口统计 线程安全 <br/>
+ * 记录最近若干次查询的耗时 用于计算分位数（例如对冲请求的p95延迟）
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class LatencyTracker {
+
+    /**
+     * 默认记录最近1024次的耗时
+     */
+    private static final int DEFAULT_WINDOW_SIZE = 1024;
+
+    /**
+     * 每新增32个样本才重新计算分位数
+     */
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    /**
+     * 名称 -> 耗时统计
+     */
+    private static final ConcurrentMap<String, LatencyTracker> trackers = new ConcurrentHashMap<>();
+
+    /**
+     * 环形缓冲区 单位为纳秒
+     */
+    private final long[] samples;
+
+    /**
+     * 累计记录的样本数量
+     */
+    private long count;
+
+    /**
+     * 上次计算分位数时的样本数量
+     */
+    private long computedCount = -1;
+
+    /**
+     * 上次计算时排好序的样本
+     */
+    private long[] sorted = new long[0];
+
+    public LatencyTracker() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize 记录最近多少次的耗时
+     */
+    public LatencyTracker(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        this.samples = new long[windowSize];
+    }
+
+    /**
+     * 获取某个名称共享的耗时统计 不存在则创建
+     * @param name 名称 通常是缓存名称
+     * @return 耗时统计
+     */
+    public static LatencyTracker of(String name) {
+        return trackers.computeIfAbsent(Objects.requireNonNull(name, "名称不能为空"), k -> new LatencyTracker());
+    }
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时（纳秒）
+     */
+    public synchronized void record(long nanos) {
+        samples[(int) (count % samples.length)] = nanos;
+        count++;
+    }
+
+    /**
+     * 当前窗口内的样本数量
+     * @return 样本数量
+     */
+    public synchronized int size() {
+        return (int) Math.min(count, samples.length);
+    }
+
+    /**
+     * 计算窗口内耗时的分位数
+     * @param percentile 分位 取值(0, 1] 例如0.95
+     * @return 分位数（纳秒） 没有样本时返回-1
+     */
+    public synchronized long percentile(double percentile) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile must be in (0, 1]");
+        }
+        if (count == 0) {
+            return -1;
+        }
+        if (computedCount < 0 || count - computedCount >= RECOMPUTE_INTERVAL) {
+            sorted = Arrays.copyOf(samples, size());
+            Arrays.sort(sorted);
+            computedCount = count;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+}
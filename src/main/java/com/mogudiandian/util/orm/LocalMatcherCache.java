@@ -0,0 +1,157 @@
+package com.mogudiandian.util.orm;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于guava cache的本地缓存 线程安全 <br/>
+ * 每个缓存名称对应一个独立的cache 可以分别设置最大数量和写入后的过期时间 <br/>
+ * 超过最大数量后按照LRU淘汰 并记录命中/未命中/淘汰的统计信息
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class LocalMatcherCache implements MatcherCache {
+
+    /**
+     * 默认每个缓存最多10000条
+     */
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * 默认写入30分钟后过期
+     */
+    private static final long DEFAULT_EXPIRE_AFTER_WRITE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * 缓存名称 -> 缓存
+     */
+    private final ConcurrentMap<String, Cache<Object, Object>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存名称 -> 单独的配置 没有单独配置的使用默认配置
+     */
+    private final ConcurrentMap<String, long[]> specs = new ConcurrentHashMap<>();
+
+    /**
+     * 默认的最大数量
+     */
+    private final long defaultMaximumSize;
+
+    /**
+     * 默认的写入后过期时间（毫秒） 小于等于0表示不过期
+     */
+    private final long defaultExpireAfterWriteMillis;
+
+    public LocalMatcherCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param defaultMaximumSize 每个缓存默认的最大数量
+     * @param defaultExpireAfterWrite 每个缓存默认的写入后过期时间 小于等于0表示不过期
+     * @param unit 过期时间的单位
+     */
+    public LocalMatcherCache(long defaultMaximumSize, long defaultExpireAfterWrite, TimeUnit unit) {
+        if (defaultMaximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.defaultMaximumSize = defaultMaximumSize;
+        this.defaultExpireAfterWriteMillis = unit.toMillis(defaultExpireAfterWrite);
+    }
+
+    /**
+     * 单独设置某个缓存的最大数量和过期时间 如果这个缓存已经存在 会丢弃已缓存的数据后按新配置重建
+     * @param name 缓存名称
+     * @param maximumSize 最大数量
+     * @param expireAfterWrite 写入后过期时间 小于等于0表示不过期
+     * @param unit 过期时间的单位
+     * @return 当前对象本身
+     */
+    public LocalMatcherCache configure(String name, long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        Objects.requireNonNull(name, "缓存名称不能为空");
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        specs.put(name, new long[] {maximumSize, unit.toMillis(expireAfterWrite)});
+        caches.remove(name);
+        return this;
+    }
+
+    /**
+     * 获取缓存 不存在则按照配置创建
+     * @param name 缓存名称
+     * @return 缓存
+     */
+    private Cache<Object, Object> cache(String name) {
+        return caches.computeIfAbsent(name, k -> {
+            long[] spec = specs.get(k);
+            long maximumSize = spec != null ? spec[0] : defaultMaximumSize;
+            long expireAfterWriteMillis = spec != null ? spec[1] : defaultExpireAfterWriteMillis;
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                                                               .maximumSize(maximumSize)
+                                                               .recordStats();
+            if (expireAfterWriteMillis > 0) {
+                builder.expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS);
+            }
+            return builder.build();
+        });
+    }
+
+    @Override
+    public Object get(String name, Object identifier) {
+        return cache(name).getIfPresent(identifier);
+    }
+
+    @Override
+    public Map<Object, Object> getAll(String name, Collection<?> identifiers) {
+        return cache(name).getAllPresent(identifiers);
+    }
+
+    @Override
+    public void put(String name, Object identifier, Object value) {
+        cache(name).put(identifier, value);
+    }
+
+    @Override
+    public void putAll(String name, Map<?, ?> values) {
+        cache(name).putAll(values);
+    }
+
+    @Override
+    public void clear(String name) {
+        Cache<Object, Object> cache = caches.get(name);
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        caches.values().forEach(Cache::invalidateAll);
+    }
+
+    @Override
+    public CacheStats stats(String name) {
+        return cache(name).stats();
+    }
+
+    /**
+     * 获取某个缓存当前的数量（近似值）
+     * @param name 缓存名称
+     * @return 缓存数量
+     */
+    public long size(String name) {
+        Cache<Object, Object> cache = caches.get(name);
+        return cache != null ? cache.size() : 0;
+    }
+
+}
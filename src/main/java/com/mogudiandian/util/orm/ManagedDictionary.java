@@ -0,0 +1,416 @@
+package com.mogudiandian.util.orm;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 托管的字典数据 线程安全 <br/>
+ * 适用于一次性查出全部数据的字典类数据（例如类目、地区） 全量数据只加载一次并按照key建立索引 之后的查找都直接从索引中取 <br/>
+ * 可以设置定时刷新（refreshInterval）或者过期刷新（ttl） 刷新在后台进行 刷新完成前继续使用旧的数据（stale-while-revalidate） <br/>
+ * 刷新失败时保留旧的数据 只有首次加载时查找需要等待 <br/>
+ * 使用方式：
+ * <pre>
+ *     ManagedDictionary&lt;CategoryDTO, Long&gt; categories = new ManagedDictionary&lt;&gt;(categoryService::queryAll, CategoryDTO::getId)
+ *             .setTtl(10, TimeUnit.MINUTES);
+ *     matcher.setDictionary(categories);
+ * </pre>
+ *
+ * @param <D> 数据的类型
+ * @param <K> 数据生成key的类型
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+@Slf4j
+public final class ManagedDictionary<D, K> {
+
+    /**
+     * 过期触发的刷新因为线程池饱和被跳过后 再次尝试前的等待时间（纳秒）
+     */
+    private static final long SKIPPED_REFRESH_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 加载全量数据的方法
+     */
+    private final Supplier<? extends Collection<D>> loader;
+
+    /**
+     * 数据生成key的方法
+     */
+    private final Function<D, K> keyGenerator;
+
+    /**
+     * 当前的数据 首次加载完成前为null
+     */
+    private volatile Snapshot<D, K> snapshot;
+
+    /**
+     * 首次加载 多个调用方共享同一次加载
+     */
+    private final AtomicReference<CompletableFuture<Snapshot<D, K>>> initialLoad = new AtomicReference<>();
+
+    /**
+     * 是否正在后台刷新 同一时刻只有一个刷新
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * 数据的有效期（纳秒） 超过有效期后访问时触发后台刷新 小于等于0表示不过期
+     */
+    private volatile long ttlNanos;
+
+    /**
+     * 过期触发的刷新被跳过后 在这个时间（System.nanoTime()）之前不再尝试
+     */
+    private volatile long refreshBackoffUntil = System.nanoTime();
+
+    /**
+     * 定时刷新的任务
+     */
+    private volatile ScheduledFuture<?> refreshTask;
+
+    /**
+     * 执行加载的线程池
+     */
+    private volatile Executor executor = QueryExecutors.defaultQueryPool();
+
+    /**
+     * @param loader 加载全量数据的方法
+     * @param keyGenerator 数据生成key的方法
+     */
+    public ManagedDictionary(Supplier<? extends Collection<D>> loader, Function<D, K> keyGenerator) {
+        this.loader = Objects.requireNonNull(loader, "加载方法不能为空");
+        this.keyGenerator = Objects.requireNonNull(keyGenerator, "数据唯一键生成器不能为空");
+    }
+
+    /**
+     * 查找多个key对应的数据 已经加载过时不会阻塞
+     * @param keys key集合
+     * @return 所有key对应的数据 没有的key忽略
+     */
+    public CompletableFuture<List<D>> getAsync(Collection<K> keys) {
+        return snapshot().thenApply(x -> x.lookup(keys));
+    }
+
+    /**
+     * 获取全部数据 已经加载过时不会阻塞
+     * @return 全部数据
+     */
+    public CompletableFuture<List<D>> getAllAsync() {
+        return snapshot().thenApply(x -> x.dataList);
+    }
+
+    /**
+     * 查找多个key对应的数据 首次加载时会等待加载完成
+     * @param keys key集合
+     * @return 所有key对应的数据 没有的key忽略
+     */
+    public List<D> get(Collection<K> keys) {
+        return join(getAsync(keys));
+    }
+
+    /**
+     * 查找一个key对应的数据 首次加载时会等待加载完成
+     * @param key key
+     * @return key对应的数据 有多条时取第一条 没有时为null
+     */
+    public D get(K key) {
+        List<D> list = get(Collections.singletonList(key));
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * 获取全部数据 首次加载时会等待加载完成
+     * @return 全部数据
+     */
+    public List<D> getAll() {
+        return join(getAllAsync());
+    }
+
+    /**
+     * 在后台刷新数据 刷新完成前继续使用旧的数据 已经在刷新中或者线程池饱和时忽略 <br/>
+     * 还没有加载过时等同于首次加载
+     */
+    public void refresh() {
+        refresh(false);
+    }
+
+    /**
+     * 在后台刷新数据 线程池饱和时跳过这一次 继续使用旧的数据 <br/>
+     * 不能在调度器的线程或者查找的线程中加载全量数据 所以先用{@link QueryExecutors#isSaturated}检查线程池 再通过{@link QueryExecutors#handoff}提交
+     * @param scheduled 是否为调度器中的定时刷新
+     * @return 是否已经提交或者正在刷新中 false表示跳过了这一次刷新
+     */
+    private boolean refresh(boolean scheduled) {
+        if (snapshot == null) {
+            snapshot(scheduled);
+            return true;
+        }
+        if (!refreshing.compareAndSet(false, true)) {
+            return true;
+        }
+        if (QueryExecutors.isSaturated(executor)) {
+            refreshing.set(false);
+            log.warn("dictionary refresh skipped, the executor is saturated");
+            return false;
+        }
+        try {
+            boolean submitted = QueryExecutors.handoff(executor, () -> {
+                try {
+                    snapshot = load();
+                } catch (Exception e) {
+                    log.warn("dictionary refresh failure, keep the stale data", e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+            if (!submitted) {
+                refreshing.set(false);
+                log.warn("dictionary refresh skipped, the executor is saturated");
+            }
+            return submitted;
+        } catch (Exception e) {
+            refreshing.set(false);
+            log.warn("dictionary refresh rejected", e);
+            return false;
+        }
+    }
+
+    /**
+     * 查找时发现数据过期 在后台刷新 <br/>
+     * 刷新被跳过后等待一段时间再尝试 数据过期期间不会每一次查找都去检查和提交刷新
+     */
+    private void refreshExpired() {
+        long now = System.nanoTime();
+        if (now - refreshBackoffUntil < 0 || refreshing.get()) {
+            return;
+        }
+        if (!refresh(false)) {
+            refreshBackoffUntil = now + SKIPPED_REFRESH_BACKOFF_NANOS;
+        }
+    }
+
+    /**
+     * 停止定时刷新
+     */
+    public void stop() {
+        ScheduledFuture<?> task = refreshTask;
+        if (task != null) {
+            task.cancel(false);
+            refreshTask = null;
+        }
+    }
+
+    /**
+     * 是否已经加载过
+     * @return 是否已经加载过
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * 当前数据的数量
+     * @return 数量 还没有加载过时为0
+     */
+    public int size() {
+        Snapshot<D, K> current = snapshot;
+        return current != null ? current.dataList.size() : 0;
+    }
+
+    /**
+     * 当前数据的加载时间
+     * @return 加载时间（毫秒时间戳） 还没有加载过时为0
+     */
+    public long getLoadTime() {
+        Snapshot<D, K> current = snapshot;
+        return current != null ? current.loadTimeMillis : 0;
+    }
+
+    public Function<D, K> getKeyGenerator() {
+        return keyGenerator;
+    }
+
+    /**
+     * 获取当前的数据 过期时触发后台刷新并返回旧的数据 还没有加载过时进行首次加载
+     * @return 当前的数据
+     */
+    private CompletableFuture<Snapshot<D, K>> snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * 获取当前的数据 过期时触发后台刷新并返回旧的数据 还没有加载过时进行首次加载
+     * @param scheduled 是否为调度器中的定时刷新
+     * @return 当前的数据
+     */
+    private CompletableFuture<Snapshot<D, K>> snapshot(boolean scheduled) {
+        Snapshot<D, K> current = snapshot;
+        if (current != null) {
+            if (ttlNanos > 0 && System.nanoTime() - current.loadTimeNanos > ttlNanos) {
+                refreshExpired();
+            }
+            return CompletableFuture.completedFuture(current);
+        }
+        CompletableFuture<Snapshot<D, K>> future = initialLoad.get();
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<Snapshot<D, K>> newFuture = new CompletableFuture<>();
+        if (!initialLoad.compareAndSet(null, newFuture)) {
+            return initialLoad.get();
+        }
+        try {
+            boolean submitted = submit(() -> {
+                try {
+                    Snapshot<D, K> loaded = load();
+                    snapshot = loaded;
+                    newFuture.complete(loaded);
+                } catch (Throwable e) {
+                    // 首次加载失败时下次访问重新加载
+                    initialLoad.set(null);
+                    newFuture.completeExceptionally(e);
+                }
+            }, scheduled);
+            if (!submitted) {
+                initialLoad.set(null);
+                newFuture.completeExceptionally(new RejectedExecutionException("dictionary load skipped, the executor is saturated"));
+            }
+        } catch (Exception e) {
+            initialLoad.set(null);
+            newFuture.completeExceptionally(e);
+        }
+        return newFuture;
+    }
+
+    /**
+     * 在线程池中执行首次加载 调用方本来就要等待加载完成 线程池饱和时可以在调用方线程中执行 <br/>
+     * 定时刷新时通过{@link QueryExecutors#handoff}提交 线程池饱和时不会在调度器的线程中执行
+     * @param task 加载任务
+     * @param scheduled 是否为调度器中的定时刷新
+     * @return 是否提交成功 只有定时刷新时会返回false
+     */
+    private boolean submit(Runnable task, boolean scheduled) {
+        if (scheduled) {
+            return QueryExecutors.handoff(executor, task);
+        }
+        executor.execute(task);
+        return true;
+    }
+
+    /**
+     * 加载全量数据并建立索引
+     * @return 加载的数据
+     */
+    private Snapshot<D, K> load() {
+        Collection<D> dataCollection = loader.get();
+        List<D> dataList = dataCollection == null ? Collections.emptyList() : dataCollection.stream()
+                                                                                          .filter(Objects::nonNull)
+                                                                                          .collect(Collectors.toList());
+        Map<K, List<D>> index = new HashMap<>(dataList.size(), 1);
+        for (D data : dataList) {
+            index.computeIfAbsent(keyGenerator.apply(data), k -> new ArrayList<>(1)).add(data);
+        }
+        return new Snapshot<>(Collections.unmodifiableList(dataList), index);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 设置数据的有效期 超过有效期后访问时在后台刷新
+     * @param ttl 有效期 小于等于0表示不过期
+     * @param unit 有效期的单位
+     * @return 当前对象本身
+     */
+    public ManagedDictionary<D, K> setTtl(long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+        return this;
+    }
+
+    /**
+     * 设置定时刷新的间隔 会替换之前设置的定时刷新
+     * @param interval 间隔 小于等于0表示不定时刷新
+     * @param unit 间隔的单位
+     * @return 当前对象本身
+     */
+    public ManagedDictionary<D, K> setRefreshInterval(long interval, TimeUnit unit) {
+        stop();
+        if (interval > 0) {
+            refreshTask = QueryExecutors.scheduler().scheduleWithFixedDelay(() -> refresh(true), interval, interval, unit);
+        }
+        return this;
+    }
+
+    /**
+     * 设置执行加载的线程池 <br/>
+     * 后台刷新不会在调用方线程中执行 所以不能是直接在调用方线程中执行的线程池（例如MoreExecutors.directExecutor()） 否则后台刷新总是被跳过 <br/>
+     * 提交刷新前只能检查ThreadPoolExecutor（包括默认的线程池）是否饱和 其他的线程池饱和时应该拒绝任务或者在调用方线程中执行 不能阻塞提交任务的线程
+     * @param executor 线程池
+     * @return 当前对象本身
+     */
+    public ManagedDictionary<D, K> setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "线程池不能为空");
+        return this;
+    }
+
+    /**
+     * 某一次加载的数据和索引 不可变
+     */
+    private static final class Snapshot<D, K> {
+
+        /**
+         * 全部数据
+         */
+        private final List<D> dataList;
+
+        /**
+         * key -> 数据列表
+         */
+        private final Map<K, List<D>> index;
+
+        /**
+         * 加载完成的时间 用于计算是否过期
+         */
+        private final long loadTimeNanos = System.nanoTime();
+
+        /**
+         * 加载完成的时间戳
+         */
+        private final long loadTimeMillis = System.currentTimeMillis();
+
+        private Snapshot(List<D> dataList, Map<K, List<D>> index) {
+            this.dataList = dataList;
+            this.index = index;
+        }
+
+        /**
+         * 查找多个key对应的数据
+         * @param keys key集合
+         * @return 所有key对应的数据
+         */
+        private List<D> lookup(Collection<K> keys) {
+            List<D> result = new ArrayList<>(keys.size());
+            for (K key : keys) {
+                List<D> list = index.get(key);
+                if (list != null) {
+                    result.addAll(list);
+                }
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.mogudiandian.util.orm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次关系匹配各阶段的耗时 <br/>
+ * 准备阶段：参数校验、查询缓存、收集待查询的标识 <br/>
+ * 查询阶段：从发起查询到所有查询返回（或超时） <br/>
+ * 匹配阶段：按照key将查询结果匹配到源集合的元素上
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class MatchProfile {
+
+    /**
+     * 准备阶段耗时（纳秒）
+     */
+    private final long prepareNanos;
+
+    /**
+     * 查询阶段耗时（纳秒）
+     */
+    private final long queryNanos;
+
+    /**
+     * 匹配阶段耗时（纳秒）
+     */
+    private final long assembleNanos;
+
+    /**
+     * 查询是否超时
+     */
+    private final boolean timedOut;
+
+    /**
+     * 查询任务（批次）的总数
+     */
+    private final int totalTasks;
+
+    /**
+     * 成功完成的查询任务（批次）数
+     */
+    private final int completedTasks;
+
+    public MatchProfile(long prepareNanos, long queryNanos, long assembleNanos, boolean timedOut, int totalTasks, int completedTasks) {
+        this.prepareNanos = prepareNanos;
+        this.queryNanos = queryNanos;
+        this.assembleNanos = assembleNanos;
+        this.timedOut = timedOut;
+        this.totalTasks = totalTasks;
+        this.completedTasks = completedTasks;
+    }
+
+    public long getPrepareNanos() {
+        return prepareNanos;
+    }
+
+    public long getQueryNanos() {
+        return queryNanos;
+    }
+
+    public long getAssembleNanos() {
+        return assembleNanos;
+    }
+
+    public long getTotalNanos() {
+        return prepareNanos + queryNanos + assembleNanos;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public int getTotalTasks() {
+        return totalTasks;
+    }
+
+    public int getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /**
+     * 某个阶段占超时时间的比例
+     * @param phaseNanos 阶段耗时（纳秒）
+     * @param timeout 超时时间
+     * @param unit 超时时间的单位
+     * @return 占比 例如0.5表示用掉了一半的超时时间
+     */
+    public static double ratioOf(long phaseNanos, long timeout, TimeUnit unit) {
+        long timeoutNanos = unit.toNanos(timeout);
+        return timeoutNanos <= 0 ? 0 : (double) phaseNanos / timeoutNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MatchProfile{" +
+                "prepare=" + TimeUnit.NANOSECONDS.toMicros(prepareNanos) + "us" +
+                ", query=" + TimeUnit.NANOSECONDS.toMicros(queryNanos) + "us" +
+                ", assemble=" + TimeUnit.NANOSECONDS.toMicros(assembleNanos) + "us" +
+                ", timedOut=" + timedOut +
+                ", tasks=" + completedTasks + "/" + totalTasks +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package com.mogudiandian.util.orm;
+
+import com.google.common.cache.CacheStats;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 对象关系匹配器使用的缓存 <br/>
+ * 缓存按照名称（cacheKeyName）分区 每个分区内是 标识 -> 数据 的映射 <br/>
+ * 实现类需要是线程安全的 因为同一个缓存会被多个匹配器在多个线程中同时使用
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public interface MatcherCache {
+
+    /**
+     * 根据标识获取缓存的数据
+     * @param name 缓存名称
+     * @param identifier 标识
+     * @return 缓存的数据 未命中返回null
+     */
+    Object get(String name, Object identifier);
+
+    /**
+     * 根据多个标识批量获取缓存的数据
+     * @param name 缓存名称
+     * @param identifiers 标识集合
+     * @return 命中的 标识 -> 数据 未命中的标识不包含在内
+     */
+    default Map<Object, Object> getAll(String name, Collection<?> identifiers) {
+        Map<Object, Object> map = new HashMap<>(identifiers.size(), 1);
+        for (Object identifier : identifiers) {
+            Object value = get(name, identifier);
+            if (value != null) {
+                map.put(identifier, value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 将数据放入缓存
+     * @param name 缓存名称
+     * @param identifier 标识
+     * @param value 数据 不能为null
+     */
+    void put(String name, Object identifier, Object value);
+
+    /**
+     * 将多个数据放入缓存
+     * @param name 缓存名称
+     * @param values 标识 -> 数据
+     */
+    default void putAll(String name, Map<?, ?> values) {
+        values.forEach((identifier, value) -> put(name, identifier, value));
+    }
+
+    /**
+     * 清除某个缓存
+     * @param name 缓存名称
+     */
+    void clear(String name);
+
+    /**
+     * 清除全部缓存
+     */
+    void clearAll();
+
+    /**
+     * 获取某个缓存的统计信息（命中数、未命中数、淘汰数等）
+     * @param name 缓存名称
+     * @return 统计信息 不支持统计的实现返回全为0的统计
+     */
+    default CacheStats stats(String name) {
+        return new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+}
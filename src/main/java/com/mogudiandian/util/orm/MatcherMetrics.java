@@ -0,0 +1,75 @@
+package com.mogudiandian.util.orm;
+
+/**
+ * 关系匹配器的指标采集接口 所有方法默认不做任何事 <br/>
+ * 所有方法都带有名称参数（匹配器的缓存名称 没有设置时为null） 用于区分不同的下游查询 <br/>
+ * 实现需要是线程安全的 并且不能阻塞 因为会在查询线程和回调线程中调用 <br/>
+ * 使用Micrometer时可以直接使用{@link MicrometerMatcherMetrics}
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public interface MatcherMetrics {
+
+    /**
+     * 不采集任何指标
+     */
+    MatcherMetrics NOOP = new MatcherMetrics() {
+    };
+
+    /**
+     * 一批（一次）查询结束 每次重试都算一次 对冲请求和原请求合计为一次
+     * @param name 名称
+     * @param batchSize 这一批的标识数量
+     * @param nanos 耗时（纳秒）
+     * @param success 是否成功
+     */
+    default void recordBatch(String name, int batchSize, long nanos, boolean success) {
+    }
+
+    /**
+     * 一批（一次）查询失败后发起了重试
+     * @param name 名称
+     * @param retryCount 第几次重试 从1开始
+     */
+    default void recordRetry(String name, int retryCount) {
+    }
+
+    /**
+     * 查询任务在线程池中排队等待的时间
+     * @param name 名称
+     * @param nanos 等待时间（纳秒）
+     */
+    default void recordQueueWait(String name, long nanos) {
+    }
+
+    /**
+     * 查询缓存的结果
+     * @param name 名称
+     * @param hits 命中缓存的元素数量
+     * @param misses 未命中缓存的元素数量
+     */
+    default void recordCacheAccess(String name, int hits, int misses) {
+    }
+
+    /**
+     * 一次匹配结束
+     * @param name 名称
+     * @param nanos 整个匹配的耗时（纳秒）
+     * @param elements 源集合的元素数量
+     * @param unmatched 未匹配到关系的元素数量
+     * @param timedOut 查询是否超时
+     */
+    default void recordMatch(String name, long nanos, int elements, int unmatched, boolean timedOut) {
+    }
+
+    /**
+     * 一次匹配失败（例如查询超过重试次数、超时）
+     * @param name 名称
+     * @param nanos 从开始匹配到失败的耗时（纳秒）
+     * @param e 异常
+     */
+    default void recordMatchFailure(String name, long nanos, Throwable e) {
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.mogudiandian.util.orm;
+
+import io.micrometer.core.instrument.*;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 基于Micrometer的关系匹配器指标采集 所有指标都带有name标签（匹配器的缓存名称） <br/>
+ * orm.matcher.batch 每一批查询的耗时 带有result标签（success/failure） <br/>
+ * orm.matcher.batch.size 每一批查询的标识数量 <br/>
+ * orm.matcher.retry 重试次数 <br/>
+ * orm.matcher.queue.wait 查询任务在线程池中的排队时间 <br/>
+ * orm.matcher.cache 查询缓存的元素数量 带有result标签（hit/miss） 两者相除即为命中率 <br/>
+ * orm.matcher.match 整个匹配的耗时 带有result标签（success/timeout/failure） <br/>
+ * orm.matcher.unmatched.ratio 每次匹配中未匹配到关系的元素比例 <br/>
+ * 使用方式：
+ * <pre>
+ *     ObjectRelationMatcher.setDefaultMetrics(new MicrometerMatcherMetrics(meterRegistry));
+ * </pre>
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class MicrometerMatcherMetrics implements MatcherMetrics {
+
+    /**
+     * 没有设置缓存名称的匹配器使用的标签值
+     */
+    private static final String UNNAMED = "unnamed";
+
+    private final MeterRegistry registry;
+
+    /**
+     * 是否发布直方图 用于在监控系统中聚合计算分位数
+     */
+    private final boolean publishHistogram;
+
+    /**
+     * 已经注册的指标 避免每次都到registry中查找
+     */
+    private final ConcurrentMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public MicrometerMatcherMetrics(MeterRegistry registry) {
+        this(registry, true);
+    }
+
+    /**
+     * @param registry 指标注册中心
+     * @param publishHistogram 是否发布直方图
+     */
+    public MicrometerMatcherMetrics(MeterRegistry registry, boolean publishHistogram) {
+        this.registry = Objects.requireNonNull(registry, "指标注册中心不能为空");
+        this.publishHistogram = publishHistogram;
+    }
+
+    @Override
+    public void recordBatch(String name, int batchSize, long nanos, boolean success) {
+        Meters m = meters(name);
+        (success ? m.batchSuccess : m.batchFailure).record(nanos, TimeUnit.NANOSECONDS);
+        m.batchSize.record(batchSize);
+    }
+
+    @Override
+    public void recordRetry(String name, int retryCount) {
+        meters(name).retry.increment();
+    }
+
+    @Override
+    public void recordQueueWait(String name, long nanos) {
+        meters(name).queueWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordCacheAccess(String name, int hits, int misses) {
+        Meters m = meters(name);
+        m.cacheHit.increment(hits);
+        m.cacheMiss.increment(misses);
+    }
+
+    @Override
+    public void recordMatch(String name, long nanos, int elements, int unmatched, boolean timedOut) {
+        Meters m = meters(name);
+        (timedOut ? m.matchTimeout : m.matchSuccess).record(nanos, TimeUnit.NANOSECONDS);
+        if (elements > 0) {
+            m.unmatchedRatio.record((double) unmatched / elements);
+        }
+    }
+
+    @Override
+    public void recordMatchFailure(String name, long nanos, Throwable e) {
+        meters(name).matchFailure.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Meters meters(String name) {
+        return meters.computeIfAbsent(name != null ? name : UNNAMED, Meters::new);
+    }
+
+    /**
+     * 一个名称对应的所有指标
+     */
+    private final class Meters {
+
+        private final Timer batchSuccess;
+
+        private final Timer batchFailure;
+
+        private final DistributionSummary batchSize;
+
+        private final Counter retry;
+
+        private final Timer queueWait;
+
+        private final Counter cacheHit;
+
+        private final Counter cacheMiss;
+
+        private final Timer matchSuccess;
+
+        private final Timer matchTimeout;
+
+        private final Timer matchFailure;
+
+        private final DistributionSummary unmatchedRatio;
+
+        private Meters(String name) {
+            Function<String, Timer.Builder> timer = meterName -> Timer.builder(meterName)
+                                                                      .tag("name", name)
+                                                                      .publishPercentileHistogram(publishHistogram);
+            this.batchSuccess = timer.apply("orm.matcher.batch").tag("result", "success").register(registry);
+            this.batchFailure = timer.apply("orm.matcher.batch").tag("result", "failure").register(registry);
+            this.batchSize = DistributionSummary.builder("orm.matcher.batch.size")
+                                                .tag("name", name)
+                                                .publishPercentileHistogram(publishHistogram)
+                                                .register(registry);
+            this.retry = Counter.builder("orm.matcher.retry").tag("name", name).register(registry);
+            this.queueWait = timer.apply("orm.matcher.queue.wait").register(registry);
+            this.cacheHit = Counter.builder("orm.matcher.cache").tag("name", name).tag("result", "hit").register(registry);
+            this.cacheMiss = Counter.builder("orm.matcher.cache").tag("name", name).tag("result", "miss").register(registry);
+            this.matchSuccess = timer.apply("orm.matcher.match").tag("result", "success").register(registry);
+            this.matchTimeout = timer.apply("orm.matcher.match").tag("result", "timeout").register(registry);
+            this.matchFailure = timer.apply("orm.matcher.match").tag("result", "failure").register(registry);
+            this.unmatchedRatio = DistributionSummary.builder("orm.matcher.unmatched.ratio")
+                                                     .tag("name", name)
+                                                     .register(registry);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.mogudiandian.util.orm;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 查询合并器（single-flight） 线程安全 <br/>
+ * 按照 名称+标识 记录正在进行中的查询 多个调用方同时查询相同的标识时 只有第一个调用方真正发起查询 <br/>
+ * 其余的调用方挂在这次查询的结果上 查询结束后记录会被自动移除
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class QueryCoalescer {
+
+    /**
+     * (名称, 标识) -> 包含这个标识的查询结果
+     */
+    private final ConcurrentMap<Key, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 认领一批标识 <br/>
+     * 已经在查询中的标识会挂到进行中的查询结果上 其余的标识登记到promise上 由调用方负责查询并完成promise <br/>
+     * promise结束后（无论成功失败）登记的记录会被移除
+     * @param name 名称 通常是缓存名称
+     * @param identifiers 待查询的标识
+     * @param promise 调用方的查询结果
+     * @param <I> 标识的类型
+     * @param <R> 查询结果的类型
+     * @return 认领的结果
+     */
+    @SuppressWarnings("unchecked")
+    public <I, R> Claim<I, R> claim(String name, Collection<I> identifiers, CompletableFuture<R> promise) {
+        Objects.requireNonNull(name, "名称不能为空");
+        List<I> claimed = new ArrayList<>(identifiers.size());
+        Set<CompletableFuture<R>> attached = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Key> registered = new ArrayList<>(identifiers.size());
+        for (I identifier : new LinkedHashSet<>(identifiers)) {
+            Key key = new Key(name, identifier);
+            CompletableFuture<?> existing = inFlight.putIfAbsent(key, promise);
+            if (existing == null) {
+                claimed.add(identifier);
+                registered.add(key);
+            } else if (existing != promise) {
+                attached.add((CompletableFuture<R>) existing);
+            }
+        }
+        if (!registered.isEmpty()) {
+            promise.whenComplete((r, e) -> registered.forEach(key -> inFlight.remove(key, promise)));
+        }
+        return new Claim<>(claimed, attached);
+    }
+
+    /**
+     * 当前正在查询中的标识数量
+     * @return 标识数量
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 认领的结果
+     * @param <I> 标识的类型
+     * @param <R> 查询结果的类型
+     */
+    public static final class Claim<I, R> {
+
+        /**
+         * 需要调用方自己查询的标识
+         */
+        private final List<I> claimed;
+
+        /**
+         * 已经在查询中的标识对应的查询结果（去重后）
+         */
+        private final Set<CompletableFuture<R>> attached;
+
+        private Claim(List<I> claimed, Set<CompletableFuture<R>> attached) {
+            this.claimed = claimed;
+            this.attached = attached;
+        }
+
+        public List<I> getClaimed() {
+            return claimed;
+        }
+
+        public Set<CompletableFuture<R>> getAttached() {
+            return attached;
+        }
+    }
+
+    /**
+     * (名称, 标识)
+     */
+    private static final class Key {
+
+        private final String name;
+
+        private final Object identifier;
+
+        private Key(String name, Object identifier) {
+            this.name = name;
+            this.identifier = identifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return name.equals(key.name) && Objects.equals(identifier, key.identifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + Objects.hashCode(identifier);
+        }
+    }
+
+}
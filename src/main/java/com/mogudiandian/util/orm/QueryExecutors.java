@@ -0,0 +1,275 @@
+package com.mogudiandian.util.orm;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 对象关系匹配相关的共享线程池 <br/>
+ * 包括默认的并发查询线程池和只负责计时的调度器（重试等待、批量加载的时间窗口等） <br/>
+ * 查询通常是IO密集的远程调用 可以按照缓存名称注册单独的线程池做隔离（舱壁） 避免一个慢的下游拖垮所有的匹配器 <br/>
+ * 在JDK21及以上运行时 还可以使用每个任务一个虚拟线程的线程池 使并发不再受CPU数量的限制
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class QueryExecutors {
+
+    /**
+     * 线程池产生的现成命名规则为orm-parallel-query-pool-现成的tid
+     */
+    private static final String EXECUTOR_THREAD_NAME_FORMAT = "orm-parallel-query-pool-%d";
+
+    /**
+     * 调度线程的命名规则为orm-scheduler-现成的tid
+     */
+    private static final String SCHEDULER_THREAD_NAME_FORMAT = "orm-scheduler-%d";
+
+    /**
+     * 线程池并发的数量默认为CPU逻辑处理器数量（同FJP） 这样不太适合Intel-HT的CPU
+     */
+    private static final int EXECUTOR_PARALLEL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 线程池队列长度默认为1024
+     */
+    private static final int EXECUTOR_QUEUE_SIZE = 1024;
+
+    /**
+     * 线程池拒绝调度器交出的任务后 再次尝试的等待时间（毫秒）
+     */
+    private static final long REQUEUE_DELAY_MILLIS = 5;
+
+    /**
+     * 默认的并发查询线程池
+     */
+    private static final ListeningExecutorService defaultQueryPool;
+
+    /**
+     * 默认的并发查询线程池装饰前的线程池 用于判断是否饱和
+     */
+    private static final ThreadPoolExecutor defaultThreadPool;
+
+    /**
+     * 延迟任务的调度器 只负责计时 到期后的任务应该交给其他线程池执行
+     */
+    private static final ScheduledExecutorService scheduler;
+
+    /**
+     * 缓存名称 -> 单独注册的线程池
+     */
+    private static final ConcurrentMap<String, Executor> registeredExecutors = new ConcurrentHashMap<>();
+
+    /**
+     * 虚拟线程的线程池 首次使用时通过反射创建 JDK21以下为null
+     */
+    private static volatile ExecutorService virtualThreadExecutor;
+
+    /**
+     * 是否已经尝试过创建虚拟线程的线程池
+     */
+    private static volatile boolean virtualThreadExecutorResolved;
+
+    static {
+        defaultThreadPool = new ThreadPoolExecutor(
+                EXECUTOR_PARALLEL_SIZE,
+                EXECUTOR_PARALLEL_SIZE,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(EXECUTOR_QUEUE_SIZE),
+                new ThreadFactoryBuilder().setNameFormat(EXECUTOR_THREAD_NAME_FORMAT).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        defaultQueryPool = MoreExecutors.listeningDecorator(defaultThreadPool);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat(SCHEDULER_THREAD_NAME_FORMAT)
+                                                                                         .setDaemon(true)
+                                                                                         .build());
+    }
+
+    private QueryExecutors() {}
+
+    /**
+     * 获取默认的并发查询线程池
+     * @return 线程池
+     */
+    public static ListeningExecutorService defaultQueryPool() {
+        return defaultQueryPool;
+    }
+
+    /**
+     * 获取共享的调度器 调度的任务不应该阻塞
+     * @return 调度器
+     */
+    public static ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 把调度器中到期的任务交给线程池执行 <br/>
+     * 线程池饱和时CallerRunsPolicy会在调用方线程中执行任务 而调度器只有一个线程 不能执行阻塞的任务 所以这种情况也视为拒绝 <br/>
+     * 是否在调用方线程中执行是在execute返回前判断的 不依赖线程池是否传递任务抛出的异常 <br/>
+     * 注意：直接在调用方线程中执行的线程池（例如MoreExecutors.directExecutor()）总是拒绝
+     * @param executor 线程池
+     * @param task 任务
+     * @return 是否交给了线程池 false表示线程池拒绝了任务 任务没有执行
+     */
+    public static boolean handoff(Executor executor, Runnable task) {
+        Thread caller = Thread.currentThread();
+        // execute返回前是否在调用方线程中执行了 只在调用方线程中读写
+        boolean[] ranOnCaller = new boolean[1];
+        AtomicBoolean submitted = new AtomicBoolean();
+        try {
+            executor.execute(() -> {
+                if (!submitted.get() && Thread.currentThread() == caller) {
+                    ranOnCaller[0] = true;
+                    return;
+                }
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        submitted.set(true);
+        return !ranOnCaller[0];
+    }
+
+    /**
+     * 线程池是否已经饱和 饱和时新提交的任务会被拒绝或者在调用方线程中执行 <br/>
+     * 只能判断ThreadPoolExecutor（包括默认的并发查询线程池）：线程都在执行任务并且队列已满 或者已经关闭 <br/>
+     * 其他的线程池无法判断 总是返回false
+     * @param executor 线程池
+     * @return 是否已经饱和
+     */
+    public static boolean isSaturated(Executor executor) {
+        ThreadPoolExecutor pool;
+        if (executor == defaultQueryPool) {
+            pool = defaultThreadPool;
+        } else if (executor instanceof ThreadPoolExecutor) {
+            pool = (ThreadPoolExecutor) executor;
+        } else {
+            return false;
+        }
+        return pool.isShutdown() || (pool.getActiveCount() >= pool.getMaximumPoolSize() && pool.getQueue().remainingCapacity() == 0);
+    }
+
+    /**
+     * 把调度器中到期的任务交给线程池执行 用于不能丢弃的任务（例如结束等待中的结果） <br/>
+     * 被拒绝时交给默认的并发查询线程池 直接在调用方线程中执行的线程池永远不会接受 饱和的线程池也不能确定什么时候接受 <br/>
+     * 默认的线程池也被拒绝时等待一段时间后再次尝试 直到线程池接受 已经关闭时不再尝试
+     * @param executor 线程池
+     * @param task 任务
+     */
+    public static void handoffOrRequeue(Executor executor, Runnable task) {
+        if (handoff(executor, task)) {
+            return;
+        }
+        if (executor != defaultQueryPool) {
+            handoffOrRequeue(defaultQueryPool, task);
+        } else if (!defaultQueryPool.isShutdown()) {
+            scheduler.schedule(() -> handoffOrRequeue(defaultQueryPool, task), REQUEUE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 创建一个查询线程池 可用于注册为某个缓存名称单独的线程池 <br/>
+     * 队列满了以后由调用方线程执行
+     * @param name 线程池名称 用于线程命名
+     * @param parallelism 线程数
+     * @param queueSize 队列长度
+     * @return 线程池
+     */
+    public static ExecutorService newQueryPool(String name, int parallelism, int queueSize) {
+        return new ThreadPoolExecutor(
+                parallelism,
+                parallelism,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("orm-" + name + "-query-pool-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 为某个缓存名称注册单独的线程池 使用这个缓存名称的匹配器都会在这个线程池中执行查询
+     * @param name 缓存名称
+     * @param executor 线程池
+     */
+    public static void register(String name, Executor executor) {
+        registeredExecutors.put(Objects.requireNonNull(name, "缓存名称不能为空"), Objects.requireNonNull(executor, "线程池不能为空"));
+    }
+
+    /**
+     * 取消某个缓存名称单独注册的线程池 取消后使用默认的线程池 取消的线程池不会被关闭
+     * @param name 缓存名称
+     * @return 之前注册的线程池
+     */
+    public static Executor unregister(String name) {
+        return registeredExecutors.remove(name);
+    }
+
+    /**
+     * 获取某个缓存名称单独注册的线程池
+     * @param name 缓存名称
+     * @return 注册的线程池 没有注册返回null
+     */
+    public static Executor registered(String name) {
+        return name == null ? null : registeredExecutors.get(name);
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程（JDK21及以上）
+     * @return 是否支持
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadExecutor() != null;
+    }
+
+    /**
+     * 获取每个任务一个虚拟线程的线程池 <br/>
+     * 为了兼容JDK8编译 通过反射调用Executors.newVirtualThreadPerTaskExecutor()
+     * @return 虚拟线程的线程池 当前运行时不支持时返回null
+     */
+    public static ExecutorService virtualThreadExecutor() {
+        if (!virtualThreadExecutorResolved) {
+            synchronized (QueryExecutors.class) {
+                if (!virtualThreadExecutorResolved) {
+                    try {
+                        Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                        virtualThreadExecutor = (ExecutorService) method.invoke(null);
+                    } catch (Exception ignored) {
+                        // JDK21以下没有这个方法
+                    }
+                    virtualThreadExecutorResolved = true;
+                }
+            }
+        }
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * 停机 关闭线程池和调度器
+     */
+    public static void shutdown() {
+        try {
+            defaultQueryPool.shutdown();
+        } catch (Exception ignored) {
+        }
+        try {
+            scheduler.shutdown();
+        } catch (Exception ignored) {
+        }
+        try {
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdown();
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+}
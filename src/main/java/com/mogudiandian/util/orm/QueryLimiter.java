@@ -0,0 +1,272 @@
+package com.mogudiandian.util.orm;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 查询限流器 线程安全 <br/>
+ * 同时限制每秒发起的查询数（令牌桶 基于guava的RateLimiter）和同时进行中的查询数 <br/>
+ * 没有许可时查询进入等待队列 不会阻塞调用方和线程池中的线程 有许可后按照提交顺序发起 <br/>
+ * 可以单独设置给某个匹配器 也可以按照缓存名称注册 使用这个缓存名称的匹配器共享同一个限流器 <br/>
+ * 使用方式：
+ * <pre>
+ *     // 下游最多每秒50次请求 最多同时10个请求
+ *     QueryLimiter.register("article", new QueryLimiter(50, 10));
+ * </pre>
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public final class QueryLimiter {
+
+    /**
+     * 缓存名称 -> 限流器
+     */
+    private static final ConcurrentMap<String, QueryLimiter> registeredLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * 令牌桶 为null表示不限制每秒的查询数
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * 最多同时进行中的查询数 小于等于0表示不限制
+     */
+    private final int maxInFlight;
+
+    /**
+     * 当前进行中的查询数
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 等待许可的查询
+     */
+    private final Deque<Task<?>> waiting = new ConcurrentLinkedDeque<>();
+
+    /**
+     * 是否已经安排了等待令牌后的调度
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /**
+     * 请求调度的次数 不为0时已经有线程在调度 其他线程只需要增加次数 由调度中的线程再调度一轮
+     */
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    /**
+     * 等待令牌后发起查询的线程池
+     */
+    private volatile Executor executor = QueryExecutors.defaultQueryPool();
+
+    /**
+     * @param permitsPerSecond 每秒最多发起的查询数 小于等于0表示不限制
+     * @param maxInFlight 最多同时进行中的查询数 小于等于0表示不限制
+     */
+    public QueryLimiter(double permitsPerSecond, int maxInFlight) {
+        this.rateLimiter = permitsPerSecond > 0 ? RateLimiter.create(permitsPerSecond) : null;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 为某个缓存名称注册限流器 使用这个缓存名称的匹配器都会共享这个限流器
+     * @param name 缓存名称
+     * @param limiter 限流器
+     */
+    public static void register(String name, QueryLimiter limiter) {
+        registeredLimiters.put(Objects.requireNonNull(name, "缓存名称不能为空"), Objects.requireNonNull(limiter, "限流器不能为空"));
+    }
+
+    /**
+     * 取消某个缓存名称注册的限流器
+     * @param name 缓存名称
+     * @return 取消的限流器 没有注册过时为null
+     */
+    public static QueryLimiter unregister(String name) {
+        return registeredLimiters.remove(Objects.requireNonNull(name, "缓存名称不能为空"));
+    }
+
+    /**
+     * 获取某个缓存名称注册的限流器
+     * @param name 缓存名称 可以为null
+     * @return 注册的限流器 没有注册过时为null
+     */
+    public static QueryLimiter registered(String name) {
+        return name == null ? null : registeredLimiters.get(name);
+    }
+
+    /**
+     * 提交一个查询 有许可时立即发起 否则等待许可后发起 <br/>
+     * 返回的结果被取消时 还在等待的查询不会再发起 已经发起的查询会被取消
+     * @param query 发起查询
+     * @param <T> 结果类型
+     * @return 查询结果
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletableFuture<? extends T>> query) {
+        Task<T> task = new Task<>(query);
+        waiting.offer(task);
+        drain();
+        return task.result;
+    }
+
+    /**
+     * 在许可范围内发起等待中的查询 <br/>
+     * 同一时间只有一个线程在调度 已经完成的查询在回调中再次调度时只增加次数 不会递归调度导致栈溢出
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            drainOnce();
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /**
+     * 调度一轮 直到没有许可或没有等待中的查询
+     */
+    private void drainOnce() {
+        while (true) {
+            if (!tryAcquireInFlight()) {
+                // 有查询结束时会再次调度
+                return;
+            }
+            Task<?> task = pollWaiting();
+            if (task == null) {
+                inFlight.decrementAndGet();
+                // 释放许可的同时可能有新的查询进入了等待队列
+                if (waiting.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+                // 没有令牌 放回队首 等待令牌后再调度
+                waiting.offerFirst(task);
+                inFlight.decrementAndGet();
+                scheduleDrain();
+                return;
+            }
+            start(task);
+        }
+    }
+
+    /**
+     * 取出第一个还在等待的查询 已经被取消的直接丢弃
+     * @return 等待的查询 没有时为null
+     */
+    private Task<?> pollWaiting() {
+        Task<?> task;
+        while ((task = waiting.poll()) != null) {
+            if (!task.result.isDone()) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 尝试占用一个进行中的名额
+     * @return 是否成功
+     */
+    private boolean tryAcquireInFlight() {
+        if (maxInFlight <= 0) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * 等待一个令牌的时间后在线程池中重新调度
+     */
+    private void scheduleDrain() {
+        if (!drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delayNanos = Math.max((long) (TimeUnit.SECONDS.toNanos(1) / rateLimiter.getRate()), TimeUnit.MILLISECONDS.toNanos(1));
+        QueryExecutors.scheduler().schedule(() -> {
+            drainScheduled.set(false);
+            // 发起查询可能会阻塞 不能在调度器的线程中执行 线程池饱和时稍后再交给线程池
+            QueryExecutors.handoffOrRequeue(executor, this::drain);
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 发起一个查询 结束后释放名额并调度下一个
+     * @param task 查询
+     * @param <T> 结果类型
+     */
+    private <T> void start(Task<T> task) {
+        CompletableFuture<? extends T> future;
+        try {
+            future = Objects.requireNonNull(task.query.get(), "查询不能返回null");
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        CompletableFuture<? extends T> queryFuture = future;
+        task.result.whenComplete((data, e) -> queryFuture.cancel(false));
+        queryFuture.whenComplete((data, e) -> {
+            inFlight.decrementAndGet();
+            if (e == null) {
+                task.result.complete(data);
+            } else {
+                task.result.completeExceptionally(e);
+            }
+            drain();
+        });
+    }
+
+    /**
+     * 当前进行中的查询数
+     * @return 进行中的查询数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 当前等待许可的查询数
+     * @return 等待的查询数
+     */
+    public int getWaiting() {
+        return waiting.size();
+    }
+
+    public QueryLimiter setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "线程池不能为空");
+        return this;
+    }
+
+    /**
+     * 等待许可的查询
+     * @param <T> 结果类型
+     */
+    private static final class Task<T> {
+
+        private final Supplier<? extends CompletableFuture<? extends T>> query;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Task(Supplier<? extends CompletableFuture<? extends T>> query) {
+            this.query = query;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.mogudiandian.util.orm;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 远程缓存（例如Redis）的客户端 用作{@link TieredMatcherCache}的二级缓存 <br/>
+ * 值的序列化由实现类负责 实现类需要是线程安全的
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+public interface RemoteCacheClient {
+
+    /**
+     * 获取一个key对应的值
+     * @param key 缓存key
+     * @return 值 不存在时返回null
+     */
+    Object get(String key);
+
+    /**
+     * 批量获取多个key对应的值（例如Redis的MGET）
+     * @param keys 缓存key集合
+     * @return 存在的 key -> 值 不存在的key不包含在内
+     */
+    default Map<String, Object> multiGet(Collection<String> keys) {
+        Map<String, Object> map = new HashMap<>(keys.size(), 1);
+        for (String key : keys) {
+            Object value = get(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 批量设置多个值 并设置过期时间（例如Redis的pipeline SET PX）
+     * @param values key -> 值
+     * @param ttlMillis 过期时间（毫秒） 小于等于0表示不过期
+     */
+    void multiSet(Map<String, Object> values, long ttlMillis);
+
+    /**
+     * 设置一个值
+     * @param key 缓存key
+     * @param value 值
+     * @param ttlMillis 过期时间（毫秒） 小于等于0表示不过期
+     */
+    default void set(String key, Object value, long ttlMillis) {
+        multiSet(Collections.singletonMap(key, value), ttlMillis);
+    }
+
+    /**
+     * 删除某个前缀的所有key（例如Redis的SCAN + UNLINK） 只有开启了清除远程缓存时才会调用 <br/>
+     * 不支持按前缀删除的实现可以什么都不做 远程缓存中的数据会在过期后失效
+     * @param prefix key的前缀
+     */
+    void deleteByPrefix(String prefix);
+
+}
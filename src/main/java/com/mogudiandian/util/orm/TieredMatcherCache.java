@@ -0,0 +1,240 @@
+package com.mogudiandian.util.orm;
+
+import com.google.common.cache.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 两级缓存 线程安全 <br/>
+ * 一级为本地缓存 二级为多个节点共享的远程缓存（例如Redis） <br/>
+ * 读取时先查本地缓存 本地未命中的标识再批量查询远程缓存 远程命中的数据会回填到本地缓存 都未命中的才交给匹配器查询 <br/>
+ * 写入时同时写入本地缓存和远程缓存 远程缓存的key为 前缀 + 缓存名称 + ":" + 标识 <br/>
+ * 远程缓存访问失败时只记录日志 当作未命中处理 不影响匹配 <br/>
+ * 使用方式：
+ * <pre>
+ *     ObjectRelationMatcher.setDefaultCache(new TieredMatcherCache(new LocalMatcherCache(), redisCacheClient)
+ *             .setRemoteTtl(1, TimeUnit.HOURS));
+ * </pre>
+ *
+ * @author Joshua Sun
+ * @since 1.0.25
+ */
+@Slf4j
+public final class TieredMatcherCache implements MatcherCache {
+
+    /**
+     * 默认的远程缓存key前缀
+     */
+    private static final String DEFAULT_KEY_PREFIX = "orm:";
+
+    /**
+     * 默认远程缓存写入1小时后过期
+     */
+    private static final long DEFAULT_REMOTE_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * 一级缓存（本地）
+     */
+    private final MatcherCache local;
+
+    /**
+     * 二级缓存（远程）
+     */
+    private final RemoteCacheClient remote;
+
+    /**
+     * 远程缓存key的前缀
+     */
+    private volatile String keyPrefix = DEFAULT_KEY_PREFIX;
+
+    /**
+     * 远程缓存的过期时间（毫秒） 小于等于0表示不过期
+     */
+    private volatile long remoteTtlMillis = DEFAULT_REMOTE_TTL_MILLIS;
+
+    /**
+     * 清除缓存时是否同时清除远程缓存 默认为false（只清除本地缓存） <br/>
+     * 远程缓存是多个节点共享的 一个节点停机或匹配后清理缓存时通常不应该影响其他节点
+     */
+    private volatile boolean propagateClear;
+
+    /**
+     * 远程缓存命中的数量
+     */
+    private final AtomicLong remoteHitCount = new AtomicLong();
+
+    /**
+     * 远程缓存未命中的数量
+     */
+    private final AtomicLong remoteMissCount = new AtomicLong();
+
+    /**
+     * @param local 一级缓存（本地）
+     * @param remote 二级缓存（远程）
+     */
+    public TieredMatcherCache(MatcherCache local, RemoteCacheClient remote) {
+        this.local = Objects.requireNonNull(local, "本地缓存不能为空");
+        this.remote = Objects.requireNonNull(remote, "远程缓存不能为空");
+    }
+
+    @Override
+    public Object get(String name, Object identifier) {
+        Object value = local.get(name, identifier);
+        if (value != null) {
+            return value;
+        }
+        try {
+            value = remote.get(remoteKey(name, identifier));
+        } catch (Exception e) {
+            log.warn("remote cache get for {} failure", name, e);
+            return null;
+        }
+        if (value != null) {
+            remoteHitCount.incrementAndGet();
+            local.put(name, identifier, value);
+        } else {
+            remoteMissCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    @Override
+    public Map<Object, Object> getAll(String name, Collection<?> identifiers) {
+        Map<Object, Object> map = local.getAll(name, identifiers);
+        if (map.size() >= identifiers.size()) {
+            return map;
+        }
+
+        // 本地未命中的标识 远程key -> 标识
+        Map<String, Object> keyIdentifierMap = new HashMap<>(identifiers.size() - map.size(), 1);
+        for (Object identifier : identifiers) {
+            if (!map.containsKey(identifier)) {
+                keyIdentifierMap.put(remoteKey(name, identifier), identifier);
+            }
+        }
+
+        Map<String, Object> remoteMap;
+        try {
+            remoteMap = remote.multiGet(keyIdentifierMap.keySet());
+        } catch (Exception e) {
+            log.warn("remote cache multiGet for {} failure", name, e);
+            return map;
+        }
+
+        if (!remoteMap.isEmpty()) {
+            Map<Object, Object> hits = new HashMap<>(remoteMap.size(), 1);
+            remoteMap.forEach((key, value) -> {
+                Object identifier = keyIdentifierMap.get(key);
+                if (identifier != null && value != null) {
+                    hits.put(identifier, value);
+                }
+            });
+            // 回填本地缓存
+            local.putAll(name, hits);
+            // 本地缓存的实现可能返回不可变的map
+            map = new HashMap<>(map);
+            map.putAll(hits);
+            remoteHitCount.addAndGet(hits.size());
+            remoteMissCount.addAndGet(keyIdentifierMap.size() - hits.size());
+        } else {
+            remoteMissCount.addAndGet(keyIdentifierMap.size());
+        }
+        return map;
+    }
+
+    @Override
+    public void put(String name, Object identifier, Object value) {
+        local.put(name, identifier, value);
+        try {
+            remote.set(remoteKey(name, identifier), value, remoteTtlMillis);
+        } catch (Exception e) {
+            log.warn("remote cache set for {} failure", name, e);
+        }
+    }
+
+    @Override
+    public void putAll(String name, Map<?, ?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        local.putAll(name, values);
+        Map<String, Object> remoteValues = new HashMap<>(values.size(), 1);
+        values.forEach((identifier, value) -> remoteValues.put(remoteKey(name, identifier), value));
+        try {
+            remote.multiSet(remoteValues, remoteTtlMillis);
+        } catch (Exception e) {
+            log.warn("remote cache multiSet for {} failure", name, e);
+        }
+    }
+
+    @Override
+    public void clear(String name) {
+        local.clear(name);
+        if (propagateClear) {
+            try {
+                remote.deleteByPrefix(keyPrefix + name + ":");
+            } catch (Exception e) {
+                log.warn("remote cache deleteByPrefix for {} failure", name, e);
+            }
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        local.clearAll();
+        if (propagateClear) {
+            try {
+                remote.deleteByPrefix(keyPrefix);
+            } catch (Exception e) {
+                log.warn("remote cache deleteByPrefix for {} failure", keyPrefix, e);
+            }
+        }
+    }
+
+    /**
+     * 获取本地缓存的统计信息 远程缓存的命中情况见getRemoteHitCount/getRemoteMissCount
+     * @param name 缓存名称
+     * @return 本地缓存的统计信息
+     */
+    @Override
+    public CacheStats stats(String name) {
+        return local.stats(name);
+    }
+
+    /**
+     * 生成远程缓存的key
+     * @param name 缓存名称
+     * @param identifier 标识
+     * @return 远程缓存的key
+     */
+    private String remoteKey(String name, Object identifier) {
+        return keyPrefix + name + ":" + identifier;
+    }
+
+    public long getRemoteHitCount() {
+        return remoteHitCount.get();
+    }
+
+    public long getRemoteMissCount() {
+        return remoteMissCount.get();
+    }
+
+    public TieredMatcherCache setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = Objects.requireNonNull(keyPrefix, "远程缓存key前缀不能为空");
+        return this;
+    }
+
+    public TieredMatcherCache setRemoteTtl(long remoteTtl, TimeUnit unit) {
+        this.remoteTtlMillis = unit.toMillis(remoteTtl);
+        return this;
+    }
+
+    public TieredMatcherCache setPropagateClear(boolean propagateClear) {
+        this.propagateClear = propagateClear;
+        return this;
+    }
+
+}
@@ -1,8 +1,13 @@
 package com.mogudiandian.util.stream;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Supplier;
+import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 /**
@@ -28,4 +33,41 @@ public final class StreamUtils {
                      .get();
     }
 
+    /**
+     * 将集合按照固定大小分批 每一批用指定的collector聚合 只遍历一次集合 <br/>
+     * 和guava的Lists.partition不同 每一批的类型由collector决定（例如Set）
+     * @param collection 集合
+     * @param size 每一批的大小
+     * @param collector 每一批的聚合方式
+     * @param <T> 集合的元素类型
+     * @param <A> collector的中间类型
+     * @param <R> 每一批的类型
+     * @return 分批后的结果
+     */
+    public static <T, A, R> List<R> partition(Collection<T> collection, int size, Collector<T, A, R> collector) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        Supplier<A> supplier = collector.supplier();
+        BiConsumer<A, T> accumulator = collector.accumulator();
+        List<R> batches = new ArrayList<>((collection.size() + size - 1) / size);
+        A container = null;
+        int count = 0;
+        for (T t : collection) {
+            if (container == null) {
+                container = supplier.get();
+            }
+            accumulator.accept(container, t);
+            if (++count == size) {
+                batches.add(collector.finisher().apply(container));
+                container = null;
+                count = 0;
+            }
+        }
+        if (container != null) {
+            batches.add(collector.finisher().apply(container));
+        }
+        return batches;
+    }
+
 }
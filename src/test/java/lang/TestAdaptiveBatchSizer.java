@@ -0,0 +1,126 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.AdaptiveBatchSizer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试按照AIMD自适应调整批量查询的大小
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestAdaptiveBatchSizer {
+
+    public static void main(String[] args) {
+        try {
+            testAdditiveIncrease();
+            testMultiplicativeDecrease();
+            testStaleBatchesIgnored();
+            testInvalidArguments();
+            testMatcherUsesCurrentSize();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 满批成功时增加一个步长 不满的批次不增加 不超过最大值
+     */
+    private static void testAdditiveIncrease() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 30).setAdditiveIncrease(8);
+        check(sizer.current() == 10, "应该从最小值开始");
+
+        sizer.onSuccess(5, 0);
+        check(sizer.current() == 10, "不满的批次不应该增加");
+        sizer.onSuccess(10, 0);
+        check(sizer.current() == 18, "满批成功后应该增加一个步长 " + sizer.current());
+        sizer.onSuccess(18, 0);
+        sizer.onSuccess(26, 0);
+        check(sizer.current() == 30, "不应该超过最大值 " + sizer.current());
+
+        check(new AdaptiveBatchSizer(10, 30, 100).current() == 30, "初始值应该限制在最大值以内");
+        check(new AdaptiveBatchSizer(10, 210).current() == 10, "初始值默认为最小值");
+    }
+
+    /**
+     * 失败或超过目标耗时时乘以衰减系数 不小于最小值
+     */
+    private static void testMultiplicativeDecrease() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100, 80).setTargetLatency(100, TimeUnit.MILLISECONDS);
+        sizer.onFailure(80);
+        check(sizer.current() == 40, "失败后应该减半 " + sizer.current());
+        sizer.onSuccess(40, TimeUnit.MILLISECONDS.toNanos(200));
+        check(sizer.current() == 20, "超过目标耗时应该减半 " + sizer.current());
+        sizer.onFailure(20);
+        sizer.onFailure(10);
+        check(sizer.current() == 10, "不应该小于最小值 " + sizer.current());
+
+        sizer.setMultiplicativeDecrease(0.9);
+        sizer.onSuccess(10, TimeUnit.MILLISECONDS.toNanos(50));
+        check(sizer.current() > 10, "没有超过目标耗时的满批应该增加");
+    }
+
+    /**
+     * 减小之后 之前按照更大的批量发出的查询再失败不会继续减小
+     */
+    private static void testStaleBatchesIgnored() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100, 100);
+        // 同时发出了3个100的批次 都失败了
+        sizer.onFailure(100);
+        sizer.onFailure(100);
+        sizer.onFailure(100);
+        check(sizer.current() == 50, "同一轮的失败只应该减小一次 " + sizer.current());
+    }
+
+    private static void testInvalidArguments() {
+        expectFailure(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(0, 10), "最小值为0");
+        expectFailure(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(10, 5), "最大值小于最小值");
+        expectFailure(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(1, 10).setAdditiveIncrease(0), "步长为0");
+        expectFailure(IllegalArgumentException.class, () -> new AdaptiveBatchSizer(1, 10).setMultiplicativeDecrease(1), "衰减系数为1");
+    }
+
+    /**
+     * 匹配器按照当前的批量大小分批 查询失败后减小
+     */
+    private static void testMatcherUsesCurrentSize() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(5, 40, 20).setAdditiveIncrease(10);
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        match(sizer, batchSizes, false);
+        check(batchSizes.equals(Arrays.asList(20, 20, 20)), "应该按照当前的批量大小分批 " + batchSizes);
+        check(sizer.current() == 30, "满批成功后应该增加 " + sizer.current());
+
+        batchSizes.clear();
+        match(sizer, batchSizes, true);
+        check(batchSizes.get(0) == 30, "应该使用增加后的批量大小 " + batchSizes);
+        check(sizer.current() == 15, "失败后应该减小 " + sizer.current());
+    }
+
+    private static void match(AdaptiveBatchSizer sizer, List<Integer> batchSizes, boolean fail) {
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 60))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    batchSizes.add(ids.size());
+                    if (fail) {
+                        throw new IllegalStateException("query failed");
+                    }
+                    return ids;
+                })
+                .setAdaptiveBatchSizer(sizer)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor();
+        if (fail) {
+            expectFailure(RuntimeException.class, matcher::match, "查询失败");
+        } else {
+            matcher.match();
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package lang;
+
+import com.mogudiandian.util.compressor.AdaptiveCompressor;
+import com.mogudiandian.util.compressor.AdaptiveCompressor.PayloadClass;
+import com.mogudiandian.util.compressor.CompressionType;
+import com.mogudiandian.util.compressor.SnappyCompressor;
+import com.mogudiandian.util.compressor.ZstdCompressor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试按照数据的大小和可压缩性选择压缩算法
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestAdaptiveCompressor {
+
+    public static void main(String[] args) {
+        testMarker();
+        testSizeThresholds();
+        testEntropyThreshold();
+        testStatistics();
+        testCustomZstd();
+        testInvalid();
+    }
+
+    /**
+     * 第一个字节是压缩算法的ID 之后是压缩算法本身的数据
+     */
+    private static void testMarker() {
+        AdaptiveCompressor compressor = new AdaptiveCompressor();
+        byte[] tiny = text(100);
+        byte[] compressed = compressor.compress(tiny);
+        check(compressed[0] == CompressionType.NONE.getId() && Arrays.equals(Arrays.copyOfRange(compressed, 1, compressed.length), tiny), "小数据应该只加上标记");
+
+        byte[] medium = text(10_000);
+        compressed = compressor.compress(medium);
+        check(compressed[0] == CompressionType.SNAPPY.getId(), "中等大小的数据应该使用snappy " + compressed[0]);
+        check(Arrays.equals(new SnappyCompressor().decompress(Arrays.copyOfRange(compressed, 1, compressed.length)), medium), "标记之后应该是snappy的数据");
+
+        byte[] large = text(200_000);
+        compressed = compressor.compress(large);
+        check(compressed[0] == CompressionType.ZSTD.getId(), "大数据应该使用zstd " + compressed[0]);
+        check(Arrays.equals(new ZstdCompressor().decompress(Arrays.copyOfRange(compressed, 1, compressed.length)), large), "标记之后应该是zstd的数据");
+
+        for (byte[] data : new byte[][]{new byte[0], tiny, medium, large, random(10_000), random(200_000)}) {
+            compressed = compressor.compress(data);
+            check(compressed.length <= compressor.maxCompressedLength(data.length), "压缩后的长度超过了最大长度 " + data.length);
+            check(Arrays.equals(compressor.decompress(compressed), data), "解压失败 " + data.length);
+        }
+    }
+
+    /**
+     * 小于最小压缩大小的不压缩 不小于大数据的大小的使用zstd
+     */
+    private static void testSizeThresholds() {
+        AdaptiveCompressor compressor = new AdaptiveCompressor(1000, 5000);
+        check(compressor.compress(text(999))[0] == CompressionType.NONE.getId(), "小于最小压缩大小");
+        check(compressor.compress(text(1000))[0] == CompressionType.SNAPPY.getId(), "等于最小压缩大小");
+        check(compressor.compress(text(4999))[0] == CompressionType.SNAPPY.getId(), "小于大数据的大小");
+        check(compressor.compress(text(5000))[0] == CompressionType.ZSTD.getId(), "等于大数据的大小");
+    }
+
+    /**
+     * 熵超过阈值的数据不尝试压缩 低于阈值的尝试压缩 压缩后没有变小的也不压缩 <br/>
+     * 256个值均匀分布的熵约为8 128个值均匀分布的熵约为7
+     */
+    private static void testEntropyThreshold() {
+        AdaptiveCompressor compressor = new AdaptiveCompressor();
+        byte[] fullRandom = random(20_000);
+        byte[] compressed = compressor.compress(fullRandom);
+        check(compressed[0] == CompressionType.NONE.getId(), "随机数据不应该压缩");
+        check(compressor.getStatistics(PayloadClass.INCOMPRESSIBLE).getCount() == 1, "随机数据应该被判断为不可压缩");
+
+        byte[] sevenBits = new byte[20_000];
+        Random random = new Random(7);
+        for (int i = 0; i < sevenBits.length; i++) {
+            sevenBits[i] = (byte) random.nextInt(128);
+        }
+        compressed = compressor.compress(sevenBits);
+        check(compressor.getStatistics(PayloadClass.INCOMPRESSIBLE).getCount() == 1, "熵约为7的数据应该尝试压缩");
+        check(compressor.getStatistics(PayloadClass.MEDIUM).getCount() == 1, "熵约为7的数据应该按照中等大小压缩");
+        check(compressed[0] == CompressionType.NONE.getId() && compressed.length == sevenBits.length + 1, "snappy压缩后没有变小 应该不压缩");
+
+        // 抽样分散在整个数据中 开头的随机数据不影响判断
+        compressed = compressor.compress(concat(random(2048), text(200_000)));
+        check(compressed[0] == CompressionType.ZSTD.getId(), "开头是随机数据的大数据应该使用zstd " + compressed[0]);
+    }
+
+    /**
+     * 按照类别统计压缩前后的字节数
+     */
+    private static void testStatistics() {
+        AdaptiveCompressor compressor = new AdaptiveCompressor();
+        compressor.compress(text(100));
+        compressor.compress(text(200));
+        AdaptiveCompressor.Statistics tiny = compressor.getStatistics(PayloadClass.TINY);
+        check(tiny.getCount() == 2 && tiny.getOriginalBytes() == 300 && tiny.getCompressedBytes() == 302, "小数据的统计不对 " + tiny);
+        check(Math.abs(tiny.getRatio() - 302.0 / 300) < 1e-9, "小数据的压缩比不对 " + tiny);
+
+        int compressedLength = compressor.compress(text(200_000)).length;
+        AdaptiveCompressor.Statistics large = compressor.getStatistics(PayloadClass.LARGE);
+        check(large.getCount() == 1 && large.getCompressedBytes() == compressedLength && large.getRatio() < 0.5, "大数据的统计不对 " + large);
+        check(compressor.getStatistics(PayloadClass.MEDIUM).getRatio() == 1, "没有数据时压缩比为1");
+    }
+
+    /**
+     * 大数据使用指定的zstd压缩器
+     */
+    private static void testCustomZstd() {
+        byte[] data = text(100_000);
+        AdaptiveCompressor compressor = new AdaptiveCompressor(0, 0, new ZstdCompressor(19));
+        byte[] compressed = compressor.compress(data);
+        check(Arrays.equals(Arrays.copyOfRange(compressed, 1, compressed.length), new ZstdCompressor(19).compress(data)), "应该使用指定的zstd压缩器");
+        check(Arrays.equals(compressor.decompress(compressed), data), "解压失败");
+    }
+
+    private static void testInvalid() {
+        AdaptiveCompressor compressor = new AdaptiveCompressor();
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(new byte[0]), "没有标记");
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(new byte[]{(byte) 200, 1, 2}), "未知的压缩算法");
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(concat(new byte[]{(byte) CompressionType.GZIP.getId()}, text(10))), "不支持的压缩算法");
+        expectFailure(IllegalArgumentException.class, () -> new AdaptiveCompressor(-1, 10), "最小压缩大小为负数");
+        expectFailure(IllegalArgumentException.class, () -> new AdaptiveCompressor(10, 5), "大数据的大小小于最小压缩大小");
+        expectFailure(NullPointerException.class, () -> new AdaptiveCompressor(10, 100, null), "zstd压缩器为空");
+    }
+
+}
@@ -0,0 +1,170 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.BatchLoader;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试微批量加载器合并查询
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestBatchLoader {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testLoadsInWindowShareOneQuery();
+            testMaxBatchSizeDispatchesEarly();
+            testLoadMany();
+            testQueryFailure();
+            testMatchersShareLoader();
+            testSaturatedExecutor();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 时间窗口内的标识合并成一次查询 重复的标识只查询一次
+     */
+    private static void testLoadsInWindowShareOneQuery() throws Exception {
+        List<List<Long>> queries = Collections.synchronizedList(new ArrayList<>());
+        BatchLoader<Long, List<Long>, Long, Long> loader = loader(queries).setBatchWindow(50, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<Long> first = loader.load(1L);
+        CompletableFuture<Long> second = loader.load(2L);
+        CompletableFuture<Long> duplicate = loader.load(2L);
+        CompletableFuture<Long> missing = loader.load(-1L);
+
+        check(first.get(5, TimeUnit.SECONDS) == 1L && second.get(5, TimeUnit.SECONDS) == 2L, "加载的结果不对");
+        check(duplicate.get(5, TimeUnit.SECONDS) == 2L, "重复标识的结果不对");
+        check(missing.get(5, TimeUnit.SECONDS) == null, "没查到时应该为null");
+        check(queries.equals(Collections.singletonList(Arrays.asList(1L, 2L, -1L))), "应该合并成一次查询 " + queries);
+    }
+
+    /**
+     * 等待中的标识达到上限时不等待时间窗口
+     */
+    private static void testMaxBatchSizeDispatchesEarly() throws Exception {
+        List<List<Long>> queries = Collections.synchronizedList(new ArrayList<>());
+        BatchLoader<Long, List<Long>, Long, Long> loader = loader(queries).setMaxBatchSize(3)
+                                                                           .setBatchWindow(1, TimeUnit.HOURS);
+
+        CompletableFuture<List<Long>> full = loader.loadAll(ids(0, 6));
+        CompletableFuture<Long> partial = loader.load(6L);
+        check(full.get(5, TimeUnit.SECONDS).equals(ids(0, 6)), "加载的结果不对 " + full.join());
+        check(queries.size() == 2, "达到上限的批次应该立即查询 " + queries);
+        check(!partial.isDone(), "没有达到上限的批次应该等待时间窗口");
+
+        loader.flush();
+        check(partial.get(5, TimeUnit.SECONDS) == 6L, "立即发出后的结果不对");
+        check(queries.size() == 3 && queries.get(2).equals(Collections.singletonList(6L)), "立即发出的批次不对 " + queries);
+
+        expectFailure(IllegalArgumentException.class, () -> loader.setMaxBatchSize(0), "每批数量为0");
+        expectFailure(IllegalArgumentException.class, () -> loader.setBatchWindow(-1, TimeUnit.MILLISECONDS), "时间窗口为负数");
+    }
+
+    /**
+     * 一个标识对应多条数据
+     */
+    private static void testLoadMany() throws Exception {
+        BatchLoader<Long, Set<Long>, String, Long> loader = new BatchLoader<Long, Set<Long>, String, Long>(
+                ids -> ids.stream()
+                          .flatMap(id -> Arrays.asList(id + ":a", id + ":b").stream())
+                          .collect(Collectors.toList()),
+                Collectors.toSet(),
+                data -> Long.parseLong(data.substring(0, data.indexOf(':'))))
+                .setBatchWindow(10, TimeUnit.MILLISECONDS);
+
+        check(loader.loadMany(7L).get(5, TimeUnit.SECONDS).equals(Arrays.asList("7:a", "7:b")), "一对多的结果不对");
+        check(loader.load(8L).get(5, TimeUnit.SECONDS).equals("8:a"), "多条数据时应该取第一条");
+    }
+
+    /**
+     * 查询失败时批次中所有的结果都以异常结束
+     */
+    private static void testQueryFailure() {
+        BatchLoader<Long, List<Long>, Long, Long> loader = new BatchLoader<Long, List<Long>, Long, Long>(ids -> {
+            throw new IllegalStateException("query failed");
+        }, Collectors.toList(), Function.identity()).setBatchWindow(10, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<Long> first = loader.load(1L);
+        CompletableFuture<Long> second = loader.load(2L);
+        for (CompletableFuture<Long> future : Arrays.asList(first, second)) {
+            ExecutionException e = expectFailure(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS), "查询失败");
+            check(e.getCause() instanceof IllegalStateException, "异常不对 " + e.getCause());
+        }
+    }
+
+    /**
+     * 多个匹配器同时使用一个加载器时合并成一次查询
+     */
+    private static void testMatchersShareLoader() throws Exception {
+        List<List<Long>> queries = Collections.synchronizedList(new ArrayList<>());
+        BatchLoader<Long, List<Long>, Long, Long> loader = loader(queries).setBatchWindow(100, TimeUnit.MILLISECONDS);
+
+        List<Future<Map<Long, Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            List<Long> elements = ids(i * 10, i * 10 + 10);
+            futures.add(EXECUTOR.submit(() -> new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                    .setElements(elements)
+                    .setElementIdentifierExtractor(Function.identity())
+                    .setIdentifierCollectorType(List.class)
+                    .setBatchLoader(loader)
+                    .setDataKeyGenerator(Function.identity())
+                    .setElementToKeyMappingByIdentifierExtractor()
+                    .match()
+                    .getOneToOneRelations()));
+        }
+        for (Future<Map<Long, Long>> future : futures) {
+            Map<Long, Long> relations = future.get(5, TimeUnit.SECONDS);
+            check(relations.size() == 10, "匹配的数量不对 " + relations);
+            relations.forEach((id, data) -> check(id.equals(data), id + "匹配的结果不对 " + data));
+        }
+        check(queries.size() == 1 && queries.get(0).size() == 30, "多个匹配器应该合并成一次查询 " + queries);
+    }
+
+    /**
+     * 时间窗口结束时线程池饱和 查询不能在调度器的线程中执行 交给默认的线程池
+     */
+    private static void testSaturatedExecutor() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.CallerRunsPolicy());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            await(started);
+
+            Set<String> queryThreads = ConcurrentHashMap.newKeySet();
+            BatchLoader<Long, List<Long>, Long, Long> loader = new BatchLoader<Long, List<Long>, Long, Long>(ids -> {
+                queryThreads.add(Thread.currentThread().getName());
+                return ids;
+            }, Collectors.toList(), Function.identity()).setBatchWindow(10, TimeUnit.MILLISECONDS)
+                                                        .setExecutor(executor);
+
+            check(loader.load(1L).get(5, TimeUnit.SECONDS) == 1L, "加载的结果不对");
+            check(queryThreads.size() == 1 && queryThreads.iterator().next().startsWith("orm-parallel-query-pool-"), "查询应该交给默认的线程池 " + queryThreads);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static BatchLoader<Long, List<Long>, Long, Long> loader(List<List<Long>> queries) {
+        return new BatchLoader<Long, List<Long>, Long, Long>(ids -> {
+            queries.add(new ArrayList<>(ids));
+            return ids.stream().filter(id -> id >= 0).collect(Collectors.toList());
+        }, Collectors.toList(), Function.identity());
+    }
+
+}
@@ -0,0 +1,73 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.stream.StreamUtils;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试一次遍历分批以及查询前的标识去重
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestBatchPartition {
+
+    public static void main(String[] args) {
+        try {
+            testPartition();
+            testMatcherQueriesDistinctIdentifiers();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 按照大小分批 每一批的类型由collector决定
+     */
+    private static void testPartition() {
+        List<List<Long>> batches = StreamUtils.partition(ids(0, 10), 4, Collectors.toList());
+        check(batches.equals(Arrays.asList(ids(0, 4), ids(4, 8), ids(8, 10))), "分批的结果不对 " + batches);
+
+        List<Set<Long>> sets = StreamUtils.partition(ids(0, 6), 3, Collectors.toCollection(TreeSet::new));
+        check(sets.size() == 2 && sets.stream().allMatch(set -> set instanceof TreeSet), "每一批的类型不对 " + sets);
+
+        check(StreamUtils.partition(ids(0, 8), 4, Collectors.toList()).size() == 2, "整除时不应该有空的批次");
+        check(StreamUtils.partition(Collections.<Long>emptyList(), 4, Collectors.toList()).isEmpty(), "空集合不应该有批次");
+        expectFailure(IllegalArgumentException.class, () -> StreamUtils.partition(ids(0, 1), 0, Collectors.toList()), "每一批的大小为0");
+    }
+
+    /**
+     * 多个元素有相同的标识时 每个标识只查询一次 每一批都不超过上限
+     */
+    private static void testMatcherQueriesDistinctIdentifiers() {
+        List<Long> elements = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            elements.add(i % 25);
+        }
+        List<Set<Long>> queries = Collections.synchronizedList(new ArrayList<>());
+        ObjectRelationMatcher<Long, Long, Set<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, Set<Long>, Long, Long>()
+                .setElements(elements)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(Set.class)
+                .setBatchQueryMethod(ids -> {
+                    queries.add(ids);
+                    return ids;
+                })
+                .setMaxBatchQuerySize(10)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .match();
+
+        check(queries.size() == 3, "批次的数量不对 " + queries);
+        check(queries.stream().allMatch(batch -> batch.size() <= 10), "每一批不应该超过上限 " + queries);
+        List<Long> queried = queries.stream().flatMap(Collection::stream).sorted().collect(Collectors.toList());
+        check(queried.equals(ids(0, 25)), "每个标识应该只查询一次 " + queried);
+        check(matcher.getOneToOneRelations().size() == 25, "相同的元素只有一个关系 " + matcher.getOneToOneRelations().size());
+    }
+
+}
@@ -0,0 +1,170 @@
+package lang;
+
+import com.mogudiandian.util.compressor.BoundedCompressor;
+import com.mogudiandian.util.compressor.Compressor;
+import com.mogudiandian.util.compressor.GzipCompressor;
+import com.mogudiandian.util.compressor.Lz4Compressor;
+import com.mogudiandian.util.compressor.PureJavaSnappyCompressor;
+import com.mogudiandian.util.compressor.PureJavaZstdCompressor;
+import com.mogudiandian.util.compressor.SnappyCompressor;
+import com.mogudiandian.util.compressor.ZstdCompressor;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试ByteBuffer之间的压缩解压 包括堆内存、堆外内存以及两者混用
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestByteBufferCompressor {
+
+    private static final int[] SIZES = {0, 1, 1000, 100_000};
+
+    public static void main(String[] args) {
+        List<BoundedCompressor> compressors = Arrays.asList(new GzipCompressor(), new SnappyCompressor(), new ZstdCompressor(),
+                                                            new Lz4Compressor(), new Lz4Compressor(9, Lz4Compressor.Format.FRAME));
+        for (BoundedCompressor compressor : compressors) {
+            String name = name(compressor);
+            testMaxCompressedLength(compressor, name);
+            testRoundTrip(compressor, compressor, name);
+            testOverflow(compressor, name);
+        }
+
+        // 纯Java实现和native实现互相解压
+        testRoundTrip(new PureJavaSnappyCompressor(), new SnappyCompressor(), "PureJavaSnappyCompressor");
+        testRoundTrip(new PureJavaZstdCompressor(), new ZstdCompressor(), "PureJavaZstdCompressor");
+        for (BoundedCompressor compressor : Arrays.<BoundedCompressor>asList(new PureJavaSnappyCompressor(), new PureJavaZstdCompressor())) {
+            testMaxCompressedLength(compressor, compressor.getClass().getSimpleName());
+            testOverflow(compressor, compressor.getClass().getSimpleName());
+        }
+
+        // 只实现了byte[]方法的压缩器使用默认的复制实现
+        GzipCompressor gzip = new GzipCompressor();
+        Compressor copying = new Compressor() {
+            @Override
+            public byte[] compress(byte[] bytes) {
+                return gzip.compress(bytes);
+            }
+
+            @Override
+            public byte[] decompress(byte[] bytes) {
+                return gzip.decompress(bytes);
+            }
+        };
+        testRoundTrip(copying, gzip, "default");
+    }
+
+    /**
+     * 压缩后的长度不超过最大长度
+     */
+    private static void testMaxCompressedLength(BoundedCompressor compressor, String name) {
+        for (int size : SIZES) {
+            for (byte[] data : new byte[][]{text(size), random(size)}) {
+                int length = compressor.compress(data).length;
+                check(length <= compressor.maxCompressedLength(size), name + "压缩后的长度超过了最大长度 size=" + size + " length=" + length);
+            }
+        }
+    }
+
+    /**
+     * 四种组合的压缩解压 position之前和limit之后的数据不受影响 结果和byte[]的压缩互通
+     * @param compressor 测试的压缩器
+     * @param reference 用于byte[]压缩解压的压缩器
+     * @param name 名称
+     */
+    private static void testRoundTrip(Compressor compressor, Compressor reference, String name) {
+        for (int size : SIZES) {
+            for (byte[] data : new byte[][]{text(size), random(size)}) {
+                int bound = reference.compress(data).length + 1024;
+                for (boolean srcDirect : new boolean[]{false, true}) {
+                    for (boolean dstDirect : new boolean[]{false, true}) {
+                        String message = name + " size=" + size + " srcDirect=" + srcDirect + " dstDirect=" + dstDirect;
+
+                        ByteBuffer src = buffer(data, srcDirect);
+                        ByteBuffer dst = allocate(bound, dstDirect);
+                        int srcLimit = src.limit();
+                        int dstStart = dst.position();
+                        int dstLimit = dst.limit();
+                        int length = compressor.compress(src, dst);
+                        check(src.position() == srcLimit && src.limit() == srcLimit, message + " 压缩后src的位置不对");
+                        check(dst.position() == dstStart + length && dst.limit() == dstLimit, message + " 压缩后dst的位置不对");
+
+                        byte[] compressed = new byte[length];
+                        ((ByteBuffer) dst.duplicate().position(dstStart)).get(compressed);
+                        check(Arrays.equals(reference.decompress(compressed), data), message + " byte[]解压失败");
+
+                        ByteBuffer compressedSrc = buffer(compressed, dstDirect);
+                        ByteBuffer decompressed = allocate(data.length, srcDirect);
+                        int decompressedStart = decompressed.position();
+                        check(compressor.decompress(compressedSrc, decompressed) == data.length, message + " 解压后的字节数不对");
+                        check(!compressedSrc.hasRemaining() && decompressed.position() == decompressedStart + data.length, message + " 解压后的位置不对");
+                        byte[] result = new byte[data.length];
+                        ((ByteBuffer) decompressed.duplicate().position(decompressedStart)).get(result);
+                        check(Arrays.equals(result, data), message + " 解压失败");
+                        check(decompressed.get(decompressedStart - 1) == 0x55 && ((ByteBuffer) decompressed.duplicate().clear()).get(decompressed.limit()) == 0x55, message + " 覆盖了position和limit之外的数据");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 剩余空间不足时抛出BufferOverflowException 两者的position都不变
+     */
+    private static void testOverflow(Compressor compressor, String name) {
+        byte[] data = text(10_000);
+        byte[] compressed = compressor.compress(data);
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer src = buffer(data, direct);
+            int srcStart = src.position();
+            ByteBuffer dst = direct ? ByteBuffer.allocateDirect(compressed.length - 1) : ByteBuffer.allocate(compressed.length - 1);
+            expectFailure(BufferOverflowException.class, () -> compressor.compress(src, dst), name + "压缩的空间不足");
+            check(src.position() == srcStart && dst.position() == 0, name + "压缩失败后位置不应该改变");
+
+            ByteBuffer compressedSrc = buffer(compressed, direct);
+            int compressedStart = compressedSrc.position();
+            ByteBuffer small = direct ? ByteBuffer.allocateDirect(data.length - 1) : ByteBuffer.allocate(data.length - 1);
+            expectFailure(BufferOverflowException.class, () -> compressor.decompress(compressedSrc, small), name + "解压的空间不足");
+            check(compressedSrc.position() == compressedStart && small.position() == 0, name + "解压失败后位置不应该改变");
+        }
+    }
+
+    /**
+     * 数据前后都有填充 position指向数据开始 limit指向数据结束 堆内存的arrayOffset不为0
+     */
+    private static ByteBuffer buffer(byte[] data, boolean direct) {
+        ByteBuffer buffer = allocate(data.length, direct);
+        int position = buffer.position();
+        buffer.put(data);
+        buffer.limit(buffer.position());
+        buffer.position(position);
+        return buffer;
+    }
+
+    /**
+     * 分配前后都有填充（0x55）的空间 position指向填充之后 剩余空间比size多32个字节
+     */
+    private static ByteBuffer allocate(int size, boolean direct) {
+        int capacity = size + 64;
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0x55);
+        }
+        buffer.position(16);
+        buffer.limit(capacity - 16);
+        if (!direct) {
+            // 堆内存使用切片 使arrayOffset不为0
+            buffer = ByteBuffer.wrap(buffer.array(), 8, capacity - 8).slice();
+            buffer.position(8);
+            buffer.limit(capacity - 24);
+        }
+        return buffer;
+    }
+
+}
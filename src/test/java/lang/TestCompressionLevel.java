@@ -0,0 +1,108 @@
+package lang;
+
+import com.github.luben.zstd.Zstd;
+import com.mogudiandian.util.compressor.GzipCompressor;
+import com.mogudiandian.util.compressor.ZstdCompressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试gzip和zstd的压缩级别、策略、多线程和长距离匹配
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestCompressionLevel {
+
+    public static void main(String[] args) throws IOException {
+        testGzipLevels();
+        testZstdLevels();
+        testZstdWorkersAndLongWindow();
+        testPooledContextReset();
+        testInvalidArguments();
+    }
+
+    /**
+     * 每个级别和策略都能解压 级别越高压缩后越小 级别0不压缩
+     */
+    private static void testGzipLevels() throws IOException {
+        byte[] data = text(200_000);
+        for (int level = -1; level <= 9; level++) {
+            for (int strategy : new int[]{Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+                GzipCompressor compressor = new GzipCompressor(level, strategy);
+                check(compressor.getLevel() == level && compressor.getStrategy() == strategy, "级别和策略不对");
+                check(Arrays.equals(compressor.decompress(compressor.compress(data)), data), "gzip解压失败 level=" + level + " strategy=" + strategy);
+                check(Arrays.equals(readStream(compressor, writeStream(compressor, data)), data), "gzip流式解压失败 level=" + level + " strategy=" + strategy);
+            }
+        }
+        check(new GzipCompressor(0).compress(data).length > data.length, "级别0不应该压缩");
+        check(new GzipCompressor(9).compress(data).length < new GzipCompressor(1).compress(data).length, "级别9应该比级别1压缩得更小");
+        check(new GzipCompressor(6, Deflater.HUFFMAN_ONLY).compress(data).length > new GzipCompressor(6).compress(data).length, "只用哈夫曼编码应该压缩得更大");
+    }
+
+    /**
+     * 包括负数的fast级别都能解压 级别越高压缩后越小
+     */
+    private static void testZstdLevels() throws IOException {
+        byte[] data = text(200_000);
+        for (int level : new int[]{Zstd.minCompressionLevel(), -5, -1, 1, 3, 9, 19, Zstd.maxCompressionLevel()}) {
+            ZstdCompressor compressor = new ZstdCompressor(level);
+            check(compressor.getLevel() == level, "级别不对");
+            check(Arrays.equals(compressor.decompress(compressor.compress(data)), data), "zstd解压失败 level=" + level);
+            check(Arrays.equals(readStream(compressor, writeStream(compressor, data)), data), "zstd流式解压失败 level=" + level);
+        }
+        check(new ZstdCompressor(19).compress(data).length < new ZstdCompressor(1).compress(data).length, "级别19应该比级别1压缩得更小");
+        check(new ZstdCompressor(-5).compress(data).length > new ZstdCompressor(1).compress(data).length, "fast级别应该比级别1压缩得更大");
+    }
+
+    /**
+     * 多线程压缩和长距离匹配 重复的数据超过默认窗口时长距离匹配压缩得更小
+     */
+    private static void testZstdWorkersAndLongWindow() throws IOException {
+        byte[] block = random(3 << 20);
+        byte[] data = concat(block, block);
+
+        ZstdCompressor plain = new ZstdCompressor(3);
+        ZstdCompressor workers = new ZstdCompressor(3, 2);
+        ZstdCompressor longWindow = new ZstdCompressor(3, 0, 27);
+        check(workers.getWorkers() == 2 && longWindow.getLongWindowLog() == 27, "参数不对");
+        for (ZstdCompressor compressor : new ZstdCompressor[]{workers, longWindow}) {
+            check(Arrays.equals(plain.decompress(compressor.compress(data)), data), "默认的压缩器解压失败 workers=" + compressor.getWorkers() + " longWindowLog=" + compressor.getLongWindowLog());
+            check(Arrays.equals(readStream(compressor, writeStream(compressor, data)), data), "流式解压失败 workers=" + compressor.getWorkers() + " longWindowLog=" + compressor.getLongWindowLog());
+        }
+        int plainLength = plain.compress(data).length;
+        int longLength = longWindow.compress(data).length;
+        check(longLength < plainLength * 0.6, "长距离匹配应该压缩得更小 " + longLength + " " + plainLength);
+    }
+
+    /**
+     * 压缩上下文是共享的 上次使用的参数不能影响下次压缩
+     */
+    private static void testPooledContextReset() {
+        byte[] data = concat(random(3 << 20), text(100_000));
+        ZstdCompressor plain = new ZstdCompressor(3);
+        byte[] expected = plain.compress(data);
+        new ZstdCompressor(19, 2, 27).compress(data);
+        check(Arrays.equals(plain.compress(data), expected), "使用过其他参数的上下文压缩的结果不一致");
+
+        GzipCompressor gzip = new GzipCompressor();
+        byte[] gzipExpected = gzip.compress(data);
+        new GzipCompressor(1, Deflater.HUFFMAN_ONLY).compress(data);
+        check(Arrays.equals(gzip.compress(data), gzipExpected), "使用过其他参数的压缩器压缩的结果不一致");
+    }
+
+    private static void testInvalidArguments() {
+        expectFailure(IllegalArgumentException.class, () -> new GzipCompressor(10), "gzip级别10");
+        expectFailure(IllegalArgumentException.class, () -> new GzipCompressor(-2), "gzip级别-2");
+        expectFailure(IllegalArgumentException.class, () -> new GzipCompressor(6, 3), "gzip未知的策略");
+        expectFailure(IllegalArgumentException.class, () -> new ZstdCompressor(Zstd.maxCompressionLevel() + 1), "zstd级别超过最大值");
+        expectFailure(IllegalArgumentException.class, () -> new ZstdCompressor(3, -1), "zstd线程数为负数");
+        expectFailure(IllegalArgumentException.class, () -> new ZstdCompressor(3, 0, 28), "zstd长距离匹配的窗口超过27");
+        expectFailure(IllegalArgumentException.class, () -> new ZstdCompressor(3, 0, Zstd.windowLogMin() - 1), "zstd长距离匹配的窗口太小");
+    }
+
+}
@@ -0,0 +1,222 @@
+package lang;
+
+import com.mogudiandian.util.compressor.AutoCompressor;
+import com.mogudiandian.util.compressor.CompressionType;
+import com.mogudiandian.util.compressor.Compressor;
+import com.mogudiandian.util.compressor.FramedCompressor;
+import com.mogudiandian.util.compressor.GzipCompressor;
+import com.mogudiandian.util.compressor.SnappyCompressor;
+import com.mogudiandian.util.compressor.ZstdCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.CRC32;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试带有帧头的压缩器和自动识别压缩格式的压缩器
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestFramedCompressor {
+
+    private static final CompressionType[] TYPES = {CompressionType.NONE, CompressionType.GZIP, CompressionType.SNAPPY, CompressionType.ZSTD, CompressionType.LZ4};
+
+    private static final int[] SIZES = {0, 1, 1000, 100_000};
+
+    public static void main(String[] args) throws IOException {
+        testHeader();
+        testChecksum();
+        testMalformedFrames();
+        testTypeMismatch();
+        testAutoMagic();
+        testAutoStream();
+        testAutoFallback();
+    }
+
+    /**
+     * 帧头依次是魔数、标识、压缩算法的ID、原始长度和crc32 各个压缩算法都能解压
+     */
+    private static void testHeader() {
+        AutoCompressor auto = new AutoCompressor();
+        for (CompressionType type : TYPES) {
+            for (boolean checksum : new boolean[]{false, true}) {
+                FramedCompressor compressor = new FramedCompressor(type, type.newCompressor(), checksum);
+                for (int size : SIZES) {
+                    for (byte[] data : new byte[][]{text(size), random(size)}) {
+                        String message = type + " checksum=" + checksum + " size=" + size;
+                        byte[] frame = compressor.compress(data);
+                        check((frame[0] & 0xff) == 0x89 && frame[1] == 'M' && frame[2] == 'G' && frame[3] == 'F', message + " 魔数不对");
+                        check(frame[4] == (checksum ? 1 : 0), message + " 标识不对");
+                        check((frame[5] & 0xff) == type.getId(), message + " 压缩算法的ID不对");
+                        check(readInt(frame, 6) == data.length, message + " 原始长度不对");
+                        if (checksum) {
+                            check(readInt(frame, 10) == crc(data), message + " 校验和不对");
+                        }
+                        check(Arrays.equals(compressor.decompress(frame), data), message + " 解压失败");
+                        check(Arrays.equals(auto.decompress(frame), data), message + " 自动识别解压失败");
+                        check(auto.decompressedLength(frame) == data.length, message + " 解压后的长度不对");
+                    }
+                }
+            }
+        }
+        check(new FramedCompressor(CompressionType.NONE).compress(text(1000)).length == 1010, "不压缩的帧应该只多出帧头");
+    }
+
+    /**
+     * 带有校验和时 数据或校验和被修改后解压失败 不带校验和时修改帧头之后的数据不会发现
+     */
+    private static void testChecksum() {
+        byte[] data = text(1000);
+        byte[] frame = new FramedCompressor(CompressionType.NONE, CompressionType.NONE.newCompressor(), true).compress(data);
+        byte[] corrupted = frame.clone();
+        corrupted[500] ^= 1;
+        IllegalArgumentException e = expectFailure(IllegalArgumentException.class, () -> new AutoCompressor().decompress(corrupted), "修改了数据");
+        check(e.getMessage().contains("checksum"), "应该是校验和不一致 " + e.getMessage());
+
+        FramedCompressor zstd = new FramedCompressor(CompressionType.ZSTD, new ZstdCompressor(), true);
+        byte[] zstdFrame = zstd.compress(data);
+        zstdFrame[12] ^= 1;
+        expectFailure(IllegalArgumentException.class, () -> zstd.decompress(zstdFrame), "修改了校验和");
+
+        byte[] unchecked = new FramedCompressor(CompressionType.NONE).compress(data);
+        unchecked[500] ^= 1;
+        check(!Arrays.equals(new AutoCompressor().decompress(unchecked), data), "不带校验和时不校验");
+    }
+
+    /**
+     * 截断、原始长度不对、未知的标识和压缩算法
+     */
+    private static void testMalformedFrames() {
+        byte[] data = text(10_000);
+        FramedCompressor compressor = new FramedCompressor(CompressionType.ZSTD, new ZstdCompressor(), true);
+        byte[] frame = compressor.compress(data);
+
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(Arrays.copyOf(frame, 9)), "帧头不完整");
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(Arrays.copyOf(frame, 12)), "校验和不完整");
+        expectFailure(RuntimeException.class, () -> compressor.decompress(Arrays.copyOf(frame, frame.length / 2)), "数据被截断");
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(text(100)), "不是帧");
+
+        byte[] none = new FramedCompressor(CompressionType.NONE).compress(data);
+        IllegalArgumentException e = expectFailure(IllegalArgumentException.class, () -> new AutoCompressor().decompress(Arrays.copyOf(none, none.length - 1)), "不压缩的数据被截断");
+        check(e.getMessage().contains("does not match"), "应该是长度不一致 " + e.getMessage());
+
+        // 原始长度比实际的小时不能越界写入 比实际的大时长度不一致
+        e = expectFailure(IllegalArgumentException.class, () -> compressor.decompress(withInt(frame, 6, data.length - 1)), "原始长度偏小");
+        check(e.getMessage().contains("longer"), "应该是解压后的数据超过原始长度 " + e.getMessage());
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(withInt(frame, 6, data.length + 1)), "原始长度偏大");
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(withInt(frame, 6, 0x80000000)), "原始长度为负数");
+
+        // 原始长度远超实际时不能按照它分配 有最大压缩比的先校验 zstd按照增长的缓冲区解压后长度不一致
+        for (CompressionType t : TYPES) {
+            byte[] oversized = withInt(new FramedCompressor(t).compress(data), 6, 0x7ffffff0);
+            e = expectFailure(IllegalArgumentException.class, () -> new AutoCompressor().decompress(oversized), t + "的原始长度过大");
+            check(e.getMessage().contains(t == CompressionType.ZSTD ? "does not match" : "exceeds"), t + "应该在分配前发现原始长度过大 " + e.getMessage());
+        }
+
+        byte[] flags = frame.clone();
+        flags[4] |= 2;
+        expectFailure(IllegalArgumentException.class, () -> compressor.decompress(flags), "未知的标识");
+        byte[] type = frame.clone();
+        type[5] = (byte) 200;
+        expectFailure(IllegalArgumentException.class, () -> new AutoCompressor().decompress(type), "未知的压缩算法");
+    }
+
+    /**
+     * 压缩器和压缩算法必须一致 帧中的压缩算法和解压的压缩器不一致时失败
+     */
+    private static void testTypeMismatch() {
+        expectFailure(IllegalArgumentException.class, () -> new FramedCompressor(CompressionType.GZIP, new ZstdCompressor(), false), "gzip使用zstd的压缩器");
+        expectFailure(IllegalArgumentException.class, () -> new FramedCompressor(CompressionType.SNAPPY, new GzipCompressor(), false), "snappy使用gzip的压缩器");
+        expectFailure(IllegalArgumentException.class, () -> new AutoCompressor(new FramedCompressor(CompressionType.ZSTD), Collections.singletonMap(CompressionType.GZIP, new SnappyCompressor()), null), "解压gzip使用snappy的压缩器");
+        check(new FramedCompressor(CompressionType.ZSTD, new ZstdCompressor(9), false).getCompressor() instanceof ZstdCompressor, "其他配置的压缩器也可以");
+
+        byte[] frame = new FramedCompressor(CompressionType.ZSTD).compress(text(1000));
+        expectFailure(IllegalArgumentException.class, () -> new FramedCompressor(CompressionType.GZIP).decompress(frame), "用gzip解压zstd的帧");
+    }
+
+    /**
+     * 按照魔数识别gzip、zstd和snappy的framing格式 更换压缩算法后之前的数据仍然可以解压
+     */
+    private static void testAutoMagic() throws IOException {
+        byte[] data = text(100_000);
+        AutoCompressor auto = new AutoCompressor(new FramedCompressor(CompressionType.GZIP));
+        check(Arrays.equals(auto.decompress(new GzipCompressor().compress(data)), data), "gzip解压失败");
+        check(Arrays.equals(auto.decompress(new ZstdCompressor().compress(data)), data), "zstd解压失败");
+        check(Arrays.equals(auto.decompress(writeStream(new SnappyCompressor(), data)), data), "snappy的framing格式解压失败");
+        check(Arrays.equals(auto.decompress(new AutoCompressor().compress(data)), data), "zstd的帧解压失败");
+
+        check(auto.decompressedLength(new ZstdCompressor().compress(data)) == data.length, "zstd记录了原始长度");
+        check(auto.decompressedLength(writeStream(new ZstdCompressor(), data)) == -1, "zstd流式压缩没有记录原始长度");
+        check(auto.decompressedLength(new GzipCompressor().compress(data)) == -1, "gzip没有记录原始长度");
+    }
+
+    /**
+     * 流式压缩使用压缩算法本身的流 流式解压识别各种格式
+     */
+    private static void testAutoStream() throws IOException {
+        byte[] data = text(300_000);
+        for (CompressionType type : new CompressionType[]{CompressionType.GZIP, CompressionType.SNAPPY, CompressionType.ZSTD}) {
+            AutoCompressor auto = new AutoCompressor(new FramedCompressor(type));
+            byte[] compressed = writeStream(auto, data);
+            check(!Arrays.equals(Arrays.copyOf(compressed, 4), Arrays.copyOf(auto.compress(data), 4)), type + " 流式压缩不应该写入帧头");
+            check(Arrays.equals(readStream(new AutoCompressor(), compressed), data), type + " 流式解压失败");
+            check(Arrays.equals(readStream(new AutoCompressor(), auto.compress(data)), data), type + " 流式解压帧失败");
+        }
+        expectFailure(IllegalStateException.class, () -> new AutoCompressor(new FramedCompressor(CompressionType.NONE)).wrap(new ByteArrayOutputStream()), "不压缩的流式压缩");
+        expectFailure(IllegalArgumentException.class, () -> readStream(new AutoCompressor(), text(100)), "无法识别的流");
+    }
+
+    /**
+     * 无法识别的数据交给兜底的压缩器 例如snappy的block格式 兜底的压缩器不支持流式解压时失败
+     */
+    private static void testAutoFallback() throws IOException {
+        byte[] data = text(10_000);
+        byte[] snappyBlock = new SnappyCompressor().compress(data);
+        expectFailure(IllegalArgumentException.class, () -> new AutoCompressor().decompress(snappyBlock), "没有兜底的压缩器");
+
+        AutoCompressor auto = new AutoCompressor(new FramedCompressor(CompressionType.ZSTD), null, new SnappyCompressor());
+        check(Arrays.equals(auto.decompress(snappyBlock), data), "兜底的压缩器解压失败");
+        check(Arrays.equals(auto.decompress(new GzipCompressor().compress(data)), data), "有魔数的数据不应该交给兜底的压缩器");
+        check(Arrays.equals(readStream(new AutoCompressor(new FramedCompressor(CompressionType.ZSTD), null, new GzipCompressor()), new ZstdCompressor().compress(data)), data), "流式解压不应该交给兜底的压缩器");
+
+        Compressor identity = new Compressor() {
+            @Override
+            public byte[] compress(byte[] bytes) {
+                return bytes.clone();
+            }
+
+            @Override
+            public byte[] decompress(byte[] bytes) {
+                return bytes.clone();
+            }
+        };
+        AutoCompressor custom = new AutoCompressor(new FramedCompressor(CompressionType.ZSTD), null, identity);
+        check(Arrays.equals(custom.decompress(data), data), "自定义的兜底的压缩器解压失败");
+        expectFailure(IllegalStateException.class, () -> readStream(custom, data), "兜底的压缩器不支持流式解压");
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] copy = bytes.clone();
+        copy[offset] = (byte) (value >> 24);
+        copy[offset + 1] = (byte) (value >> 16);
+        copy[offset + 2] = (byte) (value >> 8);
+        copy[offset + 3] = (byte) value;
+        return copy;
+    }
+
+}
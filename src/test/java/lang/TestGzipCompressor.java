@@ -0,0 +1,265 @@
+package lang;
+
+import com.mogudiandian.util.compressor.GzipCompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试GZIP压缩器 结果和GZIPOutputStream/GZIPInputStream对比
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestGzipCompressor {
+
+    private static final int[] SIZES = {0, 1, 100, 8191, 8192, 100_000, 300_000};
+
+    public static void main(String[] args) throws IOException {
+        testRoundTrip();
+        testSameAsGZIPOutputStream();
+        testConcatenatedMembers();
+        testTrailingGarbage();
+        testTruncated();
+        testCorruptHeader();
+        testOptionalHeaderFields();
+        testLyingSize();
+    }
+
+    /**
+     * 和GZIPInputStream/GZIPOutputStream互相压缩解压
+     */
+    private static void testRoundTrip() throws IOException {
+        for (int level = -1; level <= 9; level++) {
+            for (int strategy : new int[]{Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+                GzipCompressor compressor = new GzipCompressor(level, strategy);
+                for (int size : SIZES) {
+                    for (byte[] data : new byte[][]{text(size), random(size)}) {
+                        byte[] compressed = compressor.compress(data);
+                        check(Arrays.equals(jdkDecompress(compressed), data), "GZIPInputStream解压失败 level=" + level + " size=" + size);
+                        check(Arrays.equals(compressor.decompress(compressed), data), "解压失败 level=" + level + " size=" + size);
+                        check(Arrays.equals(compressor.decompress(jdkCompress(data, level, strategy)), data), "解压GZIPOutputStream失败 level=" + level + " size=" + size);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 压缩的结果和当前JDK的GZIPOutputStream完全一致（包括头中的操作系统字段） 级别0除外
+     */
+    private static void testSameAsGZIPOutputStream() throws IOException {
+        for (int level = -1; level <= 9; level++) {
+            if (level == Deflater.NO_COMPRESSION) {
+                continue;
+            }
+            for (int strategy : new int[]{Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+                GzipCompressor compressor = new GzipCompressor(level, strategy);
+                for (int size : SIZES) {
+                    for (byte[] data : new byte[][]{text(size), random(size)}) {
+                        check(Arrays.equals(compressor.compress(data), jdkCompress(data, level, strategy)), "和GZIPOutputStream不一致 level=" + level + " strategy=" + strategy + " size=" + size);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 多个gzip成员首尾相连 解压后也首尾相连
+     */
+    private static void testConcatenatedMembers() throws IOException {
+        GzipCompressor compressor = new GzipCompressor();
+        byte[] a = text(1000);
+        byte[] b = random(5000);
+        byte[] c = new byte[0];
+        byte[] expected = concat(a, b, c, a);
+        byte[] compressed = concat(compressor.compress(a), jdkCompress(b, 1, Deflater.DEFAULT_STRATEGY), compressor.compress(c), compressor.compress(a));
+        check(Arrays.equals(jdkDecompress(compressed), expected), "GZIPInputStream解压多个成员失败");
+        check(Arrays.equals(compressor.decompress(compressed), expected), "解压多个成员失败");
+    }
+
+    /**
+     * 最后不是gzip成员的数据被忽略 和GZIPInputStream一致
+     */
+    private static void testTrailingGarbage() throws IOException {
+        GzipCompressor compressor = new GzipCompressor();
+        byte[] data = text(1000);
+        byte[] compressed = compressor.compress(data);
+        byte[][] garbages = {
+                {0},
+                "garbage".getBytes(StandardCharsets.US_ASCII),
+                "some garbage longer than a gzip header".getBytes(StandardCharsets.US_ASCII),
+                // 魔数开头但是头不完整
+                {0x1f, (byte) 0x8b, 8},
+                // 魔数开头但是压缩方法不对
+                {0x1f, (byte) 0x8b, 7, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3},
+                // 魔数开头但是文件名没有结束
+                {0x1f, (byte) 0x8b, 8, 8, 0, 0, 0, 0, 0, 0, 'a', 'b'},
+        };
+        for (byte[] garbage : garbages) {
+            byte[] bytes = concat(compressed, garbage);
+            check(Arrays.equals(jdkDecompress(bytes), data), "GZIPInputStream没有忽略 " + Arrays.toString(garbage));
+            check(Arrays.equals(compressor.decompress(bytes), data), "没有忽略 " + Arrays.toString(garbage));
+        }
+
+        // 头合法但是压缩数据不对的成员不能忽略（太短时GZIPInputStream会当作剩余的数据忽略）
+        byte[] invalid = new byte[64];
+        Arrays.fill(invalid, (byte) 0xff);
+        byte[] bytes = concat(compressed, header(0), invalid);
+        expectFailure(compressor, bytes, "后面的成员的压缩数据错误");
+    }
+
+    /**
+     * 截断在任何位置都要失败
+     */
+    private static void testTruncated() throws IOException {
+        GzipCompressor compressor = new GzipCompressor();
+        byte[] compressed = compressor.compress(text(1000));
+        for (int length = 0; length < compressed.length; length++) {
+            expectFailure(compressor, Arrays.copyOf(compressed, length), "截断到" + length);
+        }
+    }
+
+    /**
+     * 头错误
+     */
+    private static void testCorruptHeader() throws IOException {
+        GzipCompressor compressor = new GzipCompressor();
+        byte[] compressed = compressor.compress(text(1000));
+
+        byte[] bytes = compressed.clone();
+        bytes[0] = 0x1e;
+        expectFailure(compressor, bytes, "魔数错误");
+
+        bytes = compressed.clone();
+        bytes[1] = 0;
+        expectFailure(compressor, bytes, "魔数错误");
+
+        bytes = compressed.clone();
+        bytes[2] = 7;
+        expectFailure(compressor, bytes, "压缩方法错误");
+
+        // 有文件名但是没有结束符
+        byte[] name = new byte[20];
+        Arrays.fill(name, (byte) 'a');
+        bytes = concat(header(8), name);
+        expectFailure(compressor, bytes, "文件名没有结束");
+
+        // 额外字段的长度超过了数据的长度
+        bytes = concat(header(4), new byte[]{(byte) 0xff, (byte) 0xff, 1, 2, 3});
+        expectFailure(compressor, bytes, "额外字段超出长度");
+
+        // 头的crc错误
+        bytes = concat(header(2), new byte[]{0, 0}, Arrays.copyOfRange(compressed, 10, compressed.length));
+        expectFailure(compressor, bytes, "头的crc错误");
+    }
+
+    /**
+     * 头中的可选字段 额外字段、文件名、注释、头的crc
+     */
+    private static void testOptionalHeaderFields() throws IOException {
+        GzipCompressor compressor = new GzipCompressor();
+        byte[] data = text(1000);
+        byte[] compressed = compressor.compress(data);
+        byte[] header = concat(header(2 | 4 | 8 | 16),
+                new byte[]{3, 0, 'x', 'y', 'z'},
+                "name.txt\0".getBytes(StandardCharsets.US_ASCII),
+                "comment\0".getBytes(StandardCharsets.US_ASCII));
+        CRC32 crc = new CRC32();
+        crc.update(header, 0, header.length);
+        int headerCrc = (int) crc.getValue();
+        byte[] bytes = concat(header, new byte[]{(byte) headerCrc, (byte) (headerCrc >> 8)}, Arrays.copyOfRange(compressed, 10, compressed.length));
+        check(Arrays.equals(jdkDecompress(bytes), data), "GZIPInputStream解压可选字段失败");
+        check(Arrays.equals(compressor.decompress(bytes), data), "解压可选字段失败");
+    }
+
+    /**
+     * 尾中的原始长度和实际不一致 要失败 也不能按照它分配内存
+     */
+    private static void testLyingSize() throws IOException {
+        GzipCompressor compressor = new GzipCompressor();
+        byte[] compressed = compressor.compress(text(1000));
+        for (int size : new int[]{0, 1, 999, 1001, 64 * 1024, Integer.MAX_VALUE, -1}) {
+            byte[] bytes = compressed.clone();
+            writeInt(bytes, bytes.length - 4, size);
+            expectFailure(compressor, bytes, "原始长度" + size);
+        }
+
+        // crc错误
+        byte[] bytes = compressed.clone();
+        bytes[bytes.length - 8] ^= 1;
+        expectFailure(compressor, bytes, "crc错误");
+    }
+
+    private static void expectFailure(GzipCompressor compressor, byte[] bytes, String message) {
+        boolean jdkFailed;
+        try {
+            jdkDecompress(bytes);
+            jdkFailed = false;
+        } catch (IOException e) {
+            jdkFailed = true;
+        }
+        check(jdkFailed, "GZIPInputStream应该失败 " + message);
+        try {
+            compressor.decompress(bytes);
+        } catch (RuntimeException e) {
+            return;
+        }
+        throw new AssertionError("应该失败 " + message);
+    }
+
+    private static byte[] jdkCompress(byte[] data, int level, int strategy) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+                def.setStrategy(strategy);
+            }
+        }) {
+            // 分多次写入 确认结果和写入的方式无关
+            for (int i = 0; i < data.length; i += 3000) {
+                gzip.write(data, i, Math.min(3000, data.length - i));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] jdkDecompress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 不包含可选字段的gzip头
+     * @param flags 标识
+     * @return gzip头
+     */
+    private static byte[] header(int flags) {
+        return new byte[]{0x1f, (byte) 0x8b, 8, (byte) flags, 0, 0, 0, 0, 0, 0};
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+
+}
@@ -0,0 +1,140 @@
+package lang;
+
+import com.google.common.cache.CacheStats;
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.LocalMatcherCache;
+import com.mogudiandian.util.orm.MatcherCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试有界的本地缓存以及匹配器使用缓存
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestLocalMatcherCache {
+
+    public static void main(String[] args) {
+        try {
+            testBoundedSize();
+            testConfigure();
+            testExpireAfterWrite();
+            testMatcherQueriesOnlyMisses();
+            testDefaultCache();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 超过最大数量后淘汰 并记录淘汰数
+     */
+    private static void testBoundedSize() {
+        LocalMatcherCache cache = new LocalMatcherCache(3, 0, TimeUnit.MILLISECONDS);
+        for (long i = 0; i < 10; i++) {
+            cache.put("user", i, "user" + i);
+        }
+        check(cache.size("user") == 3, "缓存数量不对 " + cache.size("user"));
+        check(cache.stats("user").evictionCount() == 7, "淘汰数不对 " + cache.stats("user"));
+        check("user9".equals(cache.get("user", 9L)), "最近写入的应该保留");
+
+        cache.clear("user");
+        check(cache.size("user") == 0, "清除后缓存不为空");
+        expectFailure(IllegalArgumentException.class, () -> new LocalMatcherCache(0, 0, TimeUnit.MILLISECONDS), "最大数量为0");
+    }
+
+    /**
+     * 单独配置的缓存不影响其它缓存
+     */
+    private static void testConfigure() {
+        LocalMatcherCache cache = new LocalMatcherCache(100, 0, TimeUnit.MILLISECONDS)
+                .configure("small", 1, 0, TimeUnit.MILLISECONDS);
+        for (long i = 0; i < 10; i++) {
+            cache.put("small", i, i);
+            cache.put("large", i, i);
+        }
+        check(cache.size("small") == 1, "单独配置的数量不对 " + cache.size("small"));
+        check(cache.size("large") == 10, "默认配置的数量不对 " + cache.size("large"));
+
+        cache.clearAll();
+        check(cache.size("small") == 0 && cache.size("large") == 0, "清除全部后缓存不为空");
+    }
+
+    /**
+     * 写入后过期
+     */
+    private static void testExpireAfterWrite() {
+        LocalMatcherCache cache = new LocalMatcherCache().configure("expiring", 10, 50, TimeUnit.MILLISECONDS);
+        cache.put("expiring", 1L, "value");
+        check("value".equals(cache.get("expiring", 1L)), "写入后应该命中");
+        sleep(100);
+        check(cache.get("expiring", 1L) == null, "过期后不应该命中");
+    }
+
+    /**
+     * 匹配器只查询没有命中缓存的标识 并记录命中数
+     */
+    private static void testMatcherQueriesOnlyMisses() {
+        MatcherCache cache = new LocalMatcherCache();
+        List<Long> queried = Collections.synchronizedList(new ArrayList<>());
+
+        match(cache, ids(0, 10), queried);
+        check(queried.equals(ids(0, 10)), "第一次匹配应该查询全部 " + queried);
+
+        queried.clear();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = match(cache, ids(0, 15), queried);
+        check(queried.equals(ids(10, 15)), "第二次匹配应该只查询未命中的 " + queried);
+        check(matcher.getOneToOneRelations().size() == 15, "匹配的数量不对 " + matcher.getOneToOneRelations().size());
+        CacheStats stats = cache.stats("matcher");
+        check(stats.hitCount() == 10, "命中数不对 " + stats);
+
+        cache.clear("matcher");
+        queried.clear();
+        match(cache, ids(0, 15), queried);
+        check(queried.equals(ids(0, 15)), "清除缓存后应该查询全部 " + queried);
+    }
+
+    /**
+     * 没有单独设置缓存的匹配器使用默认缓存 静态方法清除的也是默认缓存
+     */
+    private static void testDefaultCache() {
+        MatcherCache original = ObjectRelationMatcher.getDefaultCache();
+        LocalMatcherCache cache = new LocalMatcherCache();
+        ObjectRelationMatcher.setDefaultCache(cache);
+        try {
+            List<Long> queried = Collections.synchronizedList(new ArrayList<>());
+            match(null, ids(0, 5), queried);
+            check(cache.size("matcher") == 5, "应该写入默认缓存 " + cache.size("matcher"));
+
+            ObjectRelationMatcher.clearCache("matcher");
+            check(cache.size("matcher") == 0, "应该清除默认缓存");
+        } finally {
+            ObjectRelationMatcher.setDefaultCache(original);
+        }
+    }
+
+    private static ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> match(MatcherCache cache, List<Long> elements, List<Long> queried) {
+        return new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(elements)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    queried.addAll(ids);
+                    return ids;
+                })
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setUseCache(true)
+                .setCacheKeyName("matcher")
+                .setCache(cache)
+                .match();
+    }
+
+}
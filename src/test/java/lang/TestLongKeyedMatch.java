@@ -0,0 +1,229 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.map.LongObjectHashMap;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试标识和唯一键都是long时不装箱的匹配 结果和装箱的匹配一致
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestLongKeyedMatch {
+
+    public static void main(String[] args) {
+        try {
+            testLongObjectHashMap();
+            testOneToOneSameAsBoxed();
+            testOneToManySameAsBoxed();
+            testConflictingExtractors();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 包括0和负数的key 扩容后也能找到
+     */
+    private static void testLongObjectHashMap() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(2);
+        for (long key = -500; key < 500; key++) {
+            check(map.put(key * 7, "v" + key) == null, key + "不应该已经存在");
+        }
+        check(map.size() == 1000, "数量不对 " + map.size());
+        check("v0".equals(map.get(0)) && map.containsKey(0), "key为0的值不对");
+        check("v-3".equals(map.put(-21, "new")), "覆盖时应该返回旧值");
+        check("new".equals(map.get(-21)) && map.get(1) == null && !map.containsKey(1), "查找的结果不对");
+        check(map.computeIfAbsent(1, key -> "computed").equals("computed") && map.computeIfAbsent(1, key -> "again").equals("computed"), "computeIfAbsent的结果不对");
+
+        long[] sum = new long[1];
+        map.forEach((key, value) -> sum[0] += key);
+        check(sum[0] == 1 - 7 * 500, "遍历的结果不对 " + sum[0]);
+
+        map.clear();
+        check(map.isEmpty() && map.get(0) == null, "清空后不应该有数据");
+        expectFailure(IllegalArgumentException.class, () -> new LongObjectHashMap<>(-1), "预计数量为负数");
+    }
+
+    /**
+     * 一对一 按照排序去重后的标识分批查询 结果和装箱的匹配一致
+     */
+    private static void testOneToOneSameAsBoxed() {
+        List<Long> elements = elements();
+        List<List<Long>> longQueries = Collections.synchronizedList(new ArrayList<>());
+        ObjectRelationMatcher<Long, Long, List<Long>, Item, Long> longKeyed = new ObjectRelationMatcher<Long, Long, List<Long>, Item, Long>()
+                .setElements(elements)
+                .setLongIdentifierExtractor(Long::longValue)
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    longQueries.add(ids);
+                    return queryOne(ids);
+                })
+                .setMaxBatchQuerySize(16)
+                .setLongDataKeyGenerator(item -> item.id)
+                .match();
+
+        ObjectRelationMatcher<Long, Long, List<Long>, Item, Long> boxed = new ObjectRelationMatcher<Long, Long, List<Long>, Item, Long>()
+                .setElements(elements)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(TestLongKeyedMatch::queryOne)
+                .setMaxBatchQuerySize(16)
+                .setDataKeyGenerator(item -> item.id)
+                .setElementToKeyMappingByIdentifierExtractor()
+                .match();
+
+        check(longKeyed.getOneToOneRelations(true).equals(boxed.getOneToOneRelations(true)), "一对一的结果和装箱的匹配不一致");
+        check(longKeyed.getOneToOneRelations().size() == boxed.getOneToOneRelations().size(), "已匹配的数量不一致");
+        List<Long> queried = longQueries.stream().flatMap(Collection::stream).collect(Collectors.toList());
+        check(queried.equals(elements.stream().distinct().sorted().collect(Collectors.toList())), "应该按照排序去重后的标识查询 " + queried);
+        check(longQueries.stream().allMatch(batch -> batch.size() <= 16), "每一批不应该超过上限");
+    }
+
+    /**
+     * 一对多 结果和装箱的匹配一致
+     */
+    private static void testOneToManySameAsBoxed() {
+        List<Long> elements = elements();
+        ObjectRelationMatcher<Long, Long, Set<Long>, Item, Long> longKeyed = new ObjectRelationMatcher<Long, Long, Set<Long>, Item, Long>()
+                .setElements(elements)
+                .setLongIdentifierExtractor(Long::longValue)
+                .setIdentifierCollectorType(Set.class)
+                .setBatchQueryMethod(TestLongKeyedMatch::queryMany)
+                .setMaxBatchQuerySize(10)
+                .setParallelExecuteQuery(true)
+                .setLongDataKeyGenerator(item -> item.id)
+                .setOneToMany(true)
+                .match();
+
+        ObjectRelationMatcher<Long, Long, Set<Long>, Item, Long> boxed = new ObjectRelationMatcher<Long, Long, Set<Long>, Item, Long>()
+                .setElements(elements)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(Set.class)
+                .setBatchQueryMethod(TestLongKeyedMatch::queryMany)
+                .setMaxBatchQuerySize(10)
+                .setParallelExecuteQuery(true)
+                .setDataKeyGenerator(item -> item.id)
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setOneToMany(true)
+                .match();
+
+        Map<Long, List<Item>> longRelations = sorted(longKeyed.getOneToManyRelations(true));
+        check(longRelations.equals(sorted(boxed.getOneToManyRelations(true))), "一对多的结果和装箱的匹配不一致");
+        check(longRelations.get(1L).size() == 2 && longRelations.get(3L) == null, "一对多的结果不对 " + longRelations);
+    }
+
+    /**
+     * long类型的提取器不能和通用的提取器同时设置
+     */
+    private static void testConflictingExtractors() {
+        expectFailure(RuntimeException.class, () -> new ObjectRelationMatcher<Long, Long, List<Long>, Item, Long>()
+                .setElements(elements())
+                .setLongIdentifierExtractor(Long::longValue)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(TestLongKeyedMatch::queryOne)
+                .setLongDataKeyGenerator(item -> item.id)
+                .match(), "同时设置两种标识符提取器");
+
+        expectFailure(RuntimeException.class, () -> new ObjectRelationMatcher<Long, Long, List<Long>, Item, Long>()
+                .setElements(elements())
+                .setLongIdentifierExtractor(Long::longValue)
+                .setElementToKeyMapping(element -> element + 1)
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(TestLongKeyedMatch::queryOne)
+                .setLongDataKeyGenerator(item -> item.id)
+                .match(), "long类型的标识符提取器和源集合到唯一键的映射关系");
+
+        expectFailure(RuntimeException.class, () -> new ObjectRelationMatcher<Long, Long, List<Long>, Item, Long>()
+                .setElements(elements())
+                .setLongIdentifierExtractor(Long::longValue)
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(TestLongKeyedMatch::queryOne)
+                .setLongDataKeyGenerator(item -> item.id)
+                .setDataKeyGenerator(item -> item.id)
+                .match(), "同时设置两种唯一键生成器");
+    }
+
+    /**
+     * 乱序、有重复、包括0和负数的标识
+     */
+    private static List<Long> elements() {
+        List<Long> elements = new ArrayList<>();
+        Random random = new Random(16);
+        for (int i = 0; i < 200; i++) {
+            elements.add((long) random.nextInt(120) - 20);
+        }
+        elements.add(0L);
+        return elements;
+    }
+
+    /**
+     * 5的倍数查不到
+     */
+    private static List<Item> queryOne(Collection<Long> ids) {
+        return ids.stream()
+                  .filter(id -> id % 5 != 0)
+                  .map(id -> new Item(id, "item" + id))
+                  .collect(Collectors.toList());
+    }
+
+    /**
+     * 3的倍数查不到 其他每个标识两条
+     */
+    private static List<Item> queryMany(Collection<Long> ids) {
+        return ids.stream()
+                  .filter(id -> id % 3 != 0)
+                  .flatMap(id -> Arrays.asList(new Item(id, "a" + id), new Item(id, "b" + id)).stream())
+                  .collect(Collectors.toList());
+    }
+
+    private static Map<Long, List<Item>> sorted(Map<Long, List<Item>> relations) {
+        Map<Long, List<Item>> map = new HashMap<>();
+        relations.forEach((id, list) -> map.put(id, list == null ? null : list.stream()
+                                                                          .sorted(Comparator.comparing(item -> item.name))
+                                                                          .collect(Collectors.toList())));
+        return map;
+    }
+
+    private static final class Item {
+
+        private final long id;
+
+        private final String name;
+
+        private Item(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Item)) {
+                return false;
+            }
+            Item item = (Item) o;
+            return id == item.id && name.equals(item.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package lang;
+
+import com.mogudiandian.util.compressor.AutoCompressor;
+import com.mogudiandian.util.compressor.CompressionType;
+import com.mogudiandian.util.compressor.FramedCompressor;
+import com.mogudiandian.util.compressor.Lz4Compressor;
+import net.jpountz.lz4.LZ4CompressorWithLength;
+import net.jpountz.lz4.LZ4DecompressorWithLength;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试lz4的fast、HC模式和block、frame格式 以及和lz4-java、帧、自动识别格式的互通
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestLz4Compressor {
+
+    private static final int[] SIZES = {0, 1, 1000, 65536, 300_000};
+
+    public static void main(String[] args) throws IOException {
+        testLevels();
+        testBlockFormat();
+        testFrameFormat();
+        testMalformedBlock();
+        testMalformedFrame();
+        testFramedAndAuto();
+        testInvalidArguments();
+    }
+
+    /**
+     * 各个级别和格式都能解压 HC模式压缩得更小
+     */
+    private static void testLevels() {
+        for (int level : new int[]{Lz4Compressor.FAST, 1, 9, 17}) {
+            for (Lz4Compressor.Format format : Lz4Compressor.Format.values()) {
+                Lz4Compressor compressor = new Lz4Compressor(level, format);
+                check(compressor.getLevel() == level && compressor.getFormat() == format, "参数不对");
+                for (int size : SIZES) {
+                    for (byte[] data : new byte[][]{text(size), random(size)}) {
+                        check(Arrays.equals(compressor.decompress(compressor.compress(data)), data), "解压失败 level=" + level + " format=" + format + " size=" + size);
+                    }
+                }
+            }
+        }
+        byte[] data = text(300_000);
+        check(new Lz4Compressor(9).compress(data).length < new Lz4Compressor().compress(data).length, "HC模式应该压缩得更小");
+        check(new Lz4Compressor().getFormat() == Lz4Compressor.Format.BLOCK, "默认应该是block格式");
+    }
+
+    /**
+     * block格式是小端序的原始长度加上LZ4的block 和lz4-java的LZ4CompressorWithLength一致
+     */
+    private static void testBlockFormat() {
+        byte[] data = text(100_000);
+        byte[] compressed = new Lz4Compressor().compress(data);
+        check((compressed[0] & 0xff | (compressed[1] & 0xff) << 8 | (compressed[2] & 0xff) << 16 | (compressed[3] & 0xff) << 24) == data.length, "开头应该是小端序的原始长度");
+
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        check(Arrays.equals(new LZ4DecompressorWithLength(factory.fastDecompressor()).decompress(compressed), data), "lz4-java解压失败");
+        byte[] withLength = new LZ4CompressorWithLength(factory.highCompressor()).compress(data);
+        check(Arrays.equals(new Lz4Compressor().decompress(withLength), data), "解压lz4-java压缩的数据失败");
+    }
+
+    /**
+     * frame格式以魔数开始 和lz4-java的frame流互通 可以解压多个连续的帧
+     */
+    private static void testFrameFormat() throws IOException {
+        byte[] data = text(300_000);
+        Lz4Compressor compressor = new Lz4Compressor(Lz4Compressor.FAST, Lz4Compressor.Format.FRAME);
+        byte[] compressed = compressor.compress(data);
+        check(compressed[0] == 0x04 && compressed[1] == 0x22 && compressed[2] == 0x4d && compressed[3] == 0x18, "frame格式的魔数不对");
+        try (InputStream in = new LZ4FrameInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[data.length];
+            int length = 0;
+            int n;
+            while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += n;
+            }
+            check(length == data.length && Arrays.equals(buffer, data) && in.read() == -1, "lz4-java解压frame格式失败");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (LZ4FrameOutputStream frame = new LZ4FrameOutputStream(out)) {
+            frame.write(data);
+        }
+        check(Arrays.equals(compressor.decompress(out.toByteArray()), data), "解压没有记录原始长度的帧失败");
+
+        byte[] second = random(1000);
+        check(Arrays.equals(compressor.decompress(concat(compressed, compressor.compress(second))), concat(data, second)), "解压多个连续的帧失败");
+        check(Arrays.equals(compressor.decompress(writeStream(new Lz4Compressor(), data)), data), "解压流式压缩的数据失败");
+    }
+
+    /**
+     * block格式被截断或者原始长度不对时失败 不能按照错误的原始长度分配内存
+     */
+    private static void testMalformedBlock() {
+        Lz4Compressor compressor = new Lz4Compressor();
+        byte[] data = text(10_000);
+        byte[] compressed = compressor.compress(data);
+        expectFailure(LZ4Exception.class, () -> compressor.decompress(new byte[3]), "没有原始长度");
+        expectFailure(LZ4Exception.class, () -> compressor.decompress(Arrays.copyOf(compressed, compressed.length / 2)), "数据被截断");
+        expectFailure(LZ4Exception.class, () -> compressor.decompress(withLength(compressed, Integer.MAX_VALUE)), "原始长度太大");
+        expectFailure(LZ4Exception.class, () -> compressor.decompress(withLength(compressed, -1)), "原始长度为负数");
+        expectFailure(LZ4Exception.class, () -> compressor.decompress(withLength(compressed, data.length + 1)), "原始长度偏大");
+        expectFailure(LZ4Exception.class, () -> compressor.decompress(withLength(compressed, data.length - 1)), "原始长度偏小");
+    }
+
+    /**
+     * frame格式记录的原始长度和block格式一样校验 不能按照错误的原始长度分配内存 连续的帧各自校验
+     */
+    private static void testMalformedFrame() {
+        Lz4Compressor compressor = new Lz4Compressor(Lz4Compressor.FAST, Lz4Compressor.Format.FRAME);
+        byte[] data = text(10_000);
+        byte[] compressed = compressor.compress(data);
+        check((compressed[4] & 0x08) != 0, "应该记录原始长度");
+        LZ4Exception e = expectFailure(LZ4Exception.class, () -> compressor.decompress(withContentSize(compressed, 0x7ffffff0)), "原始长度太大");
+        check(e.getMessage().contains("invalid original length"), "应该在分配前发现原始长度太大 " + e.getMessage());
+        e = expectFailure(LZ4Exception.class, () -> compressor.decompress(withContentSize(compressed, data.length - 1)), "原始长度偏小");
+        check(e.getMessage().contains("longer"), "应该是解压后的数据超过原始长度 " + e.getMessage());
+        expectFailure(RuntimeException.class, () -> compressor.decompress(withContentSize(compressed, data.length + 1)), "原始长度偏大");
+        expectFailure(LZ4Exception.class, () -> compressor.decompress(concat(compressed, withContentSize(compressed, 0x7ffffff0))), "第二个帧的原始长度太大");
+    }
+
+    /**
+     * 帧只接受block格式 自动识别帧中的lz4和lz4的frame格式
+     */
+    private static void testFramedAndAuto() throws IOException {
+        expectFailure(IllegalArgumentException.class, () -> new FramedCompressor(CompressionType.LZ4, new Lz4Compressor(0, Lz4Compressor.Format.FRAME), false), "帧中使用frame格式");
+        check(new FramedCompressor(CompressionType.LZ4, new Lz4Compressor(9), true).getCompressor() instanceof Lz4Compressor, "帧中可以使用HC模式的block格式");
+        expectFailure(IllegalArgumentException.class, () -> new AutoCompressor(new FramedCompressor(CompressionType.ZSTD), Collections.singletonMap(CompressionType.LZ4, new Lz4Compressor(0, Lz4Compressor.Format.FRAME)), null), "解压lz4使用frame格式");
+
+        byte[] data = text(100_000);
+        AutoCompressor lz4 = new AutoCompressor(new FramedCompressor(CompressionType.LZ4, new Lz4Compressor(9), true));
+        AutoCompressor auto = new AutoCompressor();
+        check(Arrays.equals(auto.decompress(lz4.compress(data)), data), "自动识别解压lz4的帧失败");
+        check(Arrays.equals(auto.decompress(new Lz4Compressor(0, Lz4Compressor.Format.FRAME).compress(data)), data), "自动识别解压lz4的frame格式失败");
+        byte[] stream = writeStream(lz4, data);
+        check(stream[0] == 0x04 && stream[1] == 0x22, "流式压缩应该使用lz4的frame格式");
+        check(Arrays.equals(readStream(auto, stream), data), "自动识别流式解压lz4失败");
+        check(Arrays.equals(auto.decompress(stream), data), "自动识别解压lz4的流失败");
+    }
+
+    private static void testInvalidArguments() {
+        expectFailure(IllegalArgumentException.class, () -> new Lz4Compressor(-1), "级别为负数");
+        expectFailure(IllegalArgumentException.class, () -> new Lz4Compressor(18), "级别超过17");
+        expectFailure(IllegalArgumentException.class, () -> new Lz4Compressor(0, null), "格式为空");
+    }
+
+    private static byte[] withLength(byte[] compressed, int length) {
+        byte[] copy = compressed.clone();
+        for (int i = 0; i < 4; i++) {
+            copy[i] = (byte) (length >> (i * 8));
+        }
+        return copy;
+    }
+
+    private static byte[] withContentSize(byte[] compressed, long contentSize) {
+        byte[] copy = compressed.clone();
+        for (int i = 0; i < 8; i++) {
+            copy[6 + i] = (byte) (contentSize >>> (i * 8));
+        }
+        // 帧头的校验是FLG到原始长度的xxhash32的第二个字节
+        copy[14] = (byte) (XXHashFactory.fastestInstance().hash32().hash(copy, 4, 10, 0) >> 8);
+        return copy;
+    }
+
+}
@@ -0,0 +1,211 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.ManagedDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试托管的字典数据 首次加载、过期刷新、定时刷新
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestManagedDictionary {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testSharedInitialLoad();
+            testTtlRefresh();
+            testRefreshFailureKeepsStaleData();
+            testTtlRefreshOnSaturatedExecutor();
+            testSkippedRefreshBackoff();
+            testScheduledRefresh();
+            testMatcherWithDictionary();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 并发的首次查找共享同一次加载
+     */
+    private static void testSharedInitialLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ManagedDictionary<Long, Long> dictionary = new ManagedDictionary<>(() -> {
+            loads.incrementAndGet();
+            await(release);
+            return Arrays.asList(1L, 2L, 3L);
+        }, Function.identity()).setExecutor(EXECUTOR);
+
+        List<CompletableFuture<List<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(dictionary.getAsync(Arrays.asList(1L, 3L, 5L)));
+        }
+        check(!dictionary.isLoaded(), "还没有加载完成");
+        release.countDown();
+        for (CompletableFuture<List<Long>> future : futures) {
+            check(future.get(5, TimeUnit.SECONDS).equals(Arrays.asList(1L, 3L)), "查找的结果不对");
+        }
+        check(loads.get() == 1, "加载了" + loads + "次");
+        check(dictionary.size() == 3, "数量不对 " + dictionary.size());
+    }
+
+    /**
+     * 过期后查找立即返回旧的数据 在后台刷新
+     */
+    private static void testTtlRefresh() throws Exception {
+        AtomicInteger version = new AtomicInteger();
+        CountDownLatch refreshing = new CountDownLatch(1);
+        ManagedDictionary<Long, Long> dictionary = new ManagedDictionary<>(() -> {
+            if (version.get() > 0) {
+                await(refreshing);
+            }
+            return Arrays.asList((long) version.incrementAndGet());
+        }, x -> 0L).setExecutor(EXECUTOR).setTtl(50, TimeUnit.MILLISECONDS);
+
+        check(dictionary.get(0L) == 1L, "首次加载的数据不对");
+        sleep(100);
+        long startTime = System.nanoTime();
+        check(dictionary.get(0L) == 1L, "刷新完成前应该返回旧的数据");
+        check(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < 50, "查找等待了刷新");
+        refreshing.countDown();
+        waitUntil(() -> dictionary.get(0L) == 2L, "没有刷新");
+    }
+
+    /**
+     * 刷新失败时保留旧的数据
+     */
+    private static void testRefreshFailureKeepsStaleData() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ManagedDictionary<Long, Long> dictionary = new ManagedDictionary<>(() -> {
+            if (loads.incrementAndGet() > 1) {
+                throw new IllegalStateException("refresh failed");
+            }
+            return Arrays.asList(1L);
+        }, Function.identity()).setExecutor(EXECUTOR);
+
+        check(dictionary.get(1L) == 1L, "首次加载的数据不对");
+        dictionary.refresh();
+        waitUntil(() -> loads.get() == 2, "没有刷新");
+        sleep(50);
+        check(dictionary.get(1L) == 1L, "刷新失败后应该保留旧的数据");
+    }
+
+    /**
+     * 线程池饱和时 过期触发的刷新不能在查找的线程中执行 跳过这一次并返回旧的数据
+     */
+    private static void testTtlRefreshOnSaturatedExecutor() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            Set<Thread> loadThreads = ConcurrentHashMap.newKeySet();
+            AtomicInteger version = new AtomicInteger();
+            ManagedDictionary<Long, Long> dictionary = new ManagedDictionary<>(() -> {
+                loadThreads.add(Thread.currentThread());
+                return Arrays.asList((long) version.incrementAndGet());
+            }, x -> 0L).setExecutor(executor).setTtl(50, TimeUnit.MILLISECONDS);
+            check(dictionary.get(0L) == 1L, "首次加载的数据不对");
+            loadThreads.clear();
+
+            // 占满线程池 唯一的线程可能还没有回到等待任务的状态 这时提交的任务会在当前线程中执行 所以只在线程池的线程中阻塞 直到线程池接受
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread mainThread = Thread.currentThread();
+            do {
+                executor.execute(() -> {
+                    if (Thread.currentThread() != mainThread) {
+                        started.countDown();
+                        await(release);
+                    }
+                });
+            } while (!started.await(10, TimeUnit.MILLISECONDS));
+            sleep(100);
+            check(dictionary.get(0L) == 1L, "线程池饱和时应该返回旧的数据");
+            check(!loadThreads.contains(Thread.currentThread()), "在查找的线程中刷新了");
+            check(version.get() == 1, "线程池饱和时不应该刷新");
+
+            // 线程池空闲后 下一次查找触发刷新
+            release.countDown();
+            waitUntil(() -> dictionary.get(0L) == 2L, "没有刷新");
+            check(!loadThreads.contains(Thread.currentThread()), "在查找的线程中刷新了");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在调用方线程中执行的线程池总是跳过过期触发的刷新 跳过后一段时间内的查找不再提交刷新
+     */
+    private static void testSkippedRefreshBackoff() throws Exception {
+        AtomicInteger submissions = new AtomicInteger();
+        AtomicInteger loads = new AtomicInteger();
+        Executor callerRuns = task -> {
+            submissions.incrementAndGet();
+            task.run();
+        };
+        ManagedDictionary<Long, Long> dictionary = new ManagedDictionary<>(() -> Arrays.asList((long) loads.incrementAndGet()), x -> 0L)
+                .setExecutor(callerRuns)
+                .setTtl(10, TimeUnit.MILLISECONDS);
+        check(dictionary.get(0L) == 1L, "首次加载的数据不对");
+        sleep(50);
+        for (int i = 0; i < 100; i++) {
+            check(dictionary.get(0L) == 1L, "跳过刷新时应该返回旧的数据");
+        }
+        check(loads.get() == 1, "在查找的线程中刷新了");
+        check(submissions.get() == 2, "跳过刷新后仍然在提交 " + submissions);
+    }
+
+    /**
+     * 定时刷新
+     */
+    private static void testScheduledRefresh() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ManagedDictionary<Long, Long> dictionary = new ManagedDictionary<>(() -> Arrays.asList((long) loads.incrementAndGet()), x -> 0L)
+                .setExecutor(EXECUTOR)
+                .setRefreshInterval(30, TimeUnit.MILLISECONDS);
+        try {
+            waitUntil(() -> loads.get() >= 3, "没有定时刷新");
+            check(dictionary.get(0L) >= 2L, "定时刷新后的数据不对");
+        } finally {
+            dictionary.stop();
+        }
+        int stopped = loads.get();
+        sleep(100);
+        check(loads.get() <= stopped + 1, "停止后仍然在刷新");
+    }
+
+    /**
+     * 匹配器从字典中查找 多次匹配只加载一次
+     */
+    private static void testMatcherWithDictionary() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ManagedDictionary<Long, Long> dictionary = new ManagedDictionary<>(() -> {
+            loads.incrementAndGet();
+            return Arrays.asList(1L, 2L, 3L);
+        }, Function.identity()).setExecutor(EXECUTOR);
+        for (int i = 0; i < 3; i++) {
+            ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                    .setElements(Arrays.asList(1L, 3L, 5L))
+                    .setElementIdentifierExtractor(Function.identity())
+                    .setIdentifierCollectorType(List.class)
+                    .setIdentifierToKeyMapping(Function.identity())
+                    .setDictionary(dictionary)
+                    .setDataKeyGenerator(Function.identity())
+                    .setElementToKeyMappingByIdentifierExtractor()
+                    .match();
+            check(matcher.getOneToOneRelations().keySet().equals(new HashSet<>(Arrays.asList(1L, 3L))), "匹配的结果不对 " + matcher.getOneToOneRelations());
+        }
+        check(loads.get() == 1, "加载了" + loads + "次");
+    }
+
+}
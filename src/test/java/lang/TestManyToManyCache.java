@@ -0,0 +1,162 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.LocalMatcherCache;
+import com.mogudiandian.util.orm.MatcherCache;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试多对多关系使用缓存
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestManyToManyCache {
+
+    public static void main(String[] args) {
+        try {
+            testCachedAndQueriedDataMerged();
+            testIdentifierToKeyMapping();
+            testCartesianCannotUseCache();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 命中缓存的标识不再查询 和查询出来的数据合并后匹配 每次匹配只批量访问一次缓存
+     */
+    private static void testCachedAndQueriedDataMerged() {
+        CountingCache cache = new CountingCache();
+        List<Long> queried = Collections.synchronizedList(new ArrayList<>());
+
+        List<List<Long>> posts = Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(2L, 3L));
+        Map<List<Long>, List<String>> relations = match(cache, posts, queried, Function.identity());
+        check(queried.equals(Arrays.asList(1L, 2L, 3L)), "第一次匹配应该查询全部 " + queried);
+        check(relations.get(posts.get(0)).equals(Arrays.asList("tag1", "tag2")), "匹配的结果不对 " + relations);
+        check(cache.getAllCount.get() == 1 && cache.putAllCount.get() == 1, "应该批量访问缓存");
+
+        queried.clear();
+        // 99查不到
+        List<List<Long>> newPosts = Arrays.asList(Arrays.asList(3L, 4L), Arrays.asList(1L, 99L), Collections.singletonList(99L));
+        relations = match(cache, newPosts, queried, Function.identity());
+        check(queried.equals(Arrays.asList(4L, 99L)), "第二次匹配应该只查询未命中的 " + queried);
+        check(relations.get(newPosts.get(0)).equals(Arrays.asList("tag3", "tag4")), "缓存的数据和查询的数据应该合并 " + relations);
+        check(relations.get(newPosts.get(1)).equals(Collections.singletonList("tag1")), "部分匹配的结果不对 " + relations);
+        check(!relations.containsKey(newPosts.get(2)), "没有数据的应该未匹配 " + relations);
+        check(cache.getAllCount.get() == 2 && cache.putAllCount.get() == 2, "应该批量访问缓存");
+        check(cache.get("tags", 4L) != null && cache.get("tags", 99L) == null, "应该只缓存查到的标识");
+    }
+
+    /**
+     * 标识和唯一键不同时 缓存的数据按照标识映射的唯一键匹配
+     */
+    private static void testIdentifierToKeyMapping() {
+        MatcherCache cache = new LocalMatcherCache();
+        List<Long> queried = Collections.synchronizedList(new ArrayList<>());
+        List<List<Long>> posts = Collections.singletonList(Arrays.asList(1L, 2L));
+
+        match(cache, posts, queried, id -> "key" + id);
+        queried.clear();
+        Map<List<Long>, List<String>> relations = match(cache, posts, queried, id -> "key" + id);
+        check(queried.isEmpty(), "应该全部命中缓存 " + queried);
+        check(relations.get(posts.get(0)).equals(Arrays.asList("tag1", "tag2")), "命中缓存后匹配的结果不对 " + relations);
+    }
+
+    /**
+     * 全量笛卡尔积的数据不属于任何一个标识 不能使用缓存
+     */
+    private static void testCartesianCannotUseCache() {
+        expectFailure(RuntimeException.class, () -> new ObjectRelationMatcher<List<Long>, Long, List<Long>, String, Long>()
+                .setElements(Collections.singletonList(Arrays.asList(1L, 2L)))
+                .setElementIdentifiersExtractor(post -> post)
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(TestManyToManyCache::queryTags)
+                .setDataKeyGenerator(tag -> Long.parseLong(tag.substring(3)))
+                .setManyToMany(true)
+                .setElementToAllKeys(true)
+                .setUseCache(true)
+                .setCacheKeyName("tags")
+                .match(), "全量笛卡尔积使用缓存");
+    }
+
+    private static <K> Map<List<Long>, List<String>> match(MatcherCache cache, List<List<Long>> posts, List<Long> queried, Function<Long, K> identifierToKey) {
+        Map<List<Long>, List<String>> relations = new HashMap<>();
+        new ObjectRelationMatcher<List<Long>, Long, List<Long>, String, K>()
+                .setElements(posts)
+                .setElementIdentifiersExtractor(post -> post)
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    queried.addAll(ids);
+                    return queryTags(ids);
+                })
+                .setDataKeyGenerator(tag -> identifierToKey.apply(Long.parseLong(tag.substring(3))))
+                .setManyToMany(true)
+                .setElementToKeysMapping(post -> post.stream().map(identifierToKey).collect(Collectors.toList()))
+                .setIdentifierToKeyMapping(identifierToKey)
+                .setUseCache(true)
+                .setCacheKeyName("tags")
+                .setCache(cache)
+                .match()
+                .processManyToMany(relations::put);
+        return relations;
+    }
+
+    private static List<String> queryTags(List<Long> ids) {
+        return ids.stream()
+                  .filter(id -> id != 99)
+                  .map(id -> "tag" + id)
+                  .collect(Collectors.toList());
+    }
+
+    /**
+     * 记录批量访问次数的缓存
+     */
+    private static final class CountingCache implements MatcherCache {
+
+        private final MatcherCache delegate = new LocalMatcherCache();
+
+        private final AtomicInteger getAllCount = new AtomicInteger();
+
+        private final AtomicInteger putAllCount = new AtomicInteger();
+
+        @Override
+        public Object get(String name, Object identifier) {
+            return delegate.get(name, identifier);
+        }
+
+        @Override
+        public Map<Object, Object> getAll(String name, Collection<?> identifiers) {
+            getAllCount.incrementAndGet();
+            return delegate.getAll(name, identifiers);
+        }
+
+        @Override
+        public void put(String name, Object identifier, Object value) {
+            throw new AssertionError("应该批量写入缓存");
+        }
+
+        @Override
+        public void putAll(String name, Map<?, ?> values) {
+            putAllCount.incrementAndGet();
+            delegate.putAll(name, values);
+        }
+
+        @Override
+        public void clear(String name) {
+            delegate.clear(name);
+        }
+
+        @Override
+        public void clearAll() {
+            delegate.clearAll();
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试异步匹配 以及同步匹配在调用方线程中组装结果
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestMatchAsync {
+
+    private static final ThreadLocal<String> CALLER_CONTEXT = new ThreadLocal<>();
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testAsyncBatchQueryDoesNotBlock();
+            testAsyncSingleQuery();
+            testMatchAssemblesOnCallerThread();
+            testQueryFailure();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 异步的批量查询方法返回的future完成前 matchAsync已经返回
+     */
+    private static void testAsyncBatchQueryDoesNotBlock() throws Exception {
+        CompletableFuture<List<Long>> pending = new CompletableFuture<>();
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>> future = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 10))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setAsyncBatchQueryMethod(ids -> pending)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .matchAsync();
+        check(!future.isDone(), "查询完成前不应该完成匹配");
+
+        pending.complete(ids(0, 5));
+        Map<Long, Long> relations = future.get(5, TimeUnit.SECONDS).getOneToOneRelations(true);
+        check(relations.size() == 10, "匹配的数量不对 " + relations.size());
+        relations.forEach((id, data) -> check(id < 5 ? id.equals(data) : data == null, id + "匹配的结果不对 " + data));
+    }
+
+    /**
+     * 异步的单个查询方法 每个标识查询一次
+     */
+    private static void testAsyncSingleQuery() throws Exception {
+        Set<Long> queried = ConcurrentHashMap.newKeySet();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(Arrays.asList(1L, 2L, 2L, 3L))
+                .setElementIdentifierExtractor(Function.identity())
+                .setAsyncSingleQueryMethod(id -> CompletableFuture.supplyAsync(() -> {
+                    check(queried.add(id), id + "查询了多次");
+                    return id * 10;
+                }))
+                .setDataKeyGenerator(data -> data / 10)
+                .setElementToKeyMappingByIdentifierExtractor()
+                .matchAsync()
+                .get(5, TimeUnit.SECONDS);
+        matcher.processOneToOne((id, data) -> check(data == id * 10, id + "匹配的结果不对 " + data), id -> {
+            throw new AssertionError(id + "没有匹配");
+        });
+        check(queried.equals(new HashSet<>(Arrays.asList(1L, 2L, 3L))), "查询的标识不对 " + queried);
+    }
+
+    /**
+     * 同步匹配时查询在线程池中并发执行 但组装结果在调用方线程中 可以使用调用方的ThreadLocal
+     */
+    private static void testMatchAssemblesOnCallerThread() {
+        Set<Thread> queryThreads = ConcurrentHashMap.newKeySet();
+        Set<Thread> keyThreads = ConcurrentHashMap.newKeySet();
+        Set<String> keyContexts = ConcurrentHashMap.newKeySet();
+        CALLER_CONTEXT.set("caller");
+        try {
+            ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                    .setElements(ids(0, 50))
+                    .setElementIdentifierExtractor(Function.identity())
+                    .setIdentifierCollectorType(List.class)
+                    .setBatchQueryMethod(ids -> {
+                        queryThreads.add(Thread.currentThread());
+                        sleep(20);
+                        return ids;
+                    })
+                    .setMaxBatchQuerySize(10)
+                    .setParallelExecuteQuery(true)
+                    .setDataKeyGenerator(data -> {
+                        keyThreads.add(Thread.currentThread());
+                        keyContexts.add(String.valueOf(CALLER_CONTEXT.get()));
+                        return data;
+                    })
+                    .setElementToKeyMappingByIdentifierExtractor()
+                    .match();
+            check(matcher.getOneToOneRelations().size() == 50, "匹配的数量不对 " + matcher.getOneToOneRelations().size());
+        } finally {
+            CALLER_CONTEXT.remove();
+        }
+        check(!queryThreads.contains(Thread.currentThread()), "并发查询应该在线程池中执行");
+        check(keyThreads.equals(Collections.singleton(Thread.currentThread())), "组装结果不在调用方线程中 " + keyThreads);
+        check(keyContexts.equals(Collections.singleton("caller")), "组装结果时拿不到调用方的上下文 " + keyContexts);
+    }
+
+    /**
+     * 查询失败时 同步匹配抛出由查询的异常引起的异常 异步匹配的future以异常结束
+     */
+    private static void testQueryFailure() throws Exception {
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 10))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    throw new IllegalStateException("query failed");
+                })
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor();
+        RuntimeException e = expectFailure(RuntimeException.class, matcher::match, "同步匹配");
+        check(rootCause(e) instanceof IllegalStateException, "异常不对 " + e);
+
+        ExecutionException executionException = expectFailure(ExecutionException.class, () -> matcher.matchAsync().get(5, TimeUnit.SECONDS), "异步匹配");
+        check(rootCause(executionException) instanceof IllegalStateException, "异常不对 " + executionException);
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while (e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+}
@@ -0,0 +1,157 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.MatchProfile;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试查询的超时时间和各阶段的耗时
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestMatchDeadline {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testProfileBeforeMatch();
+            testTimeoutFailure();
+            testTimeoutPartialResult();
+            testQueryFailure();
+            testSerialBatchesStopAfterTimeout();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 还没有匹配时不能获取耗时
+     */
+    private static void testProfileBeforeMatch() {
+        try {
+            matcher(ids(0, 10), ids -> ids).getMatchProfile();
+        } catch (RuntimeException e) {
+            return;
+        }
+        throw new AssertionError("还没有匹配时应该失败");
+    }
+
+    /**
+     * 超时后匹配失败 仍然可以查看各阶段的耗时
+     */
+    private static void testTimeoutFailure() {
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 20), slowBatch(0)).setMaxBatchQuerySize(10)
+                                                                                                              .setQueryTimeout(100);
+        long startTime = System.nanoTime();
+        try {
+            matcher.match();
+            throw new AssertionError("应该超时");
+        } catch (RuntimeException e) {
+            check(e.getMessage().contains("timeout"), "异常不对 " + e);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        check(elapsed < 500, "超时后等待了" + elapsed + "ms");
+
+        MatchProfile profile = matcher.getMatchProfile();
+        check(profile.isTimedOut(), "应该超时 " + profile);
+        check(TimeUnit.NANOSECONDS.toMillis(profile.getPrepareNanos() + profile.getQueryNanos()) >= 100, "耗时不对 " + profile);
+        check(profile.getTotalTasks() == 2 && profile.getCompletedTasks() == 1, "任务数不对 " + profile);
+    }
+
+    /**
+     * 超时后用已经完成的批次的结果匹配
+     */
+    private static void testTimeoutPartialResult() {
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 20), slowBatch(0)).setMaxBatchQuerySize(10)
+                                                                                                              .setQueryTimeout(100)
+                                                                                                              .setPartialResultOnTimeout(true)
+                                                                                                              .match();
+        Map<Long, Long> relations = matcher.getOneToOneRelations();
+        check(relations.keySet().equals(ids(10, 20).stream().collect(Collectors.toSet())), "部分结果不对 " + relations.keySet());
+        MatchProfile profile = matcher.getMatchProfile();
+        check(profile.isTimedOut(), "应该超时 " + profile);
+        check(profile.getTotalTasks() == 2 && profile.getCompletedTasks() == 1, "任务数不对 " + profile);
+    }
+
+    /**
+     * 查询失败（不是超时）时也记录耗时
+     */
+    private static void testQueryFailure() {
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 10), ids -> {
+            throw new IllegalStateException("query failed");
+        }).setQueryTimeout(1000);
+        try {
+            matcher.match();
+            throw new AssertionError("应该失败");
+        } catch (RuntimeException e) {
+            check(!e.getMessage().contains("timeout"), "不应该超时 " + e);
+        }
+        MatchProfile profile = matcher.getMatchProfile();
+        check(!profile.isTimedOut(), "不应该超时 " + profile);
+        check(profile.getTotalTasks() == 1 && profile.getCompletedTasks() == 0, "任务数不对 " + profile);
+
+        // 修改参数后需要重新匹配
+        matcher.setQueryTimeout(500);
+        try {
+            matcher.getMatchProfile();
+            throw new AssertionError("修改参数后应该失败");
+        } catch (RuntimeException ignored) {
+        }
+    }
+
+    /**
+     * 串行查询时超时后不再查询后面的批次
+     */
+    private static void testSerialBatchesStopAfterTimeout() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        Function<List<Long>, List<Long>> query = ids -> {
+            batches.incrementAndGet();
+            sleep(300);
+            return ids;
+        };
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 30), query).setMaxBatchQuerySize(10)
+                                                                                                       .setParallelExecuteQuery(false)
+                                                                                                       .setQueryTimeout(100);
+        try {
+            matcher.match();
+            throw new AssertionError("应该超时");
+        } catch (RuntimeException ignored) {
+        }
+        sleep(500);
+        check(batches.get() == 1, "超时后仍然查询了" + batches + "批");
+    }
+
+    private static ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher(List<Long> ids, Function<List<Long>, List<Long>> query) {
+        return new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(query)
+                .setQueryExecutor(EXECUTOR)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor();
+    }
+
+    /**
+     * 包含某个标识的批次很慢 其他批次立即返回
+     * @param slowIdentifier 慢的批次包含的标识
+     * @return 查询方法
+     */
+    private static Function<List<Long>, List<Long>> slowBatch(long slowIdentifier) {
+        return ids -> {
+            if (ids.contains(slowIdentifier)) {
+                sleep(1000);
+            }
+            return ids;
+        };
+    }
+
+}
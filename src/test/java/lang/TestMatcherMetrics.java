@@ -0,0 +1,128 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.LocalMatcherCache;
+import com.mogudiandian.util.orm.MatcherMetrics;
+import com.mogudiandian.util.orm.MicrometerMatcherMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试关系匹配器的指标采集
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestMatcherMetrics {
+
+    public static void main(String[] args) {
+        try {
+            testMicrometerMetrics();
+            testMatchFailure();
+            testDefaultMetrics();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 批次、重试、缓存、匹配和未匹配比例
+     */
+    private static void testMicrometerMetrics() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MatcherMetrics metrics = new MicrometerMatcherMetrics(registry, false);
+        LocalMatcherCache cache = new LocalMatcherCache();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 20))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    // 第一次查询失败 重试后成功
+                    if (failed.compareAndSet(false, true)) {
+                        throw new IllegalStateException("query failed");
+                    }
+                    // 4的倍数查不到
+                    return ids.stream().filter(id -> id % 4 != 0).collect(Collectors.toList());
+                })
+                .setQueryExceptionRetryTimes(1)
+                .setQueryExceptionRetryInterval(1)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setUseCache(true)
+                .setCacheKeyName("metrics")
+                .setCache(cache)
+                .setMetrics(metrics)
+                .match();
+        check(matcher.getOneToOneRelations().size() == 15, "匹配的数量不对 " + matcher.getOneToOneRelations().size());
+
+        check(registry.get("orm.matcher.batch").tags("name", "metrics", "result", "success").timer().count() == 1, "成功的批次数不对");
+        check(registry.get("orm.matcher.batch").tags("name", "metrics", "result", "failure").timer().count() == 1, "失败的批次数不对");
+        check(registry.get("orm.matcher.batch.size").tag("name", "metrics").summary().totalAmount() == 40, "批次的标识数量不对");
+        check(registry.get("orm.matcher.retry").tag("name", "metrics").counter().count() == 1, "重试次数不对");
+        check(registry.get("orm.matcher.cache").tags("name", "metrics", "result", "miss").counter().count() == 20, "未命中缓存的数量不对");
+        check(registry.get("orm.matcher.match").tags("name", "metrics", "result", "success").timer().count() == 1, "匹配次数不对");
+        check(registry.get("orm.matcher.unmatched.ratio").tag("name", "metrics").summary().mean() == 0.25, "未匹配的比例不对");
+
+        // 第二次匹配已经查到的都命中缓存
+        matcher.match();
+        check(registry.get("orm.matcher.cache").tags("name", "metrics", "result", "hit").counter().count() == 15, "命中缓存的数量不对");
+        check(registry.get("orm.matcher.match").tags("name", "metrics", "result", "success").timer().count() == 2, "匹配次数不对");
+    }
+
+    /**
+     * 查询失败的匹配 没有缓存名称时使用unnamed标签
+     */
+    private static void testMatchFailure() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 10))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    throw new IllegalStateException("query failed");
+                })
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setMetrics(new MicrometerMatcherMetrics(registry));
+        expectFailure(RuntimeException.class, matcher::match, "查询失败");
+
+        check(registry.get("orm.matcher.match").tags("name", "unnamed", "result", "failure").timer().count() == 1, "失败的匹配次数不对");
+        check(registry.get("orm.matcher.match").tags("name", "unnamed", "result", "success").timer().count() == 0, "失败的匹配不应该算成功");
+    }
+
+    /**
+     * 没有单独设置的匹配器使用默认的指标采集
+     */
+    private static void testDefaultMetrics() {
+        check(ObjectRelationMatcher.getDefaultMetrics() == MatcherMetrics.NOOP, "默认不采集指标");
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ObjectRelationMatcher.setDefaultMetrics(new MicrometerMatcherMetrics(registry));
+        try {
+            new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                    .setElements(ids(0, 20))
+                    .setElementIdentifierExtractor(Function.identity())
+                    .setIdentifierCollectorType(List.class)
+                    .setBatchQueryMethod(ids -> ids)
+                    .setMaxBatchQuerySize(5)
+                    .setParallelExecuteQuery(true)
+                    .setCacheKeyName("default")
+                    .setDataKeyGenerator(Function.identity())
+                    .setElementToKeyMappingByIdentifierExtractor()
+                    .match();
+        } finally {
+            ObjectRelationMatcher.setDefaultMetrics(MatcherMetrics.NOOP);
+        }
+        check(registry.get("orm.matcher.batch").tags("name", "default", "result", "success").timer().count() == 4, "批次数不对");
+        check(registry.get("orm.matcher.queue.wait").tag("name", "default").timer().count() == 4, "并发查询应该记录排队时间");
+    }
+
+}
@@ -0,0 +1,69 @@
+package lang;
+
+import com.mogudiandian.util.compressor.CompressorFactory;
+import com.mogudiandian.util.compressor.PureJavaSnappyCompressor;
+import com.mogudiandian.util.compressor.PureJavaZstdCompressor;
+import com.mogudiandian.util.compressor.SnappyCompressor;
+import com.mogudiandian.util.compressor.StreamingCompressor;
+import com.mogudiandian.util.compressor.ZstdCompressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试纯Java实现和native实现的数据格式相同 可以互相解压
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestPureJavaCompressor {
+
+    private static final int[] SIZES = {0, 1, 1000, 65536, 1_000_000};
+
+    public static void main(String[] args) throws IOException {
+        testCompatible(new PureJavaZstdCompressor(), new ZstdCompressor(), "zstd");
+        testCompatible(new PureJavaSnappyCompressor(), new SnappyCompressor(), "snappy");
+        testNativeLevels();
+        testFactory();
+    }
+
+    /**
+     * byte[]和流分别互相解压
+     */
+    private static void testCompatible(StreamingCompressor pureJava, StreamingCompressor nativeCompressor, String name) throws IOException {
+        for (int size : SIZES) {
+            for (byte[] data : new byte[][]{text(size), random(size)}) {
+                String message = name + " size=" + size;
+                check(Arrays.equals(nativeCompressor.decompress(pureJava.compress(data)), data), message + " native解压纯Java压缩的数据失败");
+                check(Arrays.equals(pureJava.decompress(nativeCompressor.compress(data)), data), message + " 纯Java解压native压缩的数据失败");
+                check(Arrays.equals(readStream(nativeCompressor, writeStream(pureJava, data)), data), message + " native流式解压纯Java流式压缩的数据失败");
+                check(Arrays.equals(readStream(pureJava, writeStream(nativeCompressor, data)), data), message + " 纯Java流式解压native流式压缩的数据失败");
+            }
+        }
+    }
+
+    /**
+     * 纯Java实现可以解压native任意级别压缩的zstd数据 包括没有记录原始长度的流式压缩的数据
+     */
+    private static void testNativeLevels() throws IOException {
+        byte[] data = text(300_000);
+        PureJavaZstdCompressor pureJava = new PureJavaZstdCompressor();
+        for (int level : new int[]{-5, 1, 3, 19}) {
+            check(Arrays.equals(pureJava.decompress(new ZstdCompressor(level).compress(data)), data), "解压native级别" + level + "压缩的数据失败");
+        }
+        check(Arrays.equals(pureJava.decompress(writeStream(new ZstdCompressor(), data)), data), "解压native流式压缩的数据失败");
+        check(pureJava.decompress(new byte[0]).length == 0 && readStream(pureJava, new byte[0]).length == 0, "空的数据应该解压为空");
+    }
+
+    /**
+     * native库可以加载时使用native实现
+     */
+    private static void testFactory() {
+        check(CompressorFactory.isNativeZstdAvailable() && CompressorFactory.isNativeSnappyAvailable(), "测试环境应该可以加载native库");
+        check(CompressorFactory.zstd() instanceof ZstdCompressor, "应该使用native的zstd");
+        check(CompressorFactory.snappy() instanceof SnappyCompressor, "应该使用native的snappy");
+    }
+
+}
@@ -0,0 +1,246 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试合并查询 多个匹配器同时查询相同的标识时只查询一次
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestQueryCoalescer {
+
+    private static final int MATCHERS = 8;
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testOneQueryPerIdentifier();
+            testTimedOutAttachedMatcher();
+            testTimedOutOwnerMatcher();
+            testTimedOutOwnerMatcherWithSerialBatches();
+            testRetryAndHedge();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 多个匹配器并发查询有重叠的标识 每个标识只查询一次
+     */
+    private static void testOneQueryPerIdentifier() throws Exception {
+        Map<Long, AtomicInteger> calls = new ConcurrentHashMap<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<List<Long>, List<Article>> query = ids -> {
+            ids.forEach(id -> calls.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet());
+            await(release);
+            return articles(ids);
+        };
+
+        // 每个匹配器查询[i, i + 10) 在不同的线程中同时发起
+        List<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> matchers = new ArrayList<>();
+        for (int i = 0; i < MATCHERS; i++) {
+            matchers.add(matcher("coalesce-once", ids(i, i + 10), query));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>>>> started = new ArrayList<>();
+        for (ObjectRelationMatcher<Long, Long, List<Long>, Article, Long> matcher : matchers) {
+            started.add(EXECUTOR.submit(() -> {
+                start.await();
+                return matcher.matchAsync();
+            }));
+        }
+        start.countDown();
+        List<CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>>> futures = new ArrayList<>();
+        for (Future<CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>>> future : started) {
+            futures.add(future.get(5, TimeUnit.SECONDS));
+        }
+        // 所有匹配器都已经发起查询后再返回结果
+        release.countDown();
+
+        for (int i = 0; i < MATCHERS; i++) {
+            checkMatched(futures.get(i).get(5, TimeUnit.SECONDS), ids(i, i + 10));
+        }
+        check(calls.keySet().equals(new HashSet<>(ids(0, MATCHERS + 9))), "查询的标识不对 " + calls.keySet());
+        calls.forEach((id, count) -> check(count.get() == 1, id + "查询了" + count + "次"));
+    }
+
+    /**
+     * 挂载在其他匹配器的查询上的匹配器超时 不影响进行中的查询
+     */
+    private static void testTimedOutAttachedMatcher() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<List<Long>, List<Article>> query = ids -> {
+            calls.incrementAndGet();
+            await(release);
+            return articles(ids);
+        };
+
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> owner = matcher("coalesce-attached-timeout", ids(0, 10), query).matchAsync();
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> attached = matcher("coalesce-attached-timeout", ids(0, 10), query).setQueryTimeout(100)
+                                                                                                                                                    .matchAsync();
+        expectTimeout(attached);
+        release.countDown();
+
+        checkMatched(owner.get(5, TimeUnit.SECONDS), ids(0, 10));
+        check(calls.get() == 1, "查询了" + calls + "次");
+    }
+
+    /**
+     * 发起查询的匹配器超时 不取消其他匹配器还在等待的查询
+     */
+    private static void testTimedOutOwnerMatcher() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<List<Long>, List<Article>> query = ids -> {
+            calls.incrementAndGet();
+            await(release);
+            return articles(ids);
+        };
+
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> owner = matcher("coalesce-owner-timeout", ids(0, 10), query).setQueryTimeout(100)
+                                                                                                                                                 .setPartialResultOnTimeout(true)
+                                                                                                                                                 .matchAsync();
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> attached = matcher("coalesce-owner-timeout", ids(0, 10), query).matchAsync();
+
+        // 超时后用部分结果（空）匹配
+        ObjectRelationMatcher<Long, Long, List<Long>, Article, Long> timedOut = owner.get(5, TimeUnit.SECONDS);
+        check(timedOut.getMatchProfile().isTimedOut(), "应该超时");
+        check(timedOut.getOneToOneRelations().isEmpty(), "超时后不应该有结果");
+        release.countDown();
+
+        checkMatched(attached.get(5, TimeUnit.SECONDS), ids(0, 10));
+        check(calls.get() == 1, "查询了" + calls + "次");
+    }
+
+    /**
+     * 发起查询的匹配器串行分批查询时超时 后面的批次仍然要查询 其他匹配器还在等待
+     */
+    private static void testTimedOutOwnerMatcherWithSerialBatches() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Function<List<Long>, List<Article>> query = ids -> {
+            calls.incrementAndGet();
+            await(release);
+            return articles(ids);
+        };
+
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> owner = matcher("coalesce-serial-timeout", ids(0, 10), query).setMaxBatchQuerySize(5)
+                                                                                                                                                  .setParallelExecuteQuery(false)
+                                                                                                                                                  .setQueryTimeout(100)
+                                                                                                                                                  .matchAsync();
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> attached = matcher("coalesce-serial-timeout", ids(0, 10), query).matchAsync();
+
+        expectTimeout(owner);
+        release.countDown();
+
+        checkMatched(attached.get(5, TimeUnit.SECONDS), ids(0, 10));
+        check(calls.get() == 2, "查询了" + calls + "次");
+    }
+
+    /**
+     * 重试和对冲请求时 每一批只完成一次 挂载的匹配器拿到的结果没有重复
+     */
+    private static void testRetryAndHedge() throws Exception {
+        // 每一批的第一次查询失败 重试的查询很慢 对冲的查询立即返回
+        Map<Long, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        Function<List<Long>, List<Article>> query = ids -> {
+            int attempt = attempts.computeIfAbsent(ids.get(0), k -> new AtomicInteger()).incrementAndGet();
+            if (attempt == 1) {
+                throw new IllegalStateException("first attempt");
+            }
+            if (attempt == 2) {
+                sleep(300);
+            }
+            return articles(ids);
+        };
+        AtomicInteger successes = new AtomicInteger();
+        AtomicInteger exceptions = new AtomicInteger();
+        ObjectRelationMatcher.ObjectRelationMatcherEvent<Long, Long, List<Long>, Article, Long> listener = new ObjectRelationMatcher.ObjectRelationMatcherEvent<Long, Long, List<Long>, Article, Long>() {
+            @Override
+            public void onQuerySuccess(List<Long> identifierCollection, int count, Collection<Article> dataCollection) {
+                successes.incrementAndGet();
+            }
+
+            @Override
+            public void onQueryException(List<Long> identifierCollection, int count, Exception e) {
+                exceptions.incrementAndGet();
+            }
+        };
+
+        List<CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < MATCHERS; i++) {
+            futures.add(matcher("coalesce-retry-hedge", ids(0, 10), query).setMaxBatchQuerySize(5)
+                                                                          .setOneToMany(true)
+                                                                          .setQueryExceptionRetryTimes(2)
+                                                                          .setQueryExceptionRetryInterval(20)
+                                                                          .setHedgeDelay(50)
+                                                                          .setEventListener(listener)
+                                                                          .matchAsync());
+        }
+        for (CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>> future : futures) {
+            Map<Long, List<Article>> relations = future.get(5, TimeUnit.SECONDS).getOneToManyRelations();
+            check(relations.keySet().equals(new HashSet<>(ids(0, 10))), "匹配的元素不对 " + relations.keySet());
+            // 同一批的结果被加入两次时 一对多的关系中会有重复的数据
+            relations.forEach((id, list) -> check(list.size() == 1 && list.get(0).id == id, id + "匹配的结果不对 " + list));
+        }
+        // 等待被对冲请求抢先的慢查询返回 返回的结果不能再被处理
+        sleep(500);
+
+        check(attempts.keySet().equals(new HashSet<>(Arrays.asList(0L, 5L))), "查询的批次不对 " + attempts.keySet());
+        attempts.forEach((id, count) -> check(count.get() == 3, "批次" + id + "查询了" + count + "次"));
+        check(successes.get() == 2, "成功了" + successes + "次");
+        check(exceptions.get() == 2, "失败了" + exceptions + "次");
+    }
+
+    private static ObjectRelationMatcher<Long, Long, List<Long>, Article, Long> matcher(String name, List<Long> ids, Function<List<Long>, List<Article>> query) {
+        return new ObjectRelationMatcher<Long, Long, List<Long>, Article, Long>()
+                .setElements(ids)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(query)
+                .setQueryExecutor(EXECUTOR)
+                .setCoalesceQuery(true)
+                .setCacheKeyName(name)
+                .setDataKeyGenerator(article -> article.id)
+                .setElementToKeyMappingByIdentifierExtractor();
+    }
+
+    private static void checkMatched(ObjectRelationMatcher<Long, Long, List<Long>, Article, Long> matcher, List<Long> ids) {
+        Map<Long, Article> relations = matcher.getOneToOneRelations();
+        check(relations.keySet().equals(new HashSet<>(ids)), "匹配的元素不对 " + relations.keySet());
+        relations.forEach((id, article) -> check(article.id == id, id + "匹配的结果不对 " + article.id));
+    }
+
+    private static void expectTimeout(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            check(e.getCause().getCause() instanceof TimeoutException, "应该超时 " + e.getCause());
+            return;
+        }
+        throw new AssertionError("应该超时");
+    }
+
+    private static List<Article> articles(List<Long> ids) {
+        return ids.stream().map(Article::new).collect(Collectors.toList());
+    }
+
+    private static class Article {
+
+        private final long id;
+
+        private Article(long id) {
+            this.id = id;
+        }
+    }
+
+}
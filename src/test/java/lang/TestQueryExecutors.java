@@ -0,0 +1,150 @@
+package lang;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.QueryExecutors;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试匹配器选择执行查询的线程池 以及调度器向线程池交出任务
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestQueryExecutors {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testExecutorPrecedence();
+            testVirtualThreads();
+            testHandoff();
+            testHandoffOrRequeue();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 单独设置的线程池 -> 按缓存名称注册的线程池 -> 默认的线程池
+     */
+    private static void testExecutorPrecedence() {
+        ExecutorService custom = QueryExecutors.newQueryPool("custom", 2, 16);
+        ExecutorService registered = QueryExecutors.newQueryPool("registered", 2, 16);
+        QueryExecutors.register("executors", registered);
+        try {
+            check(QueryExecutors.registered("executors") == registered, "注册的线程池不对");
+            checkQueryThreads(matcher().setQueryExecutor(custom), "orm-custom-query-pool-");
+            checkQueryThreads(matcher(), "orm-registered-query-pool-");
+        } finally {
+            check(QueryExecutors.unregister("executors") == registered, "取消注册返回的线程池不对");
+            custom.shutdown();
+            registered.shutdown();
+        }
+        check(QueryExecutors.registered("executors") == null, "取消注册后不应该有线程池");
+        checkQueryThreads(matcher(), "orm-parallel-query-pool-");
+    }
+
+    /**
+     * 开启虚拟线程后 JDK21及以上使用虚拟线程 以下使用默认的线程池
+     */
+    private static void testVirtualThreads() {
+        Set<String> threads = queryThreads(matcher().setUseVirtualThreads(true));
+        if (QueryExecutors.isVirtualThreadSupported()) {
+            check(threads.stream().noneMatch(name -> name.startsWith("orm-")), "应该在虚拟线程中查询 " + threads);
+        } else {
+            check(QueryExecutors.virtualThreadExecutor() == null, "不支持时应该返回null");
+            check(threads.stream().allMatch(name -> name.startsWith("orm-parallel-query-pool-")), "不支持时应该使用默认的线程池 " + threads);
+        }
+    }
+
+    /**
+     * 线程池拒绝或者在调用方线程中执行时 任务都没有执行
+     */
+    private static void testHandoff() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        check(!QueryExecutors.handoff(MoreExecutors.directExecutor(), runs::incrementAndGet), "直接执行的线程池应该拒绝");
+        check(runs.get() == 0, "拒绝的任务不应该执行");
+
+        ThreadPoolExecutor idle = callerRunsPool();
+        try {
+            CountDownLatch ran = new CountDownLatch(1);
+            check(QueryExecutors.handoff(idle, ran::countDown), "空闲的线程池应该接受");
+            check(ran.await(5, TimeUnit.SECONDS), "接受的任务应该执行");
+        } finally {
+            idle.shutdown();
+        }
+
+        // 新的线程池第一次execute时直接创建线程执行 不经过队列 所以不会在调用方线程中执行而卡住
+        ThreadPoolExecutor pool = callerRunsPool();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            await(started);
+            check(!QueryExecutors.handoff(pool, runs::incrementAndGet), "饱和时应该视为拒绝");
+            check(runs.get() == 0, "饱和时任务不应该在调用方线程中执行");
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+
+        ThreadPoolExecutor aborting = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.AbortPolicy());
+        aborting.shutdown();
+        check(!QueryExecutors.handoff(aborting, runs::incrementAndGet), "关闭的线程池应该拒绝");
+        check(runs.get() == 0, "拒绝的任务不应该执行");
+    }
+
+    /**
+     * 被拒绝的任务交给默认的线程池执行
+     */
+    private static void testHandoffOrRequeue() throws Exception {
+        CompletableFuture<String> thread = new CompletableFuture<>();
+        QueryExecutors.handoffOrRequeue(MoreExecutors.directExecutor(), () -> thread.complete(Thread.currentThread().getName()));
+        check(thread.get(5, TimeUnit.SECONDS).startsWith("orm-parallel-query-pool-"), "应该交给默认的线程池 " + thread.join());
+    }
+
+    /**
+     * 只有一个线程且没有队列 饱和时在调用方线程中执行
+     */
+    private static ThreadPoolExecutor callerRunsPool() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher() {
+        return new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 20))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setMaxBatchQuerySize(5)
+                .setParallelExecuteQuery(true)
+                .setCacheKeyName("executors")
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor();
+    }
+
+    private static void checkQueryThreads(ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher, String prefix) {
+        Set<String> threads = queryThreads(matcher);
+        check(!threads.isEmpty() && threads.stream().allMatch(name -> name.startsWith(prefix)), "查询的线程不对 期望" + prefix + " 实际" + threads);
+    }
+
+    private static Set<String> queryThreads(ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher) {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        matcher.setBatchQueryMethod(ids -> {
+            threads.add(Thread.currentThread().getName());
+            return ids;
+        }).match();
+        check(matcher.getOneToOneRelations().size() == 20, "匹配的数量不对 " + matcher.getOneToOneRelations().size());
+        return threads;
+    }
+
+}
@@ -0,0 +1,152 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.QueryLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试查询限流器 并发数和每秒查询数的限制
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestQueryLimiter {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testCompletedQueriesBehindSlowQuery();
+            testMaxInFlight();
+            testPermitsPerSecond();
+            testCancelWaiting();
+            testMatcherWithLimiter();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 慢查询后面排队的大量查询都是已经完成的 慢查询结束后要全部发起 不能递归调度导致栈溢出
+     */
+    private static void testCompletedQueriesBehindSlowQuery() throws Exception {
+        QueryLimiter limiter = new QueryLimiter(0, 1);
+        CompletableFuture<Integer> slow = new CompletableFuture<>();
+        CompletableFuture<Integer> first = limiter.submit(() -> slow);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            int value = i;
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(value)));
+        }
+        check(limiter.getWaiting() == 20_000, "等待的查询数不对 " + limiter.getWaiting());
+
+        slow.complete(-1);
+        check(first.get(1, TimeUnit.SECONDS) == -1, "第一个查询的结果不对");
+        for (int i = 0; i < results.size(); i++) {
+            check(results.get(i).isDone() && results.get(i).get() == i, "第" + i + "个查询没有完成");
+        }
+        check(limiter.getInFlight() == 0, "进行中的查询数不对 " + limiter.getInFlight());
+        check(limiter.getWaiting() == 0, "等待的查询数不对 " + limiter.getWaiting());
+    }
+
+    /**
+     * 同时进行中的查询不超过限制
+     */
+    private static void testMaxInFlight() throws Exception {
+        QueryLimiter limiter = new QueryLimiter(0, 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            int value = i;
+            results.add(limiter.submit(() -> CompletableFuture.supplyAsync(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(10);
+                running.decrementAndGet();
+                return value;
+            }, EXECUTOR)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            check(results.get(i).get(5, TimeUnit.SECONDS) == i, "第" + i + "个查询的结果不对");
+        }
+        check(maxRunning.get() == 3, "最多同时进行了" + maxRunning + "个查询");
+        check(limiter.getInFlight() == 0, "进行中的查询数不对 " + limiter.getInFlight());
+    }
+
+    /**
+     * 每秒发起的查询数不超过限制 没有令牌的查询等待后发起
+     */
+    private static void testPermitsPerSecond() throws Exception {
+        QueryLimiter limiter = new QueryLimiter(20, 0);
+        long startTime = System.nanoTime();
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(System.nanoTime())));
+        }
+        for (CompletableFuture<Long> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        // 第一个立即发起 后面每个间隔50ms
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(results.get(results.size() - 1).get() - startTime);
+        check(elapsed >= 400, "11个查询只用了" + elapsed + "ms");
+    }
+
+    /**
+     * 等待中被取消的查询不再发起
+     */
+    private static void testCancelWaiting() throws Exception {
+        QueryLimiter limiter = new QueryLimiter(0, 1);
+        CompletableFuture<Integer> slow = new CompletableFuture<>();
+        limiter.submit(() -> slow);
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<Integer> cancelled = limiter.submit(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture(1);
+        });
+        CompletableFuture<Integer> next = limiter.submit(() -> CompletableFuture.completedFuture(2));
+        cancelled.cancel(false);
+        slow.complete(0);
+        check(next.get(1, TimeUnit.SECONDS) == 2, "后面的查询的结果不对");
+        check(started.get() == 0, "被取消的查询发起了");
+    }
+
+    /**
+     * 匹配器分批查询时 每一批都要获取许可
+     */
+    private static void testMatcherWithLimiter() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
+        Function<List<Long>, List<Long>> query = ids -> {
+            batches.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(20);
+            running.decrementAndGet();
+            return ids;
+        };
+        List<Long> ids = LongStream.range(0, 100).boxed().collect(Collectors.toList());
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(query)
+                .setMaxBatchQuerySize(10)
+                .setQueryExecutor(EXECUTOR)
+                .setQueryLimiter(new QueryLimiter(0, 2))
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor();
+        Map<Long, Long> relations = matcher.matchAsync().get(5, TimeUnit.SECONDS).getOneToOneRelations();
+        check(relations.size() == 100, "匹配的数量不对 " + relations.size());
+        check(batches.get() == 10, "查询了" + batches + "批");
+        check(maxRunning.get() <= 2, "最多同时进行了" + maxRunning + "个查询");
+    }
+
+}
@@ -0,0 +1,188 @@
+package lang;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.mogudiandian.util.ObjectRelationMatcher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试分批重试、退避和对冲请求
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestQueryRetry {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testRetryFailedBatchOnly();
+            testExponentialBackoff();
+            testMaxRetryInterval();
+            testRetryExhausted();
+            testHedge();
+            testNoHedgeForFastQuery();
+            testDirectExecutor();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 只有失败的批次重试 已经成功的批次不会重新查询
+     */
+    private static void testRetryFailedBatchOnly() throws Exception {
+        Map<Long, AtomicInteger> calls = new ConcurrentHashMap<>();
+        Function<List<Long>, List<Long>> query = ids -> {
+            int count = calls.computeIfAbsent(ids.get(0), k -> new AtomicInteger()).incrementAndGet();
+            if (ids.get(0) == 20 && count <= 2) {
+                throw new IllegalStateException("batch 20 failed " + count);
+            }
+            return ids;
+        };
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 50), query).setMaxBatchQuerySize(10)
+                                                                                                        .setQueryExceptionRetryTimes(2)
+                                                                                                        .setQueryExceptionRetryInterval(10);
+        checkMatched(matcher.matchAsync().get(5, TimeUnit.SECONDS), 50);
+        calls.forEach((id, count) -> check(count.get() == (id == 20 ? 3 : 1), "批次" + id + "查询了" + count + "次"));
+        check(calls.size() == 5, "查询的批次不对 " + calls.keySet());
+    }
+
+    /**
+     * 重试的间隔按照倍数增长
+     */
+    private static void testExponentialBackoff() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 10), failTimes(calls, 3)).setQueryExceptionRetryTimes(3)
+                                                                                                                      .setQueryExceptionRetryInterval(50)
+                                                                                                                      .setQueryExceptionRetryBackoffMultiplier(2);
+        long startTime = System.nanoTime();
+        checkMatched(matcher.matchAsync().get(5, TimeUnit.SECONDS), 10);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        // 50 + 100 + 200
+        check(elapsed >= 350, "重试只等待了" + elapsed + "ms");
+        check(calls.get() == 4, "查询了" + calls + "次");
+    }
+
+    /**
+     * 重试的间隔不超过最大间隔
+     */
+    private static void testMaxRetryInterval() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 10), failTimes(calls, 3)).setQueryExceptionRetryTimes(3)
+                                                                                                                      .setQueryExceptionRetryInterval(50)
+                                                                                                                      .setQueryExceptionRetryBackoffMultiplier(4)
+                                                                                                                      .setQueryExceptionRetryMaxInterval(60);
+        long startTime = System.nanoTime();
+        checkMatched(matcher.matchAsync().get(5, TimeUnit.SECONDS), 10);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        // 50 + 60 + 60 不限制时是50 + 200 + 800
+        check(elapsed >= 170 && elapsed < 1000, "重试等待了" + elapsed + "ms");
+        check(calls.get() == 4, "查询了" + calls + "次");
+    }
+
+    /**
+     * 超过重试次数后匹配失败
+     */
+    private static void testRetryExhausted() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 10), failTimes(calls, Integer.MAX_VALUE)).setQueryExceptionRetryTimes(2)
+                                                                                                                                      .setQueryExceptionRetryInterval(10);
+        try {
+            matcher.matchAsync().get(5, TimeUnit.SECONDS);
+            throw new AssertionError("应该失败");
+        } catch (ExecutionException e) {
+            check(e.getCause() instanceof RuntimeException, "异常不对 " + e.getCause());
+        }
+        check(calls.get() == 3, "查询了" + calls + "次");
+    }
+
+    /**
+     * 查询超过对冲等待时间还没有返回时再发起一次 取先返回的结果
+     */
+    private static void testHedge() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Function<List<Long>, List<Long>> query = ids -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(1000);
+            }
+            return ids;
+        };
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 10), query).setHedgeDelay(50);
+        long startTime = System.nanoTime();
+        checkMatched(matcher.matchAsync().get(5, TimeUnit.SECONDS), 10);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        check(elapsed < 500, "对冲后仍然用了" + elapsed + "ms");
+        check(calls.get() == 2, "查询了" + calls + "次");
+    }
+
+    /**
+     * 查询在对冲等待时间内返回时不发起对冲请求
+     */
+    private static void testNoHedgeForFastQuery() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Function<List<Long>, List<Long>> query = ids -> {
+            calls.incrementAndGet();
+            return ids;
+        };
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 10), query).setHedgeDelay(200);
+        checkMatched(matcher.matchAsync().get(5, TimeUnit.SECONDS), 10);
+        sleep(300);
+        check(calls.get() == 1, "查询了" + calls + "次");
+    }
+
+    /**
+     * 直接在调用方线程中执行的线程池 重试不能一直被当作线程池饱和而等待
+     */
+    private static void testDirectExecutor() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = matcher(ids(0, 10), failTimes(calls, 1)).setQueryExecutor(MoreExecutors.directExecutor())
+                                                                                                                      .setQueryExceptionRetryTimes(2)
+                                                                                                                      .setQueryExceptionRetryInterval(10);
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>> future = CompletableFuture.supplyAsync(matcher::match, EXECUTOR);
+        checkMatched(future.get(2, TimeUnit.SECONDS), 10);
+        check(calls.get() == 2, "查询了" + calls + "次");
+
+        calls.set(0);
+        checkMatched(matcher.matchAsync().get(2, TimeUnit.SECONDS), 10);
+        check(calls.get() == 2, "查询了" + calls + "次");
+    }
+
+    private static ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher(List<Long> ids, Function<List<Long>, List<Long>> query) {
+        return new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(query)
+                .setQueryExecutor(EXECUTOR)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor();
+    }
+
+    /**
+     * 前几次失败的查询方法
+     * @param calls 查询次数
+     * @param failures 失败的次数
+     * @return 查询方法
+     */
+    private static Function<List<Long>, List<Long>> failTimes(AtomicInteger calls, int failures) {
+        return ids -> {
+            if (calls.incrementAndGet() <= failures) {
+                throw new IllegalStateException("failed " + calls);
+            }
+            return ids;
+        };
+    }
+
+    private static void checkMatched(ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher, int size) {
+        Map<Long, Long> relations = matcher.getOneToOneRelations();
+        check(relations.size() == size, "匹配的数量不对 " + relations.size());
+        relations.forEach((id, data) -> check(id.equals(data), id + "匹配的结果不对 " + data));
+    }
+
+}
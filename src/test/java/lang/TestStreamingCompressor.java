@@ -0,0 +1,113 @@
+package lang;
+
+import com.mogudiandian.util.compressor.GzipCompressor;
+import com.mogudiandian.util.compressor.Lz4Compressor;
+import com.mogudiandian.util.compressor.PureJavaSnappyCompressor;
+import com.mogudiandian.util.compressor.PureJavaZstdCompressor;
+import com.mogudiandian.util.compressor.SnappyCompressor;
+import com.mogudiandian.util.compressor.StreamingCompressor;
+import com.mogudiandian.util.compressor.ZstdCompressor;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试流式压缩 gzip、zstd和lz4的frame格式的流和byte[]的压缩互通 snappy的流是framing格式 lz4的block格式的流是frame格式 只能流式解压
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestStreamingCompressor {
+
+    private static final int[] SIZES = {0, 1, 1000, 65536, 1_000_000};
+
+    public static void main(String[] args) throws IOException {
+        List<StreamingCompressor> compressors = Arrays.asList(new GzipCompressor(), new SnappyCompressor(), new ZstdCompressor(),
+                                                              new PureJavaSnappyCompressor(), new PureJavaZstdCompressor(),
+                                                              new Lz4Compressor(), new Lz4Compressor(9, Lz4Compressor.Format.FRAME));
+        for (StreamingCompressor compressor : compressors) {
+            String name = name(compressor);
+            testWrapRoundTrip(compressor, name);
+            testCopyDoesNotClose(compressor, name);
+            testTruncated(compressor, name);
+        }
+    }
+
+    /**
+     * 分成不规则的块写入和读取 格式相同时 流式解压byte[]压缩的数据 byte[]解压流式压缩的数据
+     */
+    private static void testWrapRoundTrip(StreamingCompressor compressor, String name) throws IOException {
+        boolean sameFormat = !(compressor instanceof SnappyCompressor || compressor instanceof PureJavaSnappyCompressor)
+                && !(compressor instanceof Lz4Compressor && ((Lz4Compressor) compressor).getFormat() == Lz4Compressor.Format.BLOCK);
+        for (int size : SIZES) {
+            for (byte[] data : new byte[][]{text(size), random(size)}) {
+                byte[] compressed = writeStream(compressor, data);
+                check(Arrays.equals(readStream(compressor, compressed), data), name + "流式解压失败 size=" + size);
+                if (sameFormat) {
+                    check(Arrays.equals(compressor.decompress(compressed), data), name + "解压流式压缩的数据失败 size=" + size);
+                    check(Arrays.equals(readStream(compressor, compressor.compress(data)), data), name + "流式解压byte[]压缩的数据失败 size=" + size);
+                }
+            }
+        }
+    }
+
+    /**
+     * compress(InputStream, OutputStream)和decompress(InputStream, OutputStream)不关闭调用方的流
+     */
+    private static void testCopyDoesNotClose(StreamingCompressor compressor, String name) throws IOException {
+        byte[] data = text(200_000);
+        CloseTrackingOutputStream compressed = new CloseTrackingOutputStream();
+        CloseTrackingInputStream source = new CloseTrackingInputStream(data);
+        check(compressor.compress(source, compressed) == data.length, name + "压缩返回的字节数不对");
+        check(!compressed.closed && !source.closed, name + "压缩不应该关闭调用方的流");
+
+        CloseTrackingOutputStream decompressed = new CloseTrackingOutputStream();
+        CloseTrackingInputStream compressedSource = new CloseTrackingInputStream(compressed.toByteArray());
+        check(compressor.decompress(compressedSource, decompressed) == data.length, name + "解压返回的字节数不对");
+        check(!decompressed.closed && !compressedSource.closed, name + "解压不应该关闭调用方的流");
+        check(Arrays.equals(decompressed.toByteArray(), data), name + "解压的结果不对");
+
+        // 关闭包装的流时关闭被包装的流
+        CloseTrackingOutputStream wrapped = new CloseTrackingOutputStream();
+        compressor.wrap(wrapped).close();
+        check(wrapped.closed, name + "关闭压缩流时应该关闭被包装的流");
+    }
+
+    /**
+     * 截断的压缩数据读取时失败
+     */
+    private static void testTruncated(StreamingCompressor compressor, String name) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(random(100_000)), compressed);
+        byte[] truncated = Arrays.copyOf(compressed.toByteArray(), compressed.size() / 2);
+        expectFailure(IOException.class, () -> readStream(compressor, truncated), name + "截断的数据");
+    }
+
+    private static final class CloseTrackingOutputStream extends ByteArrayOutputStream {
+
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static final class CloseTrackingInputStream extends ByteArrayInputStream {
+
+        private boolean closed;
+
+        private CloseTrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
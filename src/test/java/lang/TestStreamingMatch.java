@@ -0,0 +1,133 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试流式匹配 每一批查询返回后立即处理已经匹配的元素
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestStreamingMatch {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testProcessBeforeAllBatchesReturn();
+            testStreamingOneToMany();
+            testInvalidConfiguration();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 慢的批次返回前 其他批次已经匹配的元素已经处理了 未匹配的在所有查询结束后处理 处理器不会并发调用
+     */
+    private static void testProcessBeforeAllBatchesReturn() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Set<Long> matched = ConcurrentHashMap.newKeySet();
+        Set<Long> unmatched = ConcurrentHashMap.newKeySet();
+        AtomicInteger inProcessor = new AtomicInteger();
+        AtomicInteger maxInProcessor = new AtomicInteger();
+
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>> future = new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 30))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    if (ids.contains(20L)) {
+                        await(release);
+                    }
+                    // 3的倍数查不到
+                    return ids.stream().filter(id -> id % 3 != 0).collect(Collectors.toList());
+                })
+                .setMaxBatchQuerySize(10)
+                .setParallelExecuteQuery(true)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setStreamingProcessOneToOne((id, data) -> {
+                    maxInProcessor.accumulateAndGet(inProcessor.incrementAndGet(), Math::max);
+                    check(id.equals(data), id + "匹配的结果不对 " + data);
+                    matched.add(id);
+                    sleep(1);
+                    inProcessor.decrementAndGet();
+                }, unmatched::add)
+                .matchAsync();
+
+        Set<Long> fastMatched = ids(0, 20).stream().filter(id -> id % 3 != 0).collect(Collectors.toSet());
+        waitUntil(() -> matched.equals(fastMatched), "快的批次返回后应该立即处理 " + matched);
+        check(unmatched.isEmpty(), "所有查询结束前不应该处理未匹配的 " + unmatched);
+        check(!future.isDone(), "慢的批次返回前不应该完成匹配");
+
+        release.countDown();
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = future.get(5, TimeUnit.SECONDS);
+        check(matched.size() == 20, "已匹配的数量不对 " + matched);
+        check(unmatched.equals(ids(0, 30).stream().filter(id -> id % 3 == 0).collect(Collectors.toSet())), "未匹配的不对 " + unmatched);
+        check(maxInProcessor.get() == 1, "处理器不应该并发调用");
+        check(matcher.getOneToOneRelations(true).size() == 30, "流式匹配后也可以获取全部关系");
+    }
+
+    /**
+     * 一对多的流式处理器收到每个元素全部的数据
+     */
+    private static void testStreamingOneToMany() {
+        Map<Long, List<String>> processed = new ConcurrentHashMap<>();
+        new ObjectRelationMatcher<Long, Long, List<Long>, String, Long>()
+                .setElements(ids(0, 20))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> ids.stream()
+                                               .flatMap(id -> Arrays.asList(id + ":a", id + ":b").stream())
+                                               .collect(Collectors.toList()))
+                .setMaxBatchQuerySize(5)
+                .setParallelExecuteQuery(true)
+                .setDataKeyGenerator(data -> Long.parseLong(data.substring(0, data.indexOf(':'))))
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setOneToMany(true)
+                .setStreamingProcessOneToMany(processed::put)
+                .match();
+
+        check(processed.size() == 20, "处理的数量不对 " + processed.size());
+        processed.forEach((id, list) -> check(list.equals(Arrays.asList(id + ":a", id + ":b")), id + "的数据不对 " + list));
+    }
+
+    /**
+     * 流式处理器和关系类型不一致 或者和合并查询一起使用时不能匹配
+     */
+    private static void testInvalidConfiguration() {
+        expectFailure(RuntimeException.class, () -> new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 5))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> ids)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setOneToMany(true)
+                .setStreamingProcessOneToOne((id, data) -> {})
+                .match(), "一对多使用一对一的流式处理器");
+
+        expectFailure(RuntimeException.class, () -> new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(ids(0, 5))
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> ids)
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setCacheKeyName("streaming")
+                .setCoalesceQuery(true)
+                .setStreamingMatch(true)
+                .match(), "合并查询时使用流式匹配");
+    }
+
+}
@@ -0,0 +1,194 @@
+package lang;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mogudiandian.util.compressor.Compressor;
+import com.mogudiandian.util.compressor.Lz4Compressor;
+import com.mogudiandian.util.compressor.StreamingCompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * 测试类共用的方法 测试类都是直接运行的main方法 检查不通过时抛出AssertionError
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+final class TestSupport {
+
+    /**
+     * 测试中执行查询的线程池 都是守护线程 不需要关闭
+     */
+    static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("test-query-pool-%d")
+                                                                                                    .setDaemon(true)
+                                                                                                    .build());
+
+    private TestSupport() {}
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * 执行应该失败的操作
+     * @param type 期望的异常类型
+     * @param action 操作
+     * @param message 没有失败时的信息
+     * @param <T> 异常的类型
+     * @return 抛出的异常
+     */
+    static <T extends Throwable> T expectFailure(Class<T> type, Action action, String message) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            check(type.isInstance(e), message + " 异常不对 " + e);
+            return type.cast(e);
+        }
+        throw new AssertionError("应该失败 " + message);
+    }
+
+    /**
+     * 等待条件成立 最多等待5秒
+     * @param condition 条件
+     * @param message 超时的信息
+     */
+    static void waitUntil(BooleanSupplier condition, String message) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError(message);
+            }
+            sleep(10);
+        }
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 连续的标识
+     * @param from 开始（包含）
+     * @param to 结束（不包含）
+     * @return 标识列表
+     */
+    static List<Long> ids(long from, long to) {
+        return LongStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * 可以压缩的文本数据 相同的大小生成相同的数据
+     * @param size 大小
+     * @return 数据
+     */
+    static byte[] text(int size) {
+        byte[] bytes = new byte[size];
+        byte[] words = "the quick brown fox jumps over the lazy dog 0123456789 ".getBytes(StandardCharsets.US_ASCII);
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = random.nextInt(10) == 0 ? (byte) random.nextInt(128) : words[i % words.length];
+        }
+        return bytes;
+    }
+
+    /**
+     * 不能压缩的随机数据 相同的大小生成相同的数据
+     * @param size 大小
+     * @return 数据
+     */
+    static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(~size).nextBytes(bytes);
+        return bytes;
+    }
+
+    static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 检查信息中使用的压缩器名称 lz4加上格式
+     * @param compressor 压缩器
+     * @return 名称
+     */
+    static String name(Compressor compressor) {
+        if (compressor instanceof Lz4Compressor) {
+            return "Lz4Compressor(" + ((Lz4Compressor) compressor).getFormat() + ")";
+        }
+        return compressor.getClass().getSimpleName();
+    }
+
+    /**
+     * 分成不规则的块写入压缩流
+     * @param compressor 压缩器
+     * @param data 压缩前的数据
+     * @return 流式压缩后的数据
+     */
+    static byte[] writeStream(StreamingCompressor compressor, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = compressor.wrap(compressed)) {
+            for (int i = 0; i < data.length; i += 7777) {
+                out.write(data, i, Math.min(7777, data.length - i));
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * 分成不规则的块读取解压流
+     * @param compressor 压缩器
+     * @param compressed 压缩后的数据
+     * @return 流式解压后的数据
+     */
+    static byte[] readStream(StreamingCompressor compressor, byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = compressor.wrap(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[3333];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 可以抛出受检异常的操作
+     */
+    interface Action {
+
+        void run() throws Exception;
+    }
+
+}
@@ -0,0 +1,186 @@
+package lang;
+
+import com.mogudiandian.util.ObjectRelationMatcher;
+import com.mogudiandian.util.orm.InMemoryRemoteCacheClient;
+import com.mogudiandian.util.orm.LocalMatcherCache;
+import com.mogudiandian.util.orm.MatcherCache;
+import com.mogudiandian.util.orm.RemoteCacheClient;
+import com.mogudiandian.util.orm.TieredMatcherCache;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试本地缓存加远程缓存的两级缓存
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestTieredMatcherCache {
+
+    public static void main(String[] args) throws Exception {
+        try {
+            testNodesShareRemoteCache();
+            testRemoteFailureIsMiss();
+            testClear();
+            testRemoteTtl();
+            testAsyncMatchDoesNotWaitForRemote();
+        } finally {
+            ObjectRelationMatcher.shutdown();
+        }
+    }
+
+    /**
+     * 一个节点查询后写入远程缓存 另一个节点从远程缓存命中并回填本地缓存 远程缓存都是批量访问
+     */
+    private static void testNodesShareRemoteCache() {
+        InMemoryRemoteCacheClient remote = new InMemoryRemoteCacheClient();
+        TieredMatcherCache nodeA = new TieredMatcherCache(new LocalMatcherCache(), remote);
+        LocalMatcherCache localB = new LocalMatcherCache();
+        TieredMatcherCache nodeB = new TieredMatcherCache(localB, remote);
+
+        List<Long> queried = Collections.synchronizedList(new ArrayList<>());
+        match(nodeA, ids(0, 10), queried);
+        check(queried.equals(ids(0, 10)), "第一个节点应该查询全部 " + queried);
+        check(remote.size() == 10, "应该写入远程缓存 " + remote.size());
+        check(remote.getRequestCount() == 2, "应该批量读取和写入远程缓存 " + remote.getRequestCount());
+
+        queried.clear();
+        match(nodeB, ids(0, 10), queried);
+        check(queried.isEmpty(), "第二个节点应该命中远程缓存 " + queried);
+        check(nodeB.getRemoteHitCount() == 10 && nodeB.getRemoteMissCount() == 0, "远程缓存的命中数不对");
+        check(localB.size("tiered") == 10, "远程缓存命中的应该回填本地缓存 " + localB.size("tiered"));
+
+        long requestCount = remote.getRequestCount();
+        match(nodeB, ids(0, 10), queried);
+        check(remote.getRequestCount() == requestCount, "本地缓存全部命中时不应该访问远程缓存");
+        check(nodeB.get("tiered", 3L).equals(3L), "单个读取的结果不对");
+    }
+
+    /**
+     * 远程缓存访问失败时当作未命中 不影响匹配
+     */
+    private static void testRemoteFailureIsMiss() {
+        RemoteCacheClient failing = new RemoteCacheClient() {
+            @Override
+            public Object get(String key) {
+                throw new IllegalStateException("remote unavailable");
+            }
+
+            @Override
+            public void multiSet(Map<String, Object> values, long ttlMillis) {
+                throw new IllegalStateException("remote unavailable");
+            }
+
+            @Override
+            public void deleteByPrefix(String prefix) {
+                throw new IllegalStateException("remote unavailable");
+            }
+        };
+        LocalMatcherCache local = new LocalMatcherCache();
+        TieredMatcherCache cache = new TieredMatcherCache(local, failing).setPropagateClear(true);
+
+        List<Long> queried = Collections.synchronizedList(new ArrayList<>());
+        ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher = match(cache, ids(0, 5), queried);
+        check(matcher.getOneToOneRelations().size() == 5, "远程缓存失败时也应该匹配");
+        check(local.size("tiered") == 5, "远程缓存失败时也应该写入本地缓存");
+        check(cache.get("tiered", 100L) == null, "远程缓存失败时应该当作未命中");
+        cache.clear("tiered");
+        check(local.size("tiered") == 0, "远程缓存失败时也应该清除本地缓存");
+    }
+
+    /**
+     * 默认只清除本地缓存 开启后同时按前缀清除远程缓存
+     */
+    private static void testClear() {
+        InMemoryRemoteCacheClient remote = new InMemoryRemoteCacheClient();
+        TieredMatcherCache cache = new TieredMatcherCache(new LocalMatcherCache(), remote).setKeyPrefix("test:");
+        cache.put("tiered", 1L, "a");
+        cache.put("other", 1L, "b");
+        check(remote.multiGet(Arrays.asList("test:tiered:1", "test:other:1")).size() == 2, "远程缓存的key不对");
+
+        cache.clear("tiered");
+        check(remote.size() == 2, "默认不应该清除远程缓存");
+        check("a".equals(cache.get("tiered", 1L)), "清除本地缓存后应该从远程缓存命中");
+
+        cache.setPropagateClear(true).clear("tiered");
+        check(remote.size() == 1 && remote.get("test:other:1") != null, "应该只清除这个缓存名称的远程缓存");
+        cache.clearAll();
+        check(remote.size() == 0, "应该清除全部远程缓存");
+    }
+
+    /**
+     * 远程缓存过期后未命中
+     */
+    private static void testRemoteTtl() {
+        InMemoryRemoteCacheClient remote = new InMemoryRemoteCacheClient();
+        TieredMatcherCache cache = new TieredMatcherCache(new LocalMatcherCache(), remote).setRemoteTtl(50, TimeUnit.MILLISECONDS);
+        cache.put("tiered", 1L, "a");
+        cache.clear("tiered");
+        sleep(100);
+        check(cache.get("tiered", 1L) == null, "远程缓存过期后不应该命中");
+        check(cache.getRemoteMissCount() == 1, "远程缓存的未命中数不对");
+    }
+
+    /**
+     * 异步匹配时远程缓存的访问不阻塞调用方线程
+     */
+    private static void testAsyncMatchDoesNotWaitForRemote() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryRemoteCacheClient delegate = new InMemoryRemoteCacheClient();
+        RemoteCacheClient slow = new RemoteCacheClient() {
+            @Override
+            public Object get(String key) {
+                await(release);
+                return delegate.get(key);
+            }
+
+            @Override
+            public Map<String, Object> multiGet(Collection<String> keys) {
+                await(release);
+                return delegate.multiGet(keys);
+            }
+
+            @Override
+            public void multiSet(Map<String, Object> values, long ttlMillis) {
+                delegate.multiSet(values, ttlMillis);
+            }
+
+            @Override
+            public void deleteByPrefix(String prefix) {
+                delegate.deleteByPrefix(prefix);
+            }
+        };
+        CompletableFuture<ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>> future = matcher(new TieredMatcherCache(new LocalMatcherCache(), slow), ids(0, 5), new ArrayList<>())
+                .matchAsync();
+        check(!future.isDone(), "远程缓存返回前不应该完成匹配");
+        release.countDown();
+        check(future.get(5, TimeUnit.SECONDS).getOneToOneRelations().size() == 5, "匹配的数量不对");
+    }
+
+    private static ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> match(MatcherCache cache, List<Long> elements, List<Long> queried) {
+        return matcher(cache, elements, queried).match();
+    }
+
+    private static ObjectRelationMatcher<Long, Long, List<Long>, Long, Long> matcher(MatcherCache cache, List<Long> elements, List<Long> queried) {
+        return new ObjectRelationMatcher<Long, Long, List<Long>, Long, Long>()
+                .setElements(elements)
+                .setElementIdentifierExtractor(Function.identity())
+                .setIdentifierCollectorType(List.class)
+                .setBatchQueryMethod(ids -> {
+                    queried.addAll(ids);
+                    return ids;
+                })
+                .setDataKeyGenerator(Function.identity())
+                .setElementToKeyMappingByIdentifierExtractor()
+                .setUseCache(true)
+                .setCacheKeyName("tiered")
+                .setCache(cache);
+    }
+
+}
@@ -0,0 +1,157 @@
+package lang;
+
+import com.mogudiandian.util.compressor.ZstdCompressor;
+import com.mogudiandian.util.compressor.ZstdDictionary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static lang.TestSupport.*;
+
+/**
+ * 测试zstd的字典训练、使用字典压缩解压以及按照字典ID选择字典
+ *
+ * @author Joshua Sun
+ * @since 2026/10/17
+ */
+public class TestZstdDictionary {
+
+    public static void main(String[] args) throws IOException {
+        ZstdDictionary dictionary = ZstdDictionary.train(records(1, 2000), 16 * 1024);
+        testTrain(dictionary);
+        testSmallRecords(dictionary);
+        testPreviousDictionaries(dictionary);
+        testStreamAndByteBuffer(dictionary);
+        testPooledContextReset(dictionary);
+    }
+
+    /**
+     * 训练出的字典有ID 持久化后加载的字典ID相同
+     */
+    private static void testTrain(ZstdDictionary dictionary) {
+        check(dictionary.getId() != 0, "训练出的字典应该有ID");
+        check(dictionary.getBytes().length > 0 && dictionary.getBytes().length <= 16 * 1024, "字典的大小不对 " + dictionary.getBytes().length);
+        ZstdDictionary loaded = new ZstdDictionary(dictionary.getBytes());
+        check(loaded.getId() == dictionary.getId(), "加载的字典ID不一致");
+
+        expectFailure(IllegalArgumentException.class, () -> new ZstdDictionary(text(1000)), "没有字典ID的内容");
+        expectFailure(IllegalArgumentException.class, () -> ZstdDictionary.train(Collections.emptyList(), 1024), "没有样本");
+        expectFailure(IllegalArgumentException.class, () -> ZstdDictionary.train(records(1, 10), 0), "字典大小为0");
+        expectFailure(NullPointerException.class, () -> new ZstdCompressor(3, null), "字典为空");
+    }
+
+    /**
+     * 没有参与训练的小数据使用字典压缩后明显更小 解压一致
+     */
+    private static void testSmallRecords(ZstdDictionary dictionary) {
+        ZstdCompressor plain = new ZstdCompressor(3);
+        ZstdCompressor withDictionary = new ZstdCompressor(3, dictionary);
+        check(withDictionary.getDictionary() == dictionary && withDictionary.getLevel() == 3, "参数不对");
+        long plainTotal = 0;
+        long dictionaryTotal = 0;
+        for (byte[] record : records(2, 200)) {
+            byte[] compressed = withDictionary.compress(record);
+            check(Arrays.equals(withDictionary.decompress(compressed), record), "使用字典解压失败");
+            plainTotal += plain.compress(record).length;
+            dictionaryTotal += compressed.length;
+        }
+        check(dictionaryTotal * 2 < plainTotal, "使用字典应该明显更小 " + dictionaryTotal + " " + plainTotal);
+
+        // 使用字典的压缩器也能解压没有使用字典的数据
+        byte[] record = records(3, 1).get(0);
+        check(Arrays.equals(withDictionary.decompress(plain.compress(record)), record), "解压没有使用字典的数据失败");
+    }
+
+    /**
+     * 按照数据帧中的字典ID选择字典 旧字典压缩的数据仍然可以解压 找不到字典时失败
+     */
+    private static void testPreviousDictionaries(ZstdDictionary previous) {
+        ZstdDictionary current = ZstdDictionary.train(records(4, 2000), 16 * 1024);
+        check(current.getId() != previous.getId(), "两个字典的ID应该不同");
+
+        byte[] record = records(5, 1).get(0);
+        byte[] oldData = new ZstdCompressor(3, previous).compress(record);
+        ZstdCompressor upgraded = new ZstdCompressor(3, current, previous);
+        byte[] newData = upgraded.compress(record);
+        check(Arrays.equals(upgraded.decompress(oldData), record), "解压旧字典压缩的数据失败");
+        check(Arrays.equals(upgraded.decompress(newData), record), "解压新字典压缩的数据失败");
+
+        ZstdCompressor currentOnly = new ZstdCompressor(3, current);
+        RuntimeException e = expectFailure(RuntimeException.class, () -> currentOnly.decompress(oldData), "没有旧字典");
+        check(e.getMessage().contains(Integer.toUnsignedString(previous.getId())), "异常信息应该包含字典ID " + e.getMessage());
+        expectFailure(RuntimeException.class, () -> new ZstdCompressor(3).decompress(newData), "没有设置字典");
+        expectFailure(RuntimeException.class, () -> currentOnly.decompress(ByteBuffer.wrap(oldData), ByteBuffer.allocate(record.length)), "ByteBuffer没有旧字典");
+    }
+
+    /**
+     * 流式压缩和ByteBuffer也使用字典 与byte[]的压缩互通
+     */
+    private static void testStreamAndByteBuffer(ZstdDictionary dictionary) throws IOException {
+        ZstdCompressor compressor = new ZstdCompressor(3, dictionary);
+        byte[] data = concat(records(6, 50).toArray(new byte[0][]));
+
+        byte[] compressed = writeStream(compressor, data);
+        check(compressed.length < new ZstdCompressor(3).compress(data).length, "流式压缩应该使用字典");
+        check(Arrays.equals(readStream(compressor, compressed), data), "流式解压失败");
+        check(Arrays.equals(compressor.decompress(compressed), data), "解压流式压缩的数据失败");
+
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer src = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+            src.put(data).flip();
+            ByteBuffer dst = direct ? ByteBuffer.allocateDirect(compressor.maxCompressedLength(data.length)) : ByteBuffer.allocate(compressor.maxCompressedLength(data.length));
+            compressor.compress(src, dst);
+            dst.flip();
+            byte[] bytes = new byte[dst.remaining()];
+            dst.duplicate().get(bytes);
+            check(Arrays.equals(compressor.decompress(bytes), data), "解压ByteBuffer压缩的数据失败 direct=" + direct);
+
+            ByteBuffer result = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+            check(compressor.decompress(dst, result) == data.length, "ByteBuffer解压的字节数不对 direct=" + direct);
+            result.flip();
+            byte[] resultBytes = new byte[result.remaining()];
+            result.get(resultBytes);
+            check(Arrays.equals(resultBytes, data), "ByteBuffer解压失败 direct=" + direct);
+        }
+    }
+
+    /**
+     * 压缩和解压的上下文是共享的 使用过字典之后不能影响没有字典的压缩解压
+     */
+    private static void testPooledContextReset(ZstdDictionary dictionary) {
+        byte[] data = concat(records(7, 20).toArray(new byte[0][]));
+        ZstdCompressor plain = new ZstdCompressor(3);
+        byte[] expected = plain.compress(data);
+        ZstdCompressor withDictionary = new ZstdCompressor(3, dictionary);
+        withDictionary.decompress(withDictionary.compress(data));
+        check(Arrays.equals(plain.compress(data), expected), "使用过字典的上下文压缩的结果不一致");
+        check(Arrays.equals(plain.decompress(expected), data), "使用过字典的上下文解压失败");
+    }
+
+    /**
+     * 结构相同、内容不同的JSON
+     */
+    private static List<byte[]> records(long seed, int count) {
+        Random random = new Random(seed);
+        String[] cities = {"Beijing", "Shanghai", "Guangzhou", "Shenzhen", "Hangzhou", "Chengdu"};
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String json = "{\"id\":" + random.nextInt(1_000_000)
+                    + ",\"name\":\"user" + random.nextInt(100_000) + "\""
+                    + ",\"email\":\"user" + random.nextInt(100_000) + "@example.com\""
+                    + ",\"city\":\"" + cities[random.nextInt(cities.length)] + "\""
+                    + ",\"vip\":" + random.nextBoolean()
+                    + ",\"balance\":" + random.nextInt(100_000) / 100.0
+                    + ",\"tags\":[\"tag" + random.nextInt(20) + "\",\"tag" + random.nextInt(20) + "\"]"
+                    + ",\"createdAt\":\"2026-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10) + "T08:00:00Z\"}";
+            records.add(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return records;
+    }
+
+}